@@ -1,29 +1,64 @@
 package actions;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
+import actions.views.EmployeePrincipal;
+import actions.views.KeysetPage;
+import actions.views.ResourceVersion;
 import constants.AttributeConst;
 import constants.ForwardConst;
+import constants.JpaConst;
 import constants.PropertyConst;
+import utils.AuthTokens;
+import utils.FlightEvents;
+import utils.PageCursor;
+import utils.RequestMetrics;
 
 /**
  * 各Actionクラスの親クラス。共通処理を行う。
  *
  */
 public abstract class ActionBase {
+    private static final Logger LOGGER = Logger.getLogger(ActionBase.class.getName());
+
     protected ServletContext context;
     protected HttpServletRequest request;
     protected HttpServletResponse response;
 
+    private static final String VIEWS_DIR = "/WEB-INF/views/";
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    //画面(jsp)の内容から作成した版
+    private static volatile String viewsVersion;
+    private static final SecureRandom RANDOM = new SecureRandom();
+    //セッションを作成する前(ログイン前)に発行したCSRF対策用トークン
+    private String cookieToken;
+    //クッキーから読み込んだフラッシュメッセージ(ログイン状態をトークンで受け渡す場合)
+    private String flash;
+    private boolean flashLoaded;
+
     /**
      * 初期化処理
      * サーブレットコンテキスト、リクエスト、レスポンスをクラスフィールドに設定
@@ -55,24 +90,40 @@ public abstract class ActionBase {
     protected void invoke()
             throws ServletException, IOException {
 
-        Method commandMethod;
-        try {
-
-            //パラメータからcommandを取得
-            String command = request.getParameter(ForwardConst.CMD.getValue());
+        //パラメータからcommandを取得
+        String command = request.getParameter(ForwardConst.CMD.getValue());
 
-            //ommandに該当するメソッドを実行する
-            //(例: action=Employee command=show の場合 EmployeeActionクラスのshow()メソッドを実行する)
-            commandMethod = this.getClass().getDeclaredMethod(command, new Class[0]);
-            commandMethod.invoke(this, new Object[0]); //メソッドに渡す引数はなし
+        //commandに該当するメソッドを起動時に作成した対応表から探す
+        //(例: action=Employee command=show の場合 EmployeeActionクラスのshow()メソッド)
+        ActionRegistry.Route route = ActionRegistry.getInstance().route(getClass(), command);
+        if (route == null) {
+            //commandの値が不正で実行できない場合エラー画面を呼び出し
+            forward(ForwardConst.FW_ERR_UNKNOWN);
+            return;
+        }
 
-        } catch (NoSuchMethodException | SecurityException | IllegalAccessException | IllegalArgumentException
-                | InvocationTargetException | NullPointerException e) {
+        //経路ごとの集計に使用する
+        RequestMetrics metrics = RequestMetrics.current();
+        if (metrics != null) {
+            metrics.setRoute(route.getName());
+        }
 
-            //発生した例外をコンソールに表示
-            e.printStackTrace();
-            //commandの値が不正で実行できない場合エラー画面を呼び出し
+        //処理時間がしきい値以上の場合はJFRに記録する
+        FlightEvents.Dispatch event = FlightEvents.dispatch(route.getName());
+        try {
+            route.invoke(this);
+        } catch (Exception e) {
+            //メソッドの実行中に発生した例外(ServletException・IOExceptionを含む)を記録し、まだ応答していなければエラー画面を呼び出し
+            LOGGER.log(Level.SEVERE, route.getName() + "の実行中に例外が発生しました", e);
+            if (metrics != null) {
+                metrics.markError();
+            }
+            if (response.isCommitted()) {
+                throw e;
+            }
             forward(ForwardConst.FW_ERR_UNKNOWN);
+        } finally {
+            event.finish();
         }
 
     }
@@ -85,12 +136,26 @@ public abstract class ActionBase {
      */
     protected void forward(ForwardConst target) throws ServletException, IOException {
 
+        //画面(jsp)はセッションを使用しないため、ログインしている従業員はリクエストスコープで渡す
+        putRequestScope(AttributeConst.LOGIN_EMP, getSessionScope(AttributeConst.LOGIN_EMP));
+
         //jspファイルの相対パスを作成
         String forward = String.format("/WEB-INF/views/%s.jsp", target.getValue());
         RequestDispatcher dispatcher = request.getRequestDispatcher(forward);
 
-        //jspファイルの呼び出し
-        dispatcher.forward(request, response);
+        //jspファイルの呼び出し(描画時間を経路ごとの集計に加算する)
+        RequestMetrics metrics = RequestMetrics.current();
+        if (metrics != null) {
+            metrics.markRendering();
+        }
+        long start = System.nanoTime();
+        try {
+            dispatcher.forward(request, response);
+        } finally {
+            if (metrics != null) {
+                metrics.addRenderNanos(System.nanoTime() - start);
+            }
+        }
 
     }
 
@@ -126,9 +191,13 @@ public abstract class ActionBase {
         //パラメータからtokenの値を取得
         String _token = getRequestParam(AttributeConst.TOKEN);
 
-        if (_token == null || !(_token.equals(getTokenId()))) {
+        String expected = request.getAttribute(AttributeConst.AUTH_TOKEN.getValue()) != null
+                || request.getSession(false) != null ? getTokenId() : getCookieToken();
+        if (_token == null || expected == null || !MessageDigest.isEqual(
+                _token.getBytes(StandardCharsets.UTF_8), expected.getBytes(StandardCharsets.UTF_8))) {
 
-            //tokenが設定されていない、またはセッションIDと一致しない場合はエラー画面を表示
+            //tokenが設定されていない、またはセッションID(トークンでログインしている場合は従業員ごとのトークン、
+            //ログイン前はクッキーのトークン)と一致しない場合はエラー画面を表示
             forward(ForwardConst.FW_ERR_UNKNOWN);
 
             return false;
@@ -139,24 +208,213 @@ public abstract class ActionBase {
     }
 
     /**
-     * セッションIDを取得する
-     * @return セッションID
+     * CSRF対策用トークンを取得する
+     * セッションがある場合はセッションID、ない場合(ログイン前)はセッションを作成せずにクッキーで発行したトークン
+     * ログイン状態をトークンで受け渡す場合は、ログインしている従業員とログイン日時から作成したトークン
+     * @return トークン
      */
     protected String getTokenId() {
-        return request.getSession().getId();
+        AuthTokens.Token auth = (AuthTokens.Token) request.getAttribute(AttributeConst.AUTH_TOKEN.getValue());
+        if (auth != null) {
+            return AuthTokens.getInstance().csrfToken(auth);
+        }
+
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            return session.getId();
+        }
+
+        String token = getCookieToken();
+        if (token == null) {
+            byte[] bytes = new byte[32];
+            RANDOM.nextBytes(bytes);
+            token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            String path = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+            response.addHeader("Set-Cookie", AttributeConst.TOKEN.getValue() + "=" + token
+                    + "; Path=" + path + "; HttpOnly; SameSite=Strict" + (request.isSecure() ? "; Secure" : ""));
+            cookieToken = token;
+        }
+        return token;
+    }
+
+    /**
+     * ログイン前に発行したCSRF対策用トークンをクッキーから取得する
+     * @return トークン 発行していない場合はnull
+     */
+    private String getCookieToken() {
+        if (cookieToken == null && request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (AttributeConst.TOKEN.getValue().equals(cookie.getName())) {
+                    cookieToken = cookie.getValue();
+                }
+            }
+        }
+        return cookieToken;
     }
 
     /**
      * リクエストから表示を要求されているページ数を取得し、返却する
-     * @return 要求されているページ数(要求がない場合は1)
+     * @return 要求されているページ数(要求がない場合は1、上限を超える場合は上限のページ数)
      */
     protected int getPage() {
         int page;
         page = toNumber(request.getParameter(AttributeConst.PAGE.getValue()));
-        if (page == Integer.MIN_VALUE) {
+        if (page == Integer.MIN_VALUE || page < 1) {
             page = 1;
         }
-        return page;
+        return Math.min(page, JpaConst.MAX_OFFSET_PAGE);
+    }
+
+    /**
+     * 一覧画面に表示する1ページ分のデータを取得し、ページングに必要な値をリクエストスコープに設定する
+     * パラメータでページ数が指定されている場合はページ数(オフセット方式、上限あり)で取得し、
+     * それ以外はカーソル(キーセット方式)で取得する
+     * @param byPage ページ数を受け取り、データを取得する関数
+     * @param byCursor カーソルを受け取り、データを取得する関数
+     * @return 1ページ分のデータ
+     */
+    protected <T> List<T> getPageItems(IntFunction<List<T>> byPage, Function<PageCursor, KeysetPage<T>> byCursor) {
+        putRequestScope(AttributeConst.MAX_ROW, JpaConst.ROW_PER_PAGE); //1ページに表示するレコードの数
+        putRequestScope(AttributeConst.MAX_PAGE, JpaConst.MAX_OFFSET_PAGE); //ページ数指定で表示できるページの上限
+
+        if (getRequestParam(AttributeConst.PAGE) != null) {
+            //ページ数が指定されている場合
+            int page = getPage();
+            putRequestScope(AttributeConst.PAGE, page); //ページ数
+            return byPage.apply(page);
+        }
+
+        PageCursor cursor = PageCursor.parse(getRequestParam(AttributeConst.CURSOR));
+        KeysetPage<T> keyset = byCursor.apply(cursor);
+
+        //先頭ページであれば1ページ目、それ以外はページ数不明(0)とする
+        boolean first = keyset.getPrev() == null
+                && (cursor == null || cursor.getDirection() == PageCursor.Direction.NEWER);
+        putRequestScope(AttributeConst.PAGE, first ? 1 : 0);
+        putRequestScope(AttributeConst.NEXT_CURSOR, keyset.getNext() == null ? null : keyset.getNext().toToken()); //次のページを指すカーソル
+        putRequestScope(AttributeConst.PREV_CURSOR, keyset.getPrev() == null ? null : keyset.getPrev().toToken()); //前のページを指すカーソル
+
+        return keyset.getItems();
+    }
+
+    /**
+     * 条件付きGETを処理する
+     * 画面に表示するデータの版、ログイン中の従業員、画面(jsp)の内容からETag(弱い検証子)を作成し、Last-Modifiedと共にレスポンスに設定する。
+     * リクエストのIf-None-MatchがETagと一致する場合は304を返却する(データの取得と画面の表示は不要)。
+     * 画面はログイン中の従業員ごとに異なるため、従業員を区別できないIf-Modified-Sinceでは判定しない。
+     * フラッシュメッセージを表示する場合は1度だけ表示する画面のため、判定せずキャッシュさせない。
+     * @param version 画面に表示するデータの版
+     * @param viewerState ログイン中の従業員によって変わる表示内容(いいね済みかどうか等)
+     * @return 304を返却した:true 画面を表示する必要がある:false
+     */
+    protected boolean isNotModified(ResourceVersion version, Object... viewerState) {
+        String method = request.getMethod();
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            return false;
+        }
+        if (getSessionScope(AttributeConst.FLUSH) != null) {
+            response.setHeader("Cache-Control", "no-store");
+            return false;
+        }
+
+        StringBuilder source = new StringBuilder(version.getStamp());
+        EmployeePrincipal viewer = getSessionScope(AttributeConst.LOGIN_EMP);
+        if (viewer != null) {
+            source.append("|viewer:").append(viewer.getId()).append(':').append(viewer.getVersion());
+        }
+        for (Object state : viewerState) {
+            source.append('|').append(state);
+        }
+        source.append("|views:").append(getViewsVersion());
+        String etag = "W/\"" + Long.toHexString(fnv1a(source)) + "\"";
+
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "private, no-cache"); //再利用する前に必ず再検証させる
+        if (version.getLastModified() != null) {
+            response.setDateHeader("Last-Modified",
+                    version.getLastModified().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        }
+
+        if (!matchesEtag(request.getHeader("If-None-Match"), etag)) {
+            return false;
+        }
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return true;
+    }
+
+    /**
+     * If-None-Matchの値にETagが含まれるかどうかを弱い比較(W/の有無を区別しない)で判定する
+     */
+    private static boolean matchesEtag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 画面(/WEB-INF/views 以下のjsp)の内容から作成した版を返却する(初回呼び出し時に作成する)
+     * 画面を変更してデプロイした場合に、以前の画面が304で再利用されないようにする
+     */
+    private String getViewsVersion() {
+        String version = viewsVersion;
+        if (version == null) {
+            long hash = FNV_OFFSET;
+            for (String path : listResources(VIEWS_DIR)) {
+                try (InputStream is = context.getResourceAsStream(path)) {
+                    hash = fnv1a(hash, path.getBytes(StandardCharsets.UTF_8));
+                    if (is != null) {
+                        hash = fnv1a(hash, is.readAllBytes());
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, path + "を読み込めません", e);
+                }
+            }
+            version = Long.toHexString(hash);
+            viewsVersion = version;
+        }
+        return version;
+    }
+
+    private List<String> listResources(String dir) {
+        List<String> paths = new ArrayList<>();
+        Set<String> children = context.getResourcePaths(dir);
+        if (children != null) {
+            for (String child : new TreeSet<>(children)) {
+                if (child.endsWith("/")) {
+                    paths.addAll(listResources(child));
+                } else {
+                    paths.add(child);
+                }
+            }
+        }
+        return paths;
+    }
+
+    private static long fnv1a(CharSequence s) {
+        return fnv1a(FNV_OFFSET, s.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    //FNV-1a(64bit)
+    private static long fnv1a(long hash, byte[] bytes) {
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
     }
 
     /**
@@ -211,15 +469,23 @@ public abstract class ActionBase {
      */
     @SuppressWarnings("unchecked")
     protected <R> R getSessionScope(AttributeConst key) {
-        return (R) request.getSession().getAttribute(key.getValue());
+        if (isCookieScope(key)) {
+            return (R) (key == AttributeConst.FLUSH ? getFlash() : request.getAttribute(key.getValue()));
+        }
+        HttpSession session = request.getSession(false);
+        return session == null ? null : (R) session.getAttribute(key.getValue());
     }
 
     /**
-     * セッションスコープにパラメータを設定する
+     * セッションスコープにパラメータを設定する(セッションがなければ作成する)
      * @param key パラメータ名
      * @param value パラメータの値
      */
     protected <V> void putSessionScope(AttributeConst key, V value) {
+        if (isCookieScope(key)) {
+            putCookieScope(key, value);
+            return;
+        }
         request.getSession().setAttribute(key.getValue(), value);
     }
 
@@ -228,7 +494,81 @@ public abstract class ActionBase {
      * @param key パラメータ名
      */
     protected void removeSessionScope(AttributeConst key) {
-        request.getSession().removeAttribute(key.getValue());
+        if (isCookieScope(key)) {
+            putCookieScope(key, null);
+            return;
+        }
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            session.removeAttribute(key.getValue());
+        }
+    }
+
+    /**
+     * セッションIDを変更する(ログイン時にセッション固定攻撃を防ぐため セッションがない場合は何もしない)
+     */
+    protected void changeSessionId() {
+        if (request.getSession(false) != null) {
+            request.changeSessionId();
+        }
+    }
+
+    /**
+     * セッションを無効にする(セッションストアに保存したセッションも削除する セッションがない場合は何もしない)
+     */
+    protected void invalidateSession() {
+        HttpSession session = request.getSession(false);
+        if (session != null) {
+            session.invalidate();
+        }
+    }
+
+    /**
+     * ログイン状態をトークンで受け渡す場合、ログイン中の従業員とフラッシュメッセージはセッションではなく署名付きのクッキーで受け渡す
+     * @param key パラメータ名
+     * @return クッキーで受け渡すパラメータであればtrue
+     */
+    private boolean isCookieScope(AttributeConst key) {
+        return (key == AttributeConst.LOGIN_EMP || key == AttributeConst.FLUSH) && AuthTokens.isEnabled();
+    }
+
+    /**
+     * ログイン中の従業員またはフラッシュメッセージをクッキーに設定する
+     * @param key パラメータ名
+     * @param value パラメータの値 nullの場合はクッキーを削除する
+     */
+    private void putCookieScope(AttributeConst key, Object value) {
+        AuthTokens tokens = AuthTokens.getInstance();
+        if (key == AttributeConst.FLUSH) {
+            flash = (String) value;
+            flashLoaded = true;
+            AuthTokens.setCookie(request, response, AuthTokens.FLASH_COOKIE_NAME,
+                    value == null ? null : tokens.signFlash(flash));
+            return;
+        }
+
+        if (value == null) {
+            request.removeAttribute(AttributeConst.LOGIN_EMP.getValue());
+            request.removeAttribute(AttributeConst.AUTH_TOKEN.getValue());
+            AuthTokens.setCookie(request, response, AuthTokens.COOKIE_NAME, null);
+        } else {
+            AuthTokens.Token token = tokens.issue((EmployeePrincipal) value, System.currentTimeMillis());
+            request.setAttribute(AttributeConst.LOGIN_EMP.getValue(), value);
+            request.setAttribute(AttributeConst.AUTH_TOKEN.getValue(), token);
+            AuthTokens.setCookie(request, response, AuthTokens.COOKIE_NAME, token.getValue());
+        }
+    }
+
+    /**
+     * クッキーからフラッシュメッセージを取得する(署名が一致しない場合はないものとする)
+     * @return フラッシュメッセージ
+     */
+    private String getFlash() {
+        if (!flashLoaded) {
+            flash = AuthTokens.getInstance().verifyFlash(AuthTokens.getCookie(request, AuthTokens.FLASH_COOKIE_NAME));
+            flashLoaded = true;
+        }
+        return flash;
     }
 
     /**
@@ -0,0 +1,297 @@
+package actions;
+
+import java.io.IOException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletException;
+
+import constants.ForwardConst;
+
+/**
+ * リクエストパラメータ(action, command)から実行するActionクラスとメソッドを決定するための対応表
+ * 起動時に1度だけactionsパッケージのActionクラスを走査し、インスタンスの生成とメソッドの呼び出しを
+ * 事前に生成した関数として保持する。リクエストごとのリフレクションは行わず、該当しない組み合わせは表の検索だけで判定する。
+ * 組み合わせごとの呼び出し回数を数える。
+ */
+public class ActionRegistry {
+
+    private static final Logger LOGGER = Logger.getLogger(ActionRegistry.class.getName());
+
+    private static final String CLASS_SUFFIX = "Action";
+
+    private static final ActionRegistry INSTANCE = new ActionRegistry();
+
+    //Action名(例:"Report") → Actionクラスの情報
+    private final Map<String, ActionEntry> byName = new HashMap<>();
+    //Actionクラス → Actionクラスの情報
+    private final Map<Class<?>, ActionEntry> byClass = new HashMap<>();
+    //該当するActionクラス・メソッドがなかった回数
+    private final LongAdder misses = new LongAdder();
+
+    private ActionRegistry() {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        for (Class<? extends ActionBase> type : scan()) {
+            try {
+                ActionEntry entry = new ActionEntry(lookup, type);
+                byName.put(entry.name, entry);
+                byClass.put(type, entry);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Actionクラスを登録できません: " + type.getName(), e);
+            }
+        }
+        LOGGER.info("Actionクラスを登録しました: " + byName.keySet());
+    }
+
+    /**
+     * 対応表を返却する(初回呼び出し時に作成する)
+     * @return 対応表
+     */
+    public static ActionRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Action名に該当するActionクラスのインスタンスを作成する
+     * @param actionName パラメータ"action"の値 (例:"Employee"、"Report")
+     * @return Actionクラスのインスタンス 該当するクラスがない場合はnull
+     */
+    public ActionBase newAction(String actionName) {
+        ActionEntry entry = actionName == null ? null : byName.get(actionName);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        return entry.factory.get();
+    }
+
+    /**
+     * Actionクラスとcommandの値に該当するメソッドを返却する
+     * @param type Actionクラス
+     * @param commandName パラメータ"command"の値 (例:"index"、"show")
+     * @return メソッド 該当するメソッドがない場合はnull
+     */
+    public Route route(Class<? extends ActionBase> type, String commandName) {
+        ActionEntry entry = byClass.get(type);
+        Route route = entry == null || commandName == null ? null : entry.commands.get(commandName);
+        if (route == null) {
+            misses.increment();
+        }
+        return route;
+    }
+
+    /**
+     * 組み合わせ(例:"Report.show")ごとの呼び出し回数を返却する
+     * @return 組み合わせ → 呼び出し回数
+     */
+    public Map<String, Long> getInvocationCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        for (ActionEntry entry : byName.values()) {
+            for (Route route : entry.commands.values()) {
+                counts.put(route.getName(), route.getCount());
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 該当するActionクラス・メソッドがなかった回数を返却する
+     * @return 回数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * actionsパッケージのActionクラスを探す
+     * クラスパスのディレクトリ、jarファイルのどちらからも探し、見つからない場合はForwardConstに定義したAction名から探す
+     */
+    @SuppressWarnings("unchecked") //ActionBaseのサブクラスであることを確認してからキャストする
+    private static List<Class<? extends ActionBase>> scan() {
+        String pkg = ActionBase.class.getPackage().getName();
+        ClassLoader loader = ActionBase.class.getClassLoader();
+
+        Set<String> names = new LinkedHashSet<>();
+        try {
+            Enumeration<URL> urls = loader.getResources(pkg.replace('.', '/'));
+            while (urls.hasMoreElements()) {
+                names.addAll(listClassNames(urls.nextElement(), pkg));
+            }
+        } catch (IOException | URISyntaxException e) {
+            LOGGER.log(Level.WARNING, "actionsパッケージを走査できません", e);
+        }
+        if (names.isEmpty()) {
+            for (ForwardConst c : ForwardConst.values()) {
+                if (c.name().startsWith("ACT_")) {
+                    names.add(c.getValue() + CLASS_SUFFIX);
+                }
+            }
+        }
+
+        List<Class<? extends ActionBase>> types = new ArrayList<>();
+        for (String simpleName : names) {
+            try {
+                Class<?> type = Class.forName(pkg + "." + simpleName, false, loader);
+                if (ActionBase.class.isAssignableFrom(type) && !Modifier.isAbstract(type.getModifiers())
+                        && Modifier.isPublic(type.getModifiers())) {
+                    types.add((Class<? extends ActionBase>) type);
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                //Actionクラス以外は対象外
+            }
+        }
+        return types;
+    }
+
+    /**
+     * パッケージのURLから、名前が"Action"で終わるクラスの名前(パッケージ名を除く)を列挙する
+     */
+    private static List<String> listClassNames(URL url, String pkg) throws IOException, URISyntaxException {
+        List<String> names = new ArrayList<>();
+        String suffix = CLASS_SUFFIX + ".class";
+
+        if ("file".equals(url.getProtocol())) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(Paths.get(url.toURI()), "*" + suffix)) {
+                for (Path p : ds) {
+                    String file = p.getFileName().toString();
+                    names.add(file.substring(0, file.length() - ".class".length()));
+                }
+            }
+        } else if ("jar".equals(url.getProtocol())) {
+            String prefix = pkg.replace('.', '/') + "/";
+            JarURLConnection con = (JarURLConnection) url.openConnection();
+            con.setUseCaches(false);
+            try (JarFile jar = con.getJarFile()) {
+                for (JarEntry e : Collections.list(jar.entries())) {
+                    String entry = e.getName();
+                    if (entry.startsWith(prefix) && entry.endsWith(suffix) && entry.indexOf('/', prefix.length()) < 0) {
+                        names.add(entry.substring(prefix.length(), entry.length() - ".class".length()));
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Actionクラスのメソッドを呼び出す関数
+     */
+    @FunctionalInterface
+    public interface Command {
+        void execute(ActionBase action) throws ServletException, IOException;
+    }
+
+    /**
+     * 1つの(action, command)の組み合わせ
+     */
+    public static class Route {
+        private final String name;
+        private final Command command;
+        private final LongAdder count = new LongAdder();
+
+        private Route(String name, Command command) {
+            this.name = name;
+            this.command = command;
+        }
+
+        /**
+         * メソッドを呼び出す
+         * @param action Actionクラスのインスタンス
+         * @throws ServletException
+         * @throws IOException
+         */
+        public void invoke(ActionBase action) throws ServletException, IOException {
+            count.increment();
+            command.execute(action);
+        }
+
+        /**
+         * @return 組み合わせの名前(例:"Report.show")
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return 呼び出し回数
+         */
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * 1つのActionクラスについて、インスタンスを生成する関数と、command名ごとのメソッド
+     */
+    private static class ActionEntry {
+        private final String name;
+        private final Supplier<ActionBase> factory;
+        private final Map<String, Route> commands = new HashMap<>();
+
+        @SuppressWarnings("unchecked") //LambdaMetafactoryで生成した関数の型は呼び出し時の指定どおり
+        private ActionEntry(MethodHandles.Lookup lookup, Class<? extends ActionBase> type) throws ReflectiveOperationException {
+            String simpleName = type.getSimpleName();
+            this.name = simpleName.endsWith(CLASS_SUFFIX)
+                    ? simpleName.substring(0, simpleName.length() - CLASS_SUFFIX.length())
+                    : simpleName;
+
+            //引数なしコンストラクタを呼び出す関数
+            MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class));
+            this.factory = (Supplier<ActionBase>) metafactory(lookup, "get", Supplier.class,
+                    MethodType.methodType(Object.class), constructor, MethodType.methodType(type));
+
+            //commandとして呼び出せるのは、Actionクラスで宣言したpublicで引数なしのメソッド(process()を除く)
+            for (Method m : type.getDeclaredMethods()) {
+                if (!Modifier.isPublic(m.getModifiers()) || Modifier.isStatic(m.getModifiers())
+                        || m.getParameterCount() != 0 || m.getReturnType() != void.class
+                        || m.isSynthetic() || m.getName().equals("process")) {
+                    continue;
+                }
+                Command command = (Command) metafactory(lookup, "execute", Command.class,
+                        MethodType.methodType(void.class, ActionBase.class), lookup.unreflect(m),
+                        MethodType.methodType(void.class, type));
+                commands.put(m.getName(), new Route(name + "." + m.getName(), command));
+            }
+        }
+
+        private static Object metafactory(MethodHandles.Lookup lookup, String methodName, Class<?> functionalInterface,
+                MethodType samType, MethodHandle impl, MethodType instantiatedType) throws ReflectiveOperationException {
+            try {
+                CallSite site = LambdaMetafactory.metafactory(lookup, methodName,
+                        MethodType.methodType(functionalInterface), samType, impl, instantiatedType);
+                return site.getTarget().invoke();
+            } catch (ReflectiveOperationException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new ReflectiveOperationException(e);
+            }
+        }
+    }
+}
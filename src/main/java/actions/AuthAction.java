@@ -10,6 +10,8 @@ import constants.ForwardConst;
 import constants.MessageConst;
 import constants.PropertyConst;
 import services.EmployeeService;
+import services.PrincipalRegistry;
+import services.ServiceBase;
 
 /**
  * 認証に関する処理を行うActionクラス
@@ -25,7 +27,7 @@ public class AuthAction extends ActionBase {
     @Override
     public void process() throws ServletException, IOException {
 
-        service = new EmployeeService();
+        service = ServiceBase.create(EmployeeService.class);
 
         //メソッドを実行
         invoke();
@@ -76,8 +78,10 @@ public class AuthAction extends ActionBase {
 
                 //ログインした従業員のDBデータを取得
                 EmployeeView ev = service.findOne(code, plainPass, pepper);
-                //セッションにログインした従業員を設定
-                putSessionScope(AttributeConst.LOGIN_EMP, ev);
+                //ログイン前のセッションIDを引き継がせない
+                changeSessionId();
+                //セッションにログインした従業員を設定(画面の表示と権限の判定に必要な項目だけを保持する)
+                putSessionScope(AttributeConst.LOGIN_EMP, PrincipalRegistry.login(ev));
                 //セッションにログイン完了のフラッシュメッセージを設定
                 putSessionScope(AttributeConst.FLUSH, MessageConst.I_LOGINED.getMessage());
                 //トップページへリダイレクト
@@ -108,6 +112,9 @@ public class AuthAction extends ActionBase {
         //セッションからログイン従業員のパラメータを削除
         removeSessionScope(AttributeConst.LOGIN_EMP);
 
+        //セッションを破棄する(ストアに保存したセッションも削除し、以後は同じセッションIDを使用させない)
+        invalidateSession();
+
         //セッションにログアウト時のフラッシュメッセージを追加
         putSessionScope(AttributeConst.FLUSH, MessageConst.I_LOGOUT.getMessage());
 
@@ -5,13 +5,14 @@ import java.util.List;
 
 import javax.servlet.ServletException;
 
+import actions.views.EmployeePrincipal;
 import actions.views.EmployeeView;
 import constants.AttributeConst;
 import constants.ForwardConst;
-import constants.JpaConst;
 import constants.MessageConst;
 import constants.PropertyConst;
 import services.EmployeeService;
+import services.ServiceBase;
 
 /**
  * 従業員に関わる処理を行うActionクラス
@@ -27,7 +28,7 @@ public class EmployeeAction extends ActionBase {
     @Override
     public void process() throws ServletException, IOException {
 
-        service = new EmployeeService();
+        service = ServiceBase.create(EmployeeService.class);
 
         //メソッドを実行
         invoke();
@@ -45,17 +46,14 @@ public class EmployeeAction extends ActionBase {
         //管理者かどうかのチェック //追記
         if (checkAdmin()) { //追記
 
-            //指定されたページ数の一覧画面に表示するデータを取得
-            int page = getPage();
-            List<EmployeeView> employees = service.getPerPage(page);
+            //指定されたページ(ページ数またはカーソル)の一覧画面に表示するデータを取得
+            List<EmployeeView> employees = getPageItems(service::getPerPage, service::getByCursor);
 
             //全ての従業員データの件数を取得
             long employeeCount = service.countAll();
 
             putRequestScope(AttributeConst.EMPLOYEES, employees); //取得した従業員データ
             putRequestScope(AttributeConst.EMP_COUNT, employeeCount); //全ての従業員データの件数
-            putRequestScope(AttributeConst.PAGE, page); //ページ数
-            putRequestScope(AttributeConst.MAX_ROW, JpaConst.ROW_PER_PAGE); //1ページに表示するレコードの数
 
             //セッションにフラッシュメッセージが設定されている場合はリクエストスコープに移し替え、セッションからは削除する
             String flush = getSessionScope(AttributeConst.FLUSH);
@@ -274,7 +272,7 @@ public class EmployeeAction extends ActionBase {
     private boolean checkAdmin() throws ServletException, IOException {
 
         //セッションからログイン中の従業員情報を取得
-        EmployeeView ev = (EmployeeView) getSessionScope(AttributeConst.LOGIN_EMP);
+        EmployeePrincipal ev = getSessionScope(AttributeConst.LOGIN_EMP);
 
         //管理者でなければエラー画面を表示
         if (ev.getAdminFlag() != AttributeConst.ROLE_ADMIN.getIntegerValue()) {
@@ -6,17 +6,22 @@ import java.util.List;
 
 import javax.servlet.ServletException;
 
-import actions.views.EmployeeView;
+import actions.views.EmployeeConverter;
+import actions.views.EmployeePrincipal;
 import actions.views.FollowView;
 import actions.views.GoodView;
+import actions.views.ReportSummaryView;
 import actions.views.ReportView;
+import actions.views.ResourceVersion;
 import constants.AttributeConst;
 import constants.ForwardConst;
-import constants.JpaConst;
 import constants.MessageConst;
+import services.CountService;
 import services.FollowService;
 import services.GoodService;
 import services.ReportService;
+import services.ServiceBase;
+import utils.FanOut;
 
 /**
  * 日報に関する処理を行うActionクラス
@@ -34,9 +39,9 @@ public class ReportAction extends ActionBase {
     @Override
     public void process() throws ServletException, IOException {
 
-        service = new ReportService();
-        goodservice = new GoodService();
-        followservice = new FollowService();
+        service = ServiceBase.create(ReportService.class);
+        goodservice = ServiceBase.create(GoodService.class);
+        followservice = ServiceBase.create(FollowService.class);
 
         //メソッドを実行
         invoke();
@@ -52,17 +57,27 @@ public class ReportAction extends ActionBase {
      */
     public void index() throws ServletException, IOException {
 
-        //指定されたページ数の一覧画面に表示する日報データを取得
-        int page = getPage();
-        List<ReportView> reports = service.getAllPerPage(page);
+        //一覧の版が前回表示した時から変わっていなければ304を返却する
+        if (isNotModified(service.getAllVersion())) {
+            return;
+        }
+
+        List<ReportSummaryView> reports;
+        long reportsCount;
+        try (FanOut scope = FanOut.open()) {
+            //全日報データの件数を別スレッドで取得
+            FanOut.Task<Long> count = scope.fork(service::countAll);
+
+            //指定されたページ(ページ数またはカーソル)の一覧画面に表示する日報データを取得
+            reports = getPageItems(service::getAllPerPage, service::getAllByCursor);
 
-        //全日報データの件数を取得
-        long reportsCount = service.countAll();
+            scope.join();
+            reportsCount = count.get();
+        }
 
         putRequestScope(AttributeConst.REPORTS, reports); //取得した日報データ
         putRequestScope(AttributeConst.REP_COUNT, reportsCount); //全ての日報データの件数
-        putRequestScope(AttributeConst.PAGE, page); //ページ数
-        putRequestScope(AttributeConst.MAX_ROW, JpaConst.ROW_PER_PAGE); //1ページに表示するレコードの数
+        putRequestScope(AttributeConst.REP_COUNT_APPROX, CountService.isApproximate(reportsCount)); //件数を「約N件」と表示するかどうか
 
         //セッションにフラッシュメッセージが設定されている場合はリクエストスコープに移し替え、セッションからは削除する
         String flush = getSessionScope(AttributeConst.FLUSH);
@@ -114,12 +129,12 @@ public class ReportAction extends ActionBase {
             }
 
             //セッションからログイン中の従業員情報を取得
-            EmployeeView ev = (EmployeeView) getSessionScope(AttributeConst.LOGIN_EMP);
+            EmployeePrincipal ev = getSessionScope(AttributeConst.LOGIN_EMP);
 
             //パラメータの値をもとに日報情報のインスタンスを作成する
             ReportView rv = new ReportView(
                     null,
-                    ev, //ログインしている従業員を、日報作成者として登録する
+                    EmployeeConverter.toView(ev), //ログインしている従業員を、日報作成者として登録する
                     day,
                     getRequestParam(AttributeConst.REP_TITLE),
                     getRequestParam(AttributeConst.REP_CONTENT),
@@ -160,14 +175,37 @@ public class ReportAction extends ActionBase {
      */
     public void show() throws ServletException, IOException {
 
-        //idを条件に日報データを取得する
-        ReportView rv = service.findOne(toNumber(getRequestParam(AttributeConst.REP_ID)));
+        int id = toNumber(getRequestParam(AttributeConst.REP_ID));
 
         //セッションからログイン中の従業員情報を取得
-        EmployeeView ev = (EmployeeView) getSessionScope(AttributeConst.LOGIN_EMP);
+        EmployeePrincipal ev = getSessionScope(AttributeConst.LOGIN_EMP);
+
+        //idを条件に日報の版(更新日時等)を取得する
+        ResourceVersion version = service.getVersion(id);
+        if (version == null) {
+            //該当の日報データが存在しない場合はエラー画面を表示
+            forward(ForwardConst.FW_ERR_UNKNOWN);
+            return;
+        }
+
+        //ログインしている従業員が、この日報にいいね済みか、日報の作成者をフォロー済みかを並行して判定する
+        boolean liked;
+        boolean following;
+        try (FanOut scope = FanOut.open()) {
+            FanOut.Task<Boolean> followTask = scope.fork(() -> followservice.isFollowing(ev, version.getOwnerId()));
+            liked = goodservice.hasLiked(id, ev);
 
-        //指定した日報のidとログインしている従業員のidの両方に一致するいいねした従業員の件数を取得する
-        long countrepandemp = goodservice.countRepAndEmp(rv, ev);
+            scope.join();
+            following = followTask.get();
+        }
+
+        //前回表示した時から変わっていなければ304を返却する(日報の内容の取得と画面の表示を行わない)
+        if (isNotModified(version, liked, following)) {
+            return;
+        }
+
+        //idを条件に日報データを取得する
+        ReportView rv = service.findOne(id);
 
         if (rv == null) {
             //該当の日報データが存在しない場合はエラー画面を表示
@@ -175,12 +213,9 @@ public class ReportAction extends ActionBase {
 
         } else {
 
-            // ログイン中の従業員とフォローした従業員、日報の作成者とフォローされた従業員が一致するフォロー従業員情報の件数を取得する
-            long countflfled = followservice.countFolFoled(ev, rv.getEmployee());
-
             putRequestScope(AttributeConst.REPORT, rv); //取得した日報データ
-            putRequestScope(AttributeConst.GOOD_REP_EMP_COUNT, countrepandemp); //取得した日報にいいねした従業員データ
-            putRequestScope(AttributeConst.FOLLOW_FOLLOWED_COUNT, countflfled); //取得した日フォロー従業員情報の件数
+            putRequestScope(AttributeConst.GOOD_LIKED, liked); //日報にいいね済みかどうか
+            putRequestScope(AttributeConst.FOLLOW_FOLLOWING, following); //日報の作成者をフォロー済みかどうか
 
             //詳細画面を表示
             forward(ForwardConst.FW_REP_SHOW);
@@ -198,7 +233,7 @@ public class ReportAction extends ActionBase {
         ReportView rv = service.findOne(toNumber(getRequestParam(AttributeConst.REP_ID)));
 
         //セッションからログイン中の従業員情報を取得
-        EmployeeView ev = (EmployeeView) getSessionScope(AttributeConst.LOGIN_EMP);
+        EmployeePrincipal ev = getSessionScope(AttributeConst.LOGIN_EMP);
 
         if (rv == null || ev.getId() != rv.getEmployee().getId()) {
             //該当の日報データが存在しない、または
@@ -265,41 +300,17 @@ public class ReportAction extends ActionBase {
      * @throws IOException
      */
     public void good() throws ServletException, IOException{
-        //idを条件に日報データを取得する
-        ReportView rv = service.findOne(toNumber(getRequestParam(AttributeConst.REP_ID)));
-
-        // いいね数を1加算
-        rv.setReportGood(rv.getReportGood() + 1);
-
-        //日報データを更新する
-        List<String> errors = service.update(rv);
-
-        // いいねした従業員テーブルに登録する
         //セッションからログイン中の従業員情報を取得
-        EmployeeView ev = (EmployeeView) getSessionScope(AttributeConst.LOGIN_EMP);
-
-        //パラメータの値をもとにいいねした従業員情報のインスタンスを作成する
-        GoodView gv = new GoodView(
-                null,
-                ev, //ログインしている従業員を、いいねした従業員として登録する
-                rv, // 表示している日報を登録
-                null,
-                null);
+        EmployeePrincipal ev = getSessionScope(AttributeConst.LOGIN_EMP);
 
-        //いいねした従業員情報登録
-        goodservice.create(gv);
-
-        if (errors.size() > 0) {
-            //更新中にエラーが発生した場合
-
-            putRequestScope(AttributeConst.TOKEN, getTokenId()); //CSRF対策用トークン
-            putRequestScope(AttributeConst.REPORT, rv); //入力された日報情報
-            putRequestScope(AttributeConst.ERR, errors); //エラーのリスト
+        //日報のいいね数を1加算し、ログインしている従業員をいいねした従業員として登録する
+        boolean liked = goodservice.like(toNumber(getRequestParam(AttributeConst.REP_ID)), ev);
 
-            //詳細画面を再表示
-            forward(ForwardConst.FW_REP_SHOW);
+        if (!liked) {
+            //該当の日報データが存在しない場合はエラー画面を表示
+            forward(ForwardConst.FW_ERR_UNKNOWN);
         } else {
-            //更新中にエラーがなかった場合
+            //いいねの登録が完了した場合
 
             //セッションに更新完了のフラッシュメッセージを設定
             putSessionScope(AttributeConst.FLUSH, MessageConst.I_GOOD.getMessage());
@@ -318,9 +329,10 @@ public class ReportAction extends ActionBase {
         //idを条件に日報データを取得する
         ReportView idRv = service.findOne(toNumber(getRequestParam(AttributeConst.REP_ID)));
 
-        //指定した日報にいいねした従業員を、指定されたページ数の一覧画面に表示する分取得
-        int page = getPage();
-        List<GoodView> goods = goodservice.getMinePerPage(idRv, page);
+        //指定した日報にいいねした従業員を、指定されたページの一覧画面に表示する分取得
+        List<GoodView> goods = getPageItems(
+                page -> goodservice.getMinePerPage(idRv, page),
+                cursor -> goodservice.getMineByCursor(idRv, cursor));
 
         //指定した日報にいいねした従業員の件数を取得
         long idRepCount = goodservice.countAllMine(idRv);
@@ -328,8 +340,6 @@ public class ReportAction extends ActionBase {
         putRequestScope(AttributeConst.REPORT, idRv); //取得した日報データ
         putRequestScope(AttributeConst.GOODS, goods); //取得した、日報にいいねした従業員データ
         putRequestScope(AttributeConst.GOOD_COUNT, idRepCount); //全ての、日報にいいねした従業員データの件数
-        putRequestScope(AttributeConst.PAGE, page); //ページ数
-        putRequestScope(AttributeConst.MAX_ROW, JpaConst.ROW_PER_PAGE); //1ページに表示するレコードの数
 
         //いいねした人一覧ページを表示
         forward(ForwardConst.FW_REP_GOODS);
@@ -345,12 +355,12 @@ public class ReportAction extends ActionBase {
         ReportView rv = service.findOne(toNumber(getRequestParam(AttributeConst.REP_ID)));
 
         //セッションからログイン中の従業員情報を取得
-        EmployeeView ev = (EmployeeView) getSessionScope(AttributeConst.LOGIN_EMP);
+        EmployeePrincipal ev = getSessionScope(AttributeConst.LOGIN_EMP);
 
         // パラメータの値をもとにフォローした従業員情報のインスタンスを作成する
         FollowView fv = new FollowView(
                 null,
-                ev, //ログインしている従業員を、フォローした従業員として登録する
+                EmployeeConverter.toView(ev), //ログインしている従業員を、フォローした従業員として登録する
                 rv.getEmployee(), // 日報を作成した従業員を、フォローされた従業員として登録する
                 null,
                 null);
@@ -372,19 +382,30 @@ public class ReportAction extends ActionBase {
      */
     public void timeline() throws ServletException, IOException {
         //セッションからログイン中の従業員情報を取得
-        EmployeeView ev = (EmployeeView) getSessionScope(AttributeConst.LOGIN_EMP);
+        EmployeePrincipal ev = getSessionScope(AttributeConst.LOGIN_EMP);
+
+        //タイムラインの版が前回表示した時から変わっていなければ304を返却する
+        if (isNotModified(followservice.getFollowVersion(ev))) {
+            return;
+        }
 
-        // ログイン中の従業員がフォローした従業員が作成した日報を、指定されたページ数の一覧画面に表示する分取得し返却
-        int page = getPage();
-        List<ReportView> reports = followservice.getFollowAll(ev, page);
+        List<ReportSummaryView> reports;
+        long count;
+        try (FanOut scope = FanOut.open()) {
+            // ログイン中の従業員がフォローした従業員が作成した日報の件数を別スレッドで取得する
+            FanOut.Task<Long> countTask = scope.fork(() -> followservice.countFollowAll(ev));
 
-        // ログイン中の従業員がフォローした従業員が作成した日報の件数を取得し、返却する
-        long count = followservice.countFollowAll(ev);
+            // ログイン中の従業員がフォローした従業員が作成した日報を、指定されたページの一覧画面に表示する分取得し返却
+            reports = getPageItems(
+                    page -> followservice.getFollowAll(ev, page),
+                    cursor -> followservice.getFollowByCursor(ev, cursor));
+
+            scope.join();
+            count = countTask.get();
+        }
 
             putRequestScope(AttributeConst.REPORTS, reports); //取得した日報データ
             putRequestScope(AttributeConst.REP_COUNT, count); //フォローされた従業員が作成した日報の件数
-            putRequestScope(AttributeConst.PAGE, page); //ページ数
-            putRequestScope(AttributeConst.MAX_ROW, JpaConst.ROW_PER_PAGE); //1ページに表示するレコードの数
 
             //セッションにフラッシュメッセージが設定されている場合はリクエストスコープに移し替え、セッションからは削除する
             String flush = getSessionScope(AttributeConst.FLUSH);
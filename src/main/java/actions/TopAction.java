@@ -5,12 +5,13 @@ import java.util.List; //追記
 
 import javax.servlet.ServletException;
 
-import actions.views.EmployeeView; //追記
-import actions.views.ReportView; //追記
+import actions.views.EmployeePrincipal; //追記
+import actions.views.ReportSummaryView; //追記
 import constants.AttributeConst;
 import constants.ForwardConst;
-import constants.JpaConst;  //追記
 import services.ReportService;  //追記
+import services.ServiceBase;
+import utils.FanOut;
 
 /**
  * トップページに関する処理を行うActionクラス
@@ -26,7 +27,7 @@ public class TopAction extends ActionBase {
     @Override
     public void process() throws ServletException, IOException {
 
-        service = new ReportService(); //追記
+        service = ServiceBase.create(ReportService.class); //追記
 
         //メソッドを実行
         invoke();
@@ -43,19 +44,25 @@ public class TopAction extends ActionBase {
         // 以下追記
 
         //セッションからログイン中の従業員情報を取得
-        EmployeeView loginEmployee = (EmployeeView) getSessionScope(AttributeConst.LOGIN_EMP);
+        EmployeePrincipal loginEmployee = getSessionScope(AttributeConst.LOGIN_EMP);
 
-        //ログイン中の従業員が作成した日報データを、指定されたページ数の一覧画面に表示する分取得する
-        int page = getPage();
-        List<ReportView> reports = service.getMinePerPage(loginEmployee, page);
+        List<ReportSummaryView> reports;
+        long myReportsCount;
+        try (FanOut scope = FanOut.open()) {
+            //ログイン中の従業員が作成した日報データの件数を別スレッドで取得
+            FanOut.Task<Long> count = scope.fork(() -> service.countAllMine(loginEmployee));
 
-        //ログイン中の従業員が作成した日報データの件数を取得
-        long myReportsCount = service.countAllMine(loginEmployee);
+            //ログイン中の従業員が作成した日報データを、指定されたページの一覧画面に表示する分取得する
+            reports = getPageItems(
+                    page -> service.getMinePerPage(loginEmployee, page),
+                    cursor -> service.getMineByCursor(loginEmployee, cursor));
+
+            scope.join();
+            myReportsCount = count.get();
+        }
 
         putRequestScope(AttributeConst.REPORTS, reports); //取得した日報データ
         putRequestScope(AttributeConst.REP_COUNT, myReportsCount); //ログイン中の従業員が作成した日報の数
-        putRequestScope(AttributeConst.PAGE, page); //ページ数
-        putRequestScope(AttributeConst.MAX_ROW, JpaConst.ROW_PER_PAGE); //1ページに表示するレコードの数
 
         //↑ここまで追記
 
@@ -79,6 +79,27 @@ public class EmployeeConverter {
                                 : AttributeConst.BOSS_GENERAL.getIntegerValue());
     }
 
+    /**
+     * セッションに保持しているログイン中の従業員からViewモデルのインスタンスを作成する
+     * (パスワード・日時・削除フラグは設定しない)
+     * @param ep EmployeePrincipalのインスタンス
+     * @return EmployeeViewのインスタンス
+     */
+    public static EmployeeView toView(EmployeePrincipal ep) {
+
+        if (ep == null) {
+            return null;
+        }
+
+        EmployeeView ev = new EmployeeView();
+        ev.setId(ep.getId());
+        ev.setCode(ep.getCode());
+        ev.setName(ep.getName());
+        ev.setAdminFlag(ep.getAdminFlag());
+        ev.setBossFlag(ep.getBossFlag());
+        return ev;
+    }
+
     /**
      * DTOモデルのリストからViewモデルのリストを作成する
      * @param list DTOモデルのリスト
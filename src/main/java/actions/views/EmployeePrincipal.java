@@ -0,0 +1,48 @@
+package actions.views;
+
+import java.io.Serializable;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * ログイン中の従業員としてセッションに保持するViewモデル
+ * 画面の表示と権限の判定に必要な項目だけを持つ、変更できない小さなオブジェクト(パスワード・日時は持たない)。
+ * セッションの複製・保存の負担を小さくするため、EmployeeViewの代わりにセッションに保持する。
+ */
+@Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
+@AllArgsConstructor //全てのクラスフィールドを引数にもつ引数ありコンストラクタを自動生成する(Lombok)
+public class EmployeePrincipal implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * id
+     */
+    private final int id;
+
+    /**
+     * 社員番号
+     */
+    private final String code;
+
+    /**
+     * 氏名
+     */
+    private final String name;
+
+    /**
+     * 管理者権限があるかどうか（一般：0、管理者：1）
+     */
+    private final int adminFlag;
+
+    /**
+     * 役職フラグ(0:一般従業員、1:課長)
+     */
+    private final int bossFlag;
+
+    /**
+     * 版(従業員情報が更新されるたびに変わる)
+     */
+    private final long version;
+
+}
@@ -0,0 +1,40 @@
+package actions.views;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import utils.PageCursor;
+
+/**
+ * キーセット方式のページングで取得した1ページ分のデータ
+ * @param <T> データの型
+ */
+@Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
+@AllArgsConstructor //全てのクラスフィールドを引数にもつ引数ありコンストラクタを自動生成する(Lombok)
+public class KeysetPage<T> {
+
+    /**
+     * ページに表示するデータ
+     */
+    private final List<T> items;
+
+    /**
+     * 次のページ(より古いデータ)を指すカーソル 次のページがない場合はnull
+     */
+    private final PageCursor next;
+
+    /**
+     * 前のページ(より新しいデータ)を指すカーソル 先頭ページの場合はnull
+     */
+    private final PageCursor prev;
+
+    /**
+     * カーソルはそのままに、データを変換したページを作成する
+     * @param converted 変換後のデータ
+     * @return ページ
+     */
+    public <R> KeysetPage<R> withItems(List<R> converted) {
+        return new KeysetPage<>(converted, next, prev);
+    }
+}
@@ -2,7 +2,9 @@ package actions.views;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
+import constants.JpaConst;
 import models.Report;
 
 /**
@@ -11,6 +13,9 @@ import models.Report;
  */
 public class ReportConverter {
 
+    //まとめる空白(V2・V6のマイグレーションの[[:space:]]と同じく、全角空白等のUnicodeの空白を含む)
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+", Pattern.UNICODE_CHARACTER_CLASS);
+
     /**
      * ViewモデルのインスタンスからDTOモデルのインスタンスを作成する
      * @param rv ReportViewのインスタンス
@@ -26,7 +31,8 @@ public class ReportConverter {
                 rv.getCreatedAt(),
                 rv.getUpdatedAt(),
                 rv.getReportGood(),
-                rv.getReportAprv());
+                rv.getReportAprv(),
+                toPreview(rv.getContent()));
     }
 
     /**
@@ -82,6 +88,28 @@ public class ReportConverter {
         r.setUpdatedAt(rv.getUpdatedAt());
         r.setReportGood(rv.getReportGood());
         r.setReportAprv(rv.getReportAprv());
+        r.setPreview(toPreview(rv.getContent()));
+    }
+
+    /**
+     * 日報の内容から一覧表示用の冒頭部分を作成する
+     * @param content 日報の内容
+     * @return 改行・全角空白等の連続した空白を1つの空白に置き換え、所定の文字数で切り詰めた文字列
+     */
+    public static String toPreview(String content) {
+        if (content == null) {
+            return null;
+        }
+
+        //MySQLのTRIMと同じく、前後の空白(まとめた後の半角空白)だけを取り除く
+        String flat = WHITESPACE.matcher(content).replaceAll(" ");
+        int begin = flat.startsWith(" ") ? 1 : 0;
+        int end = flat.length() > begin && flat.endsWith(" ") ? flat.length() - 1 : flat.length();
+        flat = flat.substring(begin, end);
+        if (flat.codePointCount(0, flat.length()) <= JpaConst.REP_PREVIEW_LENGTH) {
+            return flat;
+        }
+        return flat.substring(0, flat.offsetByCodePoints(0, JpaConst.REP_PREVIEW_LENGTH)) + "…";
     }
 
 }
\ No newline at end of file
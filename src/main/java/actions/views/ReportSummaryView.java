@@ -0,0 +1,60 @@
+package actions.views;
+
+import java.time.LocalDate;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * 日報の一覧画面に表示する項目だけを扱うViewモデル
+ * 日報の内容(content)は保持せず、一覧取得時にDBから読み込まない。
+ * 一覧取得のクエリでコンストラクタ式(SELECT NEW)により直接生成する。
+ */
+@Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
+@Setter //全てのクラスフィールドについてsetterを自動生成する(Lombok)
+@NoArgsConstructor //引数なしコンストラクタを自動生成する(Lombok)
+@AllArgsConstructor //全てのクラスフィールドを引数にもつ引数ありコンストラクタを自動生成する(Lombok)
+public class ReportSummaryView {
+
+    /**
+     * id
+     */
+    private Integer id;
+
+    /**
+     * 日報を登録した従業員のid
+     */
+    private Integer employeeId;
+
+    /**
+     * 日報を登録した従業員の氏名
+     */
+    private String employeeName;
+
+    /**
+     * いつの日報かを示す日付
+     */
+    private LocalDate reportDate;
+
+    /**
+     * 日報のタイトル
+     */
+    private String title;
+
+    /**
+     * 日報の内容の冒頭部分(プレビュー)
+     */
+    private String preview;
+
+    /**
+     * いいね数
+     */
+    private Integer reportGood;
+
+    /**
+     * 承認フラグ(0:未承認、1:承認済み)
+     */
+    private Integer reportAprv;
+}
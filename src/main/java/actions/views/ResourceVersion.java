@@ -0,0 +1,46 @@
+package actions.views;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 画面に表示するデータの版を表すViewモデル
+ * 条件付きGET(ETag・Last-Modified)の判定に使用する。データが変わると stamp の値が変わる。
+ */
+@Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
+@AllArgsConstructor //全てのクラスフィールドを引数にもつ引数ありコンストラクタを自動生成する(Lombok)
+public class ResourceVersion {
+
+    /**
+     * 最終更新日時(データがない場合はnull)
+     */
+    private final LocalDateTime lastModified;
+
+    /**
+     * データの版を表す文字列(更新日時・件数などから作成する)
+     */
+    private final String stamp;
+
+    /**
+     * データを作成した従業員のid(日報の場合。一覧の場合はnull)
+     */
+    private final Integer ownerId;
+
+    /**
+     * 2つの日時のうち新しい方を返却する(どちらかがnullの場合はもう一方)
+     * @param a 日時
+     * @param b 日時
+     * @return 新しい方の日時
+     */
+    public static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -12,6 +12,10 @@ public enum AttributeConst {
     //一覧画面共通
     MAX_ROW("maxRow"),
     PAGE("page"),
+    MAX_PAGE("maxPage"),
+    CURSOR("cursor"),
+    NEXT_CURSOR("nextCursor"),
+    PREV_CURSOR("prevCursor"),
 
     //入力フォーム共通
     TOKEN("_token"),
@@ -19,6 +23,7 @@ public enum AttributeConst {
 
     //ログイン中の従業員
     LOGIN_EMP("login_employee"),
+    AUTH_TOKEN("auth_token"),
 
     //ログイン画面
     LOGIN_ERR("loginError"),
@@ -50,6 +55,7 @@ public enum AttributeConst {
     REPORT("report"),
     REPORTS("reports"),
     REP_COUNT("reports_count"),
+    REP_COUNT_APPROX("reports_count_approx"),
     REP_ID("id"),
     REP_DATE("report_date"),
     REP_TITLE("title"),
@@ -59,13 +65,22 @@ public enum AttributeConst {
     GOOD("good"),
     GOODS("goods"),
     GOOD_COUNT("goods_count"),
-    GOOD_REP_EMP_COUNT("goods_rep_emp_count"),
+    GOOD_LIKED("liked"),
 
     // フォローした従業員管理
     FOLLOWS("follows"),
     FLWEMP("flwemp"),
     FLWEDEMP("flwedemp"),
-    FOLLOW_FOLLOWED_COUNT("follow_followed_count");
+    FOLLOW_FOLLOWING("following"),
+
+    //静的ファイル(アプリケーションスコープ)
+    ASSETS("assets"),
+
+    //リクエストで実行したSQLの集計
+    SQL_STATISTICS("sqlStatistics"),
+
+    //経路ごとの統計情報(アプリケーションスコープ)
+    ROUTE_STATISTICS("routeStatistics");
 
     private final String text;
     private final Integer i;
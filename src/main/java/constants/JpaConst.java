@@ -9,8 +9,59 @@ public interface JpaConst {
     //persistence-unit名
     String PERSISTENCE_UNIT_NAME = "daily_report_system";
 
+    //persistence.xmlで設定するアプリケーション独自のプロパティ名
+    String PROP_EM_LEAK_THRESHOLD = "daily_report_system.em.leakDetectionThreshold"; //EntityManagerのクローズ漏れとみなすまでの時間(ミリ秒、0以下で無効)
+    String PROP_GOOD_WRITE_BEHIND = "daily_report_system.good.writeBehind"; //いいねをまとめて反映するかどうか(true:まとめて反映 false:都度反映)
+    String PROP_GOOD_FLUSH_INTERVAL = "daily_report_system.good.flushInterval"; //いいねをまとめて反映する間隔(ミリ秒)
+    String PROP_GOOD_MAX_LAG = "daily_report_system.good.maxLag"; //いいねの反映の遅れの上限(ミリ秒、超えた場合は都度反映に切り替える)
+    String PROP_MEMBERSHIP_SYNC_INTERVAL = "daily_report_system.membership.syncInterval"; //他のサーバーで登録されたいいね・フォローを索引に反映する間隔(ミリ秒)
+    String PROP_MEMBERSHIP_REBUILD_INTERVAL = "daily_report_system.membership.rebuildInterval"; //いいね・フォローの索引を全件から作り直す間隔(ミリ秒)
+    String PROP_GOOD_LOG_DIR = "daily_report_system.good.logDir"; //反映前のいいねを書き込むログの保存先(未指定の場合は一時ディレクトリ)
+    String PROP_ASYNC_ENABLED = "daily_report_system.async.enabled"; //Actionをコンテナのスレッドとは別のスレッドで実行するかどうか(true:別スレッド false:コンテナのスレッド)
+    String PROP_ASYNC_MAX_CONCURRENCY = "daily_report_system.async.maxConcurrency"; //同時に実行するActionの上限(超えた場合は503を返却する 0の場合は接続プールの最大接続数)
+    String PROP_ASYNC_TIMEOUT = "daily_report_system.async.timeout"; //Actionの実行時間の上限(ミリ秒、超えた場合は503を返却する)
+    String PROP_FANOUT_MAX_THREADS = "daily_report_system.fanout.maxThreads"; //Actionの中で並行して実行する処理の数の上限(全リクエストの合計、超えた場合は呼び出し元のスレッドで実行する)
+    String PROP_FANOUT_MAX_CONNECTIONS = "daily_report_system.fanout.maxConnections"; //並行して実行する処理が使用する接続数の上限(0の場合は接続プールの最大接続数の1/4)
+    String PROP_FANOUT_TIMEOUT = "daily_report_system.fanout.timeout"; //並行して実行した処理の完了を待つ期限(ミリ秒)
+    String PROP_COMPRESSION_ENABLED = "daily_report_system.compression.enabled"; //レスポンスを圧縮するかどうか(true:圧縮する false:圧縮しない)
+    String PROP_COMPRESSION_MIN_SIZE = "daily_report_system.compression.minSize"; //圧縮するレスポンスの最小サイズ(バイト)
+    String PROP_COMPRESSION_MIME_TYPES = "daily_report_system.compression.mimeTypes"; //圧縮するContent-Type(カンマ区切り)
+    String PROP_ASSETS_DIRS = "daily_report_system.assets.dirs"; //ハッシュを含むURLで返却する静的ファイルのディレクトリ(カンマ区切り)
+    String PROP_SESSION_STORE = "daily_report_system.session.store"; //セッションの保存先(container:コンテナ file:ローカルのファイル remote:ネットワーク越しのストア)
+    String PROP_SESSION_DIR = "daily_report_system.session.dir"; //セッションを保存するディレクトリ(file、未設定の場合はコンテナの一時ディレクトリ)
+    String PROP_SESSION_REMOTE_HOST = "daily_report_system.session.remote.host"; //セッションストアのホスト名(remote)
+    String PROP_SESSION_REMOTE_PORT = "daily_report_system.session.remote.port"; //セッションストアのポート番号(remote)
+    String PROP_SESSION_REMOTE_TIMEOUT = "daily_report_system.session.remote.timeout"; //セッションストアへの接続・応答のタイムアウト(ミリ秒)
+    String PROP_SESSION_TIMEOUT = "daily_report_system.session.timeout"; //セッションの有効期限(最後のアクセスからの秒数)
+    String PROP_SESSION_NEAR_CACHE_SIZE = "daily_report_system.session.nearCache.size"; //属性の値を手元に保持するセッションの数(0:保持しない)
+    String PROP_PRINCIPAL_CHECK_INTERVAL = "daily_report_system.principal.checkInterval"; //ログイン中の従業員の更新・論理削除をDBで確認する間隔(ミリ秒)
+    String PROP_AUTH_MODE = "daily_report_system.auth.mode"; //ログイン状態の保持方法(session:セッション token:署名付きのクッキー)
+    String PROP_AUTH_TOKEN_TTL = "daily_report_system.auth.token.ttl"; //トークンの有効期限(秒、残りが半分を切ると延長する)
+    String PROP_METRICS_TOKEN = "daily_report_system.metrics.token"; //メトリクス(/metrics)を取得するためのトークン(未設定の場合は管理者のログインのみ)
+    String PROP_SQL_BUDGET = "daily_report_system.sql.budget"; //経路ごとのSQLの件数の上限(例:Report.index=4,Report.show=6)
+    String PROP_SQL_BUDGET_STRICT = "daily_report_system.sql.budget.strict"; //上限を超えたSQLを実行せずに例外とするかどうか(true:例外 false:警告のみ)
+    String PROP_SQL_REPEAT_THRESHOLD = "daily_report_system.sql.repeatThreshold"; //同じ形のSQLを何回実行したらN+1として警告するか
+    String PROP_SQL_SLOW_THRESHOLD = "daily_report_system.sql.slowThreshold"; //ログに出力するSQLの実行時間のしきい値(ミリ秒 負の場合は出力しない)
+    String PROP_SQL_SAMPLE_RATE = "daily_report_system.sql.sampleRate"; //しきい値未満のSQLをログに出力する割合(0.0〜1.0)
+    String PROP_SQL_LOG_PARAMS = "daily_report_system.sql.log.params"; //SQLのログにパラメータを出力するかどうか(パスワードの列を含むSQLでは数値以外を伏せる)
+    String PROP_SQL_LOG_FILE = "daily_report_system.sql.log.file"; //SQLのログのファイル名(FileHandlerのパターン %t:一時ディレクトリ %g:世代)
+    String PROP_SQL_LOG_LIMIT = "daily_report_system.sql.log.limit"; //SQLのログの1ファイルのサイズの上限(バイト)
+    String PROP_SQL_LOG_COUNT = "daily_report_system.sql.log.count"; //SQLのログのファイルを何世代保持するか
+    String PROP_SQL_LOG_QUEUE_SIZE = "daily_report_system.sql.log.queueSize"; //SQLのログの書き込み待ちの件数の上限(超えた分は破棄する)
+    String PROP_SERVER_TIMING_ENABLED = "daily_report_system.serverTiming.enabled"; //処理時間の内訳をServer-Timingヘッダーで返却するかどうか
+    String PROP_JFR_ENABLED = "daily_report_system.jfr.enabled"; //JFRにActionの実行・Serviceの呼び出し・トランザクションのイベントを記録するかどうか
+    String PROP_JFR_THRESHOLD_DISPATCH = "daily_report_system.jfr.threshold.dispatch"; //Actionの実行を記録する処理時間のしきい値(ミリ秒)
+    String PROP_JFR_THRESHOLD_SERVICE = "daily_report_system.jfr.threshold.service"; //Serviceの呼び出しを記録する処理時間のしきい値(ミリ秒)
+    String PROP_JFR_THRESHOLD_TRANSACTION = "daily_report_system.jfr.threshold.transaction"; //トランザクションを記録する処理時間のしきい値(ミリ秒)
+
     //データ取得件数の最大値
     int ROW_PER_PAGE = 15; //1ページに表示するレコードの数
+    int MAX_OFFSET_PAGE = 50; //ページ数指定(オフセット方式)で表示できるページの上限
+
+    //一覧画面に表示する件数のキャッシュ
+    int COUNT_RECONCILE_INTERVAL = 300; //DBの件数と突き合わせて補正する間隔(秒)
+    long COUNT_APPROX_THRESHOLD = 100000; //「約N件」と表示し、推定値で補正する件数の下限
+    int COUNT_MAX_SCOPES = 10000; //件数を保持するスコープ数の上限
 
     //従業員テーブル
     String TABLE_EMP = "employees"; //テーブル名
@@ -44,6 +95,9 @@ public interface JpaConst {
     String REP_COL_UPDATED_AT = "updated_at"; //更新日時
     String REP_COL_REP_GOOD = "reports_good"; //いいね数
     String REP_COL_REP_APRV = "report_aprv"; //承認フラグ(0:未承認、1:承認済み)
+    String REP_COL_PREVIEW = "preview"; //日報の内容の冒頭部分(一覧表示用)
+
+    int REP_PREVIEW_LENGTH = 100; //日報の内容の冒頭部分として保持する文字数
 
     // いいねした従業員テーブル
     String TABLE_GOOD = "goodemployees"; //テーブル名
@@ -76,11 +130,24 @@ public interface JpaConst {
     String JPQL_PARM_EMPLOYEE = "employee"; //従業員
     String JPQL_PARM_REPORT = "report"; //日報
     String JPQL_PARM_FOLLOWED = "flwedemp"; //フォローされた従業員
+    String JPQL_PARM_CURSOR_ID = "cursorId"; //キーセット方式のページングで基準とするid
+    String JPQL_PARM_ID = "id"; //id
+    String JPQL_PARM_UPDATED_AT = "updatedAt"; //更新日時
+    String JPQL_PARM_CREATED_AT = "createdAt"; //登録日時
+
+    //日報の一覧画面に表示する項目(ReportSummaryView)を取得するクエリの共通部分 日報の内容(content)は取得しない
+    String REP_SUMMARY_SELECT = "SELECT NEW actions.views.ReportSummaryView(r.id, e.id, e.name, r.reportDate, r.title, r.preview, r.reportGood, r.reportAprv) FROM Report AS r JOIN r.employee AS e";
 
     //NamedQueryの nameとquery
     //全ての従業員をidの降順に取得する
     String Q_EMP_GET_ALL = ENTITY_EMP + ".getAll"; //name
     String Q_EMP_GET_ALL_DEF = "SELECT e FROM Employee AS e ORDER BY e.id DESC"; //query
+    //指定したidより古い(小さい)従業員をidの降順に取得する
+    String Q_EMP_GET_OLDER = ENTITY_EMP + ".getOlder";
+    String Q_EMP_GET_OLDER_DEF = "SELECT e FROM Employee AS e WHERE e.id < :" + JPQL_PARM_CURSOR_ID + " ORDER BY e.id DESC";
+    //指定したidより新しい(大きい)従業員をidの昇順に取得する
+    String Q_EMP_GET_NEWER = ENTITY_EMP + ".getNewer";
+    String Q_EMP_GET_NEWER_DEF = "SELECT e FROM Employee AS e WHERE e.id > :" + JPQL_PARM_CURSOR_ID + " ORDER BY e.id ASC";
     //全ての従業員の件数を取得する
     String Q_EMP_COUNT = ENTITY_EMP + ".count";
     String Q_EMP_COUNT_DEF = "SELECT COUNT(e) FROM Employee AS e";
@@ -90,22 +157,64 @@ public interface JpaConst {
     //指定した社員番号を保持する従業員の件数を取得する
     String Q_EMP_COUNT_REGISTERED_BY_CODE = ENTITY_EMP + ".countRegisteredByCode";
     String Q_EMP_COUNT_REGISTERED_BY_CODE_DEF = "SELECT COUNT(e) FROM Employee AS e WHERE e.code = :" + JPQL_PARM_CODE;
+    //全ての従業員の最終更新日時を取得する(一覧に表示する氏名が変わったかどうかの判定用)
+    String Q_EMP_MAX_UPDATED_AT = ENTITY_EMP + ".maxUpdatedAt";
+    String Q_EMP_MAX_UPDATED_AT_DEF = "SELECT MAX(e.updatedAt) FROM Employee AS e";
     //全ての日報をidの降順に取得する
     String Q_REP_GET_ALL = ENTITY_REP + ".getAll";
-    String Q_REP_GET_ALL_DEF = "SELECT r FROM Report AS r ORDER BY r.id DESC";
+    String Q_REP_GET_ALL_DEF = REP_SUMMARY_SELECT + " ORDER BY r.id DESC";
+    //指定したidより古い日報をidの降順に取得する
+    String Q_REP_GET_OLDER = ENTITY_REP + ".getOlder";
+    String Q_REP_GET_OLDER_DEF = REP_SUMMARY_SELECT + " WHERE r.id < :" + JPQL_PARM_CURSOR_ID + " ORDER BY r.id DESC";
+    //指定したidより新しい日報をidの昇順に取得する
+    String Q_REP_GET_NEWER = ENTITY_REP + ".getNewer";
+    String Q_REP_GET_NEWER_DEF = REP_SUMMARY_SELECT + " WHERE r.id > :" + JPQL_PARM_CURSOR_ID + " ORDER BY r.id ASC";
     //全ての日報の件数を取得する
     String Q_REP_COUNT = ENTITY_REP + ".count";
     String Q_REP_COUNT_DEF = "SELECT COUNT(r) FROM Report AS r";
+    //全ての日報の件数の推定値(日報は削除されないため最大のidで代用する)
+    String Q_REP_MAX_ID = ENTITY_REP + ".maxId";
+    String Q_REP_MAX_ID_DEF = "SELECT MAX(r.id) FROM Report AS r";
+    //全ての日報の最終更新日時を取得する
+    String Q_REP_MAX_UPDATED_AT = ENTITY_REP + ".maxUpdatedAt";
+    String Q_REP_MAX_UPDATED_AT_DEF = "SELECT MAX(r.updatedAt) FROM Report AS r";
+    //指定した日報と作成者の更新日時、いいね数を取得する(内容は取得しない)
+    String Q_REP_GET_VERSION = ENTITY_REP + ".getVersion";
+    String Q_REP_GET_VERSION_DEF = "SELECT r.updatedAt, r.reportGood, e.id, e.updatedAt FROM Report AS r JOIN r.employee AS e WHERE r.id = :" + JPQL_PARM_ID;
+    //指定した日報のいいね数をDB上で1加算する(他の列は読み書きしない)
+    //指定したidの日報の件数を取得する(存在するかどうかの確認)
+    String Q_REP_COUNT_BY_ID = ENTITY_REP + ".countById";
+    String Q_REP_COUNT_BY_ID_DEF = "SELECT COUNT(r) FROM Report AS r WHERE r.id = :" + JPQL_PARM_ID;
+
+    String Q_REP_ADD_GOOD = ENTITY_REP + ".addGood";
+    String Q_REP_ADD_GOOD_DEF = "UPDATE Report AS r SET r.reportGood = r.reportGood + 1, r.updatedAt = :" + JPQL_PARM_UPDATED_AT + " WHERE r.id = :" + JPQL_PARM_ID;
     //指定した従業員が作成した日報を全件idの降順で取得する
     String Q_REP_GET_ALL_MINE = ENTITY_REP + ".getAllMine";
-    String Q_REP_GET_ALL_MINE_DEF = "SELECT r FROM Report AS r WHERE r.employee = :" + JPQL_PARM_EMPLOYEE + " ORDER BY r.id DESC";
+    String Q_REP_GET_ALL_MINE_DEF = REP_SUMMARY_SELECT + " WHERE r.employee = :" + JPQL_PARM_EMPLOYEE + " ORDER BY r.id DESC";
+    //指定した従業員が作成した日報のうち、指定したidより古いものをidの降順で取得する
+    String Q_REP_GET_MINE_OLDER = ENTITY_REP + ".getMineOlder";
+    String Q_REP_GET_MINE_OLDER_DEF = REP_SUMMARY_SELECT + " WHERE r.employee = :" + JPQL_PARM_EMPLOYEE + " AND r.id < :" + JPQL_PARM_CURSOR_ID + " ORDER BY r.id DESC";
+    //指定した従業員が作成した日報のうち、指定したidより新しいものをidの昇順で取得する
+    String Q_REP_GET_MINE_NEWER = ENTITY_REP + ".getMineNewer";
+    String Q_REP_GET_MINE_NEWER_DEF = REP_SUMMARY_SELECT + " WHERE r.employee = :" + JPQL_PARM_EMPLOYEE + " AND r.id > :" + JPQL_PARM_CURSOR_ID + " ORDER BY r.id ASC";
     //指定した従業員が作成した日報の件数を取得する
     String Q_REP_COUNT_ALL_MINE = ENTITY_REP + ".countAllMine";
     String Q_REP_COUNT_ALL_MINE_DEF = "SELECT COUNT(r) FROM Report AS r WHERE r.employee = :" + JPQL_PARM_EMPLOYEE;
 
+    //いいねした従業員を登録する(既にいいね済みの場合は何もしない)
+    String Q_GOOD_INSERT_IF_ABSENT = ENTITY_GOOD + ".insertIfAbsent";
+    String Q_GOOD_INSERT_IF_ABSENT_DEF = "INSERT IGNORE INTO " + TABLE_GOOD
+            + " (" + GOOD_COL_EMP + ", " + GOOD_COL_REP + ", " + GOOD_COL_CREATED_AT + ", " + GOOD_COL_UPDATED_AT + ")"
+            + " VALUES (:" + JPQL_PARM_EMPLOYEE + ", :" + JPQL_PARM_REPORT + ", :" + JPQL_PARM_CREATED_AT + ", :" + JPQL_PARM_CREATED_AT + ")";
     //指定した日報にいいねした従業員を全件idの降順に取得する
     String Q_GOOD_GET_ALL_MINE = ENTITY_GOOD + ".getAllMine";
-    String Q_GOOD_GET_ALL_MINE_DEF = "SELECT g FROM Good AS g WHERE g.report = :" + JPQL_PARM_REPORT + " ORDER BY g.id DESC";
+    String Q_GOOD_GET_ALL_MINE_DEF = "SELECT g FROM Good AS g JOIN FETCH g.employee JOIN FETCH g.report AS gr JOIN FETCH gr.employee WHERE g.report = :" + JPQL_PARM_REPORT + " ORDER BY g.id DESC";
+    //指定した日報にいいねした従業員のうち、指定したidより古いものをidの降順に取得する
+    String Q_GOOD_GET_MINE_OLDER = ENTITY_GOOD + ".getMineOlder";
+    String Q_GOOD_GET_MINE_OLDER_DEF = "SELECT g FROM Good AS g JOIN FETCH g.employee JOIN FETCH g.report AS gr JOIN FETCH gr.employee WHERE g.report = :" + JPQL_PARM_REPORT + " AND g.id < :" + JPQL_PARM_CURSOR_ID + " ORDER BY g.id DESC";
+    //指定した日報にいいねした従業員のうち、指定したidより新しいものをidの昇順に取得する
+    String Q_GOOD_GET_MINE_NEWER = ENTITY_GOOD + ".getMineNewer";
+    String Q_GOOD_GET_MINE_NEWER_DEF = "SELECT g FROM Good AS g JOIN FETCH g.employee JOIN FETCH g.report AS gr JOIN FETCH gr.employee WHERE g.report = :" + JPQL_PARM_REPORT + " AND g.id > :" + JPQL_PARM_CURSOR_ID + " ORDER BY g.id ASC";
     //指定した日報にいいねした従業員の件数を取得する
     String Q_GOOD_COUNT_ALL_MINE = ENTITY_GOOD + ".countAllMine";
     String Q_GOOD_COUNT_ALL_MINE_DEF = "SELECT COUNT(g) FROM Good AS g WHERE g.report = :" + JPQL_PARM_REPORT;
@@ -115,11 +224,31 @@ public interface JpaConst {
 
     //ログイン中の従業員がフォローした従業員が作成した日報を全件idの降順で取得する
     String Q_FOLLOW_GET_ALL = ENTITY_REP + ".getFollowAll";
-    String Q_FOLLOW_GET_ALL_DEF = "SELECT r FROM Report AS r, Follow AS f WHERE r.employee = f.flwedemp AND f.flwemp = :" + JPQL_PARM_EMPLOYEE + " ORDER BY r.id DESC";
+    String Q_FOLLOW_GET_ALL_DEF = REP_SUMMARY_SELECT + " WHERE r.employee IN (SELECT f.flwedemp FROM Follow AS f WHERE f.flwemp = :" + JPQL_PARM_EMPLOYEE + ") ORDER BY r.id DESC";
+    //ログイン中の従業員がフォローした従業員が作成した日報のうち、指定したidより古いものをidの降順で取得する
+    String Q_FOLLOW_GET_OLDER = ENTITY_REP + ".getFollowOlder";
+    String Q_FOLLOW_GET_OLDER_DEF = REP_SUMMARY_SELECT + " WHERE r.employee IN (SELECT f.flwedemp FROM Follow AS f WHERE f.flwemp = :" + JPQL_PARM_EMPLOYEE + ") AND r.id < :" + JPQL_PARM_CURSOR_ID + " ORDER BY r.id DESC";
+    //ログイン中の従業員がフォローした従業員が作成した日報のうち、指定したidより新しいものをidの昇順で取得する
+    String Q_FOLLOW_GET_NEWER = ENTITY_REP + ".getFollowNewer";
+    String Q_FOLLOW_GET_NEWER_DEF = REP_SUMMARY_SELECT + " WHERE r.employee IN (SELECT f.flwedemp FROM Follow AS f WHERE f.flwemp = :" + JPQL_PARM_EMPLOYEE + ") AND r.id > :" + JPQL_PARM_CURSOR_ID + " ORDER BY r.id ASC";
     //ログイン中の従業員がフォローした従業員が作成した日報の件数を取得する
     String Q_FOLLOW_COUNT_ALL = ENTITY_REP + ".countFollowAll";
-    String Q_FOLLOW_COUNT_ALL_DEF = "SELECT COUNT(r) FROM Report AS r, Follow AS f WHERE r.employee = f.flwedemp AND f.flwemp = :" + JPQL_PARM_EMPLOYEE;
+    String Q_FOLLOW_COUNT_ALL_DEF = "SELECT COUNT(r) FROM Report AS r WHERE r.employee IN (SELECT f.flwedemp FROM Follow AS f WHERE f.flwemp = :" + JPQL_PARM_EMPLOYEE + ")";
+    //ログイン中の従業員がフォローした従業員が作成した日報の最終更新日時と、フォローしている従業員の件数・最大のid(フォローの増減で変わる)を取得
+    String Q_FOLLOW_MAX_UPDATED_AT = ENTITY_REP + ".followMaxUpdatedAt";
+    String Q_FOLLOW_MAX_UPDATED_AT_DEF = "SELECT MAX(r.updatedAt),"
+            + " (SELECT COUNT(f2) FROM Follow AS f2 WHERE f2.flwemp = :" + JPQL_PARM_EMPLOYEE + "),"
+            + " (SELECT MAX(f3.id) FROM Follow AS f3 WHERE f3.flwemp = :" + JPQL_PARM_EMPLOYEE + ")"
+            + " FROM Report AS r WHERE r.employee IN (SELECT f.flwedemp FROM Follow AS f WHERE f.flwemp = :" + JPQL_PARM_EMPLOYEE + ")";
+    //フォローした従業員を登録する(既にフォロー済みの場合は何もしない)
+    String Q_FOLLOW_INSERT_IF_ABSENT = ENTITY_FOLLOW + ".insertIfAbsent";
+    String Q_FOLLOW_INSERT_IF_ABSENT_DEF = "INSERT IGNORE INTO " + TABLE_FOLLOW
+            + " (" + FOLLOW_COL_EMP + ", " + FOLLOWED_COL_EMP + ", " + FOLLOW_COL_CREATED_AT + ", " + FOLLOW_COL_UPDATED_AT + ")"
+            + " VALUES (:" + JPQL_PARM_EMPLOYEE + ", :" + JPQL_PARM_FOLLOWED + ", :" + JPQL_PARM_CREATED_AT + ", :" + JPQL_PARM_CREATED_AT + ")";
     // ログイン中の従業員とフォローした従業員、日報の作成者とフォローされた従業員が一致するフォロー従業員情報の件数を取得
     String Q_FOLLOW_COUNT_FOLLOWED = ENTITY_FOLLOW + ".countFolFoled";
     String Q_FOLLOW_COUNT_FOLLOWED_DEF = "SELECT COUNT(f) FROM Follow AS f WHERE f.flwemp = :" + JPQL_PARM_EMPLOYEE + " AND f.flwedemp = :" + JPQL_PARM_FOLLOWED;
+    //指定した従業員をフォローしている従業員のidを取得する
+    String Q_FOLLOW_GET_FOLLOWER_IDS = ENTITY_FOLLOW + ".getFollowerIds";
+    String Q_FOLLOW_GET_FOLLOWER_IDS_DEF = "SELECT f.flwemp.id FROM Follow AS f WHERE f.flwedemp = :" + JPQL_PARM_FOLLOWED;
 }
\ No newline at end of file
@@ -7,7 +7,11 @@ package constants;
 public enum PropertyConst {
 
     //ペッパー文字列
-    PEPPER("pepper");
+    PEPPER("pepper"),
+    //セッションストア(SessionStoreServer)に接続する際の共有の鍵
+    SESSION_STORE_SECRET("sessionStoreSecret"),
+    //ログイン状態のトークン(daily_report_system.auth.mode=token)に署名する鍵(全サーバーで同じ値にする)
+    AUTH_TOKEN_SECRET("authTokenSecret");
 
     private final String text;
     private PropertyConst(final String text) {
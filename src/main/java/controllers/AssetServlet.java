@@ -0,0 +1,156 @@
+package controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import constants.AttributeConst;
+import constants.JpaConst;
+import filters.CompressionFilter;
+import utils.DBUtil;
+import utils.StaticAssets;
+
+/**
+ * 静的ファイル(CSS等)を返却するサーブレット
+ * ハッシュを含むURL(/assets/...)は内容が変わらないため、無期限にキャッシュさせる。
+ * 元のパス(/css/...)は互換性のために残し、毎回ETagで確認させる。
+ * gzipを受け付けるクライアントには起動時に圧縮したファイルを返却し、ファイルの内容はコンテナのsendfile
+ * (使えない場合はFileChannel.transferTo)で送信する。
+ */
+@WebServlet(urlPatterns = { StaticAssets.URL_PREFIX + "/*", "/css/*" }, loadOnStartup = 1)
+public class AssetServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDATE = "no-cache";
+
+    //Tomcatのsendfileを使用するためのリクエスト属性
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private transient StaticAssets assets;
+
+    public AssetServlet() {
+        super();
+    }
+
+    /**
+     * 起動時に静的ファイルを登録し、JSPから参照できるようにアプリケーションスコープに設定する
+     */
+    @Override
+    public void init() throws ServletException {
+        ServletContext context = getServletContext();
+
+        List<String> dirs = new ArrayList<>();
+        for (String dir : DBUtil.getProperty(JpaConst.PROP_ASSETS_DIRS, "/css/").split(",")) {
+            if (!dir.trim().isEmpty()) {
+                dirs.add(dir.trim().endsWith("/") ? dir.trim() : dir.trim() + "/");
+            }
+        }
+
+        File tempDir = (File) context.getAttribute(ServletContext.TEMPDIR);
+        Path workDir = (tempDir != null ? tempDir.toPath() : Paths.get(System.getProperty("java.io.tmpdir")))
+                .resolve("assets");
+
+        assets = StaticAssets.build(context, dirs, workDir);
+        context.setAttribute(AttributeConst.ASSETS.getValue(), assets);
+    }
+
+    /**
+     * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+     */
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        String path = request.getServletPath() + (request.getPathInfo() == null ? "" : request.getPathInfo());
+        boolean fingerprinted = request.getServletPath().equals(StaticAssets.URL_PREFIX);
+        StaticAssets.Asset asset = fingerprinted ? assets.findByUrl(path) : assets.findByPath(path);
+        if (asset == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        //圧縮したファイルがあり、クライアントがgzipを受け付ける場合は圧縮したファイルを返却する
+        boolean gzip = asset.getGzipFile() != null
+                && "gzip".equals(CompressionFilter.negotiate(request.getHeader("Accept-Encoding")));
+        String etag = "\"" + asset.getHash() + (gzip ? "-gz" : "") + "\"";
+
+        response.setHeader("Cache-Control", fingerprinted ? IMMUTABLE : REVALIDATE);
+        response.setHeader("ETag", etag);
+        if (asset.getGzipFile() != null) {
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+
+        if (matches(request.getHeader("If-None-Match"), asset.getHash())) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        Path file = gzip ? asset.getGzipFile() : asset.getFile();
+        long length = gzip ? asset.getGzipLength() : asset.getLength();
+        response.setContentType(asset.getContentType());
+        if (gzip) {
+            response.setHeader("Content-Encoding", "gzip");
+        }
+        response.setContentLengthLong(length);
+
+        if ("HEAD".equals(request.getMethod())) {
+            return;
+        }
+
+        //フィルタでラップされたレスポンスでは、コンテナがsendfileを使わないため自分で送信する
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))
+                && !(response instanceof ServletResponseWrapper)) {
+            //サーブレットから戻った後に、コンテナがファイルからソケットへ直接送信する
+            request.setAttribute(SENDFILE_FILENAME, file.toString());
+            request.setAttribute(SENDFILE_START, Long.valueOf(0));
+            request.setAttribute(SENDFILE_END, Long.valueOf(length));
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = 0;
+            while (position < length) {
+                position += channel.transferTo(position, length - position, out);
+            }
+        }
+    }
+
+    /**
+     * If-None-Matchにファイルのいずれかの形式(圧縮・非圧縮)のETagが含まれているかどうかを返却する
+     */
+    private static boolean matches(String ifNoneMatch, String hash) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.startsWith("W/")) {
+                t = t.substring(2);
+            }
+            if (t.equals("*") || t.equals("\"" + hash + "\"") || t.equals("\"" + hash + "-gz\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -1,8 +1,17 @@
 package controllers;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
@@ -10,35 +19,110 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import actions.ActionBase;
+import actions.ActionRegistry;
 import actions.UnknownAction;
 import constants.ForwardConst;
+import constants.JpaConst;
+import utils.AsyncExecutors;
+import utils.DBUtil;
+import utils.RequestMetrics;
+import utils.UnitOfWork;
 
 /**
  * フロントコントローラ
- *
+ * 非同期実行が有効な場合、Actionの処理は仮想スレッド(使えない場合は専用のスレッドプール)で実行し、
+ * コンテナのスレッドはすぐに解放する。同時に実行するActionの数と実行時間には上限を設ける。
+ * 同時に実行するActionの数の上限は、省略時は接続プールの最大接続数とする(各Actionが1つの接続を使用するため)。
+ * タイムアウトした後もActionの処理は続く場合がある(JDBCの処理は割り込みで中断されない)ため、
+ * Actionにはラップしたリクエスト・レスポンスを渡し、応答を完了した後は元のリクエスト・レスポンスに触れさせない。
  */
-@WebServlet("/")
+@WebServlet(name = "FrontController", urlPatterns = "/", loadOnStartup = 1, asyncSupported = true)
 public class FrontController extends HttpServlet {
     private static final long serialVersionUID = 1L;
 
+    private static final Logger LOGGER = Logger.getLogger(FrontController.class.getName());
+
+    //非同期実行が無効の場合はnull
+    private transient ExecutorService executor;
+    //同時に実行するActionの数の上限
+    private transient Semaphore permits;
+    private long asyncTimeout;
+
     public FrontController() {
         super();
     }
 
+    /**
+     * 起動時にActionクラスとメソッドの対応表を作成し、非同期実行が有効な場合はActionを実行するスレッドを準備する
+     */
+    @Override
+    public void init() throws ServletException {
+        ActionRegistry.getInstance();
+
+        if (Boolean.parseBoolean(DBUtil.getProperty(JpaConst.PROP_ASYNC_ENABLED, "false"))) {
+            long configured = DBUtil.getLongProperty(JpaConst.PROP_ASYNC_MAX_CONCURRENCY, 0);
+            int maxConcurrency = (int) Math.max(1, configured > 0 ? configured : DBUtil.getMaximumPoolSize());
+            asyncTimeout = DBUtil.getLongProperty(JpaConst.PROP_ASYNC_TIMEOUT, 30000);
+            permits = new Semaphore(maxConcurrency);
+            executor = AsyncExecutors.newExecutor("action", maxConcurrency);
+        }
+    }
+
+    /**
+     * 終了時にActionを実行するスレッドを停止する(実行中のActionは完了を待つ)
+     */
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(asyncTimeout, TimeUnit.MILLISECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     /**
      * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
      */
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
 
-        //パラメータに該当するActionクラスのインスタンス
-        ActionBase action = getAction(request, response);
+        //ここまでをフィルタの処理時間とする
+        RequestMetrics metrics = RequestMetrics.of(request);
+        if (metrics != null) {
+            metrics.markDispatched();
+        }
 
-        //サーブレットコンテキスト、リクエスト、レスポンスをActionインスタンスのフィールドに設定
-        action.init(getServletContext(), request, response);
+        if (executor == null) {
+            execute(request, response);
+            return;
+        }
+
+        //同時に実行できる数を超えている場合は、待たせずに503を返却する
+        if (!permits.tryAcquire()) {
+            response.setHeader("Retry-After", "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+
+        //コンテナのスレッドを解放し、Actionは別スレッドで実行する
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(asyncTimeout);
+        AsyncTask task = new AsyncTask(asyncContext, new GuardedRequest(request), new GuardedResponse(response), response);
+        asyncContext.addListener(task);
 
-        //Actionクラスの処理を呼び出し
-        action.process();
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            //停止処理中
+            permits.release();
+            task.fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE, e);
+        }
     }
 
 
@@ -50,6 +134,31 @@ public class FrontController extends HttpServlet {
         doGet(request, response);
     }
 
+    /**
+     * パラメータに該当するActionクラスの処理を実行する
+     * @param request リクエスト
+     * @param response レスポンス
+     * @throws ServletException
+     * @throws IOException
+     */
+    private void execute(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        //パラメータに該当するActionクラスのインスタンス
+        ActionBase action = getAction(request, response);
+
+        //サーブレットコンテキスト、リクエスト、レスポンスをActionインスタンスのフィールドに設定
+        action.init(getServletContext(), request, response);
+
+        //リクエストの作業単位を開始し、Actionクラスの処理を呼び出し
+        //(Actionで使用する全てのServiceが1つのEntityManagerを共有し、例外が発生しても終了時に必ずクローズされる)
+        //経路ごとの集計は、Actionを実行するスレッドに紐づける(非同期実行の場合はMetricsFilterと別のスレッドになる)
+        try (RequestMetrics.Binding binding = RequestMetrics.bind(RequestMetrics.of(request));
+                UnitOfWork unitOfWork = UnitOfWork.begin()) {
+            action.process();
+        }
+    }
+
     /**
      * リクエストパラメータの値から該当するActionクラスのインスタンスを作成し、返却する
      * (例:パラメータが action=Employee の場合、actions.EmployeeActionオブジェクト)
@@ -57,26 +166,14 @@ public class FrontController extends HttpServlet {
      * @param response レスポンス
      * @return
      */
-    @SuppressWarnings({ "rawtypes", "unchecked" }) //コンパイラ警告を抑制
     private ActionBase getAction(HttpServletRequest request, HttpServletResponse response) {
-        Class type = null;
-        ActionBase action = null;
-        try {
-
-            //リクエストからパラメータ"action"の値を取得 (例:"Employee"、"Report")
-            String actionString = request.getParameter(ForwardConst.ACT.getValue());
-
-            //該当するActionオブジェクトを作成 (例:リクエストからパラメータ action=Employee の場合、actions.EmployeeActionオブジェクト)
-            type = Class.forName(String.format("actions.%sAction", actionString));
-
-            //ActionBaseのオブジェクトにキャスト(例:actions.EmployeeActionオブジェクト→actions.ActionBaseオブジェクト)
-            action = (ActionBase) (type.asSubclass(ActionBase.class)
-                    .getDeclaredConstructor()
-                    .newInstance());
 
-        } catch (ClassNotFoundException | InstantiationException | IllegalAccessException | SecurityException
-                | IllegalArgumentException | InvocationTargetException| NoSuchMethodException e) {
+        //リクエストからパラメータ"action"の値を取得 (例:"Employee"、"Report")
+        String actionString = request.getParameter(ForwardConst.ACT.getValue());
 
+        //起動時に作成した対応表から該当するActionオブジェクトを作成
+        ActionBase action = ActionRegistry.getInstance().newAction(actionString);
+        if (action == null) {
             //リクエストパラメータに設定されている"action"の値が不正の場合(例:action=xxxxx 等、該当するActionクラスがない場合)
             //エラー処理を行うActionオブジェクトを作成
             action = new UnknownAction();
@@ -84,4 +181,120 @@ public class FrontController extends HttpServlet {
         return action;
     }
 
-}
\ No newline at end of file
+    /**
+     * 別スレッドで実行する1リクエスト分の処理
+     * 処理の終了・タイムアウト・エラーのうち、最初に起きたものだけが応答を完了させる
+     * 応答を完了する前にActionに渡したリクエスト・レスポンスを元のものから切り離し、以後のActionの書き込みは破棄する
+     */
+    private class AsyncTask implements Runnable, AsyncListener {
+        private final AsyncContext asyncContext;
+        //Actionに渡すリクエスト・レスポンス
+        private final GuardedRequest request;
+        private final GuardedResponse response;
+        //エラーを返却するための元のレスポンス(コンテナのスレッドから使用する)
+        private final HttpServletResponse original;
+        private final AtomicBoolean completed = new AtomicBoolean();
+        //Actionを実行中のスレッド(実行前・実行後はnull)
+        private Thread runner;
+        //ログに出力するURL(切り離した後は元のリクエストから取得できないため)
+        private final String url;
+
+        private AsyncTask(AsyncContext asyncContext, GuardedRequest request, GuardedResponse response,
+                HttpServletResponse original) {
+            this.asyncContext = asyncContext;
+            this.request = request;
+            this.response = response;
+            this.original = original;
+            this.url = request.getRequestURI() + "?" + request.getQueryString();
+        }
+
+        @Override
+        public void run() {
+            try {
+                //実行を待っている間にタイムアウトした場合は実行しない
+                if (completed.get()) {
+                    return;
+                }
+                synchronized (this) {
+                    runner = Thread.currentThread();
+                }
+                execute(request, response);
+                //切り離す前に、Actionが書き込んだ内容を元のレスポンスに書き込む
+                response.flushWriter();
+                complete();
+            } catch (ServletException | IOException | RuntimeException e) {
+                fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, e);
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                Thread.interrupted(); //割り込まれた状態を次の処理に残さない
+                permits.release();
+            }
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            //実行中のActionに割り込み、応答していなければ503を返却する
+            interrupt();
+            fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    new IllegalStateException("Actionの実行時間が上限(" + asyncTimeout + "ms)を超えました"));
+        }
+
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            interrupt();
+            complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            completed.set(true);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+
+        private synchronized void interrupt() {
+            Thread t = runner;
+            if (t != null) {
+                t.interrupt();
+            }
+        }
+
+        private void fail(int status, Throwable cause) {
+            if (completed.get()) {
+                return;
+            }
+            LOGGER.log(Level.SEVERE, url + " の処理に失敗しました", cause);
+            //Actionの書き込みを止めてから、元のレスポンスでエラーを返却する
+            detach();
+            try {
+                if (!original.isCommitted()) {
+                    original.sendError(status);
+                }
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.log(Level.FINE, "エラーを返却できませんでした", e);
+            } finally {
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                detach();
+                asyncContext.complete();
+            }
+        }
+
+        /**
+         * Actionに渡したリクエスト・レスポンスを元のものから切り離す
+         */
+        private void detach() {
+            response.detach();
+            request.detach();
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package controllers;
+
+import java.lang.reflect.Proxy;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+/**
+ * 別スレッドで実行するActionに渡すリクエストのラッパー
+ * タイムアウト等で応答を完了した後は、コンテナが元のリクエストを別のリクエストに再利用するため、
+ * detach()以後は元のリクエストに委譲せず、全ての呼び出しでIllegalStateExceptionをスローする
+ * (別のリクエストのパラメータ・セッションを読み書きしないようにする)。
+ */
+class GuardedRequest extends HttpServletRequestWrapper {
+
+    private static final HttpServletRequest DETACHED = (HttpServletRequest) Proxy.newProxyInstance(
+            GuardedRequest.class.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Detached request";
+                default:
+                    throw new IllegalStateException("応答を完了したリクエストは使用できません");
+                }
+            });
+
+    GuardedRequest(HttpServletRequest request) {
+        super(request);
+    }
+
+    /**
+     * 元のリクエストとの関連を切る(応答を完了する前に呼び出す)
+     */
+    void detach() {
+        setRequest(DETACHED);
+    }
+}
@@ -0,0 +1,316 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * 別スレッドで実行するActionに渡すレスポンスのラッパー
+ * タイムアウト等で応答を完了した後は、コンテナが元のレスポンスを別のリクエストに再利用するため、
+ * detach()以後の書き込み・ヘッダーの設定等は全て破棄する(isCommitted()はtrueを返却する)。
+ * detach()は書き込みの途中には行わず、書き込み中の場合は書き込みが終わるまで待つ。
+ */
+class GuardedResponse extends HttpServletResponseWrapper {
+
+    private static final HttpServletResponse DETACHED = (HttpServletResponse) Proxy.newProxyInstance(
+            GuardedResponse.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class },
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Detached response";
+                case "isCommitted":
+                    return true;
+                case "getHeaders":
+                case "getHeaderNames":
+                    return Collections.emptyList();
+                default:
+                    break;
+                }
+                Class<?> type = method.getReturnType();
+                if (type == boolean.class) {
+                    return false;
+                }
+                if (type == int.class) {
+                    return 0;
+                }
+                if (type == long.class) {
+                    return 0L;
+                }
+                return null;
+            });
+
+    private final Object lock = new Object();
+    private boolean detached;
+    private GuardedStream stream;
+    private PrintWriter writer;
+
+    GuardedResponse(HttpServletResponse response) {
+        super(response);
+    }
+
+    /**
+     * 元のレスポンスとの関連を切る(応答を完了する前に呼び出す)
+     */
+    void detach() {
+        synchronized (lock) {
+            detached = true;
+            setResponse(DETACHED);
+        }
+    }
+
+    /**
+     * getWriter()で書き込んだ内容を、元のレスポンスに書き込む
+     */
+    void flushWriter() {
+        synchronized (lock) {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        synchronized (lock) {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called for this response");
+            }
+            return stream();
+        }
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        synchronized (lock) {
+            if (writer == null) {
+                if (stream != null) {
+                    throw new IllegalStateException("getOutputStream() has already been called for this response");
+                }
+                String charset = getCharacterEncoding();
+                writer = new PrintWriter(new OutputStreamWriter(stream(), charset == null ? "ISO-8859-1" : charset));
+            }
+            return writer;
+        }
+    }
+
+    private GuardedStream stream() throws IOException {
+        if (stream == null) {
+            stream = new GuardedStream(detached ? null : super.getOutputStream());
+        }
+        return stream;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        synchronized (lock) {
+            if (writer != null) {
+                writer.flush();
+            }
+            super.flushBuffer();
+        }
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        synchronized (lock) {
+            super.sendError(sc, msg);
+        }
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        synchronized (lock) {
+            super.sendError(sc);
+        }
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        synchronized (lock) {
+            super.sendRedirect(location);
+        }
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        synchronized (lock) {
+            super.setStatus(sc);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        synchronized (lock) {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        synchronized (lock) {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setDateHeader(String name, long date) {
+        synchronized (lock) {
+            super.setDateHeader(name, date);
+        }
+    }
+
+    @Override
+    public void addDateHeader(String name, long date) {
+        synchronized (lock) {
+            super.addDateHeader(name, date);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        synchronized (lock) {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        synchronized (lock) {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addCookie(Cookie cookie) {
+        synchronized (lock) {
+            super.addCookie(cookie);
+        }
+    }
+
+    @Override
+    public void setContentType(String type) {
+        synchronized (lock) {
+            super.setContentType(type);
+        }
+    }
+
+    @Override
+    public void setCharacterEncoding(String charset) {
+        synchronized (lock) {
+            super.setCharacterEncoding(charset);
+        }
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        synchronized (lock) {
+            super.setContentLength(len);
+        }
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        synchronized (lock) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void reset() {
+        synchronized (lock) {
+            super.reset();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        synchronized (lock) {
+            super.resetBuffer();
+        }
+    }
+
+    /**
+     * detach()の後の書き込みを破棄するストリーム
+     */
+    private class GuardedStream extends ServletOutputStream {
+        //detach()の後に取得した場合はnull
+        private final ServletOutputStream out;
+
+        private GuardedStream(ServletOutputStream out) {
+            this.out = out;
+        }
+
+        private OutputStream target() {
+            return detached ? null : out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            synchronized (lock) {
+                OutputStream o = target();
+                if (o != null) {
+                    o.write(b);
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (lock) {
+                OutputStream o = target();
+                if (o != null) {
+                    o.write(b, off, len);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (lock) {
+                OutputStream o = target();
+                if (o != null) {
+                    o.flush();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            synchronized (lock) {
+                OutputStream o = target();
+                if (o != null) {
+                    o.close();
+                }
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            synchronized (lock) {
+                return detached || out.isReady();
+            }
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            synchronized (lock) {
+                if (!detached) {
+                    out.setWriteListener(writeListener);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package controllers;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import actions.views.EmployeePrincipal;
+import constants.AttributeConst;
+import constants.JpaConst;
+import utils.DBUtil;
+import utils.PoolStatistics;
+import utils.RouteStatistics;
+
+/**
+ * 経路ごとの統計情報と接続プールの状態をPrometheusのテキスト形式で返却するサーブレット
+ * 管理者でログインしている場合か、設定したトークン(daily_report_system.metrics.token)を
+ * Authorization: Bearer で送信した場合(収集サーバーからの取得)だけ返却する。
+ */
+@WebServlet(urlPatterns = MetricsServlet.PATH)
+public class MetricsServlet extends HttpServlet {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * サーブレットのパス
+     */
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+    private String token;
+
+    public MetricsServlet() {
+        super();
+    }
+
+    @Override
+    public void init() throws ServletException {
+        token = DBUtil.getProperty(JpaConst.PROP_METRICS_TOKEN, "");
+    }
+
+    /**
+     * @see HttpServlet#doGet(HttpServletRequest request, HttpServletResponse response)
+     */
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+
+        if (!isAdmin(request) && !hasToken(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+
+        RouteStatistics statistics = (RouteStatistics) getServletContext()
+                .getAttribute(AttributeConst.ROUTE_STATISTICS.getValue());
+        if (statistics == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setContentType(CONTENT_TYPE);
+        response.setHeader("Cache-Control", "no-store");
+        PrintWriter out = response.getWriter();
+        statistics.writePrometheus(out);
+
+        PoolStatistics pool = DBUtil.getPoolStatistics();
+        RouteStatistics.single(out, "pool_active_connections", "gauge", "使用中の接続数", pool.getActiveConnections());
+        RouteStatistics.single(out, "pool_idle_connections", "gauge", "待機中の接続数", pool.getIdleConnections());
+        RouteStatistics.single(out, "pool_threads_awaiting_connection", "gauge", "接続の取得を待っているスレッド数",
+                pool.getThreadsAwaitingConnection());
+        RouteStatistics.single(out, "pool_acquire_timeouts_total", "counter", "接続の取得がタイムアウトした回数",
+                pool.getAcquireTimeoutCount());
+    }
+
+    /**
+     * 管理者でログインしているかどうか(ログインしている従業員はLoginFilterがリクエストスコープに設定する)
+     */
+    private static boolean isAdmin(HttpServletRequest request) {
+        EmployeePrincipal ev = (EmployeePrincipal) request.getAttribute(AttributeConst.LOGIN_EMP.getValue());
+        return ev != null && ev.getAdminFlag() == AttributeConst.ROLE_ADMIN.getIntegerValue();
+    }
+
+    /**
+     * 設定したトークンを送信しているかどうか(トークンが未設定の場合は常にfalse)
+     */
+    private boolean hasToken(HttpServletRequest request) {
+        String authorization = request.getHeader("Authorization");
+        if (token.isEmpty() || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        return MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8));
+    }
+}
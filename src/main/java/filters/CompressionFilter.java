@@ -0,0 +1,187 @@
+package filters;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import constants.JpaConst;
+import utils.CompressionStatistics;
+import utils.DBUtil;
+import utils.StaticAssets;
+
+/**
+ * レスポンスを圧縮するフィルタ
+ * Accept-Encodingに応じてgzip(優先)またはdeflateで圧縮する。
+ * 圧縮するのは設定したContent-Typeで、かつ最小サイズ以上のレスポンスだけ。
+ * 経路ごとの削減バイト数はJMX(CompressionStatistics)で確認できる。
+ * 静的ファイル(AssetServlet)は起動時に圧縮したファイルをsendfileで返却するため、ラップせずにそのまま渡す。
+ */
+public class CompressionFilter implements Filter {
+
+    private static final Logger LOGGER = Logger.getLogger(CompressionFilter.class.getName());
+
+    private static final String DEFAULT_MIME_TYPES = "text/html,text/css,text/plain,text/javascript,"
+            + "application/javascript,application/json,image/svg+xml";
+
+    //圧縮しないサーブレットパス(AssetServletのURL sendfileはラップしたレスポンスでは使えないため)
+    private static final Set<String> EXCLUDED_PATHS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(StaticAssets.URL_PREFIX, "/css")));
+
+    private boolean enabled;
+    private int minSize;
+    private Set<String> mimeTypes;
+    private CompressionStatistics statistics;
+
+    /**
+     * Default constructor.
+     */
+    public CompressionFilter() {
+    }
+
+    /**
+     * @see Filter#init(FilterConfig)
+     */
+    public void init(FilterConfig fConfig) throws ServletException {
+        enabled = Boolean.parseBoolean(DBUtil.getProperty(JpaConst.PROP_COMPRESSION_ENABLED, "true"));
+        minSize = (int) Math.max(1, DBUtil.getLongProperty(JpaConst.PROP_COMPRESSION_MIN_SIZE, 1024));
+
+        Set<String> types = new HashSet<>();
+        for (String type : DBUtil.getProperty(JpaConst.PROP_COMPRESSION_MIME_TYPES, DEFAULT_MIME_TYPES).split(",")) {
+            if (!type.trim().isEmpty()) {
+                types.add(type.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        mimeTypes = Collections.unmodifiableSet(types);
+
+        statistics = new CompressionStatistics();
+        statistics.register();
+    }
+
+    /**
+     * @see Filter#destroy()
+     */
+    public void destroy() {
+        if (statistics != null) {
+            statistics.unregister();
+        }
+    }
+
+    /**
+     * @see Filter#doFilter(ServletRequest, ServletResponse, FilterChain)
+     */
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+
+        //本文を返さないHEADと、範囲を指定したリクエストと、静的ファイルは圧縮しない
+        if (!enabled || "HEAD".equals(req.getMethod()) || req.getHeader("Range") != null
+                || EXCLUDED_PATHS.contains(req.getServletPath())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        //受け付けない場合もVaryを付けるためにラップする
+        String encoding = negotiate(req.getHeader("Accept-Encoding"));
+        CompressionResponseWrapper wrapper = new CompressionResponseWrapper(req, (HttpServletResponse) response,
+                encoding, minSize, mimeTypes, statistics);
+
+        chain.doFilter(request, wrapper);
+
+        if (req.isAsyncStarted()) {
+            //別スレッドで書き込む場合、通常はforward後のクローズで書き込みが終了する
+            //クローズされないまま完了した場合に備えて、完了時にも終了させる
+            req.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    try {
+                        wrapper.finish();
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.FINE, "圧縮したレスポンスを終了できませんでした", e);
+                    }
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            wrapper.finish();
+        }
+    }
+
+    /**
+     * Accept-Encodingから使用する圧縮形式を決める(q値が同じ場合はgzipを優先する)
+     * @param acceptEncoding Accept-Encodingヘッダの値
+     * @return "gzip"、"deflate" いずれも受け付けない場合はnull
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            double q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            if (coding.equals("gzip") || coding.equals("x-gzip")) {
+                gzip = Math.max(gzip, q);
+            } else if (coding.equals("deflate")) {
+                deflate = Math.max(deflate, q);
+            } else if (coding.equals("*")) {
+                any = q;
+            }
+        }
+        //明示されていない形式は"*"のq値に従う
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+
+        if (gzip > 0 && gzip >= deflate) {
+            return "gzip";
+        }
+        if (deflate > 0) {
+            return "deflate";
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,486 @@
+package filters;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import constants.ForwardConst;
+import utils.CompressionStatistics;
+
+/**
+ * レスポンスをgzipまたはdeflateで圧縮しながら送信するためのラッパー
+ * 書き込まれた内容は最小サイズに達するまでだけ保持し、達した時点(または書き込み終了時)に圧縮するかどうかを決める。
+ * 圧縮する場合は以後の書き込みをその都度圧縮して送信するため、レスポンス全体を保持することはない。
+ * ノンブロッキングの書き込み(setWriteListener)を使用する場合は、圧縮せずにそのまま送信する。
+ */
+class CompressionResponseWrapper extends HttpServletResponseWrapper {
+
+    private static final String CONTENT_LENGTH = "Content-Length";
+    private static final String CONTENT_ENCODING = "Content-Encoding";
+
+    private final HttpServletRequest request;
+    //クライアントが受け付ける圧縮形式("gzip"、"deflate" 受け付けない場合はnull)
+    private final String encoding;
+    private final int minSize;
+    private final Set<String> mimeTypes;
+    private final CompressionStatistics statistics;
+
+    //アプリケーションが指定したContent-Length(圧縮するかどうかを決めるまで保留する)
+    private long declaredLength = -1;
+    private CompressingStream stream;
+    private PrintWriter writer;
+
+    CompressionResponseWrapper(HttpServletRequest request, HttpServletResponse response, String encoding,
+            int minSize, Set<String> mimeTypes, CompressionStatistics statistics) {
+        super(response);
+        this.request = request;
+        this.encoding = encoding;
+        this.minSize = minSize;
+        this.mimeTypes = mimeTypes;
+        this.statistics = statistics;
+    }
+
+    /**
+     * 書き込みを終了する
+     * 保持している内容を送信し、圧縮している場合は圧縮の終端を書き込む(レスポンスはクローズしない)
+     * 本文を書き込まなかった場合は、保留していたContent-Lengthを設定する(HEAD・sendfile等)
+     * @throws IOException
+     */
+    void finish() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (stream != null) {
+            stream.finish();
+        } else if (declaredLength >= 0 && !isCommitted()) {
+            super.setContentLengthLong(declaredLength);
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        return stream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            if (stream != null) {
+                throw new IllegalStateException("getOutputStream() has already been called for this response");
+            }
+            writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    private CompressingStream stream() {
+        if (stream == null) {
+            stream = new CompressingStream();
+        }
+        return stream;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (stream != null) {
+            stream.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        declaredLength = -1;
+        if (stream != null) {
+            stream.reset();
+        }
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        if (stream != null) {
+            stream.reset();
+        }
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        discardForError();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        discardForError();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        discardForError();
+        super.sendRedirect(location);
+    }
+
+    /**
+     * エラー・リダイレクトの応答はコンテナが書き込むため、圧縮をやめてContent-Encodingを取り消す
+     */
+    private void discardForError() {
+        if (stream != null) {
+            if (stream.state == State.COMPRESSING && !isCommitted()) {
+                super.reset();
+            }
+            stream.end();
+            stream.state = State.DISCARDED;
+        }
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        setContentLengthLong(len);
+    }
+
+    @Override
+    public void setContentLengthLong(long len) {
+        if (stream == null || stream.state == State.BUFFERING) {
+            declaredLength = len;
+        } else if (stream.state != State.COMPRESSING) {
+            super.setContentLengthLong(len);
+        }
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.setHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(Long.parseLong(value));
+        } else {
+            super.addHeader(name, value);
+        }
+    }
+
+    @Override
+    public void setIntHeader(String name, int value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.setIntHeader(name, value);
+        }
+    }
+
+    @Override
+    public void addIntHeader(String name, int value) {
+        if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+            setContentLengthLong(value);
+        } else {
+            super.addIntHeader(name, value);
+        }
+    }
+
+    /**
+     * Content-Typeが圧縮対象かどうかを返却する
+     */
+    private boolean isCompressibleType() {
+        String contentType = getContentType();
+        if (contentType == null) {
+            return false;
+        }
+        int sep = contentType.indexOf(';');
+        String mimeType = (sep < 0 ? contentType : contentType.substring(0, sep)).trim().toLowerCase(Locale.ROOT);
+        return mimeTypes.contains(mimeType);
+    }
+
+    /**
+     * Varyに既にAccept-Encodingが含まれているかどうかを返却する
+     */
+    private boolean varies() {
+        for (String vary : getHeaders("Vary")) {
+            for (String field : vary.split(",")) {
+                if (field.trim().equalsIgnoreCase("Accept-Encoding")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 集計に使用する経路の名前(例:"Report.index"、"/css/style.css")
+     */
+    private String route() {
+        String action = request.getParameter(ForwardConst.ACT.getValue());
+        if (action == null) {
+            return request.getServletPath();
+        }
+        return action + "." + request.getParameter(ForwardConst.CMD.getValue());
+    }
+
+    private enum State {
+        BUFFERING, //圧縮するかどうかを決める前(内容を保持している)
+        COMPRESSING, //圧縮して送信している
+        PLAIN, //圧縮せずに送信している
+        DISCARDED, //エラー・リダイレクトのため以後の書き込みを無視する
+        FINISHED //書き込み終了
+    }
+
+    /**
+     * 圧縮しながら書き込むストリーム
+     */
+    private class CompressingStream extends ServletOutputStream {
+        private State state = State.BUFFERING;
+        private byte[] buffer = new byte[Math.min(minSize, 8192)];
+        private int count;
+        private OutputStream target;
+        //コンテナのストリーム(圧縮するかどうかを決めた時点で取得する)
+        private ServletOutputStream out;
+        private DeflaterOutputStream compressor;
+        //圧縮に使用するネイティブのメモリは、終了・破棄の時点でend()で解放する
+        private Deflater deflater;
+        private CountingOutputStream counter;
+        private long bytesIn;
+        //ノンブロッキングで書き込む場合はtrue(圧縮しない)
+        private boolean nonBlocking;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            switch (state) {
+            case BUFFERING:
+                if (count + len < minSize) {
+                    if (count + len > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.min(minSize, Math.max(count + len, buffer.length * 2)));
+                    }
+                    System.arraycopy(b, off, buffer, count, len);
+                    count += len;
+                    return;
+                }
+                decide(false);
+                write(b, off, len);
+                return;
+            case COMPRESSING:
+                compressor.write(b, off, len);
+                bytesIn += len;
+                return;
+            case PLAIN:
+                target.write(b, off, len);
+                return;
+            case DISCARDED:
+                return;
+            default:
+                throw new IOException("The response has already been finished");
+            }
+        }
+
+        /**
+         * 圧縮するかどうかを決め、保持している内容を書き込む
+         * @param finished 書き込みが終了しているかどうか(保持している内容が全体)
+         */
+        private void decide(boolean finished) throws IOException {
+            boolean compressibleType = isCompressibleType();
+            if (compressibleType && !varies()) {
+                //圧縮の有無がAccept-Encodingで変わることを中継サーバーに伝える
+                CompressionResponseWrapper.super.addHeader("Vary", "Accept-Encoding");
+            }
+
+            int status = getStatus();
+            long length = finished ? count : declaredLength;
+            boolean compress = encoding != null
+                    && !nonBlocking
+                    && compressibleType
+                    && status >= 200 && status < 300 && status != SC_NO_CONTENT && status != SC_PARTIAL_CONTENT
+                    && getHeader(CONTENT_ENCODING) == null
+                    && (length < 0 || length >= minSize);
+
+            out = CompressionResponseWrapper.super.getOutputStream();
+            if (compress) {
+                CompressionResponseWrapper.super.setHeader(CONTENT_ENCODING, encoding);
+                counter = new CountingOutputStream(out);
+                if ("gzip".equals(encoding)) {
+                    GzipStream gzip = new GzipStream(counter);
+                    deflater = gzip.deflater();
+                    compressor = gzip;
+                } else {
+                    deflater = new Deflater();
+                    compressor = new DeflaterOutputStream(counter, deflater, 8192, true);
+                }
+                target = compressor;
+                state = State.COMPRESSING;
+                compressor.write(buffer, 0, count);
+                bytesIn = count;
+            } else {
+                if (declaredLength >= 0) {
+                    CompressionResponseWrapper.super.setContentLengthLong(declaredLength);
+                } else if (finished) {
+                    CompressionResponseWrapper.super.setContentLengthLong(count);
+                }
+                target = out;
+                state = State.PLAIN;
+                out.write(buffer, 0, count);
+            }
+            buffer = null;
+            count = 0;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            //最小サイズに達するまでは送信しない(圧縮するかどうかを決められないため)
+            if (state == State.COMPRESSING || state == State.PLAIN) {
+                target.flush();
+            }
+        }
+
+        /**
+         * 保持している内容を送信し、圧縮している場合は圧縮の終端を書き込む
+         */
+        private void finish() throws IOException {
+            if (state == State.BUFFERING) {
+                decide(true);
+            }
+            if (state == State.COMPRESSING) {
+                try {
+                    compressor.finish();
+                } finally {
+                    end();
+                }
+                statistics.record(route(), bytesIn, counter.count);
+            }
+            if (state == State.COMPRESSING || state == State.PLAIN) {
+                //圧縮の終端は書き込み済みのため、解放したDeflaterを通さずにコンテナのストリームを送信する
+                out.flush();
+                state = State.FINISHED;
+            }
+        }
+
+        /**
+         * 圧縮に使用したメモリを解放する(以後は圧縮できない)
+         */
+        private void end() {
+            if (deflater != null) {
+                deflater.end();
+                deflater = null;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            CompressionResponseWrapper.super.getOutputStream().close();
+        }
+
+        /**
+         * 送信前の内容を破棄し、圧縮するかどうかを決める前の状態に戻す
+         */
+        private void reset() {
+            if (state == State.BUFFERING) {
+                count = 0;
+            } else if (state != State.FINISHED && !isCommitted()) {
+                state = State.BUFFERING;
+                buffer = new byte[Math.min(minSize, 8192)];
+                count = 0;
+                end();
+                compressor = null;
+                counter = null;
+                target = null;
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            //ノンブロッキングの場合はコンテナのストリームが書き込めるかどうかを返す
+            return !nonBlocking || out == null || out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            //書き込み可能になる時期はコンテナのストリームに任せるため、まだ決めていなければ圧縮せずに送信する
+            nonBlocking = true;
+            try {
+                if (state == State.BUFFERING) {
+                    decide(false);
+                }
+                CompressionResponseWrapper.super.getOutputStream().setWriteListener(writeListener);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    /**
+     * 使用するDeflaterを参照できるgzipのストリーム(GZIPOutputStreamはDeflaterを外から渡せないため)
+     */
+    private static class GzipStream extends GZIPOutputStream {
+        private GzipStream(OutputStream out) throws IOException {
+            super(out, 8192, true);
+        }
+
+        private Deflater deflater() {
+            return def;
+        }
+    }
+
+    /**
+     * 書き込んだバイト数を数えるストリーム(圧縮後のバイト数の集計用)
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
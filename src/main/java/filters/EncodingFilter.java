@@ -8,12 +8,10 @@ import javax.servlet.FilterConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
-import javax.servlet.annotation.WebFilter;
 
 /**
  * Servlet Filter implementation class EncodingFilter
  */
-@WebFilter("/*")
 public class EncodingFilter implements Filter {
 
     /**
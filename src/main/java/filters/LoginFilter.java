@@ -1,6 +1,11 @@
 package filters;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
@@ -9,22 +14,48 @@ import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
-import javax.servlet.annotation.WebFilter;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
-import actions.views.EmployeeView;
+import actions.views.EmployeePrincipal;
+import controllers.MetricsServlet;
 import constants.AttributeConst;
 import constants.ForwardConst;
+import constants.PropertyConst;
+import services.PrincipalRegistry;
+import utils.AuthTokens;
+import utils.RequestMetrics;
+import utils.StaticAssets;
 
 /**
  * Servlet Filter implementation class LoginFilter
+ * 起動時に作成した対応表で、リクエストごとに必要な認証を判定する。
+ * 静的ファイルはセッションに触れずに通し、それ以外もセッションを作成せずに判定する(セッションはログイン成功時に作成する)。
+ * daily_report_system.auth.mode=token の場合は、ログイン状態を署名付きのクッキーで判定し、セッションは参照しない。
  */
-
-@WebFilter("/*")
 public class LoginFilter implements Filter {
 
+    /**
+     * リクエストに必要な認証
+     */
+    private enum Access {
+        PUBLIC, //認証不要(静的ファイル)
+        LOGIN, //ログイン画面の表示・ログインの実行(未ログインのみ)
+        LOGOUT, //ログアウトの実行(ログイン済のみ)
+        AUTH_OTHER, //上記以外の認証系Action(ログイン済の場合はエラー画面)
+        MEMBER //ログイン済のみ
+    }
+
+    //認証不要のサーブレットパス(例:"/css"、"/assets")
+    private Set<String> publicPaths;
+    //ログインしていなくてもリダイレクトせず、サーブレットで権限を判定するパス(例:"/metrics")
+    private Set<String> selfCheckedPaths;
+    //action → command → 必要な認証 (表にない組み合わせは MEMBER、認証系Actionの表にないcommandは AUTH_OTHER)
+    private Map<String, Map<String, Access>> routes;
+    //ログイン状態をトークンで受け渡す場合のみ設定する
+    private AuthTokens tokens;
+
     /**
      * Default constructor.
      */
@@ -42,76 +73,167 @@ public class LoginFilter implements Filter {
      */
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
             throws IOException, ServletException {
-        String contextPath = ((HttpServletRequest) request).getContextPath();
-        String servletPath = ((HttpServletRequest) request).getServletPath();
+        HttpServletRequest req = (HttpServletRequest) request;
 
-        if (servletPath.matches("/css.*")) {
-            // CSSフォルダ内は認証処理から除外する
+        if (publicPaths.contains(req.getServletPath())) {
+            // CSSフォルダ内と静的ファイルは認証処理から除外する(セッションにも触れない)
             chain.doFilter(request, response);
+            return;
+        }
 
-        } else {
-            HttpSession session = ((HttpServletRequest) request).getSession();
-
-            //クエリパラメータからactionとcommandを取得
-            String action = request.getParameter(ForwardConst.ACT.getValue());
-            String command = request.getParameter(ForwardConst.CMD.getValue());
+        //クエリパラメータからactionとcommandを取得
+        String action = request.getParameter(ForwardConst.ACT.getValue());
+        String command = request.getParameter(ForwardConst.CMD.getValue());
+        Access access = access(action, command);
+
+        //ログインしている従業員の情報を取得(処理時間をServer-Timingに出力する)
+        long start = System.nanoTime();
+        EmployeePrincipal ev = tokens != null
+                ? fromToken(req, (HttpServletResponse) response)
+                : fromSession(req);
+        RequestMetrics metrics = RequestMetrics.of(request);
+        if (metrics != null) {
+            metrics.addTiming("login", System.nanoTime() - start);
+            if (ev != null) {
+                metrics.setEmployeeId(ev.getId());
+            }
+        }
 
-            //セッションからログインしている従業員の情報を取得
-            EmployeeView ev = (EmployeeView) session.getAttribute(AttributeConst.LOGIN_EMP.getValue());
+        if (selfCheckedPaths.contains(req.getServletPath())) {
+            //権限の判定はサーブレットで行う
+            if (ev != null) {
+                request.setAttribute(AttributeConst.LOGIN_EMP.getValue(), ev);
+            }
+            chain.doFilter(request, response);
+            return;
+        }
 
-            if (ev == null) {
-                //未ログイン
+        if (ev == null) {
+            //未ログイン
 
-                if (!(ForwardConst.ACT_AUTH.getValue().equals(action)
-                        && (ForwardConst.CMD_SHOW_LOGIN.getValue().equals(command)
-                                || ForwardConst.CMD_LOGIN.getValue().equals(command)))) {
+            if (access != Access.LOGIN) {
+                //ログインページの表示またはログイン実行以外はログインページにリダイレクト
+                redirect(req, (HttpServletResponse) response, ForwardConst.ACT_AUTH, ForwardConst.CMD_SHOW_LOGIN);
+                return;
+            }
+        } else {
+            //ログイン済
 
-                    //ログインページの表示またはログイン実行以外はログインページにリダイレクト
-                    ((HttpServletResponse) response).sendRedirect(
-                            contextPath
-                                    + "?action=" + ForwardConst.ACT_AUTH.getValue()
-                                    + "&command=" + ForwardConst.CMD_SHOW_LOGIN.getValue());
-                    return;
-                }
-            } else {
-                //ログイン済
+            //画面(jsp)はセッションを使用しないため、ログインしている従業員はリクエストスコープで渡す
+            request.setAttribute(AttributeConst.LOGIN_EMP.getValue(), ev);
 
-                if (ForwardConst.ACT_AUTH.getValue().equals(action)) {
-                    //認証系Actionを行おうとしている場合
+            if (access == Access.LOGIN && ForwardConst.CMD_SHOW_LOGIN.getValue().equals(command)) {
+                //ログインページの表示はトップ画面にリダイレクト
+                redirect(req, (HttpServletResponse) response, ForwardConst.ACT_TOP, ForwardConst.CMD_INDEX);
+                return;
 
-                    if (ForwardConst.CMD_SHOW_LOGIN.getValue().equals(command)) {
-                        //ログインページの表示はトップ画面にリダイレクト
-                        ((HttpServletResponse) response).sendRedirect(
-                                contextPath
-                                        + "?action=" + ForwardConst.ACT_TOP.getValue()
-                                        + "&command=" + ForwardConst.CMD_INDEX.getValue());
-                        return;
+            } else if (access == Access.LOGIN || access == Access.AUTH_OTHER) {
+                //上記以外の認証系Action(ログアウトを除く)はエラー画面
 
-                    } else if (ForwardConst.CMD_LOGOUT.getValue().equals(command)) {
-                        //ログアウトの実施は許可
+                String forward = String.format("/WEB-INF/views/%s.jsp", "error/unknown");
+                RequestDispatcher dispatcher = request.getRequestDispatcher(forward);
+                dispatcher.forward(request, response);
 
-                    } else {
-                        //上記以外の認証系Actionはエラー画面
+                return;
+            }
+        }
 
-                        String forward = String.format("/WEB-INF/views/%s.jsp", "error/unknown");
-                        RequestDispatcher dispatcher = request.getRequestDispatcher(forward);
-                        dispatcher.forward(request, response);
+        //次のフィルタまたはサーブレットを呼び出し
+        chain.doFilter(request, response);
+    }
 
-                        return;
+    /**
+     * セッションからログインしている従業員の情報を取得する(セッションがなければ作成せずに未ログインとする)
+     * 従業員情報が更新されていれば最新の内容に入れ替え、論理削除されていればセッションを無効にする
+     */
+    private EmployeePrincipal fromSession(HttpServletRequest req) {
+        HttpSession session = req.getSession(false);
+        EmployeePrincipal ev = session == null ? null : (EmployeePrincipal) session.getAttribute(AttributeConst.LOGIN_EMP.getValue());
+        if (ev == null) {
+            return null;
+        }
+        EmployeePrincipal latest = PrincipalRegistry.refresh(ev);
+        if (latest == null) {
+            session.invalidate();
+        } else if (latest != ev) {
+            session.setAttribute(AttributeConst.LOGIN_EMP.getValue(), latest);
+        }
+        return latest;
+    }
 
-                    }
-                }
-            }
+    /**
+     * クッキーのトークンからログインしている従業員の情報を取得する(セッションは参照しない)
+     * トークンの版はDBの従業員の版(PrincipalRegistry)と比較し、従業員情報が更新された場合と
+     * 期限の残りが半分を切った場合はトークンを発行し直し、
+     * 署名が一致しない・期限が切れている・論理削除された場合はクッキーを削除する
+     * 期限を延長する場合は、保持しているDBの版を使わずにDBで確認する(論理削除された従業員の期限を延ばさない)
+     */
+    private EmployeePrincipal fromToken(HttpServletRequest req, HttpServletResponse res) {
+        String value = AuthTokens.getCookie(req, AuthTokens.COOKIE_NAME);
+        if (value == null) {
+            return null;
+        }
+        AuthTokens.Token token = tokens.verify(value);
+        EmployeePrincipal ev = token == null ? null
+                : PrincipalRegistry.refresh(token.getPrincipal(), tokens.needsRenewal(token));
+        if (ev == null) {
+            AuthTokens.setCookie(req, res, AuthTokens.COOKIE_NAME, null);
+            return null;
+        }
+        if (ev != token.getPrincipal() || tokens.needsRenewal(token)) {
+            token = tokens.issue(ev, token.getLoginAt());
+            AuthTokens.setCookie(req, res, AuthTokens.COOKIE_NAME, token.getValue());
+        }
+        //CSRF対策用トークンの作成に使用する
+        req.setAttribute(AttributeConst.AUTH_TOKEN.getValue(), token);
+        return ev;
+    }
 
-            //次のフィルタまたはサーブレットを呼び出し
-            chain.doFilter(request, response);
+    /**
+     * actionとcommandの組み合わせに必要な認証を返却する
+     */
+    private Access access(String action, String command) {
+        Map<String, Access> commands = action == null ? null : routes.get(action);
+        if (commands == null) {
+            return Access.MEMBER;
         }
+        Access access = command == null ? null : commands.get(command);
+        return access == null ? Access.AUTH_OTHER : access;
+    }
+
+    private static void redirect(HttpServletRequest request, HttpServletResponse response,
+            ForwardConst action, ForwardConst command) throws IOException {
+        response.sendRedirect(
+                request.getContextPath()
+                        + "?action=" + action.getValue()
+                        + "&command=" + command.getValue());
     }
 
     /**
      * @see Filter#init(FilterConfig)
      */
     public void init(FilterConfig fConfig) throws ServletException {
+        Set<String> paths = new HashSet<>();
+        paths.add("/css");
+        paths.add(StaticAssets.URL_PREFIX);
+        publicPaths = Collections.unmodifiableSet(paths);
+        selfCheckedPaths = Collections.singleton(MetricsServlet.PATH);
+
+        Map<String, Access> auth = new HashMap<>();
+        auth.put(ForwardConst.CMD_SHOW_LOGIN.getValue(), Access.LOGIN);
+        auth.put(ForwardConst.CMD_LOGIN.getValue(), Access.LOGIN);
+        auth.put(ForwardConst.CMD_LOGOUT.getValue(), Access.LOGOUT);
+
+        Map<String, Map<String, Access>> table = new HashMap<>();
+        table.put(ForwardConst.ACT_AUTH.getValue(), Collections.unmodifiableMap(auth));
+        routes = Collections.unmodifiableMap(table);
+
+        try {
+            AuthTokens.init((String) fConfig.getServletContext().getAttribute(PropertyConst.AUTH_TOKEN_SECRET.getValue()));
+        } catch (IllegalStateException e) {
+            throw new ServletException(e.getMessage(), e);
+        }
+        tokens = AuthTokens.getInstance();
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package filters;
+
+import java.io.IOException;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import constants.AttributeConst;
+import constants.JpaConst;
+import utils.DBUtil;
+import utils.RequestMetrics;
+import utils.RouteStatistics;
+import utils.SqlBudget;
+
+/**
+ * FrontControllerへのリクエストを経路(Actionのメソッド)ごとに集計するフィルタ
+ * 件数・エラー件数(5xx、またはActionの実行中の例外)と、処理時間をDBの処理時間・画面の描画時間に分けて記録する。
+ * 経路はActionBaseが、DBの処理時間はSqlRecorderが、描画時間はActionBase.forward()がRequestMetricsに設定する。
+ * 集計結果はJMX(RouteStatistics)と/metrics(MetricsServlet)で確認できる。
+ * 実行したSQLの件数・行数・JDBCの処理時間はリクエスト属性(sqlStatistics)に設定し、リクエストの終了時にログに出力する。
+ * daily_report_system.serverTiming.enabled=true の場合は、フィルタ・Action・Serviceのメソッド・DB・描画の処理時間を
+ * Server-Timingヘッダーで返却する(ブラウザの開発者ツールで確認できる)。
+ */
+public class MetricsFilter implements Filter {
+
+    //Actionのメソッドを実行しなかったリクエスト(ログイン画面へのリダイレクト、不正なaction・command等)
+    private static final String NO_ROUTE = "(none)";
+
+    private RouteStatistics statistics;
+    private boolean serverTiming;
+
+    /**
+     * Default constructor.
+     */
+    public MetricsFilter() {
+    }
+
+    /**
+     * @see Filter#init(FilterConfig)
+     */
+    public void init(FilterConfig fConfig) throws ServletException {
+        statistics = new RouteStatistics();
+        statistics.register();
+        fConfig.getServletContext().setAttribute(AttributeConst.ROUTE_STATISTICS.getValue(), statistics);
+        serverTiming = Boolean.parseBoolean(DBUtil.getProperty(JpaConst.PROP_SERVER_TIMING_ENABLED, "true"));
+    }
+
+    /**
+     * @see Filter#destroy()
+     */
+    public void destroy() {
+        if (statistics != null) {
+            statistics.unregister();
+        }
+    }
+
+    /**
+     * @see Filter#doFilter(ServletRequest, ServletResponse, FilterChain)
+     */
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse res = (HttpServletResponse) response;
+        RequestMetrics metrics = RequestMetrics.start(req);
+        req.setAttribute(AttributeConst.SQL_STATISTICS.getValue(), metrics.getQueries());
+        ServletResponse target = serverTiming ? new ServerTimingResponseWrapper(res, metrics) : response;
+
+        try (RequestMetrics.Binding binding = RequestMetrics.bind(metrics)) {
+            chain.doFilter(request, target);
+        } catch (IOException | ServletException | RuntimeException e) {
+            metrics.markError();
+            record(metrics, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            throw e;
+        }
+
+        if (req.isAsyncStarted()) {
+            //別スレッドで処理する場合は、完了時に記録する
+            req.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    record(metrics, res.getStatus());
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                    metrics.markError();
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                    metrics.markError();
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            record(metrics, res.getStatus());
+        }
+    }
+
+    private void record(RequestMetrics metrics, int status) {
+        String route = metrics.getRoute() == null ? NO_ROUTE : metrics.getRoute();
+        statistics.record(route,
+                metrics.getElapsedNanos(), metrics.getDbNanos(), metrics.getRenderNanos(),
+                metrics.isError() || status >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        SqlBudget.getInstance().report(route, metrics.getQueries());
+    }
+}
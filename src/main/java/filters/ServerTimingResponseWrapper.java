@@ -0,0 +1,151 @@
+package filters;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import utils.RequestMetrics;
+
+/**
+ * レスポンスを確定する直前に、処理時間の内訳をServer-Timingヘッダーに設定するラッパー
+ * 本文の最初の書き込み・リダイレクト・エラー・本文のないステータス(304等)の設定の時点で、それまでの内訳を設定する。
+ * 画面が大きく描画の途中で送信を始めた場合は、送信を始めるまでの描画時間となる。
+ */
+class ServerTimingResponseWrapper extends HttpServletResponseWrapper {
+
+    private static final String SERVER_TIMING = "Server-Timing";
+
+    private final RequestMetrics metrics;
+    private boolean written;
+    private TimingStream stream;
+    private PrintWriter writer;
+
+    ServerTimingResponseWrapper(HttpServletResponse response, RequestMetrics metrics) {
+        super(response);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Server-Timingヘッダーを設定する(設定済み、またはレスポンスが確定している場合は何もしない)
+     */
+    void writeHeader() {
+        if (written) {
+            return;
+        }
+        written = true;
+        if (!isCommitted()) {
+            super.setHeader(SERVER_TIMING, metrics.toServerTiming());
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (writer != null) {
+            throw new IllegalStateException("getWriter() has already been called for this response");
+        }
+        if (stream == null) {
+            stream = new TimingStream(super.getOutputStream());
+        }
+        return stream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        writeHeader();
+        if (writer != null) {
+            writer.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        writeHeader();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        writeHeader();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        writeHeader();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void setStatus(int sc) {
+        super.setStatus(sc);
+        if (sc == SC_NOT_MODIFIED || sc == SC_NO_CONTENT) {
+            //本文を書き込まないため、ここで設定する
+            writeHeader();
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        written = false;
+    }
+
+    /**
+     * 最初の書き込みの前にServer-Timingヘッダーを設定するストリーム
+     */
+    private class TimingStream extends ServletOutputStream {
+        private final ServletOutputStream out;
+
+        private TimingStream(ServletOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writeHeader();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            writeHeader();
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeHeader();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            writeHeader();
+            out.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return out.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            out.setWriteListener(writeListener);
+        }
+    }
+}
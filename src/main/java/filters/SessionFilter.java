@@ -0,0 +1,172 @@
+package filters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import constants.JpaConst;
+import constants.PropertyConst;
+import sessions.CachingSessionStore;
+import sessions.FileSessionStore;
+import sessions.RemoteSessionStore;
+import sessions.SessionRequestWrapper;
+import sessions.SessionResponseWrapper;
+import sessions.SessionStore;
+import utils.DBUtil;
+import utils.StaticAssets;
+
+/**
+ * セッションをコンテナの外(SessionStore)に保存するフィルタ
+ * 設定(daily_report_system.session.store)で保存先を切り替える。
+ * <pre>
+ * container: コンテナのセッションを使用する(このフィルタは何もしない)
+ * file: ファイルに保存する(ロックに対応したファイルシステムで同じディレクトリを共有すれば、複数のサーバーで同じセッションを使用できる)
+ * remote: ネットワーク越しのストア(SessionStoreServer等)に保存する
+ * </pre>
+ * file・remoteでは、読み込んだ属性の値をサーバーごとに保持し、版が変わっていなければストアから読み込まない。
+ * ログイン状態を参照するLoginFilterより前に適用すること(web.xmlでフィルタの順序を定義している)。
+ */
+public class SessionFilter implements Filter {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionFilter.class.getName());
+
+    //セッションを使用しないサーブレットパス(AssetServletのsendfileはラップしたリクエスト・レスポンスでは使えないため)
+    private static final Set<String> EXCLUDED_PATHS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList(StaticAssets.URL_PREFIX, "/css")));
+
+    private SessionStore store;
+    private int maxInactiveInterval;
+
+    /**
+     * Default constructor.
+     */
+    public SessionFilter() {
+    }
+
+    /**
+     * @see Filter#init(FilterConfig)
+     */
+    public void init(FilterConfig fConfig) throws ServletException {
+        String type = DBUtil.getProperty(JpaConst.PROP_SESSION_STORE, "container");
+        maxInactiveInterval = (int) DBUtil.getLongProperty(JpaConst.PROP_SESSION_TIMEOUT, 1800);
+        int nearCacheSize = (int) DBUtil.getLongProperty(JpaConst.PROP_SESSION_NEAR_CACHE_SIZE, 10000);
+
+        SessionStore base;
+        try {
+            switch (type) {
+            case "container":
+                return;
+            case "file":
+                base = new FileSessionStore(sessionDir(fConfig.getServletContext()));
+                break;
+            case "remote": {
+                //ストアと共有する鍵はペッパーと同じくapplication.propertiesで設定する
+                String secret = (String) fConfig.getServletContext().getAttribute(PropertyConst.SESSION_STORE_SECRET.getValue());
+                if (secret == null || secret.isEmpty()) {
+                    throw new ServletException("セッションストアの鍵(" + PropertyConst.SESSION_STORE_SECRET.getValue() + ")が設定されていません");
+                }
+                base = new RemoteSessionStore(
+                        DBUtil.getProperty(JpaConst.PROP_SESSION_REMOTE_HOST, "localhost"),
+                        (int) DBUtil.getLongProperty(JpaConst.PROP_SESSION_REMOTE_PORT, 7070),
+                        (int) DBUtil.getLongProperty(JpaConst.PROP_SESSION_REMOTE_TIMEOUT, 2000),
+                        Runtime.getRuntime().availableProcessors() * 4,
+                        secret.getBytes(StandardCharsets.UTF_8));
+                break;
+            }
+            default:
+                throw new ServletException("不明なセッションストアです: " + type);
+            }
+        } catch (IOException e) {
+            throw new ServletException("セッションストアを開けません", e);
+        }
+        store = nearCacheSize > 0 ? new CachingSessionStore(base, nearCacheSize) : base;
+        LOGGER.info("セッションストア: " + type);
+    }
+
+    /**
+     * @see Filter#destroy()
+     */
+    public void destroy() {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * @see Filter#doFilter(ServletRequest, ServletResponse, FilterChain)
+     */
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        if (store == null || EXCLUDED_PATHS.contains(((HttpServletRequest) request).getServletPath())) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        SessionRequestWrapper req = new SessionRequestWrapper((HttpServletRequest) request,
+                (HttpServletResponse) response, store, maxInactiveInterval);
+        SessionResponseWrapper res = new SessionResponseWrapper(req, (HttpServletResponse) response);
+
+        chain.doFilter(req, res);
+
+        if (req.isAsyncStarted()) {
+            //別スレッドで処理する場合は、完了時に書き込む
+            req.getAsyncContext().addListener(new AsyncListener() {
+                @Override
+                public void onComplete(AsyncEvent event) {
+                    try {
+                        req.flushSession();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "セッションを保存できませんでした", e);
+                    }
+                }
+
+                @Override
+                public void onTimeout(AsyncEvent event) {
+                }
+
+                @Override
+                public void onError(AsyncEvent event) {
+                }
+
+                @Override
+                public void onStartAsync(AsyncEvent event) {
+                }
+            });
+        } else {
+            req.flushSession();
+        }
+    }
+
+    /**
+     * セッションを保存するディレクトリ(未設定の場合はコンテナの一時ディレクトリ)
+     */
+    private static Path sessionDir(ServletContext context) {
+        String dir = DBUtil.getProperty(JpaConst.PROP_SESSION_DIR, "");
+        if (!dir.isEmpty()) {
+            return Paths.get(dir);
+        }
+        File tempDir = (File) context.getAttribute(ServletContext.TEMPDIR);
+        return (tempDir != null ? tempDir.toPath() : Paths.get(System.getProperty("java.io.tmpdir")))
+                .resolve("sessions");
+    }
+}
@@ -0,0 +1,46 @@
+package listeners;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import services.GoodWriteBehind;
+import services.MembershipIndex;
+import utils.DBUtil;
+import utils.FanOut;
+import utils.SchemaMigrator;
+
+@WebListener
+public class DBListener implements ServletContextListener {
+
+    public DBListener() {
+    }
+
+    /**
+     * Webアプリケーションのシャットダウン時に実行する処理
+     */
+    public void contextDestroyed(ServletContextEvent arg0) {
+        //まとめて反映する設定のいいねのうち、未反映のものを反映する
+        GoodWriteBehind.shutdown();
+        MembershipIndex.shutdownAll();
+        FanOut.shutdown();
+
+        //接続プールを閉じ、DBとの接続を解放する
+        DBUtil.close();
+    }
+
+    /**
+     * Webアプリケーションの起動時に実行する処理
+     */
+    public void contextInitialized(ServletContextEvent arg0) {
+        //スキーマを最新の状態に更新する(適用済みのマイグレーションは実行しない)
+        new SchemaMigrator(DBUtil.getDataSource()).migrate();
+
+        //いいねをまとめて反映する設定の場合は開始する(前回の停止時に未反映のいいねがあれば反映する)
+        GoodWriteBehind.startIfEnabled();
+
+        //いいね済み・フォロー済みかどうかを判定する索引の読み込みを開始する
+        MembershipIndex.startAll();
+    }
+
+}
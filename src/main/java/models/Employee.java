@@ -34,7 +34,16 @@ import lombok.Setter;
             query = JpaConst.Q_EMP_COUNT_REGISTERED_BY_CODE_DEF),
     @NamedQuery(
             name = JpaConst.Q_EMP_GET_BY_CODE_AND_PASS,
-            query = JpaConst.Q_EMP_GET_BY_CODE_AND_PASS_DEF)
+            query = JpaConst.Q_EMP_GET_BY_CODE_AND_PASS_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_EMP_GET_OLDER,
+            query = JpaConst.Q_EMP_GET_OLDER_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_EMP_GET_NEWER,
+            query = JpaConst.Q_EMP_GET_NEWER_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_EMP_MAX_UPDATED_AT,
+            query = JpaConst.Q_EMP_MAX_UPDATED_AT_DEF)
 })
 
 @Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
@@ -9,6 +9,8 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
@@ -33,7 +35,24 @@ import lombok.Setter;
             query = JpaConst.Q_FOLLOW_COUNT_ALL_DEF),
     @NamedQuery(
             name = JpaConst.Q_FOLLOW_COUNT_FOLLOWED,
-            query = JpaConst.Q_FOLLOW_COUNT_FOLLOWED_DEF)
+            query = JpaConst.Q_FOLLOW_COUNT_FOLLOWED_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_FOLLOW_GET_OLDER,
+            query = JpaConst.Q_FOLLOW_GET_OLDER_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_FOLLOW_GET_NEWER,
+            query = JpaConst.Q_FOLLOW_GET_NEWER_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_FOLLOW_MAX_UPDATED_AT,
+            query = JpaConst.Q_FOLLOW_MAX_UPDATED_AT_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_FOLLOW_GET_FOLLOWER_IDS,
+            query = JpaConst.Q_FOLLOW_GET_FOLLOWER_IDS_DEF)
+})
+@NamedNativeQueries({
+    @NamedNativeQuery(
+            name = JpaConst.Q_FOLLOW_INSERT_IF_ABSENT,
+            query = JpaConst.Q_FOLLOW_INSERT_IF_ABSENT_DEF)
 })
 
 @Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
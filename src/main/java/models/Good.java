@@ -9,6 +9,8 @@ import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
+import javax.persistence.NamedNativeQueries;
+import javax.persistence.NamedNativeQuery;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.Table;
@@ -33,7 +35,18 @@ import lombok.Setter;
             query = JpaConst.Q_GOOD_COUNT_ALL_MINE_DEF),
     @NamedQuery(
             name = JpaConst.Q_GOOD_COUNT_REP_AND_EMP,
-            query = JpaConst.Q_GOOD_COUNT_REP_AND_EMP_DEF)
+            query = JpaConst.Q_GOOD_COUNT_REP_AND_EMP_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_GOOD_GET_MINE_OLDER,
+            query = JpaConst.Q_GOOD_GET_MINE_OLDER_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_GOOD_GET_MINE_NEWER,
+            query = JpaConst.Q_GOOD_GET_MINE_NEWER_DEF)
+})
+@NamedNativeQueries({
+    @NamedNativeQuery(
+            name = JpaConst.Q_GOOD_INSERT_IF_ABSENT,
+            query = JpaConst.Q_GOOD_INSERT_IF_ABSENT_DEF)
 })
 
 @Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
@@ -33,12 +33,39 @@ import lombok.Setter;
     @NamedQuery(
             name = JpaConst.Q_REP_COUNT,
             query = JpaConst.Q_REP_COUNT_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_MAX_ID,
+            query = JpaConst.Q_REP_MAX_ID_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_MAX_UPDATED_AT,
+            query = JpaConst.Q_REP_MAX_UPDATED_AT_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_GET_VERSION,
+            query = JpaConst.Q_REP_GET_VERSION_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_COUNT_BY_ID,
+            query = JpaConst.Q_REP_COUNT_BY_ID_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_ADD_GOOD,
+            query = JpaConst.Q_REP_ADD_GOOD_DEF),
     @NamedQuery(
             name = JpaConst.Q_REP_GET_ALL_MINE,
             query = JpaConst.Q_REP_GET_ALL_MINE_DEF),
     @NamedQuery(
             name = JpaConst.Q_REP_COUNT_ALL_MINE,
-            query = JpaConst.Q_REP_COUNT_ALL_MINE_DEF)
+            query = JpaConst.Q_REP_COUNT_ALL_MINE_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_GET_OLDER,
+            query = JpaConst.Q_REP_GET_OLDER_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_GET_NEWER,
+            query = JpaConst.Q_REP_GET_NEWER_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_GET_MINE_OLDER,
+            query = JpaConst.Q_REP_GET_MINE_OLDER_DEF),
+    @NamedQuery(
+            name = JpaConst.Q_REP_GET_MINE_NEWER,
+            query = JpaConst.Q_REP_GET_MINE_NEWER_DEF)
 })
 
 @Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
@@ -105,4 +132,10 @@ public class Report {
      */
     @Column(name = JpaConst.REP_COL_REP_APRV, nullable = false)
     private Integer reportAprv;
+
+    /**
+     * 日報の内容の冒頭部分(一覧表示用に登録・更新時に作成する)
+     */
+    @Column(name = JpaConst.REP_COL_PREVIEW, length = 255)
+    private String preview;
 }
\ No newline at end of file
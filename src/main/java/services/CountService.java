@@ -0,0 +1,181 @@
+package services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import constants.JpaConst;
+
+/**
+ * 一覧画面に表示する件数をスコープ(全体、作成者ごと、フォロワーごと、日報ごと)単位でメモリに保持するクラス
+ * 登録処理から件数を加算し、一定時間ごとにDBの件数と突き合わせて補正する。
+ * 件数が非常に多いスコープは、推定値で補正する「約N件」表示に切り替える。
+ */
+public class CountService {
+
+    //スコープ名
+    public static final String SCOPE_ALL_REPORTS = "reports"; //全ての日報
+    public static final String SCOPE_ALL_EMPLOYEES = "employees"; //全ての従業員
+    private static final String SCOPE_REPORTS_OF = "reports:employee:"; //指定した従業員が作成した日報
+    private static final String SCOPE_TIMELINE_OF = "timeline:"; //指定した従業員のタイムラインの日報
+    private static final String SCOPE_GOODS_OF = "goods:report:"; //指定した日報にいいねした従業員
+
+    /**
+     * スコープごとの件数
+     */
+    private static final Map<String, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    /**
+     * 指定した従業員が作成した日報のスコープ名を返却する
+     * @param employeeId 従業員のid
+     * @return スコープ名
+     */
+    public static String reportsOf(int employeeId) {
+        return SCOPE_REPORTS_OF + employeeId;
+    }
+
+    /**
+     * 指定した従業員のタイムライン(フォローした従業員の日報)のスコープ名を返却する
+     * @param followerId フォローした従業員のid
+     * @return スコープ名
+     */
+    public static String timelineOf(int followerId) {
+        return SCOPE_TIMELINE_OF + followerId;
+    }
+
+    /**
+     * 指定した日報にいいねした従業員のスコープ名を返却する
+     * @param reportId 日報のid
+     * @return スコープ名
+     */
+    public static String goodsOf(int reportId) {
+        return SCOPE_GOODS_OF + reportId;
+    }
+
+    /**
+     * スコープの件数を返却する
+     * 保持していない場合、または前回の補正から一定時間が経過している場合はDBの件数を取得する
+     * @param scope スコープ名
+     * @param exact DBから正確な件数を取得する関数
+     * @return 件数
+     */
+    public static long get(String scope, LongSupplier exact) {
+        return get(scope, exact, null);
+    }
+
+    /**
+     * スコープの件数を返却する
+     * 件数が「約N件」表示の閾値以上の場合、補正には推定値を取得する関数を使用する
+     * @param scope スコープ名
+     * @param exact DBから正確な件数を取得する関数
+     * @param estimate DBから件数の推定値を安価に取得する関数(不要な場合はnull)
+     * @return 件数
+     */
+    public static long get(String scope, LongSupplier exact, LongSupplier estimate) {
+        long now = System.currentTimeMillis();
+        Counter counter = COUNTERS.get(scope);
+
+        if (counter != null && now - counter.reconciledAt < reconcileIntervalMillis()) {
+            return counter.value.get();
+        }
+
+        //DBの件数で補正する
+        if (counter == null) {
+            long count = exact.getAsLong();
+            evictIfFull(now);
+            COUNTERS.put(scope, new Counter(count, now));
+            return count;
+        }
+        return counter.reconcile(exact, estimate, now);
+    }
+
+    /**
+     * スコープの件数に1を加算する(保持していないスコープは次回取得時にDBから取得する)
+     * @param scope スコープ名
+     */
+    public static void increment(String scope) {
+        Counter counter = COUNTERS.get(scope);
+        if (counter != null) {
+            counter.value.incrementAndGet();
+        }
+    }
+
+    /**
+     * スコープの件数を破棄し、次回取得時にDBから取得させる
+     * @param scope スコープ名
+     */
+    public static void invalidate(String scope) {
+        COUNTERS.remove(scope);
+    }
+
+    /**
+     * 件数が「約N件」と表示する規模かどうかを返却する
+     * @param count 件数
+     * @return 約N件と表示する:true 正確な件数を表示する:false
+     */
+    public static boolean isApproximate(long count) {
+        return count >= JpaConst.COUNT_APPROX_THRESHOLD;
+    }
+
+    /**
+     * 補正の間隔(ミリ秒)
+     */
+    private static long reconcileIntervalMillis() {
+        return TimeUnit.SECONDS.toMillis(JpaConst.COUNT_RECONCILE_INTERVAL);
+    }
+
+    /**
+     * 保持しているスコープ数が上限に達している場合、補正期限の切れたものから破棄する
+     */
+    private static void evictIfFull(long now) {
+        if (COUNTERS.size() < JpaConst.COUNT_MAX_SCOPES) {
+            return;
+        }
+        long interval = reconcileIntervalMillis();
+        COUNTERS.values().removeIf(c -> now - c.reconciledAt >= interval);
+        if (COUNTERS.size() >= JpaConst.COUNT_MAX_SCOPES) {
+            COUNTERS.clear();
+        }
+    }
+
+    /**
+     * スコープ1つ分の件数
+     */
+    private static class Counter {
+        private final AtomicLong value;
+        private volatile long reconciledAt;
+        //補正中はtrue(同時に補正して差分を重ねて加えないようにする)
+        private final AtomicBoolean reconciling = new AtomicBoolean();
+
+        private Counter(long value, long reconciledAt) {
+            this.value = new AtomicLong(value);
+            this.reconciledAt = reconciledAt;
+        }
+
+        /**
+         * DBの件数で補正する
+         * 取得中に加算された分を失わないよう、取得前の値との差分を加える。
+         * 他のスレッドが補正中の場合は補正せずに保持している件数を返す。
+         * @param exact DBから正確な件数を取得する関数
+         * @param estimate DBから件数の推定値を取得する関数(不要な場合はnull)
+         * @param now 補正する日時
+         * @return 補正後の件数
+         */
+        private long reconcile(LongSupplier exact, LongSupplier estimate, long now) {
+            if (!reconciling.compareAndSet(false, true)) {
+                return value.get();
+            }
+            try {
+                long before = value.get();
+                long count = estimate != null && isApproximate(before) ? estimate.getAsLong() : exact.getAsLong();
+                reconciledAt = now;
+                return value.addAndGet(count - before);
+            } finally {
+                reconciling.set(false);
+            }
+        }
+    }
+}
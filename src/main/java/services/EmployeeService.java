@@ -7,10 +7,12 @@ import javax.persistence.NoResultException;
 
 import actions.views.EmployeeConverter;
 import actions.views.EmployeeView;
+import actions.views.KeysetPage;
 import constants.JpaConst;
 import models.Employee;
 import models.validators.EmployeeValidator;
 import utils.EncryptUtil;
+import utils.PageCursor;
 
 /**
  * 従業員テーブルの操作に関わる処理を行うクラス
@@ -31,15 +33,31 @@ public class EmployeeService extends ServiceBase {
         return EmployeeConverter.toViewList(employees);
     }
 
+    /**
+     * カーソルが指すページの一覧画面に表示するデータを取得し、EmployeeViewのリストで返却する
+     * @param cursor ページを指すカーソル(先頭ページの場合はnull)
+     * @return 表示するデータと前後のページを指すカーソル
+     */
+    public KeysetPage<EmployeeView> getByCursor(PageCursor cursor) {
+        KeysetPage<Employee> employees = getKeysetPage(
+                cursor,
+                name -> em.createNamedQuery(name, Employee.class),
+                JpaConst.Q_EMP_GET_ALL,
+                JpaConst.Q_EMP_GET_OLDER,
+                JpaConst.Q_EMP_GET_NEWER,
+                Employee::getId);
+
+        return employees.withItems(EmployeeConverter.toViewList(employees.getItems()));
+    }
+
     /**
      * 従業員テーブルのデータの件数を取得し、返却する
      * @return 従業員テーブルのデータの件数
      */
     public long countAll() {
-        long empCount = (long) em.createNamedQuery(JpaConst.Q_EMP_COUNT, Long.class)
-                .getSingleResult();
-
-        return empCount;
+        return CountService.get(CountService.SCOPE_ALL_EMPLOYEES,
+                () -> (long) em.createNamedQuery(JpaConst.Q_EMP_COUNT, Long.class)
+                        .getSingleResult());
     }
 
     /**
@@ -115,6 +133,9 @@ public class EmployeeService extends ServiceBase {
         //バリデーションエラーがなければデータを登録する
         if (errors.size() == 0) {
             create(ev);
+
+            //一覧画面に表示する件数に反映する
+            CountService.increment(CountService.SCOPE_ALL_EMPLOYEES);
         }
 
         //エラーを返却（エラーがなければ0件の空リスト）
@@ -168,6 +189,9 @@ public class EmployeeService extends ServiceBase {
         //バリデーションエラーがなければデータを更新する
         if (errors.size() == 0) {
             update(savedEmp);
+
+            //ログイン中のセッションに保持している従業員情報を入れ替えさせる
+            PrincipalRegistry.changed(savedEmp);
         }
 
         //エラーを返却（エラーがなければ0件の空リスト）
@@ -193,6 +217,9 @@ public class EmployeeService extends ServiceBase {
         //更新処理を行う
         update(savedEmp);
 
+        //ログイン中のセッションを無効にさせる
+        PrincipalRegistry.changed(savedEmp);
+
     }
 
     /**
@@ -237,9 +264,10 @@ public class EmployeeService extends ServiceBase {
      */
     private void create(EmployeeView ev) {
 
-        em.getTransaction().begin();
-        em.persist(EmployeeConverter.toModel(ev));
-        em.getTransaction().commit();
+        inTransaction("EmployeeService.create", () -> {
+            em.persist(EmployeeConverter.toModel(ev));
+            return 1;
+        });
 
     }
 
@@ -249,10 +277,11 @@ public class EmployeeService extends ServiceBase {
      */
     private void update(EmployeeView ev) {
 
-        em.getTransaction().begin();
-        Employee e = findOneInternal(ev.getId());
-        EmployeeConverter.copyViewToModel(e, ev);
-        em.getTransaction().commit();
+        inTransaction("EmployeeService.update", () -> {
+            Employee e = findOneInternal(ev.getId());
+            EmployeeConverter.copyViewToModel(e, ev);
+            return 1;
+        });
 
     }
 
@@ -3,32 +3,49 @@ package services;
 import java.time.LocalDateTime;
 import java.util.List;
 
-import actions.views.EmployeeConverter;
+import actions.views.EmployeePrincipal;
 import actions.views.EmployeeView;
-import actions.views.FollowConverter;
 import actions.views.FollowView;
-import actions.views.ReportConverter;
-import actions.views.ReportView;
+import actions.views.KeysetPage;
+import actions.views.ReportSummaryView;
+import actions.views.ResourceVersion;
 import constants.JpaConst;
-import models.Report;
+import models.Employee;
+import utils.PageCursor;
 
 /**
  * フォローした従業員テーブルの操作に関わる処理を行うクラス
  */
 public class FollowService extends ServiceBase {
     /**
-     * ログイン中の従業員がフォローした従業員が作成した日報を、指定されたページ数の一覧画面に表示する分取得しReportViewのリストで返却する
+     * ログイン中の従業員がフォローした従業員が作成した日報を、指定されたページ数の一覧画面に表示する分取得しReportSummaryViewのリストで返却する
      * @param ev フォローした従業員
      * @param page ページ数
      * @return 一覧画面に表示するデータのリスト
      */
-    public List<ReportView> getFollowAll(EmployeeView ev, int page){
-        List<Report> reports = em.createNamedQuery(JpaConst.Q_FOLLOW_GET_ALL, Report.class)
-                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, EmployeeConverter.toModel(ev))
+    public List<ReportSummaryView> getFollowAll(EmployeePrincipal ev, int page){
+        return em.createNamedQuery(JpaConst.Q_FOLLOW_GET_ALL, ReportSummaryView.class)
+                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, ev.getId()))
                 .setFirstResult(JpaConst.ROW_PER_PAGE * (page - 1))
                 .setMaxResults(JpaConst.ROW_PER_PAGE)
                 .getResultList();
-        return ReportConverter.toViewList(reports);
+    }
+
+    /**
+     * ログイン中の従業員がフォローした従業員が作成した日報を、カーソルが指すページの一覧画面に表示する分取得しReportSummaryViewのリストで返却する
+     * @param ev フォローした従業員
+     * @param cursor ページを指すカーソル(先頭ページの場合はnull)
+     * @return 一覧画面に表示するデータと前後のページを指すカーソル
+     */
+    public KeysetPage<ReportSummaryView> getFollowByCursor(EmployeePrincipal ev, PageCursor cursor) {
+        return getKeysetPage(
+                cursor,
+                name -> em.createNamedQuery(name, ReportSummaryView.class)
+                        .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, ev.getId())),
+                JpaConst.Q_FOLLOW_GET_ALL,
+                JpaConst.Q_FOLLOW_GET_OLDER,
+                JpaConst.Q_FOLLOW_GET_NEWER,
+                ReportSummaryView::getId);
     }
 
     /**
@@ -36,11 +53,11 @@ public class FollowService extends ServiceBase {
      * @param ev フォローした従業員
      * @return 日報の件数
      */
-    public long countFollowAll(EmployeeView ev) {
-        long count = (long) em.createNamedQuery(JpaConst.Q_FOLLOW_COUNT_ALL, Long.class)
-                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, EmployeeConverter.toModel(ev))
-                .getSingleResult();
-        return count;
+    public long countFollowAll(EmployeePrincipal ev) {
+        return CountService.get(CountService.timelineOf(ev.getId()),
+                () -> (long) em.createNamedQuery(JpaConst.Q_FOLLOW_COUNT_ALL, Long.class)
+                        .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, ev.getId()))
+                        .getSingleResult());
     }
 
     /**
@@ -48,33 +65,94 @@ public class FollowService extends ServiceBase {
      * @param ev フォローした従業員
      * @return フォロー従業員情報の件数
      */
-    public long countFolFoled(EmployeeView ev, EmployeeView flwedemp) {
+    public long countFolFoled(EmployeePrincipal ev, EmployeeView flwedemp) {
         long countflfled = (long) em.createNamedQuery(JpaConst.Q_FOLLOW_COUNT_FOLLOWED, Long.class)
-                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, EmployeeConverter.toModel(ev))
-                .setParameter(JpaConst.JPQL_PARM_FOLLOWED, EmployeeConverter.toModel(flwedemp))
+                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, ev.getId()))
+                .setParameter(JpaConst.JPQL_PARM_FOLLOWED, em.getReference(Employee.class, flwedemp.getId()))
                 .getSingleResult();
         return countflfled;
     }
 
+    /**
+     * ログイン中の従業員のタイムラインの版を取得する
+     * フォローした従業員が作成した日報の最終更新日時、従業員(氏名)の最終更新日時、日報の件数、
+     * フォローしている従業員の件数と最大のidから作成する
+     * (日報の件数はサーバーごとに保持した値のため、他のサーバーでのフォローの増減はDBの値で反映する)
+     * @param ev ログイン中の従業員
+     * @return タイムラインの版
+     */
+    public ResourceVersion getFollowVersion(EmployeePrincipal ev) {
+        //日報の最終更新日時と同じ問い合わせで、フォローしている従業員の件数・最大のidを取得する
+        Object[] row = em.createNamedQuery(JpaConst.Q_FOLLOW_MAX_UPDATED_AT, Object[].class)
+                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, ev.getId()))
+                .getSingleResult();
+        LocalDateTime reportsUpdatedAt = (LocalDateTime) row[0];
+        LocalDateTime employeesUpdatedAt = getEmployeesUpdatedAt();
+        long count = countFollowAll(ev);
+
+        return new ResourceVersion(
+                ResourceVersion.latest(reportsUpdatedAt, employeesUpdatedAt),
+                "timeline:" + ev.getId() + ":" + reportsUpdatedAt + ":" + employeesUpdatedAt + ":" + count
+                        + ":" + row[1] + ":" + row[2],
+                null);
+    }
+
+    /**
+     * ログイン中の従業員が指定したidの従業員をフォロー済みかどうかを返却する
+     * フォロー済みでないことが索引で判定できる場合はDBに問い合わせない
+     * @param ev フォローした従業員
+     * @param flwedempId フォローされた従業員のid
+     * @return フォロー済み:true フォローしていない:false
+     */
+    public boolean isFollowing(EmployeePrincipal ev, int flwedempId) {
+        return MembershipIndex.FOLLOWS.contains(ev.getId(), flwedempId,
+                () -> em.createNamedQuery(JpaConst.Q_FOLLOW_COUNT_FOLLOWED, Long.class)
+                        .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, ev.getId()))
+                        .setParameter(JpaConst.JPQL_PARM_FOLLOWED, em.getReference(Employee.class, flwedempId))
+                        .getSingleResult() > 0);
+    }
+
+    /**
+     * ログイン中の従業員が指定した従業員をフォロー済みかどうかを返却する
+     * フォロー済みでないことが索引で判定できる場合はDBに問い合わせない
+     * @param ev フォローした従業員
+     * @param flwedemp フォローされた従業員
+     * @return フォロー済み:true フォローしていない:false
+     */
+    public boolean isFollowing(EmployeePrincipal ev, EmployeeView flwedemp) {
+        return MembershipIndex.FOLLOWS.contains(ev.getId(), flwedemp.getId(),
+                () -> countFolFoled(ev, flwedemp) > 0);
+    }
+
     /**
      * この日報の作成者をフォローする、リンクが押下された際に、フォローした従業員テーブルに登録する
+     * 既にフォロー済みの場合は何もしない
      * @param fv フォローした従業員の登録内容
      */
     public void create(FollowView fv) {
         LocalDateTime ldt = LocalDateTime.now();
         fv.setCreatedAt(ldt);
         fv.setUpdatedAt(ldt);
-        createInternal(fv);
+        int inserted = createInternal(fv);
+
+        MembershipIndex.FOLLOWS.add(fv.getFlwemp().getId(), fv.getFlwedemp().getId());
+        if (inserted > 0) {
+            //フォローした従業員の日報がタイムラインに加わるため、件数を取得し直させる
+            CountService.invalidate(CountService.timelineOf(fv.getFlwemp().getId()));
+        }
     }
 
     /**
-     * フォローした従業員データを1件登録する
+     * フォローした従業員データを1件登録する(一意制約により、フォロー済みの場合は登録されない)
      * @param fv フォローした従業員
+     * @return 登録した件数
      */
-    private void createInternal(FollowView fv) {
-        em.getTransaction().begin();
-        em.persist(FollowConverter.toModel(fv));
-        em.getTransaction().commit();
+    private int createInternal(FollowView fv) {
+        return inTransaction("FollowService.createInternal", () -> em.createNamedQuery(JpaConst.Q_FOLLOW_INSERT_IF_ABSENT)
+                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, fv.getFlwemp().getId())
+                .setParameter(JpaConst.JPQL_PARM_FOLLOWED, fv.getFlwedemp().getId())
+                .setParameter(JpaConst.JPQL_PARM_CREATED_AT, fv.getCreatedAt())
+                .executeUpdate());
     }
 
 }
@@ -3,14 +3,17 @@ package services;
 import java.time.LocalDateTime;
 import java.util.List;
 
-import actions.views.EmployeeConverter;
-import actions.views.EmployeeView;
+import actions.views.EmployeePrincipal;
 import actions.views.GoodConverter;
 import actions.views.GoodView;
+import actions.views.KeysetPage;
 import actions.views.ReportConverter;
 import actions.views.ReportView;
 import constants.JpaConst;
+import models.Employee;
 import models.Good;
+import models.Report;
+import utils.PageCursor;
 
 /**
  * いいねした従業員テーブルの操作に関わる処理を行うクラス
@@ -31,16 +34,34 @@ public class GoodService extends ServiceBase {
         return GoodConverter.toViewList(goods);
     }
 
+    /**
+     * 指定した日報にいいねした従業員を、カーソルが指すページの一覧画面に表示する分取得しGoodViewのリストで返却する
+     * @param report 日報
+     * @param cursor ページを指すカーソル(先頭ページの場合はnull)
+     * @return 一覧画面に表示するデータと前後のページを指すカーソル
+     */
+    public KeysetPage<GoodView> getMineByCursor(ReportView report, PageCursor cursor) {
+        KeysetPage<Good> goods = getKeysetPage(
+                cursor,
+                name -> em.createNamedQuery(name, Good.class)
+                        .setParameter(JpaConst.JPQL_PARM_REPORT, ReportConverter.toModel(report)),
+                JpaConst.Q_GOOD_GET_ALL_MINE,
+                JpaConst.Q_GOOD_GET_MINE_OLDER,
+                JpaConst.Q_GOOD_GET_MINE_NEWER,
+                Good::getId);
+        return goods.withItems(GoodConverter.toViewList(goods.getItems()));
+    }
+
     /**
      * 指定した日報にいいねした従業員の件数を取得し、返却する
      * @param report
      * @return 従業員の件数
      */
     public long countAllMine(ReportView report) {
-        long count = (long) em.createNamedQuery(JpaConst.Q_GOOD_COUNT_ALL_MINE, Long.class)
-                .setParameter(JpaConst.JPQL_PARM_REPORT, ReportConverter.toModel(report))
-                .getSingleResult();
-        return count;
+        return CountService.get(CountService.goodsOf(report.getId()),
+                () -> (long) em.createNamedQuery(JpaConst.Q_GOOD_COUNT_ALL_MINE, Long.class)
+                        .setParameter(JpaConst.JPQL_PARM_REPORT, ReportConverter.toModel(report))
+                        .getSingleResult());
     }
 
     /**
@@ -48,33 +69,128 @@ public class GoodService extends ServiceBase {
      * @param report 日報
      * @return 従業員の件数
      */
-    public long countRepAndEmp(ReportView report, EmployeeView employee) {
+    public long countRepAndEmp(ReportView report, EmployeePrincipal employee) {
         long countrepandemp = (long) em.createNamedQuery(JpaConst.Q_GOOD_COUNT_REP_AND_EMP, Long.class)
                 .setParameter(JpaConst.JPQL_PARM_REPORT, ReportConverter.toModel(report))
-                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, EmployeeConverter.toModel(employee))
+                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, employee.getId()))
                 .getSingleResult();
         return countrepandemp;
     }
 
     /**
-     * いいねするリンクが押下された際に、いいねした従業員テーブルに登録する
-     * @param gv いいねした従業員の登録内容
-     * @return 空のエラーのリスト
+     * ログインしている従業員が指定した日報にいいね済みかどうかを返却する
+     * いいね済みでないことが索引で判定できる場合はDBに問い合わせない
+     * @param report 日報
+     * @param employee ログインしている従業員
+     * @return いいね済み:true いいねしていない:false
      */
-    public void create(GoodView gv) {
+    public boolean hasLiked(ReportView report, EmployeePrincipal employee) {
+        return MembershipIndex.GOODS.contains(employee.getId(), report.getId(),
+                () -> countRepAndEmp(report, employee) > 0);
+    }
+
+    /**
+     * ログインしている従業員が指定したidの日報にいいね済みかどうかを返却する
+     * いいね済みでないことが索引で判定できる場合はDBに問い合わせない
+     * @param reportId 日報のid
+     * @param employee ログインしている従業員
+     * @return いいね済み:true いいねしていない:false
+     */
+    public boolean hasLiked(int reportId, EmployeePrincipal employee) {
+        return MembershipIndex.GOODS.contains(employee.getId(), reportId,
+                () -> em.createNamedQuery(JpaConst.Q_GOOD_COUNT_REP_AND_EMP, Long.class)
+                        .setParameter(JpaConst.JPQL_PARM_REPORT, em.getReference(Report.class, reportId))
+                        .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, employee.getId()))
+                        .getSingleResult() > 0);
+    }
+
+    /**
+     * いいねするリンクが押下された際に、日報のいいね数を1加算し、いいねした従業員テーブルに登録する
+     * @param reportId いいねする日報のid
+     * @param employee いいねした従業員
+     * 既にいいね済みの場合は何もしない(いいね数も加算しない)
+     * @return いいねした(既にいいね済み、まとめて反映する設定で受け付けた場合を含む):true 日報が存在しない:false
+     */
+    public boolean like(int reportId, EmployeePrincipal employee) {
+        //まとめて反映する設定の場合はログへの書き込みで受け付ける(反映が遅れている場合は直接登録する)
+        GoodWriteBehind writeBehind = GoodWriteBehind.getInstance();
+        if (writeBehind != null) {
+            //存在しない日報へのいいねを受け付けて索引に追加しないよう、先に確認する
+            if (!reportExists(reportId)) {
+                return false;
+            }
+            if (writeBehind.enqueue(reportId, employee.getId())) {
+                MembershipIndex.GOODS.add(employee.getId(), reportId);
+                return true;
+            }
+        }
+
         LocalDateTime ldt = LocalDateTime.now();
-        gv.setCreatedAt(ldt);
-        gv.setUpdatedAt(ldt);
-        createInternal(gv);
+        LikeResult result = likeInternal(reportId, employee.getId(), ldt);
+        if (result == LikeResult.NO_REPORT) {
+            return false;
+        }
+
+        MembershipIndex.GOODS.add(employee.getId(), reportId);
+        if (result == LikeResult.LIKED) {
+            //一覧画面に表示する件数に反映する
+            CountService.increment(CountService.goodsOf(reportId));
+        }
+        return true;
+    }
+
+    /**
+     * 1つのトランザクションで、いいね数の加算(UPDATE ... SET reports_good = reports_good + 1)と
+     * いいねした従業員の登録を行う
+     * 日報を読み込まずにDB上で加算するため、同時にいいねされても加算が失われない
+     * 先に日報の行を更新(ロック)してから登録するため、同じ日報への同時のいいねはデッドロックせずに順に処理される
+     * いいね済みの場合は一意制約により登録されないため、加算を取り消す
+     * @param reportId 日報のid
+     * @param employeeId いいねした従業員のid
+     * @param ldt 登録日時
+     * @return 登録結果
+     */
+    private LikeResult likeInternal(int reportId, int employeeId, LocalDateTime ldt) {
+        return inTransaction("GoodService.likeInternal", () -> {
+            int updated = em.createNamedQuery(JpaConst.Q_REP_ADD_GOOD)
+                    .setParameter(JpaConst.JPQL_PARM_UPDATED_AT, ldt)
+                    .setParameter(JpaConst.JPQL_PARM_ID, reportId)
+                    .executeUpdate();
+            if (updated == 0) {
+                em.getTransaction().setRollbackOnly();
+                return LikeResult.NO_REPORT;
+            }
+
+            int inserted = em.createNamedQuery(JpaConst.Q_GOOD_INSERT_IF_ABSENT)
+                    .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, employeeId)
+                    .setParameter(JpaConst.JPQL_PARM_REPORT, reportId)
+                    .setParameter(JpaConst.JPQL_PARM_CREATED_AT, ldt)
+                    .executeUpdate();
+            if (inserted == 0) {
+                em.getTransaction().setRollbackOnly();
+                return LikeResult.ALREADY_LIKED;
+            }
+            return LikeResult.LIKED;
+        }, result -> 2); //コミットするのはいいね数の加算と登録の2行を書き込んだときだけ
+    }
+
+    /**
+     * 指定したidの日報が存在するかどうかを返却する
+     * @param reportId 日報のid
+     * @return 存在する:true 存在しない:false
+     */
+    private boolean reportExists(int reportId) {
+        return em.createNamedQuery(JpaConst.Q_REP_COUNT_BY_ID, Long.class)
+                .setParameter(JpaConst.JPQL_PARM_ID, reportId)
+                .getSingleResult() > 0;
     }
 
     /**
-     * 日報データを1件登録する
-     * @param rv 日報データ
+     * いいねの登録結果
      */
-    private void createInternal(GoodView gv) {
-        em.getTransaction().begin();
-        em.persist(GoodConverter.toModel(gv));
-        em.getTransaction().commit();
+    private enum LikeResult {
+        LIKED, //いいねした
+        ALREADY_LIKED, //既にいいね済み
+        NO_REPORT //日報が存在しない
     }
 }
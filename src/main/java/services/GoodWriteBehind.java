@@ -0,0 +1,503 @@
+package services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import constants.JpaConst;
+import utils.DBUtil;
+
+/**
+ * いいねの書き込みを遅延させてまとめて反映するクラス(write-behind)
+ * いいねはローカルの追記専用ログに書き込んで永続化した時点で受け付け、日報ごとにメモリで集計する。
+ * ログの永続化(fsync)は追記のロックの外で行い、同時に追記されたいいねは1回のfsyncでまとめて永続化する(group commit)。
+ * 一定間隔で、日報ごとに1回のいいね数の加算と、いいねした従業員の複数行INSERTをまとめて反映する。
+ * 反映前に停止した場合は、次回起動時にログから読み込んで反映する。
+ * いいねした従業員は INSERT IGNORE で登録し、実際に登録できた件数だけいいね数を加算するため、
+ * 反映済みのログを再度読み込んでも二重に反映されない。
+ */
+public class GoodWriteBehind {
+
+    private static final Logger LOGGER = Logger.getLogger(GoodWriteBehind.class.getName());
+
+    private static final String SEGMENT_PREFIX = "goods-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    //1回のINSERTで登録する行数の上限
+    private static final int MAX_ROWS_PER_INSERT = 500;
+
+    private static GoodWriteBehind instance;
+
+    private final DataSource dataSource;
+    private final Path dir;
+    private final long maxLagMillis;
+    private final ScheduledExecutorService flusher;
+
+    //受け付けたいいねの追記・集計を保護するロック
+    private final Object lock = new Object();
+    //反映処理を1つずつ実行するためのロック
+    private final Object flushLock = new Object();
+    //ログの永続化(fsync)を1つずつ実行するためのロック
+    private final Object syncLock = new Object();
+
+    //ログに追記したいいねの通番(lockで保護して採番する)
+    private long appendedSeq;
+    //永続化が完了したいいねの通番
+    private final AtomicLong syncedSeq = new AtomicLong();
+
+    //日報のid → (いいねした従業員のid → いいねした日時)
+    private Map<Integer, Map<Integer, Long>> pending = new TreeMap<>();
+    private long pendingSince;
+    private long inFlightSince;
+
+    private FileChannel segment;
+    private Path segmentPath;
+    private long segmentSeq;
+    //DBへの反映が完了したら削除するログファイル
+    private final List<Path> closedSegments = new ArrayList<>();
+
+    private GoodWriteBehind(DataSource dataSource, Path dir, long maxLagMillis) {
+        this.dataSource = dataSource;
+        this.dir = dir;
+        this.maxLagMillis = maxLagMillis;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "good-write-behind");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * persistence.xmlで有効になっている場合に開始する
+     * 前回反映されずに残っているログがあれば読み込み、最初の反映で登録する
+     */
+    public static synchronized void startIfEnabled() {
+        if (instance != null
+                || !Boolean.parseBoolean(DBUtil.getProperty(JpaConst.PROP_GOOD_WRITE_BEHIND, "false"))) {
+            return;
+        }
+
+        String configuredDir = DBUtil.getProperty(JpaConst.PROP_GOOD_LOG_DIR, "");
+        Path dir = configuredDir.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), JpaConst.PERSISTENCE_UNIT_NAME, "goods")
+                : Paths.get(configuredDir);
+
+        GoodWriteBehind writeBehind = new GoodWriteBehind(
+                DBUtil.getDataSource(),
+                dir,
+                DBUtil.getLongProperty(JpaConst.PROP_GOOD_MAX_LAG, 10000));
+        try {
+            synchronized (writeBehind.lock) {
+                Files.createDirectories(dir);
+                writeBehind.recover();
+                writeBehind.openSegment();
+            }
+        } catch (IOException e) {
+            writeBehind.flusher.shutdownNow();
+            throw new IllegalStateException("いいねのログを開けません: " + dir, e);
+        }
+
+        //読み込んだ未反映のいいねは最初の反映で登録する
+        long interval = DBUtil.getLongProperty(JpaConst.PROP_GOOD_FLUSH_INTERVAL, 1000);
+        writeBehind.flusher.scheduleWithFixedDelay(writeBehind::flushQuietly, 0, interval, TimeUnit.MILLISECONDS);
+        instance = writeBehind;
+        LOGGER.info("いいねの遅延書き込みを開始しました(ログ: " + dir + ")");
+    }
+
+    /**
+     * 有効な場合はインスタンスを返却する
+     * @return インスタンス 無効な場合はnull
+     */
+    public static synchronized GoodWriteBehind getInstance() {
+        return instance;
+    }
+
+    /**
+     * 未反映のいいねを反映して停止する
+     */
+    public static synchronized void shutdown() {
+        if (instance == null) {
+            return;
+        }
+        instance.flusher.shutdown();
+        try {
+            instance.flusher.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        instance.flushQuietly();
+        synchronized (instance.lock) {
+            instance.closeSegment();
+        }
+        instance = null;
+    }
+
+    /**
+     * いいねをログに書き込んで受け付ける
+     * 反映が遅れて最大遅延時間を超えている場合、またはログに書き込めない場合は受け付けない
+     * @param reportId いいねする日報のid
+     * @param employeeId いいねした従業員のid
+     * @return 受け付けた:true 受け付けなかった(呼び出し元で直接登録する):false
+     */
+    public boolean enqueue(int reportId, int employeeId) {
+        long now = System.currentTimeMillis();
+        long seq;
+        FileChannel channel;
+        synchronized (lock) {
+            long oldest = oldestUnflushed();
+            if (segment == null || oldest > 0 && now - oldest > maxLagMillis) {
+                return false;
+            }
+
+            try {
+                String line = reportId + "\t" + employeeId + "\t" + now + "\n";
+                ByteBuffer buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+                while (buf.hasRemaining()) {
+                    segment.write(buf);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "いいねのログに書き込めません", e);
+                return false;
+            }
+
+            //永続化する前に反映されても、INSERT IGNOREのため呼び出し元で直接登録し直しても二重にならない
+            add(reportId, employeeId, now);
+            seq = ++appendedSeq;
+            channel = segment;
+        }
+
+        try {
+            sync(channel, seq);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "いいねのログを永続化できません", e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 指定した通番までの追記を永続化する
+     * 他のスレッドのfsyncで永続化済みであれば何もせず、そうでなければその時点までの追記をまとめて永続化する
+     */
+    private void sync(FileChannel channel, long seq) throws IOException {
+        synchronized (syncLock) {
+            if (syncedSeq.get() >= seq) {
+                return;
+            }
+            long target;
+            synchronized (lock) {
+                if (segment != channel) {
+                    //ログの切り替えで閉じられた場合は、閉じる前に永続化されている
+                    if (syncedSeq.get() >= seq) {
+                        return;
+                    }
+                    throw new IOException("いいねのログが永続化されずに閉じられました");
+                }
+                target = appendedSeq;
+            }
+            try {
+                channel.force(false);
+            } catch (ClosedChannelException e) {
+                //ログの切り替えで閉じられた場合は、閉じる前に永続化されている
+                if (syncedSeq.get() >= seq) {
+                    return;
+                }
+                throw e;
+            }
+            syncedSeq.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    /**
+     * 受け付けたいいねをDBに反映する
+     * 失敗した場合は集計を戻し、ログも削除せずに次回の反映で再試行する
+     * 未反映のいいねがない場合は、残っているログ(起動時に読み込んだ有効な行のないログ等)を削除する
+     */
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            Map<Integer, Map<Integer, Long>> batch;
+            List<Path> segments;
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    //反映中の分はないため、閉じたログは全て反映済み
+                    segments = new ArrayList<>(closedSegments);
+                    closedSegments.clear();
+                    batch = null;
+                } else {
+                    batch = pending;
+                    pending = new TreeMap<>();
+                    inFlightSince = pendingSince;
+                    pendingSince = 0;
+                    try {
+                        closeSegment();
+                        openSegment();
+                    } catch (IOException e) {
+                        LOGGER.log(Level.WARNING, "いいねのログを切り替えられません", e);
+                    }
+                    segments = new ArrayList<>(closedSegments);
+                }
+            }
+            if (batch == null) {
+                deleteSegments(segments);
+                return;
+            }
+
+            try {
+                write(batch);
+            } catch (SQLException e) {
+                synchronized (lock) {
+                    //反映できなかった分を集計に戻す
+                    batch.forEach((reportId, goods) -> goods.forEach((employeeId, at) -> add(reportId, employeeId, at)));
+                    pendingSince = pendingSince == 0 ? inFlightSince : Math.min(pendingSince, inFlightSince);
+                    inFlightSince = 0;
+                }
+                throw e;
+            }
+
+            synchronized (lock) {
+                inFlightSince = 0;
+                closedSegments.removeAll(segments);
+            }
+            deleteSegments(segments);
+        }
+    }
+
+    /**
+     * 反映済みのログを削除する
+     */
+    private void deleteSegments(List<Path> segments) {
+        for (Path p : segments) {
+            try {
+                Files.deleteIfExists(p);
+            } catch (IOException e) {
+                //削除できなくても、再度読み込んだ際に二重に反映されることはない
+                LOGGER.log(Level.WARNING, "反映済みのいいねのログを削除できません: " + p, e);
+            }
+        }
+    }
+
+    /**
+     * 日報ごとに、いいねした従業員の複数行INSERTと、登録できた件数分のいいね数の加算を1つのトランザクションで行う
+     * 行ロックの順序を揃えるため、日報のidの昇順に処理する
+     */
+    private void write(Map<Integer, Map<Integer, Long>> batch) throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            Map<Integer, Integer> added = new TreeMap<>();
+            try {
+                lockReports(con, batch.keySet());
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            }
+            try (PreparedStatement update = con.prepareStatement(
+                    "UPDATE " + JpaConst.TABLE_REP
+                            + " SET " + JpaConst.REP_COL_REP_GOOD + " = " + JpaConst.REP_COL_REP_GOOD + " + ?, "
+                            + JpaConst.REP_COL_UPDATED_AT + " = ?"
+                            + " WHERE " + JpaConst.REP_COL_ID + " = ?")) {
+
+                for (Map.Entry<Integer, Map<Integer, Long>> e : batch.entrySet()) {
+                    int inserted = insertGoods(con, e.getKey(), e.getValue());
+                    if (inserted > 0) {
+                        update.setInt(1, inserted);
+                        update.setTimestamp(2, new Timestamp(Collections.max(e.getValue().values())));
+                        update.setInt(3, e.getKey());
+                        update.addBatch();
+                        added.put(e.getKey(), inserted);
+                    }
+                }
+                if (!added.isEmpty()) {
+                    update.executeBatch();
+                }
+                con.commit();
+            } catch (SQLException e) {
+                con.rollback();
+                throw e;
+            }
+
+            //一覧画面に表示する件数を取得し直させる
+            added.keySet().forEach(reportId -> CountService.invalidate(CountService.goodsOf(reportId)));
+        }
+    }
+
+    /**
+     * いいねを反映する日報の行を、idの昇順に先にロックする
+     * いいねした従業員の登録(外部キーによる共有ロック)の後にいいね数を更新すると、
+     * 同じ日報に直接いいねする処理(先に更新してから登録する)とデッドロックするため
+     */
+    private void lockReports(Connection con, Collection<Integer> reportIds) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT " + JpaConst.REP_COL_ID + " FROM " + JpaConst.TABLE_REP
+                + " WHERE " + JpaConst.REP_COL_ID + " IN (");
+        for (int i = 0; i < reportIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(") ORDER BY " + JpaConst.REP_COL_ID + " FOR UPDATE");
+
+        try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+            int idx = 1;
+            for (Integer id : reportIds) {
+                ps.setInt(idx++, id);
+            }
+            ps.executeQuery().close();
+        }
+    }
+
+    /**
+     * 1つの日報に対するいいねした従業員を登録する
+     * 既にいいね済みの従業員、存在しない日報・従業員の行は登録されない
+     * @return 登録できた件数
+     */
+    private int insertGoods(Connection con, int reportId, Map<Integer, Long> goods) throws SQLException {
+        List<Map.Entry<Integer, Long>> rows = new ArrayList<>(goods.entrySet());
+        int inserted = 0;
+
+        for (int from = 0; from < rows.size(); from += MAX_ROWS_PER_INSERT) {
+            List<Map.Entry<Integer, Long>> chunk = rows.subList(from, Math.min(rows.size(), from + MAX_ROWS_PER_INSERT));
+
+            StringBuilder sql = new StringBuilder("INSERT IGNORE INTO " + JpaConst.TABLE_GOOD + " ("
+                    + JpaConst.GOOD_COL_EMP + ", " + JpaConst.GOOD_COL_REP + ", "
+                    + JpaConst.GOOD_COL_CREATED_AT + ", " + JpaConst.GOOD_COL_UPDATED_AT + ") VALUES ");
+            for (int i = 0; i < chunk.size(); i++) {
+                sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+            }
+
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                int idx = 1;
+                for (Map.Entry<Integer, Long> row : chunk) {
+                    Timestamp at = new Timestamp(row.getValue());
+                    ps.setInt(idx++, row.getKey());
+                    ps.setInt(idx++, reportId);
+                    ps.setTimestamp(idx++, at);
+                    ps.setTimestamp(idx++, at);
+                }
+                inserted += ps.executeUpdate();
+            }
+        }
+        return inserted;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "いいねをDBに反映できませんでした。次回再試行します", e);
+        }
+    }
+
+    /**
+     * 前回の停止時に残っていたログを読み込み、未反映のいいねとして集計する
+     * 書き込み途中で停止した最終行など、不完全な行は読み飛ばす
+     */
+    private void recover() throws IOException {
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            ds.forEach(found::add);
+        }
+        Collections.sort(found);
+
+        int events = 0;
+        for (Path p : found) {
+            for (String line : Files.readAllLines(p, StandardCharsets.US_ASCII)) {
+                String[] cols = line.split("\t");
+                if (cols.length != 3) {
+                    continue;
+                }
+                try {
+                    add(Integer.parseInt(cols[0]), Integer.parseInt(cols[1]), Long.parseLong(cols[2]));
+                    events++;
+                } catch (NumberFormatException e) {
+                    //不完全な行は読み飛ばす
+                }
+            }
+            segmentSeq = Math.max(segmentSeq, seqOf(p));
+            closedSegments.add(p);
+        }
+
+        if (events > 0) {
+            LOGGER.info("未反映のいいね" + events + "件をログから読み込みました");
+        }
+    }
+
+    private void add(int reportId, int employeeId, long at) {
+        pending.computeIfAbsent(reportId, k -> new TreeMap<>()).merge(employeeId, at, Math::min);
+        if (pendingSince == 0 || at < pendingSince) {
+            pendingSince = at;
+        }
+    }
+
+    private long oldestUnflushed() {
+        if (pendingSince == 0) {
+            return inFlightSince;
+        }
+        return inFlightSince == 0 ? pendingSince : Math.min(pendingSince, inFlightSince);
+    }
+
+    /**
+     * 追記先のログファイルを新しく作成する
+     */
+    private void openSegment() throws IOException {
+        segmentSeq++;
+        segmentPath = dir.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, segmentSeq, SEGMENT_SUFFIX));
+        segment = FileChannel.open(segmentPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 追記先のログファイルを閉じ、DBへの反映後に削除するファイルとして登録する(空の場合はすぐに削除する)
+     */
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            //追記先を切り替える前に、まだ永続化していない追記を永続化する
+            segment.force(false);
+            syncedSeq.accumulateAndGet(appendedSeq, Math::max);
+            long size = segment.size();
+            segment.close();
+            if (size == 0) {
+                Files.deleteIfExists(segmentPath);
+            } else {
+                closedSegments.add(segmentPath);
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "いいねのログを閉じられません", e);
+            closedSegments.add(segmentPath);
+        }
+        segment = null;
+        segmentPath = null;
+    }
+
+    private static long seqOf(Path p) {
+        String name = p.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+import constants.JpaConst;
+import utils.BloomFilter;
+import utils.DBUtil;
+
+/**
+ * 「従業員Xが日報Yにいいね済みか」「従業員Xが従業員Zをフォロー済みか」を、DBに問い合わせずに判定するための索引
+ * サーバーごとにメモリ上のBloomフィルタで保持し、含まれていないと判定できた場合はDBに問い合わせない。
+ * 含まれている可能性がある場合は、確認済みの組み合わせから探し、なければDBで正確に確認する。
+ * 他のサーバーで登録された組み合わせは、一定間隔で前回読み込んだidの少し手前からの行を読み込んで反映する。
+ * idは採番順にコミットされるとは限らないため、手前の範囲を読み直し、さらに一定間隔で全件から作り直して読み落としを補う。
+ * 反映されるまでの間は未登録と判定されることがあるが、いいね・フォローの登録は重複しても1件にまとめられる。
+ */
+public class MembershipIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(MembershipIndex.class.getName());
+
+    //いいねした従業員(従業員のid, 日報のid)
+    public static final MembershipIndex GOODS = new MembershipIndex(
+            JpaConst.TABLE_GOOD, JpaConst.GOOD_COL_ID, JpaConst.GOOD_COL_EMP, JpaConst.GOOD_COL_REP);
+
+    //フォローした従業員(フォローした従業員のid, フォローされた従業員のid)
+    public static final MembershipIndex FOLLOWS = new MembershipIndex(
+            JpaConst.TABLE_FOLLOW, JpaConst.FOLLOW_COL_ID, JpaConst.FOLLOW_COL_EMP, JpaConst.FOLLOWED_COL_EMP);
+
+    //Bloomフィルタの誤判定率
+    private static final double FPP = 0.01;
+    //Bloomフィルタの容量の最小値(件数)
+    private static final long MIN_CAPACITY = 100_000;
+    //確認済みの組み合わせを保持する件数の上限
+    private static final int MAX_CONFIRMED = 100_000;
+    //前回読み込んだidより手前を読み直す範囲(件数)
+    private static final long RESCAN_IDS = 1000;
+
+    private static ScheduledExecutorService syncer;
+    private static long rebuildInterval;
+
+    private final String table;
+    private final String idColumn;
+    private final String leftColumn;
+    private final String rightColumn;
+
+    //DBから読み込むまではnull(全てDBで確認する)
+    private volatile BloomFilter filter;
+    private volatile long capacity;
+    //Bloomフィルタに追加した件数(add()と定期的な反映が並行して更新する)
+    private final AtomicLong size = new AtomicLong();
+    private volatile long lastId;
+    private volatile long rebuiltAt;
+
+    //add()とBloomフィルタの差し替えを排他する
+    private final Object lock = new Object();
+    //このサーバーで追加した組み合わせ(直近2回の作り直しの間の分)
+    //まとめて反映する設定では、DBに登録される前に追加されるため、作り直した索引にも追加し直す
+    private Set<Long> added = ConcurrentHashMap.newKeySet();
+    private Set<Long> previousAdded = ConcurrentHashMap.newKeySet();
+
+    //確認済みの組み合わせ(いいね・フォローは取り消せないため、一度確認できれば以後も登録済み)
+    private final Map<Long, Boolean> confirmed = new ConcurrentHashMap<>();
+
+    private MembershipIndex(String table, String idColumn, String leftColumn, String rightColumn) {
+        this.table = table;
+        this.idColumn = idColumn;
+        this.leftColumn = leftColumn;
+        this.rightColumn = rightColumn;
+    }
+
+    /**
+     * 全ての索引について、DBからの読み込みと定期的な反映を開始する
+     * 読み込みは別スレッドで行い、完了するまではDBで確認する
+     */
+    public static synchronized void startAll() {
+        if (syncer != null) {
+            return;
+        }
+        DataSource dataSource = DBUtil.getDataSource();
+        long interval = DBUtil.getLongProperty(JpaConst.PROP_MEMBERSHIP_SYNC_INTERVAL, 5000);
+        rebuildInterval = DBUtil.getLongProperty(JpaConst.PROP_MEMBERSHIP_REBUILD_INTERVAL, 600_000);
+
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "membership-index-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            GOODS.syncQuietly(dataSource);
+            FOLLOWS.syncQuietly(dataSource);
+        }, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 定期的な反映を停止する
+     */
+    public static synchronized void shutdownAll() {
+        if (syncer != null) {
+            syncer.shutdownNow();
+            syncer = null;
+        }
+    }
+
+    /**
+     * 組み合わせが登録済みかどうかを返却する
+     * @param left 従業員のid(いいねした従業員、フォローした従業員)
+     * @param right 日報のid、またはフォローされた従業員のid
+     * @param exact DBで正確に確認する関数(含まれている可能性がある場合だけ呼び出す)
+     * @return 登録済み:true 未登録:false
+     */
+    public boolean contains(int left, int right, BooleanSupplier exact) {
+        long key = key(left, right);
+
+        //確認済みであれば、Bloomフィルタへの反映を待たずに登録済みと判定する
+        if (confirmed.containsKey(key)) {
+            return true;
+        }
+        BloomFilter f = filter;
+        if (f != null && !f.mightContain(key)) {
+            return false;
+        }
+
+        boolean found = exact.getAsBoolean();
+        if (found) {
+            remember(key);
+        }
+        return found;
+    }
+
+    /**
+     * このサーバーで登録した組み合わせを追加する
+     * @param left 従業員のid(いいねした従業員、フォローした従業員)
+     * @param right 日報のid、またはフォローされた従業員のid
+     */
+    public void add(int left, int right) {
+        long key = key(left, right);
+        synchronized (lock) {
+            BloomFilter f = filter;
+            if (f != null) {
+                f.put(key);
+                size.incrementAndGet();
+            }
+            added.add(key);
+        }
+        remember(key);
+    }
+
+    private void remember(long key) {
+        if (confirmed.size() >= MAX_CONFIRMED) {
+            confirmed.clear();
+        }
+        confirmed.put(key, Boolean.TRUE);
+    }
+
+    private void syncQuietly(DataSource dataSource) {
+        try {
+            sync(dataSource);
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, table + "の索引を更新できませんでした。次回再試行します", e);
+        }
+    }
+
+    /**
+     * 前回読み込んだidの手前(RESCAN_IDS件)からの行をBloomフィルタに追加する
+     * 初回、件数が容量を超えた場合、または前回の作り直しから一定時間が経った場合は、全件を読み込んでBloomフィルタを作り直す
+     */
+    private void sync(DataSource dataSource) throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            if (filter == null || size.get() > capacity || System.currentTimeMillis() - rebuiltAt > rebuildInterval) {
+                rebuild(con);
+                return;
+            }
+
+            //追加済みの行を読み直した分は件数に含めない
+            long[] result = load(con, filter, Math.max(0, lastId - RESCAN_IDS), lastId);
+            lastId = Math.max(lastId, result[0]);
+            size.addAndGet(result[1]);
+        }
+    }
+
+    private void rebuild(Connection con) throws SQLException {
+        long count;
+        try (PreparedStatement ps = con.prepareStatement("SELECT COUNT(*) FROM " + table);
+                ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            count = rs.getLong(1);
+        }
+
+        long newCapacity = Math.max(MIN_CAPACITY, count * 2);
+        BloomFilter f = new BloomFilter(newCapacity, FPP);
+        long[] result = load(con, f, 0, 0);
+
+        //読み込んでいる間にadd()された分、DBに登録される前の分を追加してから差し替える
+        synchronized (lock) {
+            long replayed = 0;
+            for (Set<Long> keys : List.of(previousAdded, added)) {
+                for (long key : keys) {
+                    f.put(key);
+                    replayed++;
+                }
+            }
+            previousAdded = added;
+            added = ConcurrentHashMap.newKeySet();
+
+            capacity = newCapacity;
+            lastId = result[0];
+            size.set(result[1] + replayed);
+            filter = f;
+        }
+        rebuiltAt = System.currentTimeMillis();
+        LOGGER.info(table + "の索引を作成しました(" + size.get() + "件)");
+    }
+
+    /**
+     * 指定したidより大きい行を読み込んでBloomフィルタに追加する
+     * @param afterId このidより大きい行を読み込む
+     * @param countAfterId このidより大きい行を新たに追加した件数として数える
+     * @return 読み込んだ行の最大のid、新たに追加した件数
+     */
+    private long[] load(Connection con, BloomFilter f, long afterId, long countAfterId) throws SQLException {
+        long maxId = afterId;
+        long count = 0;
+        try (PreparedStatement ps = con.prepareStatement("SELECT " + idColumn + ", " + leftColumn + ", " + rightColumn
+                + " FROM " + table + " WHERE " + idColumn + " > ? ORDER BY " + idColumn)) {
+            ps.setLong(1, afterId);
+            ps.setFetchSize(Integer.MIN_VALUE); //MySQLで1行ずつ読み込む
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    maxId = rs.getLong(1);
+                    f.put(key(rs.getInt(2), rs.getInt(3)));
+                    if (maxId > countAfterId) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return new long[] { maxId, count };
+    }
+
+    private static long key(int left, int right) {
+        return ((long) left << 32) | (right & 0xffffffffL);
+    }
+}
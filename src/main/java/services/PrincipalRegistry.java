@@ -0,0 +1,149 @@
+package services;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import actions.views.EmployeePrincipal;
+import actions.views.EmployeeView;
+import constants.AttributeConst;
+import constants.JpaConst;
+import utils.DBUtil;
+
+/**
+ * セッション(またはトークン)に保持したログイン中の従業員(EmployeePrincipal)を、従業員情報の更新に追従させるための表
+ * 版は従業員の更新日時(employees.updated_at)から求めるため、全サーバーで共通で、再起動しても変わらない。
+ * リクエストごとにセッションの版とDBの版を比較して入れ替えるが、DBの版は従業員ごとに一定時間だけ保持し、
+ * 保持している間はDBを参照しない(他のサーバーでの更新・論理削除は、最大でその時間だけ遅れて反映される)。
+ */
+public class PrincipalRegistry {
+
+    private static final String SELECT = "SELECT "
+            + JpaConst.EMP_COL_CODE + ", " + JpaConst.EMP_COL_NAME + ", "
+            + JpaConst.EMP_COL_ADMIN_FLAG + ", " + JpaConst.EMP_COL_BOSS_FLAG + ", "
+            + JpaConst.EMP_COL_DELETE_FLAG + ", " + JpaConst.EMP_COL_UPDATED_AT
+            + " FROM " + JpaConst.TABLE_EMP + " WHERE " + JpaConst.EMP_COL_ID + " = ?";
+
+    //従業員のid → DBから読み込んだ版
+    private static final Map<Integer, Entry> LATEST = new ConcurrentHashMap<>();
+
+    private static volatile long checkInterval = -1;
+
+    private PrincipalRegistry() {
+    }
+
+    /**
+     * ログインした従業員をセッションに保持するためのEmployeePrincipalを作成する
+     * @param ev ログインした従業員(DBから取得したもの)
+     * @return ログイン中の従業員
+     */
+    public static EmployeePrincipal login(EmployeeView ev) {
+        return toPrincipal(ev.getId(), ev.getCode(), ev.getName(), ev.getAdminFlag(), ev.getBossFlag(),
+                versionOf(ev.getUpdatedAt()));
+    }
+
+    /**
+     * 従業員情報が更新されたことを記録する(このサーバーでは次のリクエストからDBの版と比較させる)
+     * @param ev 更新後の従業員情報
+     */
+    public static void changed(EmployeeView ev) {
+        LATEST.remove(ev.getId());
+    }
+
+    /**
+     * セッションに保持しているログイン中の従業員の最新の版を返却する
+     * @param principal セッションに保持しているログイン中の従業員
+     * @return 最新の版(更新されていなければ引数と同じインスタンス) 論理削除された場合はnull
+     */
+    public static EmployeePrincipal refresh(EmployeePrincipal principal) {
+        return refresh(principal, false);
+    }
+
+    /**
+     * セッションに保持しているログイン中の従業員の最新の版を返却する
+     * @param principal セッションに保持しているログイン中の従業員
+     * @param fresh 保持しているDBの版を使わずに、DBから読み込む場合はtrue
+     * @return 最新の版(更新されていなければ引数と同じインスタンス) 論理削除された場合はnull
+     */
+    public static EmployeePrincipal refresh(EmployeePrincipal principal, boolean fresh) {
+        long now = System.currentTimeMillis();
+        Entry entry = LATEST.get(principal.getId());
+        if (fresh || entry == null || now - entry.loadedAt >= checkInterval()) {
+            entry = load(principal.getId(), now);
+            LATEST.put(principal.getId(), entry);
+        }
+        if (entry.principal == null) {
+            return null;
+        }
+        return entry.principal.getVersion() == principal.getVersion() ? principal : entry.principal;
+    }
+
+    private static long checkInterval() {
+        long interval = checkInterval;
+        if (interval < 0) {
+            interval = Math.max(0, DBUtil.getLongProperty(JpaConst.PROP_PRINCIPAL_CHECK_INTERVAL, 5000));
+            checkInterval = interval;
+        }
+        return interval;
+    }
+
+    /**
+     * 従業員の現在の版をDBから読み込む
+     */
+    private static Entry load(int id, long now) {
+        try (Connection con = DBUtil.getDataSource().getConnection();
+                PreparedStatement ps = con.prepareStatement(SELECT)) {
+            ps.setInt(1, id);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(5) == AttributeConst.DEL_FLAG_TRUE.getIntegerValue()) {
+                    return new Entry(now, null);
+                }
+                return new Entry(now, toPrincipal(id, rs.getString(1), rs.getString(2), rs.getInt(3), rs.getInt(4),
+                        versionOf(rs.getObject(6, LocalDateTime.class))));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("ログイン中の従業員の情報を取得できません", e);
+        }
+    }
+
+    /**
+     * 更新日時から版を求める(マイクロ秒単位の通算値)
+     */
+    private static long versionOf(LocalDateTime updatedAt) {
+        if (updatedAt == null) {
+            return 0;
+        }
+        return updatedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + updatedAt.getNano() / 1_000;
+    }
+
+    private static EmployeePrincipal toPrincipal(int id, String code, String name, Integer adminFlag,
+            Integer bossFlag, long version) {
+        return new EmployeePrincipal(
+                id,
+                code,
+                name,
+                adminFlag == null ? 0 : adminFlag,
+                bossFlag == null ? 0 : bossFlag,
+                version);
+    }
+
+    /**
+     * 1人の従業員のDBから読み込んだ版
+     */
+    private static class Entry {
+        //読み込んだ時刻(エポックミリ秒)
+        private final long loadedAt;
+        //論理削除された場合・存在しない場合はnull
+        private final EmployeePrincipal principal;
+
+        private Entry(long loadedAt, EmployeePrincipal principal) {
+            this.loadedAt = loadedAt;
+            this.principal = principal;
+        }
+    }
+}
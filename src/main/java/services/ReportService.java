@@ -3,13 +3,17 @@ package services;
 import java.time.LocalDateTime;
 import java.util.List;
 
-import actions.views.EmployeeConverter;
-import actions.views.EmployeeView;
+import actions.views.EmployeePrincipal;
+import actions.views.KeysetPage;
 import actions.views.ReportConverter;
+import actions.views.ReportSummaryView;
 import actions.views.ReportView;
+import actions.views.ResourceVersion;
 import constants.JpaConst;
+import models.Employee;
 import models.Report;
 import models.validators.ReportValidator;
+import utils.PageCursor;
 
 /**
  * 日報テーブルの操作に関わる処理を行うクラス
@@ -17,19 +21,36 @@ import models.validators.ReportValidator;
 public class ReportService extends ServiceBase {
 
     /**
-     * 指定した従業員が作成した日報データを、指定されたページ数の一覧画面に表示する分取得しReportViewのリストで返却する
+     * 指定した従業員が作成した日報データを、指定されたページ数の一覧画面に表示する分取得しReportSummaryViewのリストで返却する
      * @param employee 従業員
      * @param page ページ数
      * @return 一覧画面に表示するデータのリスト
      */
-    public List<ReportView> getMinePerPage(EmployeeView employee, int page) {
+    public List<ReportSummaryView> getMinePerPage(EmployeePrincipal employee, int page) {
 
-        List<Report> reports = em.createNamedQuery(JpaConst.Q_REP_GET_ALL_MINE, Report.class)
-                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, EmployeeConverter.toModel(employee))
+        return em.createNamedQuery(JpaConst.Q_REP_GET_ALL_MINE, ReportSummaryView.class)
+                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, employee.getId()))
                 .setFirstResult(JpaConst.ROW_PER_PAGE * (page - 1))
                 .setMaxResults(JpaConst.ROW_PER_PAGE)
                 .getResultList();
-        return ReportConverter.toViewList(reports);
+    }
+
+    /**
+     * 指定した従業員が作成した日報データを、カーソルが指すページの一覧画面に表示する分取得しReportSummaryViewのリストで返却する
+     * @param employee 従業員
+     * @param cursor ページを指すカーソル(先頭ページの場合はnull)
+     * @return 一覧画面に表示するデータと前後のページを指すカーソル
+     */
+    public KeysetPage<ReportSummaryView> getMineByCursor(EmployeePrincipal employee, PageCursor cursor) {
+
+        return getKeysetPage(
+                cursor,
+                name -> em.createNamedQuery(name, ReportSummaryView.class)
+                        .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, employee.getId())),
+                JpaConst.Q_REP_GET_ALL_MINE,
+                JpaConst.Q_REP_GET_MINE_OLDER,
+                JpaConst.Q_REP_GET_MINE_NEWER,
+                ReportSummaryView::getId);
     }
 
     /**
@@ -37,27 +58,41 @@ public class ReportService extends ServiceBase {
      * @param employee
      * @return 日報データの件数
      */
-    public long countAllMine(EmployeeView employee) {
-
-        long count = (long) em.createNamedQuery(JpaConst.Q_REP_COUNT_ALL_MINE, Long.class)
-                .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, EmployeeConverter.toModel(employee))
-                .getSingleResult();
+    public long countAllMine(EmployeePrincipal employee) {
 
-        return count;
+        return CountService.get(CountService.reportsOf(employee.getId()),
+                () -> (long) em.createNamedQuery(JpaConst.Q_REP_COUNT_ALL_MINE, Long.class)
+                        .setParameter(JpaConst.JPQL_PARM_EMPLOYEE, em.getReference(Employee.class, employee.getId()))
+                        .getSingleResult());
     }
 
     /**
-     * 指定されたページ数の一覧画面に表示する日報データを取得し、ReportViewのリストで返却する
+     * 指定されたページ数の一覧画面に表示する日報データを取得し、ReportSummaryViewのリストで返却する
      * @param page ページ数
      * @return 一覧画面に表示するデータのリスト
      */
-    public List<ReportView> getAllPerPage(int page) {
+    public List<ReportSummaryView> getAllPerPage(int page) {
 
-        List<Report> reports = em.createNamedQuery(JpaConst.Q_REP_GET_ALL, Report.class)
+        return em.createNamedQuery(JpaConst.Q_REP_GET_ALL, ReportSummaryView.class)
                 .setFirstResult(JpaConst.ROW_PER_PAGE * (page - 1))
                 .setMaxResults(JpaConst.ROW_PER_PAGE)
                 .getResultList();
-        return ReportConverter.toViewList(reports);
+    }
+
+    /**
+     * カーソルが指すページの一覧画面に表示する日報データを取得し、ReportSummaryViewのリストで返却する
+     * @param cursor ページを指すカーソル(先頭ページの場合はnull)
+     * @return 一覧画面に表示するデータと前後のページを指すカーソル
+     */
+    public KeysetPage<ReportSummaryView> getAllByCursor(PageCursor cursor) {
+
+        return getKeysetPage(
+                cursor,
+                name -> em.createNamedQuery(name, ReportSummaryView.class),
+                JpaConst.Q_REP_GET_ALL,
+                JpaConst.Q_REP_GET_OLDER,
+                JpaConst.Q_REP_GET_NEWER,
+                ReportSummaryView::getId);
     }
 
     /**
@@ -65,9 +100,57 @@ public class ReportService extends ServiceBase {
      * @return データの件数
      */
     public long countAll() {
-        long reports_count = (long) em.createNamedQuery(JpaConst.Q_REP_COUNT, Long.class)
+        return CountService.get(CountService.SCOPE_ALL_REPORTS,
+                () -> (long) em.createNamedQuery(JpaConst.Q_REP_COUNT, Long.class)
+                        .getSingleResult(),
+                () -> {
+                    Integer maxId = em.createNamedQuery(JpaConst.Q_REP_MAX_ID, Integer.class)
+                            .getSingleResult();
+                    return maxId == null ? 0 : maxId;
+                });
+    }
+
+    /**
+     * 全日報の一覧の版を取得する
+     * 日報の最終更新日時、従業員(氏名)の最終更新日時、全日報の件数から作成する
+     * @return 一覧の版
+     */
+    public ResourceVersion getAllVersion() {
+        LocalDateTime reportsUpdatedAt = em.createNamedQuery(JpaConst.Q_REP_MAX_UPDATED_AT, LocalDateTime.class)
                 .getSingleResult();
-        return reports_count;
+        LocalDateTime employeesUpdatedAt = getEmployeesUpdatedAt();
+        long count = countAll();
+
+        return new ResourceVersion(
+                ResourceVersion.latest(reportsUpdatedAt, employeesUpdatedAt),
+                "reports:" + reportsUpdatedAt + ":" + employeesUpdatedAt + ":" + count,
+                null);
+    }
+
+    /**
+     * idを条件に日報の版を取得する(日報の内容は取得しない)
+     * 日報の更新日時といいね数、作成者の更新日時から作成する
+     * @param id 日報のid
+     * @return 日報の版 該当する日報がない場合はnull
+     */
+    public ResourceVersion getVersion(int id) {
+        List<Object[]> rows = em.createNamedQuery(JpaConst.Q_REP_GET_VERSION, Object[].class)
+                .setParameter(JpaConst.JPQL_PARM_ID, id)
+                .getResultList();
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        Object[] row = rows.get(0);
+        LocalDateTime reportUpdatedAt = (LocalDateTime) row[0];
+        Integer good = (Integer) row[1];
+        Integer employeeId = (Integer) row[2];
+        LocalDateTime employeeUpdatedAt = (LocalDateTime) row[3];
+
+        return new ResourceVersion(
+                ResourceVersion.latest(reportUpdatedAt, employeeUpdatedAt),
+                "report:" + id + ":" + reportUpdatedAt + ":" + good + ":" + employeeUpdatedAt,
+                employeeId);
     }
 
     /**
@@ -91,6 +174,15 @@ public class ReportService extends ServiceBase {
             rv.setCreatedAt(ldt);
             rv.setUpdatedAt(ldt);
             createInternal(rv);
+
+            //一覧画面に表示する件数に反映する
+            CountService.increment(CountService.SCOPE_ALL_REPORTS);
+            CountService.increment(CountService.reportsOf(rv.getEmployee().getId()));
+            //作成者をフォローしている従業員のタイムラインだけに加算する
+            em.createNamedQuery(JpaConst.Q_FOLLOW_GET_FOLLOWER_IDS, Integer.class)
+                    .setParameter(JpaConst.JPQL_PARM_FOLLOWED, em.getReference(Employee.class, rv.getEmployee().getId()))
+                    .getResultList()
+                    .forEach(followerId -> CountService.increment(CountService.timelineOf(followerId)));
         }
 
         //バリデーションで発生したエラーを返却（エラーがなければ0件の空リスト）
@@ -135,9 +227,10 @@ public class ReportService extends ServiceBase {
      */
     private void createInternal(ReportView rv) {
 
-        em.getTransaction().begin();
-        em.persist(ReportConverter.toModel(rv));
-        em.getTransaction().commit();
+        inTransaction("ReportService.createInternal", () -> {
+            em.persist(ReportConverter.toModel(rv));
+            return 1;
+        });
 
     }
 
@@ -147,10 +240,11 @@ public class ReportService extends ServiceBase {
      */
     private void updateInternal(ReportView rv) {
 
-        em.getTransaction().begin();
-        Report r = findOneInternal(rv.getId());
-        ReportConverter.copyViewToModel(r, rv);
-        em.getTransaction().commit();
+        inTransaction("ReportService.updateInternal", () -> {
+            Report r = findOneInternal(rv.getId());
+            ReportConverter.copyViewToModel(r, rv);
+            return 1;
+        });
 
     }
 
@@ -1,8 +1,23 @@
 package services;
 
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
 import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.persistence.TypedQuery;
 
+import actions.views.KeysetPage;
+import constants.JpaConst;
 import utils.DBUtil;
+import utils.FlightEvents;
+import utils.PageCursor;
+import utils.UnitOfWork;
 
 /**
  * DB接続に関わる共通処理を行うクラス
@@ -11,15 +26,151 @@ public class ServiceBase {
 
     /**
      * EntityManagerインスタンス
+     * リクエストの作業単位(UnitOfWork)の中で生成された場合は、同じリクエスト内の全Serviceで共有する
      */
-    protected EntityManager em = DBUtil.createEntityManager();
+    protected EntityManager em = UnitOfWork.isActive()
+            ? UnitOfWork.sharedEntityManager()
+            : DBUtil.createEntityManager();
 
     /**
      * EntityManagerのクローズ
+     * 作業単位で共有しているEntityManagerは、作業単位の終了時にクローズされる
      */
     public void close() {
         if (em.isOpen()) {
             em.close();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Serviceのインスタンスを作成する
+     * public メソッドの処理時間を計測し、Server-Timingに「クラス名.メソッド名」で出力する
+     * @param type Serviceのクラス
+     * @return Serviceのインスタンス
+     */
+    public static <S extends ServiceBase> S create(Class<S> type) {
+        return TimedService.create(type);
+    }
+
+    /**
+     * トランザクションの中で処理を実行してコミットする
+     * 処理が例外をスローした場合、または処理の中でsetRollbackOnly()した場合はロールバックする
+     * 処理時間とコミットの時間は、成否にかかわらずFlightEventsのトランザクションとして記録する
+     * @param name 記録する処理の名前(例:"ReportService.createInternal")
+     * @param work トランザクションの中で行う処理(登録・更新した行数を返す)
+     * @return 処理が返した行数
+     */
+    protected int inTransaction(String name, IntSupplier work) {
+        return inTransaction(name, work::getAsInt, Integer::longValue);
+    }
+
+    /**
+     * トランザクションの中で処理を実行してコミットする
+     * 処理が例外をスローした場合、または処理の中でsetRollbackOnly()した場合はロールバックする
+     * 処理時間とコミットの時間は、成否にかかわらずFlightEventsのトランザクションとして記録する
+     * @param name 記録する処理の名前(例:"GoodService.likeInternal")
+     * @param work トランザクションの中で行う処理
+     * @param rows 処理結果から登録・更新した行数を求める関数(コミットした場合だけ呼び出す)
+     * @return 処理結果
+     */
+    protected <T> T inTransaction(String name, Supplier<T> work, ToLongFunction<? super T> rows) {
+        FlightEvents.Transaction tx = FlightEvents.transaction(name);
+        EntityTransaction transaction = em.getTransaction();
+        long written = 0;
+        try {
+            transaction.begin();
+            T result = work.get();
+            if (transaction.getRollbackOnly()) {
+                transaction.rollback();
+            } else {
+                tx.committing();
+                transaction.commit();
+                written = rows.applyAsLong(result);
+            }
+            return result;
+        } catch (RuntimeException | Error e) {
+            if (transaction.isActive()) {
+                try {
+                    transaction.rollback();
+                } catch (RuntimeException re) {
+                    e.addSuppressed(re);
+                }
+            }
+            throw e;
+        } finally {
+            tx.finish(written);
+        }
+    }
+
+    /**
+     * 全ての従業員の最終更新日時を取得する(一覧に表示する氏名が変わったかどうかの判定用)
+     * @return 最終更新日時(従業員がいない場合はnull)
+     */
+    protected LocalDateTime getEmployeesUpdatedAt() {
+        return em.createNamedQuery(JpaConst.Q_EMP_MAX_UPDATED_AT, LocalDateTime.class)
+                .getSingleResult();
+    }
+
+    /**
+     * キーセット方式(idを基準にした範囲検索)で1ページ分のデータを取得する
+     * OFFSETを使わないため、後ろのページでも取得にかかる時間が変わらない
+     * @param cursor 表示するページを指すカーソル(先頭ページの場合はnull)
+     * @param query 名前付きクエリ名を受け取り、カーソル以外のパラメータを設定したクエリを返す関数
+     * @param firstQuery 先頭ページを取得するクエリ名(idの降順)
+     * @param olderQuery 基準のidより古いデータを取得するクエリ名(idの降順)
+     * @param newerQuery 基準のidより新しいデータを取得するクエリ名(idの昇順)
+     * @param idOf データからidを取り出す関数
+     * @return 1ページ分のデータと前後のページを指すカーソル
+     */
+    protected <E> KeysetPage<E> getKeysetPage(
+            PageCursor cursor,
+            Function<String, TypedQuery<E>> query,
+            String firstQuery,
+            String olderQuery,
+            String newerQuery,
+            Function<E, Integer> idOf) {
+
+        //次のページがあるかどうかを判定するため、1件多く取得する
+        int limit = JpaConst.ROW_PER_PAGE + 1;
+
+        if (cursor == null) {
+            //先頭ページ
+            List<E> rows = query.apply(firstQuery)
+                    .setMaxResults(limit)
+                    .getResultList();
+            boolean hasNext = rows.size() > JpaConst.ROW_PER_PAGE;
+            List<E> items = hasNext ? rows.subList(0, JpaConst.ROW_PER_PAGE) : rows;
+            return new KeysetPage<>(items, hasNext ? olderThanLast(items, idOf) : null, null);
+
+        } else if (cursor.getDirection() == PageCursor.Direction.OLDER) {
+            //次のページ(基準のidより古いデータ)
+            List<E> rows = query.apply(olderQuery)
+                    .setParameter(JpaConst.JPQL_PARM_CURSOR_ID, cursor.getId())
+                    .setMaxResults(limit)
+                    .getResultList();
+            boolean hasNext = rows.size() > JpaConst.ROW_PER_PAGE;
+            List<E> items = hasNext ? rows.subList(0, JpaConst.ROW_PER_PAGE) : rows;
+            PageCursor prev = items.isEmpty() ? null : PageCursor.newerThan(idOf.apply(items.get(0)));
+            return new KeysetPage<>(items, hasNext ? olderThanLast(items, idOf) : null, prev);
+
+        } else {
+            //前のページ(基準のidより新しいデータ)を昇順で取得し、表示用に降順へ並べ替える
+            List<E> rows = query.apply(newerQuery)
+                    .setParameter(JpaConst.JPQL_PARM_CURSOR_ID, cursor.getId())
+                    .setMaxResults(limit)
+                    .getResultList();
+            boolean hasPrev = rows.size() > JpaConst.ROW_PER_PAGE;
+            List<E> items = hasPrev ? rows.subList(0, JpaConst.ROW_PER_PAGE) : rows;
+            Collections.reverse(items);
+            PageCursor prev = hasPrev ? PageCursor.newerThan(idOf.apply(items.get(0))) : null;
+            return new KeysetPage<>(items, items.isEmpty() ? null : olderThanLast(items, idOf), prev);
+        }
+    }
+
+    /**
+     * ページの最後のデータより古いデータを指すカーソルを作成する
+     */
+    private static <E> PageCursor olderThanLast(List<E> items, Function<E, Integer> idOf) {
+        return PageCursor.olderThan(idOf.apply(items.get(items.size() - 1)));
+    }
+}
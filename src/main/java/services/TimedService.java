@@ -0,0 +1,86 @@
+package services;
+
+import static net.bytebuddy.matcher.ElementMatchers.isDeclaredBy;
+import static net.bytebuddy.matcher.ElementMatchers.isPublic;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
+import net.bytebuddy.ByteBuddy;
+import net.bytebuddy.ClassFileVersion;
+import net.bytebuddy.dynamic.loading.ClassLoadingStrategy;
+import net.bytebuddy.implementation.MethodDelegation;
+import net.bytebuddy.implementation.bind.annotation.Origin;
+import net.bytebuddy.implementation.bind.annotation.RuntimeType;
+import net.bytebuddy.implementation.bind.annotation.SuperCall;
+import utils.RequestMetrics;
+
+/**
+ * Serviceのサブクラスを生成し、public メソッドの処理時間を計測する
+ * (Server-Timingに「クラス名.メソッド名」で出力する)。
+ * 他のメソッドから呼び出された場合は、呼び出し元のメソッドの処理時間に含める。
+ * 生成したクラスはServiceのクラスごとに1つだけ作成し、再利用する。
+ */
+final class TimedService {
+
+    private static final ClassValue<Class<?>> TYPES = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> type) {
+            return subclass(type);
+        }
+    };
+
+    private TimedService() {
+    }
+
+    /**
+     * 処理時間を計測するServiceのインスタンスを作成する
+     * @param type Serviceのクラス
+     * @return Serviceのインスタンス
+     */
+    static <S extends ServiceBase> S create(Class<S> type) {
+        try {
+            return type.cast(TYPES.get(type).getDeclaredConstructor().newInstance());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(type.getName() + " のインスタンスを作成できません", e);
+        }
+    }
+
+    private static Class<?> subclass(Class<?> type) {
+        try {
+            //同じパッケージにクラスを定義する(byte-buddyの対応するJavaのバージョンに関わらず、Java 11のクラスファイルを生成する)
+            return new ByteBuddy(ClassFileVersion.JAVA_V11)
+                    .subclass(type)
+                    .method(isPublic().and(isDeclaredBy(type)))
+                    .intercept(MethodDelegation.to(Interceptor.class))
+                    .make()
+                    .load(type.getClassLoader(),
+                            ClassLoadingStrategy.UsingLookup.of(MethodHandles.privateLookupIn(type, MethodHandles.lookup())))
+                    .getLoaded();
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(type.getName() + " のサブクラスを作成できません", e);
+        }
+    }
+
+    /**
+     * 生成したクラスから呼び出す処理(生成したクラスから参照できるように public にする)
+     */
+    public static class Interceptor {
+
+        /**
+         * メソッドを呼び出し、処理時間を記録する
+         * @param method 呼び出されたメソッド
+         * @param call 元のメソッドの呼び出し
+         * @return 元のメソッドの戻り値
+         * @throws Exception 元のメソッドがスローした例外
+         */
+        @RuntimeType
+        public static Object intercept(@Origin Method method, @SuperCall Callable<?> call) throws Exception {
+            try (RequestMetrics.Span span = RequestMetrics.span(
+                    method.getDeclaringClass().getSimpleName() + "." + method.getName())) {
+                return call.call();
+            }
+        }
+    }
+}
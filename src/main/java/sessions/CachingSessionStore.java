@@ -0,0 +1,150 @@
+package sessions;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 属性の値を手元に保持するストア(他のストアをラップする)
+ * 属性の値は版とともに保持し、load()で取得した版が一致すれば、ラップしたストアから読み込まずに返却する。
+ * 他のサーバーで書き換えられた属性は版が変わるため、古い値を返却することはない(ストアは属性の削除後も版を再利用しない)。
+ * 保持するセッションの数には上限を設け、最も長く使用されていないセッションから破棄する。
+ * 全てのリクエストが通るため、セッションIDで分けた区画ごとにロックとアクセス順を持ち、
+ * 別の区画のセッションは並行して読み書きできるようにする(破棄は区画の中で最も長く使用されていないもの)。
+ */
+public class CachingSessionStore implements SessionStore {
+
+    //区画の数(2のべき乗)
+    private static final int SEGMENTS = 16;
+
+    private final SessionStore delegate;
+    //区画ごとの セッションID → 属性名 → 値 (アクセス順)
+    private final Map<String, Map<String, Cached>>[] segments;
+
+    /**
+     * コンストラクタ
+     * @param delegate ラップするストア
+     * @param maxSessions 値を保持するセッションの数の上限
+     */
+    @SuppressWarnings("unchecked")
+    public CachingSessionStore(SessionStore delegate, int maxSessions) {
+        this.delegate = delegate;
+        this.segments = new Map[SEGMENTS];
+        int maxPerSegment = Math.max(1, (maxSessions + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LinkedHashMap<String, Map<String, Cached>>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Map<String, Cached>> eldest) {
+                    return size() > maxPerSegment;
+                }
+            };
+        }
+    }
+
+    /**
+     * セッションIDの区画を返却する(区画自体をロックに使用する)
+     */
+    private Map<String, Map<String, Cached>> segment(String id) {
+        int h = id.hashCode();
+        return segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    @Override
+    public Meta load(String id) throws IOException {
+        Meta meta = delegate.load(id);
+        if (meta == null) {
+            evict(id);
+        }
+        return meta;
+    }
+
+    @Override
+    public byte[] loadAttribute(String id, String name, long version) throws IOException {
+        Map<String, Map<String, Cached>> cache = segment(id);
+        synchronized (cache) {
+            Map<String, Cached> attributes = cache.get(id);
+            Cached cached = attributes == null ? null : attributes.get(name);
+            if (cached != null && cached.version == version) {
+                return cached.value;
+            }
+        }
+
+        byte[] value = delegate.loadAttribute(id, name, version);
+        if (value != null) {
+            put(id, name, version, value);
+        }
+        return value;
+    }
+
+    @Override
+    public Meta save(String id, long createdAt, long maxInactiveMillis, Map<String, byte[]> updated, Set<String> removed)
+            throws IOException {
+        Meta meta = delegate.save(id, createdAt, maxInactiveMillis, updated, removed);
+        Map<String, Map<String, Cached>> cache = segment(id);
+        synchronized (cache) {
+            Map<String, Cached> attributes = cache.get(id);
+            if (attributes != null) {
+                attributes.keySet().removeAll(removed);
+            }
+        }
+        for (Map.Entry<String, byte[]> e : updated.entrySet()) {
+            Long version = meta.getVersions().get(e.getKey());
+            if (version != null) {
+                put(id, e.getKey(), version, e.getValue());
+            }
+        }
+        return meta;
+    }
+
+    @Override
+    public void touch(String id, long maxInactiveMillis) throws IOException {
+        delegate.touch(id, maxInactiveMillis);
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        evict(id);
+        delegate.delete(id);
+    }
+
+    @Override
+    public void close() {
+        for (Map<String, Map<String, Cached>> cache : segments) {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
+        delegate.close();
+    }
+
+    private void put(String id, String name, long version, byte[] value) {
+        Map<String, Map<String, Cached>> cache = segment(id);
+        synchronized (cache) {
+            cache.computeIfAbsent(id, k -> new HashMap<>()).put(name, new Cached(version, value));
+        }
+    }
+
+    private void evict(String id) {
+        Map<String, Map<String, Cached>> cache = segment(id);
+        synchronized (cache) {
+            cache.remove(id);
+        }
+    }
+
+    /**
+     * 保持している属性の値
+     */
+    private static class Cached {
+        private final long version;
+        private final byte[] value;
+
+        private Cached(long version, byte[] value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package sessions;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * セッションをローカルのファイルに保存するストア
+ * セッションごとに1ファイルとし、読み込みはファイル全体を1回のreadで読み込んで、必要な属性の値だけをコピーする
+ * (セッションのファイルは小さく読み込みのたびに開き直すため、メモリへのマップは使用しない)。
+ * 書き込みは変更のない属性を読み込んだバイト列のままコピーし(デシリアライズしない)、一時ファイルから置き換える。
+ * 期限の延長はファイルの先頭の期限だけを書き換える。期限が切れたファイルは一定間隔で削除する。
+ * 属性の版はセッションごとの通番で、属性を削除しても戻さない(同じ版が別の値を指すことはない)。
+ * 新しく作成するファイルの通番は現在時刻から始め、削除後に同じIDで作成し直した場合も以前の版と重ならないようにする。
+ * 書き込みはサーバー内のロックに加えてロックファイル(FileChannel.lock)で排他するため、
+ * ロックに対応したファイルシステム(NFSv4等)であれば、同じディレクトリを複数のサーバーで共有できる。
+ * <pre>
+ * ファイルの形式: 作成日時(long) 期限(long) 形式(int) 最後に採番した版(long) 属性の数(int)
+ *               [属性名の長さ(int) 属性名(UTF-8) 版(long) 値の長さ(int) 値]...
+ * </pre>
+ */
+public class FileSessionStore implements SessionStore {
+
+    private static final Logger LOGGER = Logger.getLogger(FileSessionStore.class.getName());
+
+    private static final String SUFFIX = ".session";
+    private static final String LOCK_PREFIX = "lock-";
+    private static final String LOCK_SUFFIX = ".lck";
+    //期限の位置(ファイルの先頭からのバイト数)
+    private static final int EXPIRES_AT_OFFSET = 8;
+    //ファイルの形式(異なる形式のファイルは読み込まない)
+    private static final int FORMAT = 0x44525332;
+    //期限が切れたファイルを削除する間隔(秒)
+    private static final long SWEEP_INTERVAL = 60;
+
+    private final Path dir;
+    //同じセッションへの書き込みを順に行うためのロック(セッションIDのハッシュで分ける)
+    private final Object[] locks = new Object[64];
+    //他のサーバーと排他するためのロックファイル(locksと同じ分け方)
+    private final FileChannel[] lockFiles = new FileChannel[locks.length];
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * コンストラクタ
+     * @param dir 保存先のディレクトリ
+     * @throws IOException
+     */
+    public FileSessionStore(Path dir) throws IOException {
+        this.dir = Files.createDirectories(dir);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+            lockFiles[i] = FileChannel.open(dir.resolve(LOCK_PREFIX + i + LOCK_SUFFIX),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        }
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Meta load(String id) throws IOException {
+        Snapshot snapshot = read(file(id));
+        if (snapshot == null) {
+            return null;
+        }
+        if (snapshot.expiresAt < System.currentTimeMillis()) {
+            delete(id);
+            return null;
+        }
+        return snapshot.toMeta();
+    }
+
+    @Override
+    public byte[] loadAttribute(String id, String name, long version) throws IOException {
+        Snapshot snapshot = read(file(id));
+        Entry entry = snapshot == null ? null : snapshot.entries.get(name);
+        return entry == null ? null : entry.bytes();
+    }
+
+    @Override
+    public Meta save(String id, long createdAt, long maxInactiveMillis, Map<String, byte[]> updated, Set<String> removed)
+            throws IOException {
+        Path file = file(id);
+        synchronized (lock(id)) {
+            try (FileLock fileLock = lockFile(id).lock()) {
+                long now = System.currentTimeMillis();
+                Snapshot snapshot = read(file);
+                if (snapshot == null) {
+                    snapshot = new Snapshot(createdAt, 0, now * 1000, new LinkedHashMap<>());
+                } else if (snapshot.expiresAt < now) {
+                    //期限が切れたセッションは属性を引き継がない(版の通番は引き継ぐ)
+                    snapshot = new Snapshot(createdAt, 0, snapshot.lastVersion, new LinkedHashMap<>());
+                }
+
+                Map<String, Entry> entries = new LinkedHashMap<>(snapshot.entries);
+                entries.keySet().removeAll(removed);
+                long version = snapshot.lastVersion;
+                for (Map.Entry<String, byte[]> e : updated.entrySet()) {
+                    entries.put(e.getKey(), new Entry(++version, ByteBuffer.wrap(e.getValue())));
+                }
+
+                Snapshot saved = new Snapshot(snapshot.createdAt, now + maxInactiveMillis, version, entries);
+                write(file, saved);
+                return saved.toMeta();
+            }
+        }
+    }
+
+    @Override
+    public void touch(String id, long maxInactiveMillis) throws IOException {
+        synchronized (lock(id)) {
+            try (FileLock fileLock = lockFile(id).lock();
+                    FileChannel channel = FileChannel.open(file(id), StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+                buf.putLong(0, System.currentTimeMillis() + maxInactiveMillis);
+                channel.write(buf, EXPIRES_AT_OFFSET);
+            } catch (NoSuchFileException e) {
+                //削除済み
+            }
+        }
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        synchronized (lock(id)) {
+            try (FileLock fileLock = lockFile(id).lock()) {
+                Files.deleteIfExists(file(id));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        sweeper.shutdownNow();
+        for (FileChannel channel : lockFiles) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "ロックファイルを閉じられません", e);
+            }
+        }
+    }
+
+    /**
+     * 期限が切れたファイルを削除する
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - SUFFIX.length());
+                synchronized (lock(id)) {
+                    try (FileLock fileLock = lockFile(id).lock()) {
+                        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                            ByteBuffer buf = ByteBuffer.allocate(Long.BYTES);
+                            if (channel.read(buf, EXPIRES_AT_OFFSET) == Long.BYTES && buf.getLong(0) >= now) {
+                                continue;
+                            }
+                        } catch (NoSuchFileException e) {
+                            continue;
+                        }
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "期限が切れたセッションを削除できません", e);
+        }
+    }
+
+    private Object lock(String id) {
+        return locks[stripe(id)];
+    }
+
+    /**
+     * セッションIDに対応するロックファイル(lock(id)を取得してからロックする)
+     */
+    private FileChannel lockFile(String id) {
+        return lockFiles[stripe(id)];
+    }
+
+    private int stripe(String id) {
+        return (id.hashCode() & 0x7fffffff) % locks.length;
+    }
+
+    /**
+     * セッションIDに対応するファイルを返却する(ファイル名に使えない文字を含むIDは受け付けない)
+     */
+    private Path file(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                throw new IllegalArgumentException("不正なセッションIDです");
+            }
+        }
+        return dir.resolve(id + SUFFIX);
+    }
+
+    /**
+     * ファイル全体を読み込む(属性の値は読み込んだバイト列を参照する)
+     * @return ファイルの内容 存在しない・壊れている場合はnull
+     */
+    private static Snapshot read(Path file) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                LOGGER.warning("セッションのファイルが大きすぎます: " + file.getFileName());
+                return null;
+            }
+            buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining() && channel.read(buf) >= 0) {
+                //ファイルの終わりまで読み込む
+            }
+            buf.flip();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try {
+            long createdAt = buf.getLong();
+            long expiresAt = buf.getLong();
+            if (buf.getInt() != FORMAT) {
+                LOGGER.fine("形式が異なるセッションのファイルは読み込みません: " + file.getFileName());
+                return null;
+            }
+            long lastVersion = buf.getLong();
+            int count = buf.getInt();
+            Map<String, Entry> entries = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buf.getInt()];
+                buf.get(name);
+                long version = buf.getLong();
+                int length = buf.getInt();
+                ByteBuffer value = buf.slice();
+                value.limit(length);
+                buf.position(buf.position() + length);
+                entries.put(new String(name, StandardCharsets.UTF_8), new Entry(version, value));
+            }
+            return new Snapshot(createdAt, expiresAt, lastVersion, entries);
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            LOGGER.log(Level.WARNING, "セッションのファイルが壊れています: " + file.getFileName(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 一時ファイルに書き込んでから置き換える(読み込み中の処理は置き換え前の内容を読み終える)
+     */
+    private void write(Path file, Snapshot snapshot) throws IOException {
+        Path tmp = Files.createTempFile(dir, "session", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeLong(snapshot.createdAt);
+                out.writeLong(snapshot.expiresAt);
+                out.writeInt(FORMAT);
+                out.writeLong(snapshot.lastVersion);
+                out.writeInt(snapshot.entries.size());
+                for (Map.Entry<String, Entry> e : snapshot.entries.entrySet()) {
+                    byte[] name = e.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(name.length);
+                    out.write(name);
+                    out.writeLong(e.getValue().version);
+                    byte[] value = e.getValue().bytes();
+                    out.writeInt(value.length);
+                    out.write(value);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * 1ファイル分の内容
+     */
+    private static class Snapshot {
+        private final long createdAt;
+        private final long expiresAt;
+        //最後に採番した版(属性を削除しても戻さない)
+        private final long lastVersion;
+        private final Map<String, Entry> entries;
+
+        private Snapshot(long createdAt, long expiresAt, long lastVersion, Map<String, Entry> entries) {
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.lastVersion = lastVersion;
+            this.entries = entries;
+        }
+
+        private Meta toMeta() {
+            Map<String, Long> versions = new LinkedHashMap<>();
+            entries.forEach((name, entry) -> versions.put(name, entry.version));
+            return new Meta(createdAt, expiresAt, versions);
+        }
+    }
+
+    /**
+     * 1つの属性
+     */
+    private static class Entry {
+        private final long version;
+        private final ByteBuffer value;
+
+        private Entry(long version, ByteBuffer value) {
+            this.version = version;
+            this.value = value;
+        }
+
+        private byte[] bytes() {
+            byte[] bytes = new byte[value.remaining()];
+            value.duplicate().get(bytes);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package sessions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * ネットワーク越しのセッションストア(SessionStoreServer、または同じ手順で応答するサーバー)に接続するストア
+ * 複数のサーバーから同じストアに接続することで、どのサーバーでも同じセッションを使用できる。
+ * 接続は使い回し(使用中でない接続を保持し)、1回の操作につき1往復で通信する。
+ * 接続時に共有の鍵で認証する(ストアが送るランダムな値のHMAC-SHA256を返し、一致しなければストアが切断する)。
+ * 受け取る要求の件数・長さには上限を設ける。
+ * <pre>
+ * 認証: ストア→ランダムな値(32バイト) 接続元→HMAC-SHA256(32バイト) ストア→結果(byte: OK)
+ * 要求: 操作(byte) セッションID(UTF) 操作ごとの引数
+ * 応答: 結果(byte: OK または ERROR) 操作ごとの結果 (ERRORの場合はメッセージ(UTF))
+ * </pre>
+ */
+public class RemoteSessionStore implements SessionStore {
+
+    //操作
+    static final byte OP_LOAD = 1;
+    static final byte OP_LOAD_ATTRIBUTE = 2;
+    static final byte OP_SAVE = 3;
+    static final byte OP_TOUCH = 4;
+    static final byte OP_DELETE = 5;
+
+    //結果
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    //認証に使うランダムな値の長さ(バイト)
+    static final int NONCE_LENGTH = 32;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    //1回の要求で受け付ける上限
+    static final int MAX_NAME_LENGTH = 256; //セッションID・属性名の文字数
+    static final int MAX_ATTRIBUTES = 1024; //属性の数
+    static final int MAX_VALUE_LENGTH = 1024 * 1024; //属性の値のバイト数
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private final byte[] secret;
+    //使用中でない接続
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed;
+
+    /**
+     * コンストラクタ
+     * @param host ストアのホスト名
+     * @param port ストアのポート番号
+     * @param timeoutMillis 接続・応答のタイムアウト(ミリ秒)
+     * @param maxIdle 保持する使用中でない接続の数の上限
+     * @param secret ストアと共有する鍵
+     */
+    public RemoteSessionStore(String host, int port, int timeoutMillis, int maxIdle, byte[] secret) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        this.secret = secret.clone();
+        this.idle = new LinkedBlockingQueue<>(maxIdle);
+    }
+
+    @Override
+    public Meta load(String id) throws IOException {
+        return call(OP_LOAD, id, out -> {
+        }, in -> in.readBoolean() ? readMeta(in) : null);
+    }
+
+    @Override
+    public byte[] loadAttribute(String id, String name, long version) throws IOException {
+        return call(OP_LOAD_ATTRIBUTE, id, out -> {
+            out.writeUTF(name);
+            out.writeLong(version);
+        }, RemoteSessionStore::readBytes);
+    }
+
+    @Override
+    public Meta save(String id, long createdAt, long maxInactiveMillis, Map<String, byte[]> updated, Set<String> removed)
+            throws IOException {
+        return call(OP_SAVE, id, out -> {
+            out.writeLong(createdAt);
+            out.writeLong(maxInactiveMillis);
+            out.writeInt(updated.size());
+            for (Map.Entry<String, byte[]> e : updated.entrySet()) {
+                out.writeUTF(e.getKey());
+                writeBytes(out, e.getValue());
+            }
+            out.writeInt(removed.size());
+            for (String name : removed) {
+                out.writeUTF(name);
+            }
+        }, RemoteSessionStore::readMeta);
+    }
+
+    @Override
+    public void touch(String id, long maxInactiveMillis) throws IOException {
+        call(OP_TOUCH, id, out -> out.writeLong(maxInactiveMillis), in -> null);
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        call(OP_DELETE, id, out -> {
+        }, in -> null);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection c;
+        while ((c = idle.poll()) != null) {
+            c.close();
+        }
+    }
+
+    /**
+     * 1回の操作を行う
+     * 使い回した接続が切れていた場合は、新しい接続で1度だけやり直す
+     */
+    private <T> T call(byte op, String id, Writer writer, Reader<T> reader) throws IOException {
+        if (closed) {
+            throw new IOException("セッションストアは閉じられています");
+        }
+        Connection pooled = idle.poll();
+        if (pooled != null) {
+            try {
+                return call(pooled, op, id, writer, reader);
+            } catch (RemoteException e) {
+                throw e;
+            } catch (IOException e) {
+                //接続が切れていた
+            }
+        }
+        return call(new Connection(), op, id, writer, reader);
+    }
+
+    private <T> T call(Connection c, byte op, String id, Writer writer, Reader<T> reader) throws IOException {
+        boolean reusable = false;
+        try {
+            c.out.writeByte(op);
+            c.out.writeUTF(id);
+            writer.write(c.out);
+            c.out.flush();
+
+            byte status = c.in.readByte();
+            if (status != OK) {
+                String message = c.in.readUTF();
+                reusable = true;
+                throw new RemoteException(message);
+            }
+            T result = reader.read(c.in);
+            reusable = true;
+            return result;
+        } finally {
+            if (!reusable || closed || !idle.offer(c)) {
+                c.close();
+            }
+        }
+    }
+
+    static Meta readMeta(DataInputStream in) throws IOException {
+        long createdAt = in.readLong();
+        long expiresAt = in.readLong();
+        int count = in.readInt();
+        Map<String, Long> versions = new LinkedHashMap<>();
+        checkCount(count, MAX_ATTRIBUTES);
+        for (int i = 0; i < count; i++) {
+            versions.put(readName(in), in.readLong());
+        }
+        return new Meta(createdAt, expiresAt, versions);
+    }
+
+    static void writeMeta(DataOutputStream out, Meta meta) throws IOException {
+        out.writeLong(meta.getCreatedAt());
+        out.writeLong(meta.getExpiresAt());
+        out.writeInt(meta.getVersions().size());
+        for (Map.Entry<String, Long> e : meta.getVersions().entrySet()) {
+            out.writeUTF(e.getKey());
+            out.writeLong(e.getValue());
+        }
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        checkCount(length, MAX_VALUE_LENGTH);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static Map<String, byte[]> readUpdated(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        checkCount(count, MAX_ATTRIBUTES);
+        Map<String, byte[]> updated = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            updated.put(readName(in), readBytes(in));
+        }
+        return updated;
+    }
+
+    /**
+     * セッションID・属性名を読み込む
+     * @throws IOException 長さが上限を超えた場合
+     */
+    static String readName(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        if (name.length() > MAX_NAME_LENGTH) {
+            throw new IOException("名前が長すぎます: " + name.length() + "文字");
+        }
+        return name;
+    }
+
+    /**
+     * 件数・長さが上限以内であることを確認する
+     * @throws IOException 負の値、または上限を超えた場合
+     */
+    static void checkCount(int count, int max) throws IOException {
+        if (count < 0 || count > max) {
+            throw new IOException("件数・長さが上限(" + max + ")を超えています: " + count);
+        }
+    }
+
+    /**
+     * 認証に使う値(ストアが送ったランダムな値のHMAC-SHA256)を作成する
+     * @param secret 共有の鍵
+     * @param nonce ストアが送ったランダムな値
+     * @return HMAC
+     */
+    static byte[] sign(byte[] secret, byte[] nonce) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(new SecretKeySpec(secret, MAC_ALGORITHM));
+            return mac.doFinal(nonce);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * ストアが処理に失敗した場合の例外(接続は使い回せる)
+     */
+    private static class RemoteException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private RemoteException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * ストアへの1本の接続
+     */
+    private class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+
+        private Connection() throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                socket.setTcpNoDelay(true);
+                in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+                //ストアが送ったランダムな値に署名して返す
+                byte[] nonce = new byte[NONCE_LENGTH];
+                in.readFully(nonce);
+                out.write(sign(secret, nonce));
+                out.flush();
+                if (in.readByte() != OK) {
+                    throw new IOException("セッションストアの認証に失敗しました");
+                }
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //閉じる際の失敗は無視する
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package sessions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * セッションをコンテナではなくSessionStoreから取得するリクエスト
+ * セッションIDはクッキーで受け渡し、ストアに問い合わせるのはgetSession()が呼ばれた場合だけ。
+ */
+public class SessionRequestWrapper extends HttpServletRequestWrapper {
+
+    /**
+     * セッションIDを受け渡すクッキーの名前
+     */
+    public static final String COOKIE_NAME = "DRS_SESSION";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    //セッションIDの長さ(32バイトをBase64URLで表した文字数)
+    private static final int ID_LENGTH = 43;
+
+    private final HttpServletResponse response;
+    private final SessionStore store;
+    private final int maxInactiveInterval;
+    private final String requestedId;
+
+    private StoreSession session;
+    //クッキーで受け取ったIDのセッションをストアに問い合わせたかどうか
+    private boolean requestedLoaded;
+    private boolean requestedValid;
+    //無効にしたセッションのクッキーを削除したかどうか
+    private boolean cookieCleared;
+
+    /**
+     * コンストラクタ
+     * @param request リクエスト
+     * @param response レスポンス(クッキーの設定に使用する)
+     * @param store セッションストア
+     * @param maxInactiveInterval 新しいセッションの有効期限(秒)
+     */
+    public SessionRequestWrapper(HttpServletRequest request, HttpServletResponse response, SessionStore store,
+            int maxInactiveInterval) {
+        super(request);
+        this.response = response;
+        this.store = store;
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.requestedId = findRequestedId(request);
+    }
+
+    @Override
+    public HttpSession getSession() {
+        return getSession(true);
+    }
+
+    @Override
+    public HttpSession getSession(boolean create) {
+        if (session != null && session.isValid()) {
+            return session;
+        }
+
+        if (session == null && !requestedLoaded) {
+            requestedLoaded = true;
+            if (requestedId != null) {
+                SessionStore.Meta meta;
+                try {
+                    meta = store.load(requestedId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                if (meta != null) {
+                    requestedValid = true;
+                    session = StoreSession.open(store, getServletContext(), requestedId, meta, maxInactiveInterval);
+                    return session;
+                }
+            }
+        }
+
+        if (!create) {
+            return null;
+        }
+        session = StoreSession.create(store, getServletContext(), newId(), maxInactiveInterval);
+        cookieCleared = false;
+        setCookie(session.getId(), -1);
+        return session;
+    }
+
+    @Override
+    public String changeSessionId() {
+        HttpSession current = getSession(false);
+        if (current == null) {
+            throw new IllegalStateException("セッションがありません");
+        }
+        String newId = newId();
+        session.changeId(newId);
+        setCookie(newId, -1);
+        return newId;
+    }
+
+    @Override
+    public String getRequestedSessionId() {
+        return requestedId;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdValid() {
+        getSession(false);
+        return requestedValid && session != null && session.isValid() && requestedId.equals(session.getId());
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromCookie() {
+        return requestedId != null;
+    }
+
+    @Override
+    public boolean isRequestedSessionIdFromURL() {
+        return false;
+    }
+
+    @Override
+    @Deprecated
+    public boolean isRequestedSessionIdFromUrl() {
+        return false;
+    }
+
+    /**
+     * セッションの変更をストアに書き込む(レスポンスを確定する前に呼び出す)
+     * 無効にしたセッションはクッキーを削除する
+     */
+    public void flushSession() {
+        if (session == null) {
+            return;
+        }
+        if (session.isValid()) {
+            session.flush();
+        } else if (!cookieCleared) {
+            cookieCleared = true;
+            setCookie("", 0);
+        }
+    }
+
+    private void setCookie(String value, int maxAge) {
+        if (response.isCommitted()) {
+            return;
+        }
+        String path = getContextPath().isEmpty() ? "/" : getContextPath();
+        response.addHeader("Set-Cookie", COOKIE_NAME + "=" + value + "; Path=" + path
+                + (maxAge >= 0 ? "; Max-Age=" + maxAge : "") + "; HttpOnly; SameSite=Lax" + (isSecure() ? "; Secure" : ""));
+    }
+
+    private static String newId() {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * クッキーからセッションIDを取得する(形式が異なるIDは無視する)
+     */
+    private static String findRequestedId(HttpServletRequest request) {
+        if (request.getCookies() == null) {
+            return null;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (COOKIE_NAME.equals(cookie.getName()) && isValidId(cookie.getValue())) {
+                return cookie.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isValidId(String id) {
+        if (id == null || id.length() != ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '-' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
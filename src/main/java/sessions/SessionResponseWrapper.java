@@ -0,0 +1,58 @@
+package sessions;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * レスポンスを確定する前にセッションをストアに書き込むレスポンス
+ * 本文を書き始める前・リダイレクト・エラーの前に書き込むため、次のリクエストで必ず変更後のセッションを読み込める。
+ */
+public class SessionResponseWrapper extends HttpServletResponseWrapper {
+
+    private final SessionRequestWrapper request;
+
+    public SessionResponseWrapper(SessionRequestWrapper request, HttpServletResponse response) {
+        super(response);
+        this.request = request;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        request.flushSession();
+        return super.getOutputStream();
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        request.flushSession();
+        return super.getWriter();
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        request.flushSession();
+        super.sendRedirect(location);
+    }
+
+    @Override
+    public void sendError(int sc) throws IOException {
+        request.flushSession();
+        super.sendError(sc);
+    }
+
+    @Override
+    public void sendError(int sc, String msg) throws IOException {
+        request.flushSession();
+        super.sendError(sc, msg);
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        request.flushSession();
+        super.flushBuffer();
+    }
+}
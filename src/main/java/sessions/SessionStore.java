@@ -0,0 +1,103 @@
+package sessions;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * セッションの属性を保存するストア
+ * 属性は名前ごとにシリアライズしたバイト列で保存し、属性ごとに版を持つ。
+ * 版は値を書き込むたびに変わり、属性の削除やセッションの削除の後も、同じセッションIDで以前の版を再利用しない。
+ * 読み込みは属性名と版の一覧(load)と、属性ごとの値(loadAttribute)に分かれているため、使用する属性だけを読み込める。
+ * 書き込み(save)は変更・削除された属性だけを渡す。
+ */
+public interface SessionStore {
+
+    /**
+     * セッションの属性名と版の一覧を読み込む
+     * @param id セッションID
+     * @return セッションの情報 存在しない・期限が切れている場合はnull
+     * @throws IOException
+     */
+    Meta load(String id) throws IOException;
+
+    /**
+     * 属性の値を読み込む
+     * @param id セッションID
+     * @param name 属性名
+     * @param version load()で取得した属性の版(キャッシュの判定に使用する)
+     * @return シリアライズした属性の値 存在しない場合はnull
+     * @throws IOException
+     */
+    byte[] loadAttribute(String id, String name, long version) throws IOException;
+
+    /**
+     * 変更・削除された属性を保存する(セッションが存在しない場合は作成する)
+     * @param id セッションID
+     * @param createdAt セッションの作成日時(エポックミリ秒、作成する場合に使用する)
+     * @param maxInactiveMillis 最後にアクセスしてから期限が切れるまでの時間(ミリ秒)
+     * @param updated 変更された属性(属性名 → シリアライズした値)
+     * @param removed 削除された属性名
+     * @return 保存後のセッションの情報
+     * @throws IOException
+     */
+    Meta save(String id, long createdAt, long maxInactiveMillis, Map<String, byte[]> updated, Set<String> removed)
+            throws IOException;
+
+    /**
+     * セッションの期限を延長する(属性は書き込まない)
+     * @param id セッションID
+     * @param maxInactiveMillis 期限が切れるまでの時間(ミリ秒)
+     * @throws IOException
+     */
+    void touch(String id, long maxInactiveMillis) throws IOException;
+
+    /**
+     * セッションを削除する
+     * @param id セッションID
+     * @throws IOException
+     */
+    void delete(String id) throws IOException;
+
+    /**
+     * ストアを閉じる
+     */
+    void close();
+
+    /**
+     * セッションの情報(属性名と版の一覧、作成日時、期限)
+     */
+    final class Meta {
+        private final long createdAt;
+        private final long expiresAt;
+        private final Map<String, Long> versions;
+
+        public Meta(long createdAt, long expiresAt, Map<String, Long> versions) {
+            this.createdAt = createdAt;
+            this.expiresAt = expiresAt;
+            this.versions = Collections.unmodifiableMap(versions);
+        }
+
+        /**
+         * @return 作成日時(エポックミリ秒)
+         */
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        /**
+         * @return 期限(エポックミリ秒)
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        /**
+         * @return 属性名 → 版
+         */
+        public Map<String, Long> getVersions() {
+            return versions;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package sessions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * RemoteSessionStoreの接続先となるセッションストアのサーバー
+ * 受け付けた操作を手元のストア(FileSessionStore)で処理する。専用のストアを用意できない環境で代わりに起動する。
+ * 既定ではループバックアドレスでのみ待ち受ける。他のサーバーから接続させる場合は待ち受けるアドレスを指定する。
+ * 接続元はapplication.propertiesのsessionStoreSecret(アプリケーションと同じ値)で認証する。
+ * <pre>
+ * java -cp WEB-INF/classes sessions.SessionStoreServer [ポート番号(既定:7070)] [保存先のディレクトリ] [待ち受けるアドレス(既定:ループバック)]
+ * </pre>
+ */
+public class SessionStoreServer implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SessionStoreServer.class.getName());
+
+    //認証を終えるまでのタイムアウト(ミリ秒)
+    private static final int HANDSHAKE_TIMEOUT = 5000;
+
+    private final SessionStore store;
+    private final byte[] secret;
+    private final SecureRandom random = new SecureRandom();
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "session-store");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * コンストラクタ
+     * @param bindAddress 待ち受けるアドレス
+     * @param port 待ち受けるポート番号
+     * @param secret 接続元と共有する鍵
+     * @param store 操作を処理するストア
+     * @throws IOException
+     */
+    public SessionStoreServer(InetAddress bindAddress, int port, byte[] secret, SessionStore store) throws IOException {
+        this.store = store;
+        this.secret = secret.clone();
+        this.serverSocket = new ServerSocket(port, 50, bindAddress);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        String dir = args.length > 1 ? args[1] : Paths.get(System.getProperty("java.io.tmpdir"), "daily_report_system-sessions").toString();
+        InetAddress bindAddress = args.length > 2 ? InetAddress.getByName(args[2]) : InetAddress.getLoopbackAddress();
+
+        String secret = loadSecret();
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalStateException("application.propertiesにsessionStoreSecretが設定されていません");
+        }
+
+        SessionStoreServer server = new SessionStoreServer(bindAddress, port, secret.getBytes(StandardCharsets.UTF_8),
+                new FileSessionStore(Paths.get(dir)));
+        LOGGER.info("セッションストアを開始しました: address=" + bindAddress.getHostAddress() + " port=" + port + " dir=" + dir);
+        server.run();
+    }
+
+    /**
+     * アプリケーションと同じapplication.propertiesから共有の鍵を読み込む
+     */
+    private static String loadSecret() throws IOException {
+        try (InputStream is = SessionStoreServer.class.getClassLoader().getResourceAsStream("application.properties")) {
+            if (is == null) {
+                return null;
+            }
+            Properties properties = new Properties();
+            properties.load(is);
+            return properties.getProperty("sessionStoreSecret");
+        }
+    }
+
+    /**
+     * 接続を受け付ける(閉じられるまで戻らない)
+     */
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.log(Level.WARNING, "接続を受け付けられません", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 別スレッドで接続の受け付けを開始する
+     */
+    public void start() {
+        workers.execute(this::run);
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            //閉じる際の失敗は無視する
+        }
+        workers.shutdownNow();
+        store.close();
+    }
+
+    /**
+     * 1本の接続の操作を、切断されるまで順に処理する
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+                DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            s.setTcpNoDelay(true);
+            if (!authenticate(s, in, out)) {
+                LOGGER.warning("認証に失敗した接続を切断しました: " + s.getRemoteSocketAddress());
+                return;
+            }
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                handle(op, in, out);
+                out.flush();
+            }
+        } catch (SocketException | EOFException e) {
+            //切断された
+        } catch (SocketTimeoutException e) {
+            LOGGER.warning("認証が時間内に終わらない接続を切断しました: " + socket.getRemoteSocketAddress());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "セッションストアの操作を処理できません", e);
+        }
+    }
+
+    /**
+     * ランダムな値を送り、共有の鍵によるHMACが返ってくることを確認する
+     * @return 認証できた場合はtrue
+     */
+    private boolean authenticate(Socket s, DataInputStream in, DataOutputStream out) throws IOException {
+        s.setSoTimeout(HANDSHAKE_TIMEOUT);
+        byte[] nonce = new byte[RemoteSessionStore.NONCE_LENGTH];
+        random.nextBytes(nonce);
+        out.write(nonce);
+        out.flush();
+
+        byte[] expected = RemoteSessionStore.sign(secret, nonce);
+        byte[] actual = new byte[expected.length];
+        in.readFully(actual);
+        if (!MessageDigest.isEqual(expected, actual)) {
+            out.writeByte(RemoteSessionStore.ERROR);
+            out.flush();
+            return false;
+        }
+        out.writeByte(RemoteSessionStore.OK);
+        out.flush();
+        s.setSoTimeout(0);
+        return true;
+    }
+
+    private void handle(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        String id = RemoteSessionStore.readName(in);
+        try {
+            switch (op) {
+            case RemoteSessionStore.OP_LOAD: {
+                SessionStore.Meta meta = store.load(id);
+                out.writeByte(RemoteSessionStore.OK);
+                out.writeBoolean(meta != null);
+                if (meta != null) {
+                    RemoteSessionStore.writeMeta(out, meta);
+                }
+                break;
+            }
+            case RemoteSessionStore.OP_LOAD_ATTRIBUTE: {
+                String name = RemoteSessionStore.readName(in);
+                long version = in.readLong();
+                byte[] value = store.loadAttribute(id, name, version);
+                out.writeByte(RemoteSessionStore.OK);
+                RemoteSessionStore.writeBytes(out, value);
+                break;
+            }
+            case RemoteSessionStore.OP_SAVE: {
+                long createdAt = in.readLong();
+                long maxInactiveMillis = in.readLong();
+                Map<String, byte[]> updated = RemoteSessionStore.readUpdated(in);
+                int count = in.readInt();
+                RemoteSessionStore.checkCount(count, RemoteSessionStore.MAX_ATTRIBUTES);
+                Set<String> removed = new HashSet<>();
+                for (int i = 0; i < count; i++) {
+                    removed.add(RemoteSessionStore.readName(in));
+                }
+                SessionStore.Meta meta = store.save(id, createdAt, maxInactiveMillis, updated, removed);
+                out.writeByte(RemoteSessionStore.OK);
+                RemoteSessionStore.writeMeta(out, meta);
+                break;
+            }
+            case RemoteSessionStore.OP_TOUCH: {
+                long maxInactiveMillis = in.readLong();
+                store.touch(id, maxInactiveMillis);
+                out.writeByte(RemoteSessionStore.OK);
+                break;
+            }
+            case RemoteSessionStore.OP_DELETE:
+                store.delete(id);
+                out.writeByte(RemoteSessionStore.OK);
+                break;
+            default:
+                throw new IOException("不明な操作です: " + op);
+            }
+        } catch (IllegalArgumentException e) {
+            //要求は読み終えているため、接続はそのまま使える
+            out.writeByte(RemoteSessionStore.ERROR);
+            out.writeUTF(String.valueOf(e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package sessions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpSession;
+
+/**
+ * SessionStoreに保存するセッション(1リクエストにつき1インスタンス)
+ * 属性の値は最初にgetAttribute()されたときにストアから読み込んでデシリアライズし、使用しない属性は読み込まない。
+ * ストアにはsetAttribute()・removeAttribute()された属性だけを書き込み、変更がない場合は期限の延長だけを行う。
+ * そのため、getAttribute()で取得したオブジェクトを変更しても保存されない(変更した場合は再度setAttribute()する)。
+ * セッションリスナー(HttpSessionListener等)には通知しない。
+ */
+public class StoreSession implements HttpSession {
+
+    private static final Logger LOGGER = Logger.getLogger(StoreSession.class.getName());
+
+    //デシリアライズを許可するクラス(セッションにはビューと標準のクラスだけを保存する)
+    private static final ObjectInputFilter FILTER = ObjectInputFilter.Config.createFilter(
+            "maxdepth=20;maxbytes=1048576;java.lang.*;java.util.*;java.time.*;java.math.*;actions.views.*;!*");
+
+    private final SessionStore store;
+    private final ServletContext context;
+    private final long createdAt;
+    private final boolean isNew;
+    private String id;
+    private long expiresAt;
+    private int maxInactiveInterval;
+    private boolean persisted;
+    private boolean valid = true;
+
+    //ストアに保存されている属性名 → 版
+    private final Map<String, Long> versions;
+    //読み込んだ・設定された属性の値
+    private final Map<String, Object> values = new HashMap<>();
+    //設定された属性名
+    private final Set<String> dirty = new HashSet<>();
+    //削除された属性名
+    private final Set<String> removed = new HashSet<>();
+    //IDを変更した際に新しいIDへ書き込む属性(属性名 → シリアライズした値)
+    private final Map<String, byte[]> carried = new HashMap<>();
+
+    private StoreSession(SessionStore store, ServletContext context, String id, long createdAt, long expiresAt,
+            Map<String, Long> versions, int maxInactiveInterval, boolean isNew) {
+        this.store = store;
+        this.context = context;
+        this.id = id;
+        this.createdAt = createdAt;
+        this.expiresAt = expiresAt;
+        this.versions = new LinkedHashMap<>(versions);
+        this.maxInactiveInterval = maxInactiveInterval;
+        this.isNew = isNew;
+        this.persisted = !isNew;
+    }
+
+    /**
+     * ストアに保存されているセッションを開く(属性の値はまだ読み込まない)
+     */
+    static StoreSession open(SessionStore store, ServletContext context, String id, SessionStore.Meta meta,
+            int maxInactiveInterval) {
+        return new StoreSession(store, context, id, meta.getCreatedAt(), meta.getExpiresAt(), meta.getVersions(),
+                maxInactiveInterval, false);
+    }
+
+    /**
+     * 新しいセッションを作成する(ストアにはflush()で書き込む)
+     */
+    static StoreSession create(SessionStore store, ServletContext context, String id, int maxInactiveInterval) {
+        long now = System.currentTimeMillis();
+        return new StoreSession(store, context, id, now, now + maxInactiveInterval * 1000L,
+                Collections.emptyMap(), maxInactiveInterval, true);
+    }
+
+    @Override
+    public long getCreationTime() {
+        checkValid();
+        return createdAt;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public long getLastAccessedTime() {
+        checkValid();
+        return expiresAt - maxInactiveMillis();
+    }
+
+    @Override
+    public ServletContext getServletContext() {
+        return context;
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int interval) {
+        maxInactiveInterval = interval;
+    }
+
+    @Override
+    public int getMaxInactiveInterval() {
+        return maxInactiveInterval;
+    }
+
+    @Override
+    @Deprecated
+    public javax.servlet.http.HttpSessionContext getSessionContext() {
+        return null;
+    }
+
+    @Override
+    public synchronized Object getAttribute(String name) {
+        checkValid();
+        if (values.containsKey(name)) {
+            return values.get(name);
+        }
+        Long version = versions.get(name);
+        if (!carried.containsKey(name) && (version == null || removed.contains(name))) {
+            return null;
+        }
+
+        Object value;
+        try {
+            byte[] bytes = carried.containsKey(name) ? carried.get(name) : store.loadAttribute(id, name, version);
+            value = bytes == null ? null : deserialize(bytes);
+        } catch (ClassNotFoundException | InvalidClassException e) {
+            //再配置でクラスが変わった等で復元できない属性は、存在しないものとして削除する
+            LOGGER.log(Level.WARNING, "セッションの属性を復元できません: " + name, e);
+            removeAttribute(name);
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        values.put(name, value);
+        return value;
+    }
+
+    @Override
+    @Deprecated
+    public Object getValue(String name) {
+        return getAttribute(name);
+    }
+
+    @Override
+    public synchronized Enumeration<String> getAttributeNames() {
+        checkValid();
+        return Collections.enumeration(names());
+    }
+
+    @Override
+    @Deprecated
+    public synchronized String[] getValueNames() {
+        checkValid();
+        return names().toArray(new String[0]);
+    }
+
+    @Override
+    public synchronized void setAttribute(String name, Object value) {
+        checkValid();
+        if (value == null) {
+            removeAttribute(name);
+            return;
+        }
+        if (!(value instanceof Serializable)) {
+            throw new IllegalArgumentException("セッションにはシリアライズできるオブジェクトだけを設定できます: " + name);
+        }
+        values.put(name, value);
+        dirty.add(name);
+        removed.remove(name);
+        carried.remove(name);
+    }
+
+    @Override
+    @Deprecated
+    public void putValue(String name, Object value) {
+        setAttribute(name, value);
+    }
+
+    @Override
+    public synchronized void removeAttribute(String name) {
+        checkValid();
+        values.remove(name);
+        dirty.remove(name);
+        carried.remove(name);
+        if (versions.containsKey(name)) {
+            removed.add(name);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public void removeValue(String name) {
+        removeAttribute(name);
+    }
+
+    @Override
+    public synchronized void invalidate() {
+        checkValid();
+        valid = false;
+        values.clear();
+        dirty.clear();
+        removed.clear();
+        carried.clear();
+        if (persisted) {
+            try {
+                store.delete(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public boolean isNew() {
+        checkValid();
+        return isNew;
+    }
+
+    /**
+     * @return 無効にされていなければtrue
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * セッションIDを変更する(属性はすべて新しいIDに書き込み、古いIDのセッションは削除する)
+     * @param newId 新しいセッションID
+     */
+    synchronized void changeId(String newId) {
+        checkValid();
+        try {
+            for (String name : versions.keySet()) {
+                if (!values.containsKey(name) && !removed.contains(name) && !carried.containsKey(name)) {
+                    byte[] bytes = store.loadAttribute(id, name, versions.get(name));
+                    if (bytes != null) {
+                        carried.put(name, bytes);
+                    }
+                }
+            }
+            values.values().removeIf(value -> value == null);
+            dirty.addAll(values.keySet());
+            if (persisted) {
+                store.delete(id);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        id = newId;
+        versions.clear();
+        removed.clear();
+        persisted = false;
+    }
+
+    /**
+     * 変更をストアに書き込む
+     * 変更がない場合は、期限までの残りが4分の3を切ったときだけ期限を延長する(毎回は書き込まない)
+     */
+    synchronized void flush() {
+        if (!valid) {
+            return;
+        }
+        try {
+            if (!persisted || !dirty.isEmpty() || !removed.isEmpty() || !carried.isEmpty()) {
+                Map<String, byte[]> updated = new HashMap<>(carried);
+                for (String name : dirty) {
+                    updated.put(name, serialize(name, values.get(name)));
+                }
+                SessionStore.Meta meta = store.save(id, createdAt, maxInactiveMillis(), updated, removed);
+                versions.clear();
+                versions.putAll(meta.getVersions());
+                expiresAt = meta.getExpiresAt();
+                dirty.clear();
+                removed.clear();
+                carried.clear();
+                persisted = true;
+            } else {
+                long now = System.currentTimeMillis();
+                if (expiresAt - now < maxInactiveMillis() * 3 / 4) {
+                    store.touch(id, maxInactiveMillis());
+                    expiresAt = now + maxInactiveMillis();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Set<String> names() {
+        Set<String> names = new LinkedHashSet<>(versions.keySet());
+        names.removeAll(removed);
+        names.addAll(values.keySet());
+        names.addAll(carried.keySet());
+        return names;
+    }
+
+    private long maxInactiveMillis() {
+        return maxInactiveInterval * 1000L;
+    }
+
+    private void checkValid() {
+        if (!valid) {
+            throw new IllegalStateException("セッションは無効にされています");
+        }
+    }
+
+    private static byte[] serialize(String name, Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (NotSerializableException e) {
+            throw new IllegalArgumentException("セッションの属性をシリアライズできません: " + name, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+                //アプリケーションのクラスローダーで読み込む
+                try {
+                    return Class.forName(desc.getName(), false, StoreSession.class.getClassLoader());
+                } catch (ClassNotFoundException e) {
+                    return super.resolveClass(desc);
+                }
+            }
+        }) {
+            in.setObjectInputFilter(FILTER);
+            return in.readObject();
+        }
+    }
+}
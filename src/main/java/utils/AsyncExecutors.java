@@ -0,0 +1,72 @@
+package utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * リクエストの処理をコンテナのスレッドとは別に実行するExecutorServiceを作成するクラス
+ * 仮想スレッドが使える場合は仮想スレッドで実行し、使えない場合はプラットフォームスレッドのプールで実行する。
+ * 1. JDK 21以降でビルドした場合(jdk21プロファイル)は VirtualThreadExecutorFactory を使用する
+ * 2. JDK 11でビルドしてJDK 21以降で実行した場合は Executors.newVirtualThreadPerTaskExecutor() を呼び出す
+ * 3. どちらも使えない場合は、指定したスレッド数のプールを作成する
+ */
+public final class AsyncExecutors {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncExecutors.class.getName());
+
+    private static final String FACTORY_CLASS = "utils.VirtualThreadExecutorFactory";
+
+    private AsyncExecutors() {
+    }
+
+    /**
+     * ExecutorServiceを作成する
+     * @param name スレッド名の接頭辞
+     * @param platformThreads 仮想スレッドが使えない場合に作成するスレッド数
+     * @return ExecutorService
+     */
+    public static ExecutorService newExecutor(String name, int platformThreads) {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            Class<?> factory = Class.forName(FACTORY_CLASS);
+            MethodHandle create = lookup.findStatic(factory, "newExecutor",
+                    MethodType.methodType(ExecutorService.class, String.class));
+            LOGGER.info(name + ": 仮想スレッドで実行します");
+            return (ExecutorService) create.invoke(name);
+        } catch (ClassNotFoundException | LinkageError e) {
+            //jdk21プロファイルでビルドしていない、またはJDK 21より前のJDKで実行している
+        } catch (Throwable e) {
+            LOGGER.warning(name + ": " + FACTORY_CLASS + "を使用できません: " + e);
+        }
+
+        try {
+            MethodHandle create = lookup.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+            LOGGER.info(name + ": 仮想スレッドで実行します");
+            return (ExecutorService) create.invoke();
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            //JDK 21より前のJDKで実行している
+        } catch (Throwable e) {
+            LOGGER.warning(name + ": 仮想スレッドを使用できません: " + e);
+        }
+
+        LOGGER.info(name + ": " + platformThreads + "個のスレッドで実行します");
+        AtomicInteger seq = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(platformThreads, platformThreads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, name + "-" + seq.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
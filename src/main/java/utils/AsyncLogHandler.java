@@ -0,0 +1,111 @@
+package utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * ログの出力を別スレッドで行うハンドラ
+ * publish()は受け取ったログをキューに入れるだけで、出力先(FileHandler等)への書き込みは専用のスレッドが行う。
+ * キューが一杯の場合は待たずに破棄し、破棄した件数を次に出力できたときに記録する。
+ */
+public class AsyncLogHandler extends Handler {
+
+    //終了時に残りのログを書き込む時間の上限(ミリ秒)
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    private final Handler target;
+    private final BlockingQueue<LogRecord> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * コンストラクタ
+     * @param target 出力先のハンドラ
+     * @param capacity キューに保持するログの件数の上限
+     * @param threadName 書き込みを行うスレッドの名前
+     */
+    public AsyncLogHandler(Handler target, int capacity, String threadName) {
+        this.target = target;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.writer = new Thread(this::drain, threadName);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        if (!queue.offer(record)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * @return キューが一杯のため破棄したログの件数(次に出力するまで)
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void flush() {
+        target.flush();
+    }
+
+    /**
+     * 受け付けを終了し、キューに残っているログを書き込んでから出力先を閉じる
+     */
+    @Override
+    public void close() {
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+
+    private void drain() {
+        try {
+            while (!closed) {
+                LogRecord record = queue.poll(1, TimeUnit.SECONDS);
+                if (record != null) {
+                    write(record);
+                } else {
+                    target.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            //終了処理
+        }
+        LogRecord record;
+        while ((record = queue.poll()) != null) {
+            write(record);
+        }
+        target.flush();
+    }
+
+    private void write(LogRecord record) {
+        try {
+            long count = dropped.sumThenReset();
+            if (count > 0) {
+                LogRecord notice = new LogRecord(record.getLevel(), "キューが一杯のため " + count + " 件のログを破棄しました");
+                notice.setLoggerName(record.getLoggerName());
+                target.publish(notice);
+            }
+            target.publish(record);
+        } catch (RuntimeException e) {
+            reportError("ログを出力できません", e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import actions.views.EmployeePrincipal;
+import constants.JpaConst;
+import constants.PropertyConst;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * ログイン中の従業員を署名付きのクッキーで受け渡すためのクラス(daily_report_system.auth.mode=token の場合に使用する)
+ * クッキーにはEmployeePrincipalと期限をそのまま格納し、HMAC-SHA256で署名する。
+ * 検証は署名と期限の確認だけで、セッションやストアは参照しない。そのため全サーバーで同じ鍵を設定する必要がある。
+ * 鍵はペッパーと同じくapplication.properties(authTokenSecret)で設定し、LoginFilterの初期化時にinit()で渡す。
+ * 従業員の更新・論理削除は、トークンに格納した版(従業員の更新日時)をLoginFilterがDBの版と比較して反映する
+ * (PrincipalRegistry 一定時間はDBの版を保持するため、その時間だけ遅れる場合がある)。
+ * 期限は残りが半分を切ったリクエストで延長する(ログイン日時は引き継ぐ)。
+ * ログアウトはクッキーを削除するだけで、発行済みのトークン自体は期限まで有効なことに注意。
+ * <pre>
+ * トークンの形式: Base64URL(内容) "." Base64URL(署名)
+ * 内容: 形式の版(byte) id(int) 管理者権限(int) 役職(int) 版(long) ログイン日時(long) 期限(long) 社員番号(UTF) 氏名(UTF)
+ * </pre>
+ */
+public class AuthTokens {
+
+    /**
+     * ログイン中の従業員を受け渡すクッキーの名前
+     */
+    public static final String COOKIE_NAME = "DRS_AUTH";
+
+    /**
+     * フラッシュメッセージを受け渡すクッキーの名前
+     */
+    public static final String FLASH_COOKIE_NAME = "DRS_FLASH";
+
+    private static final byte FORMAT = 1;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    //署名の用途(同じ鍵で作成した署名を別の用途に流用させない)
+    private static final byte PURPOSE_AUTH = 1;
+    private static final byte PURPOSE_CSRF = 2;
+    private static final byte PURPOSE_FLASH = 3;
+
+    private static volatile AuthTokens instance;
+
+    //トークンを使用しない設定の場合はnull
+    private final SecretKeySpec key;
+    private final long ttlMillis;
+
+    private AuthTokens(byte[] secret, long ttlMillis) {
+        this.key = secret == null ? null : new SecretKeySpec(secret, ALGORITHM);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @return トークンでログイン状態を受け渡す設定であればtrue
+     */
+    public static boolean isEnabled() {
+        return getInstance() != null;
+    }
+
+    /**
+     * 設定と署名する鍵からインスタンスを作成する(起動時に1度だけ呼び出す)
+     * @param secret 署名する鍵(application.propertiesのauthTokenSecret)
+     * @throws IllegalStateException トークンを使用する設定で、鍵が設定されていない場合
+     */
+    public static synchronized void init(String secret) {
+        instance = create(secret);
+    }
+
+    /**
+     * インスタンスを返却する
+     * @return インスタンス トークンを使用しない設定(daily_report_system.auth.mode=session)の場合はnull
+     */
+    public static AuthTokens getInstance() {
+        if (instance == null) {
+            synchronized (AuthTokens.class) {
+                if (instance == null) {
+                    //init()が呼ばれていない場合は鍵なしで作成する(トークンを使用する設定では例外になる)
+                    instance = create(null);
+                }
+            }
+        }
+        return instance.key == null ? null : instance;
+    }
+
+    private static AuthTokens create(String secret) {
+        if (!"token".equals(DBUtil.getProperty(JpaConst.PROP_AUTH_MODE, "session"))) {
+            return new AuthTokens(null, 0);
+        }
+
+        //鍵がなければ起動させない(起動ごとに作成した鍵では、再起動や他のサーバーで検証できなくなる)
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalStateException("トークンに署名する鍵(" + PropertyConst.AUTH_TOKEN_SECRET.getValue()
+                    + ")がapplication.propertiesに設定されていません");
+        }
+        long ttl = DBUtil.getLongProperty(JpaConst.PROP_AUTH_TOKEN_TTL, 1800) * 1000;
+        return new AuthTokens(secret.getBytes(StandardCharsets.UTF_8), ttl);
+    }
+
+    /**
+     * ログイン中の従業員のトークンを発行する
+     * @param principal ログイン中の従業員
+     * @param loginAt ログイン日時(エポックミリ秒、期限を延長する場合は元のトークンの値)
+     * @return トークン
+     */
+    public Token issue(EmployeePrincipal principal, long loginAt) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeInt(principal.getId());
+            out.writeInt(principal.getAdminFlag());
+            out.writeInt(principal.getBossFlag());
+            out.writeLong(principal.getVersion());
+            out.writeLong(loginAt);
+            out.writeLong(expiresAt);
+            out.writeUTF(principal.getCode());
+            out.writeUTF(principal.getName());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        String value = encode(payload) + "." + encode(sign(PURPOSE_AUTH, payload));
+        return new Token(principal, loginAt, expiresAt, value);
+    }
+
+    /**
+     * トークンを検証する
+     * @param value クッキーの値
+     * @return 検証したトークン 署名が一致しない・期限が切れている・形式が異なる場合はnull
+     */
+    public Token verify(String value) {
+        byte[] payload = verifySigned(PURPOSE_AUTH, value);
+        if (payload == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != FORMAT) {
+                return null;
+            }
+            int id = in.readInt();
+            int adminFlag = in.readInt();
+            int bossFlag = in.readInt();
+            long version = in.readLong();
+            long loginAt = in.readLong();
+            long expiresAt = in.readLong();
+            String code = in.readUTF();
+            String name = in.readUTF();
+            if (expiresAt < System.currentTimeMillis()) {
+                return null;
+            }
+            return new Token(new EmployeePrincipal(id, code, name, adminFlag, bossFlag, version), loginAt, expiresAt, value);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param token 検証したトークン
+     * @return 期限を延長する(新しいトークンを発行する)必要があればtrue
+     */
+    public boolean needsRenewal(Token token) {
+        return token.getExpiresAt() - System.currentTimeMillis() < ttlMillis / 2;
+    }
+
+    /**
+     * ログイン中の従業員のCSRF対策用トークンを作成する
+     * 従業員とログイン日時から作成するため、期限を延長しても変わらず、ログインし直すと変わる。
+     * @param token 検証したトークン
+     * @return CSRF対策用トークン
+     */
+    public String csrfToken(Token token) {
+        byte[] source = (token.getPrincipal().getId() + ":" + token.getLoginAt()).getBytes(StandardCharsets.UTF_8);
+        return encode(sign(PURPOSE_CSRF, source));
+    }
+
+    /**
+     * フラッシュメッセージに署名する
+     * @param message フラッシュメッセージ
+     * @return クッキーの値
+     */
+    public String signFlash(String message) {
+        byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+        return encode(payload) + "." + encode(sign(PURPOSE_FLASH, payload));
+    }
+
+    /**
+     * 署名したフラッシュメッセージを検証する
+     * @param value クッキーの値
+     * @return フラッシュメッセージ 署名が一致しない場合はnull
+     */
+    public String verifyFlash(String value) {
+        byte[] payload = verifySigned(PURPOSE_FLASH, value);
+        return payload == null ? null : new String(payload, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * リクエストのクッキーの値を返却する
+     * @param request リクエスト
+     * @param name クッキーの名前
+     * @return クッキーの値 ない場合はnull
+     */
+    public static String getCookie(HttpServletRequest request, String name) {
+        if (request.getCookies() != null) {
+            for (Cookie cookie : request.getCookies()) {
+                if (name.equals(cookie.getName())) {
+                    return cookie.getValue();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * クッキーを設定する(ブラウザを閉じるまで保持させる)
+     * @param request リクエスト
+     * @param response レスポンス
+     * @param name クッキーの名前
+     * @param value クッキーの値 nullの場合はクッキーを削除する
+     */
+    public static void setCookie(HttpServletRequest request, HttpServletResponse response, String name, String value) {
+        String path = request.getContextPath().isEmpty() ? "/" : request.getContextPath();
+        response.addHeader("Set-Cookie", name + "=" + (value == null ? "" : value) + "; Path=" + path
+                + (value == null ? "; Max-Age=0" : "") + "; HttpOnly; SameSite=Lax"
+                + (request.isSecure() ? "; Secure" : ""));
+    }
+
+    private byte[] verifySigned(byte purpose, String value) {
+        if (value == null) {
+            return null;
+        }
+        int dot = value.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(value.substring(0, dot));
+            byte[] signature = Base64.getUrlDecoder().decode(value.substring(dot + 1));
+            return MessageDigest.isEqual(signature, sign(purpose, payload)) ? payload : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] sign(byte purpose, byte[] payload) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            mac.update(purpose);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * 検証したトークン
+     */
+    @Getter //全てのクラスフィールドについてgetterを自動生成する(Lombok)
+    @AllArgsConstructor //全てのクラスフィールドを引数にもつ引数ありコンストラクタを自動生成する(Lombok)
+    public static class Token {
+
+        /**
+         * ログイン中の従業員
+         */
+        private final EmployeePrincipal principal;
+
+        /**
+         * ログイン日時(エポックミリ秒)
+         */
+        private final long loginAt;
+
+        /**
+         * 期限(エポックミリ秒)
+         */
+        private final long expiresAt;
+
+        /**
+         * クッキーの値
+         */
+        private final String value;
+    }
+}
@@ -0,0 +1,82 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * long値の集合について「含まれていない」ことを確実に判定するためのBloomフィルタ
+ * mightContain()がfalseを返した値は集合に含まれていない。trueの場合は含まれている可能性がある(誤判定率は作成時に指定)。
+ * 複数のスレッドから同時に追加・判定できる。
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * @param expectedInsertions 追加する値の件数の見込み
+     * @param fpp 誤判定率(含まれていない値にtrueを返す確率)
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        //ビット位置はintのハッシュ値から求めるため、ビット数はintの範囲に収める
+        int words = (int) Math.min(1 << 25, (Math.max(64, m) + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.numBits = (long) words * 64;
+        this.numHashes = Math.max(1, Math.min(16, (int) Math.round((double) numBits / n * Math.log(2))));
+    }
+
+    /**
+     * 値を追加する
+     * @param value 値
+     */
+    public void put(long value) {
+        long hash = mix(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = index(h1 + i * h2);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current;
+            while (((current = bits.get(word)) & mask) == 0) {
+                if (bits.compareAndSet(word, current, current | mask)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * 値が含まれている可能性があるかどうかを返却する
+     * @param value 値
+     * @return 含まれている可能性がある:true 含まれていない:false
+     */
+    public boolean mightContain(long value) {
+        long hash = mix(value);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 1; i <= numHashes; i++) {
+            long bit = index(h1 + i * h2);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long index(int combined) {
+        return (combined & Integer.MAX_VALUE) % numBits;
+    }
+
+    //値を64bitのハッシュ値に変換する(MurmurHash3のfinalizer)
+    private static long mix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
@@ -0,0 +1,118 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * レスポンス圧縮の効果を経路ごとに集計するクラス
+ */
+public class CompressionStatistics implements CompressionStatisticsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(CompressionStatistics.class.getName());
+
+    /**
+     * JMXに登録する際のMBean名
+     */
+    public static final String MBEAN_NAME = "daily_report_system:type=CompressionStatistics";
+
+    /**
+     * 集計する経路の数の上限(超えた経路は OTHER_ROUTE にまとめる)
+     */
+    private static final int MAX_ROUTES = 500;
+    private static final String OTHER_ROUTE = "(other)";
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    /**
+     * 圧縮したレスポンス1件分を記録する
+     * @param route 経路
+     * @param bytesIn 圧縮前のバイト数
+     * @param bytesOut 圧縮後のバイト数
+     */
+    public void record(String route, long bytesIn, long bytesOut) {
+        Route r = routes.get(route);
+        if (r == null) {
+            r = routes.size() < MAX_ROUTES
+                    ? routes.computeIfAbsent(route, k -> new Route())
+                    : routes.computeIfAbsent(OTHER_ROUTE, k -> new Route());
+        }
+        r.responses.increment();
+        r.bytesIn.add(bytesIn);
+        r.bytesOut.add(bytesOut);
+    }
+
+    @Override
+    public long getCompressedResponses() {
+        return routes.values().stream().mapToLong(r -> r.responses.sum()).sum();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return routes.values().stream().mapToLong(r -> r.bytesIn.sum()).sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return routes.values().stream().mapToLong(r -> r.bytesOut.sum()).sum();
+    }
+
+    @Override
+    public long getBytesSaved() {
+        return getBytesIn() - getBytesOut();
+    }
+
+    @Override
+    public Map<String, Long> getBytesSavedByRoute() {
+        Map<String, Long> saved = new TreeMap<>();
+        routes.forEach((name, r) -> saved.put(name, r.bytesIn.sum() - r.bytesOut.sum()));
+        return saved;
+    }
+
+    /**
+     * JMXにMBeanとして登録する
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "圧縮統計のMBean登録に失敗しました", e);
+        }
+    }
+
+    /**
+     * JMXからMBeanの登録を解除する
+     */
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "圧縮統計のMBean登録解除に失敗しました", e);
+        }
+    }
+
+    /**
+     * 1つの経路の集計値
+     */
+    private static class Route {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+    }
+}
@@ -0,0 +1,35 @@
+package utils;
+
+import java.util.Map;
+
+/**
+ * レスポンス圧縮の統計情報をJMXで公開するためのインターフェース
+ * (MBean名: daily_report_system:type=CompressionStatistics)
+ */
+public interface CompressionStatisticsMXBean {
+
+    /**
+     * 圧縮したレスポンスの件数
+     */
+    long getCompressedResponses();
+
+    /**
+     * 圧縮したレスポンスの圧縮前のバイト数の合計
+     */
+    long getBytesIn();
+
+    /**
+     * 圧縮したレスポンスの圧縮後のバイト数の合計
+     */
+    long getBytesOut();
+
+    /**
+     * 圧縮により削減したバイト数の合計
+     */
+    long getBytesSaved();
+
+    /**
+     * 経路(例:"Report.index"、"/css/style.css")ごとの削減したバイト数
+     */
+    Map<String, Long> getBytesSavedByRoute();
+}
@@ -1,26 +1,135 @@
 package utils;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.sql.DataSource;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+import com.zaxxer.hikari.HikariDataSource;
 
 import constants.JpaConst;
 
 public class DBUtil {
 
-    private static EntityManagerFactory emf;
+    private static volatile EntityManagerFactory emf;
+    private static SessionFactory sessionFactory;
+    private static HikariDataSource dataSource;
+    private static EntityManagerLeakDetector leakDetector;
+    private static PoolStatistics poolStatistics;
 
     //EntityManagerインスタンスを生成
+    //(EntityManagerFactory.createEntityManager()と同じ設定で、実行したSQL・取得した行数をリクエストごとに集計する)
     public static EntityManager createEntityManager() {
-        return _getEntityManagerFactory().createEntityManager();
+        _getEntityManagerFactory();
+        SqlRecorder recorder = new SqlRecorder();
+        Session session = sessionFactory.withOptions()
+                .autoJoinTransactions(true)
+                .statementInspector(recorder)
+                .eventListeners(recorder)
+                .openSession();
+        leakDetector.track(session);
+        return InstrumentedEntityManager.wrap(session);
+    }
+
+    //接続プールの統計情報を取得
+    public static PoolStatistics getPoolStatistics() {
+        _getEntityManagerFactory();
+        return poolStatistics;
+    }
+
+    //接続プールのDataSourceを取得
+    public static DataSource getDataSource() {
+        _getEntityManagerFactory();
+        return dataSource;
+    }
+
+    //接続プールの最大接続数を取得
+    public static int getMaximumPoolSize() {
+        _getEntityManagerFactory();
+        return dataSource.getMaximumPoolSize();
+    }
+
+    //EntityManagerFactoryと接続プールを破棄
+    public static synchronized void close() {
+        if (emf != null) {
+            poolStatistics.unregister();
+            leakDetector.shutdown();
+            emf.close();
+            emf = null;
+        }
     }
 
     //EntityManagerFactoryインスタンスを生成
     private static EntityManagerFactory _getEntityManagerFactory() {
         if (emf == null) {
-            emf = Persistence.createEntityManagerFactory(JpaConst.PERSISTENCE_UNIT_NAME);
+            synchronized (DBUtil.class) {
+                if (emf == null) {
+                    EntityManagerFactory factory = Persistence.createEntityManagerFactory(
+                            JpaConst.PERSISTENCE_UNIT_NAME, getOverrides());
+
+                    //persistence.xmlで設定したHikariCPの接続プールを取得
+                    dataSource = factory.unwrap(SessionFactoryImplementor.class)
+                            .getServiceRegistry()
+                            .getService(ConnectionProvider.class)
+                            .unwrap(HikariDataSource.class);
+
+                    //EntityManagerのクローズ漏れ検出と、接続取得時間の計測を開始
+                    leakDetector = new EntityManagerLeakDetector(getLongProperty(factory, JpaConst.PROP_EM_LEAK_THRESHOLD, 0));
+                    poolStatistics = new PoolStatistics(dataSource.getHikariPoolMXBean(), leakDetector);
+                    dataSource.setMetricsTrackerFactory(poolStatistics);
+                    poolStatistics.register();
+
+                    sessionFactory = factory.unwrap(SessionFactory.class);
+                    emf = factory;
+                }
+            }
         }
 
         return emf;
     }
-}
\ No newline at end of file
+
+    //persistence.xmlの設定のうち、同じ名前のシステムプロパティが設定されているものを上書きする
+    //(例:テストで -Djavax.persistence.jdbc.url=... を指定して別のDBに接続する)
+    private static Map<String, String> getOverrides() {
+        Map<String, String> overrides = new HashMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("javax.persistence.") || name.startsWith("hibernate.")
+                    || name.startsWith(JpaConst.PERSISTENCE_UNIT_NAME + ".")) {
+                overrides.put(name, System.getProperty(name));
+            }
+        }
+        return overrides;
+    }
+
+    //persistence.xmlのプロパティを取得
+    public static String getProperty(String name, String defaultValue) {
+        Object value = _getEntityManagerFactory().getProperties().get(name);
+        return value == null ? defaultValue : value.toString().trim();
+    }
+
+    //persistence.xmlのプロパティを数値で取得
+    public static long getLongProperty(String name, long defaultValue) {
+        return getLongProperty(_getEntityManagerFactory(), name, defaultValue);
+    }
+
+    //persistence.xmlのプロパティを数値で取得
+    private static long getLongProperty(EntityManagerFactory factory, String name, long defaultValue) {
+        Object value = factory.getProperties().get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.toString().trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.persistence.EntityManager;
+
+/**
+ * クローズされないまま放置されたEntityManagerを検出するクラス
+ * 生成したEntityManagerを生成箇所のスタックトレースとともに記録しておき、
+ * 一定時間を超えて開いたままのものを定期的にログへ出力する。
+ */
+public class EntityManagerLeakDetector {
+
+    private static final Logger LOGGER = Logger.getLogger(EntityManagerLeakDetector.class.getName());
+
+    /**
+     * 監視の最小間隔(ミリ秒)
+     */
+    private static final long MIN_SWEEP_INTERVAL = 1000;
+
+    private final long thresholdMillis;
+    private final Map<EntityManager, Allocation> allocations = new ConcurrentHashMap<>();
+    private final LongAdder leaked = new LongAdder();
+    private final ScheduledExecutorService sweeper;
+
+    /**
+     * コンストラクタ
+     * @param thresholdMillis クローズ漏れとみなすまでの時間(ミリ秒、0以下で検出しない)
+     */
+    public EntityManagerLeakDetector(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+
+        if (isEnabled()) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "em-leak-detector");
+                t.setDaemon(true);
+                return t;
+            });
+            long interval = Math.max(MIN_SWEEP_INTERVAL, thresholdMillis / 2);
+            sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            sweeper = null;
+        }
+    }
+
+    /**
+     * 検出が有効かどうかを返却する
+     * @return 有効:true 無効:false
+     */
+    public boolean isEnabled() {
+        return thresholdMillis > 0;
+    }
+
+    /**
+     * 生成したEntityManagerを監視対象に加える
+     * @param em EntityManager
+     */
+    public void track(EntityManager em) {
+        if (isEnabled()) {
+            allocations.put(em, new Allocation(System.currentTimeMillis(), Thread.currentThread().getName()));
+        }
+    }
+
+    /**
+     * 監視中(クローズされていない)のEntityManagerの数を返却する
+     * @return EntityManagerの数
+     */
+    public int getOpenCount() {
+        int open = 0;
+        for (EntityManager em : allocations.keySet()) {
+            if (em.isOpen()) {
+                open++;
+            }
+        }
+        return open;
+    }
+
+    /**
+     * クローズ漏れとして検出したEntityManagerの累計数を返却する
+     * @return 検出数
+     */
+    public long getLeakedCount() {
+        return leaked.sum();
+    }
+
+    /**
+     * 監視を終了する
+     */
+    public void shutdown() {
+        if (sweeper != null) {
+            sweeper.shutdownNow();
+        }
+        allocations.clear();
+    }
+
+    /**
+     * クローズ済みのものを監視対象から外し、閾値を超えて開いたままのものをログに出力する
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<EntityManager, Allocation>> it = allocations.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<EntityManager, Allocation> entry = it.next();
+            Allocation allocation = entry.getValue();
+
+            if (!entry.getKey().isOpen()) {
+                it.remove();
+
+            } else if (now - allocation.createdAt > thresholdMillis) {
+                //一度報告したものは監視対象から外す
+                it.remove();
+                leaked.increment();
+                LOGGER.log(Level.WARNING,
+                        String.format("EntityManagerが%dミリ秒以上クローズされていません (生成スレッド: %s)",
+                                now - allocation.createdAt, allocation.threadName),
+                        allocation.site);
+            }
+        }
+    }
+
+    /**
+     * EntityManagerの生成情報
+     */
+    private static class Allocation {
+        private final long createdAt;
+        private final String threadName;
+        private final Throwable site = new Throwable("EntityManagerの生成箇所");
+
+        private Allocation(long createdAt, String threadName) {
+            this.createdAt = createdAt;
+            this.threadName = threadName;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import constants.JpaConst;
+
+/**
+ * 1つのActionの中で、互いに依存しないServiceの呼び出しを並行して実行するためのスコープ
+ * fork()した処理はそれぞれ別スレッドの作業単位(別のEntityManager・別の接続)で実行し、join()で期限までに全ての完了を待つ。
+ * いずれかが失敗した場合、または期限を超えた場合は残りを中断し、close()は全ての処理が終わるまで(期限に猶予を加えた時刻まで)待つ。
+ * スレッドの中断ではJDBCの問い合わせは止まらないため、別スレッドの作業単位には期限までの残り時間を問い合わせのタイムアウトとして設定する。
+ * 別スレッドの処理は呼び出し元とは別に接続を使用するため、同時に実行する数は接続プールから決めた上限までとし、
+ * 上限を超えた場合と、接続プールに空きがない場合(接続を待っているスレッドがいる場合)は、
+ * fork()を呼び出したスレッドで呼び出し元の作業単位(接続)のまま、その場で実行する。
+ * <pre>
+ * try (FanOut scope = FanOut.open()) {
+ *     FanOut.Task&lt;Long&gt; count = scope.fork(() -&gt; service.countAll());
+ *     List&lt;ReportSummaryView&gt; reports = service.getAllPerPage(page); //呼び出し元のスレッドで実行
+ *     scope.join();
+ *     long reportsCount = count.get();
+ * }
+ * </pre>
+ */
+public class FanOut implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(FanOut.class.getName());
+
+    //close()で期限を過ぎてから処理の終了を待つ時間(ミリ秒、問い合わせのタイムアウトは秒単位のため1秒以上とする)
+    private static final long CLOSE_GRACE_MILLIS = 2000;
+
+    private static volatile ExecutorService executor;
+    //別スレッドで実行中の処理が使用する接続の数の上限
+    private static Semaphore permits;
+    private static PoolStatistics pool;
+    private static long defaultTimeout;
+
+    private final long deadline;
+    private final List<Task<?>> tasks = new ArrayList<>();
+    //完了した処理(完了した順)
+    private final BlockingQueue<Task<?>> completed = new LinkedBlockingQueue<>();
+
+    private FanOut(long timeoutMillis) {
+        this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * persistence.xmlに設定した期限でスコープを開始する
+     * @return スコープ
+     */
+    public static FanOut open() {
+        init();
+        return new FanOut(defaultTimeout);
+    }
+
+    /**
+     * 指定した期限でスコープを開始する
+     * @param timeoutMillis join()で完了を待つ期限(ミリ秒)
+     * @return スコープ
+     */
+    public static FanOut open(long timeoutMillis) {
+        init();
+        return new FanOut(timeoutMillis);
+    }
+
+    private static synchronized void init() {
+        if (executor == null) {
+            int maxThreads = (int) Math.max(1, DBUtil.getLongProperty(JpaConst.PROP_FANOUT_MAX_THREADS, 10));
+            long maxConnections = DBUtil.getLongProperty(JpaConst.PROP_FANOUT_MAX_CONNECTIONS, 0);
+            if (maxConnections <= 0) {
+                //残りは呼び出し元のリクエストが使用する
+                maxConnections = DBUtil.getMaximumPoolSize() / 4;
+            }
+            defaultTimeout = DBUtil.getLongProperty(JpaConst.PROP_FANOUT_TIMEOUT, 5000);
+            permits = new Semaphore((int) Math.max(1, Math.min(maxThreads, maxConnections)));
+            pool = DBUtil.getPoolStatistics();
+            executor = AsyncExecutors.newExecutor("fanout", maxThreads);
+        }
+    }
+
+    /**
+     * 並行して実行するスレッドを停止する
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * 処理を別スレッドで開始する
+     * @param <T> 処理結果の型
+     * @param supplier 処理(Serviceの呼び出し)
+     * @return 処理結果を受け取るためのTask
+     */
+    public <T> Task<T> fork(Supplier<T> supplier) {
+        Task<T> task = new Task<>(this, supplier);
+        tasks.add(task);
+
+        //空きがなければ待たずに、呼び出し元のスレッドと作業単位でその場で実行する
+        //(接続プールに空きがない場合に別スレッドで接続を待つと、呼び出し元が接続を持ったまま待つことになるため)
+        ExecutorService e = executor;
+        if (e != null && poolAvailable() && permits.tryAcquire()) {
+            try {
+                e.execute(() -> {
+                    try {
+                        task.runIsolated();
+                    } finally {
+                        permits.release();
+                    }
+                });
+                return task;
+            } catch (RejectedExecutionException ex) {
+                permits.release();
+            }
+        }
+        task.runInline();
+        return task;
+    }
+
+    /**
+     * 接続プールにすぐに使用できる接続があるかどうか
+     */
+    private static boolean poolAvailable() {
+        return pool.getThreadsAwaitingConnection() == 0 && pool.getIdleConnections() > 0;
+    }
+
+    /**
+     * fork()した全ての処理の完了を期限まで待つ
+     * いずれかが失敗した場合は残りを中断してその例外を、期限を超えた場合は全てを中断してIllegalStateExceptionをスローする
+     */
+    public void join() {
+        try {
+            for (int i = 0; i < tasks.size(); i++) {
+                long remaining = deadline - System.nanoTime();
+                Task<?> task = remaining > 0 ? completed.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                if (task == null) {
+                    throw new IllegalStateException("並行して実行した処理が期限までに完了しませんでした");
+                }
+                task.rethrow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelAll();
+            throw new IllegalStateException("並行して実行した処理の完了待ちが中断されました", e);
+        } catch (RuntimeException | Error e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    /**
+     * スコープを終了する
+     * 完了していない処理は中断し、全ての処理が終わる(作業単位がクローズされる)まで待つ
+     * 期限に猶予を加えた時刻を過ぎても終わらない処理は待たずに戻る(その処理は別スレッドで終わり次第、作業単位をクローズする)
+     */
+    @Override
+    public void close() {
+        cancelAll();
+        long waitUntil = Math.max(deadline, System.nanoTime()) + TimeUnit.MILLISECONDS.toNanos(CLOSE_GRACE_MILLIS);
+        boolean interrupted = false;
+        int abandoned = 0;
+        for (Task<?> task : tasks) {
+            while (true) {
+                try {
+                    long remaining = waitUntil - System.nanoTime();
+                    if (!task.done.await(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                        abandoned++;
+                    }
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (abandoned > 0) {
+            LOGGER.warning("並行して実行した処理のうち" + abandoned + "件が中断後も終了しないため、待たずにスコープを終了しました");
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 別スレッドの作業単位に設定する問い合わせのタイムアウト(期限までの残り時間、秒単位に切り上げる)
+     * @return タイムアウト(ミリ秒) 期限を過ぎている場合は0
+     */
+    private long queryTimeoutMillis() {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+            return 0;
+        }
+        return TimeUnit.SECONDS.toMillis((remaining + 999) / 1000);
+    }
+
+    private void cancelAll() {
+        for (Task<?> task : tasks) {
+            task.cancel();
+        }
+    }
+
+    /**
+     * fork()した1つの処理
+     * @param <T> 処理結果の型
+     */
+    public static class Task<T> {
+        private final FanOut scope;
+        private final Supplier<T> supplier;
+        private final CountDownLatch done = new CountDownLatch(1);
+        //呼び出し元のリクエストの集計(別スレッドで実行したDBの処理時間も加算する)
+        private final RequestMetrics metrics = RequestMetrics.current();
+        private Thread runner;
+        private boolean cancelled;
+        private volatile T result;
+        private volatile Throwable failure;
+
+        private Task(FanOut scope, Supplier<T> supplier) {
+            this.scope = scope;
+            this.supplier = supplier;
+        }
+
+        /**
+         * 別スレッドで、そのスレッドの作業単位(別の接続)を開始して実行する
+         */
+        private void runIsolated() {
+            long queryTimeout = scope.queryTimeoutMillis();
+            synchronized (this) {
+                if (cancelled || queryTimeout == 0) {
+                    finish(null, new CancellationException("並行して実行した処理が開始前に中断されました"));
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+
+            T value = null;
+            Throwable error = null;
+            try (RequestMetrics.Binding binding = RequestMetrics.bind(metrics);
+                    UnitOfWork unitOfWork = UnitOfWork.begin(queryTimeout)) {
+                value = supplier.get();
+            } catch (RuntimeException | Error e) {
+                error = e;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                Thread.interrupted(); //中断された状態を次の処理に残さない
+            }
+            finish(value, error);
+        }
+
+        /**
+         * 呼び出し元のスレッドで、呼び出し元の作業単位のまま実行する
+         */
+        private void runInline() {
+            try {
+                finish(supplier.get(), null);
+            } catch (RuntimeException | Error e) {
+                finish(null, e);
+            }
+        }
+
+        private void finish(T value, Throwable error) {
+            result = value;
+            failure = error;
+            done.countDown();
+            scope.completed.add(this);
+        }
+
+        private synchronized void cancel() {
+            cancelled = true;
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+
+        private void rethrow() {
+            Throwable f = failure;
+            if (f instanceof RuntimeException) {
+                throw (RuntimeException) f;
+            }
+            if (f instanceof Error) {
+                throw (Error) f;
+            }
+        }
+
+        /**
+         * 処理結果を返却する(join()の後に呼び出す)
+         * @return 処理結果
+         */
+        public T get() {
+            if (done.getCount() > 0) {
+                throw new IllegalStateException("join()の前に処理結果を取得しようとしました");
+            }
+            rethrow();
+            return result;
+        }
+    }
+}
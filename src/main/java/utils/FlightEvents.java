@@ -0,0 +1,236 @@
+package utils;
+
+import constants.JpaConst;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR(Java Flight Recorder)に記録するイベント
+ * Actionのメソッドの実行(Dispatch)、Serviceのメソッドの呼び出し(ServiceCall)、トランザクション(Transaction)を、
+ * 経路・ログインしている従業員のid・行数とともに記録する。処理時間が設定したしきい値未満のイベントは記録しない。
+ * JFRで記録していない場合(-XX:StartFlightRecording や jcmd JFR.start で開始していない場合)は値を集めない。
+ * <pre>
+ * java -XX:StartFlightRecording=disk=true,maxage=1d,filename=daily_report_system.jfr ...
+ * jfr print --events "daily_report_system.*" daily_report_system.jfr
+ * </pre>
+ */
+public final class FlightEvents {
+
+    private static volatile FlightEvents instance;
+
+    private final boolean enabled;
+    //しきい値(ナノ秒)
+    private final long dispatchThreshold;
+    private final long serviceThreshold;
+    private final long transactionThreshold;
+
+    private FlightEvents(boolean enabled, long dispatchThreshold, long serviceThreshold, long transactionThreshold) {
+        this.enabled = enabled;
+        this.dispatchThreshold = dispatchThreshold;
+        this.serviceThreshold = serviceThreshold;
+        this.transactionThreshold = transactionThreshold;
+    }
+
+    /**
+     * 設定からインスタンスを作成して返却する
+     * @return インスタンス
+     */
+    public static FlightEvents getInstance() {
+        if (instance == null) {
+            synchronized (FlightEvents.class) {
+                if (instance == null) {
+                    instance = new FlightEvents(
+                            Boolean.parseBoolean(DBUtil.getProperty(JpaConst.PROP_JFR_ENABLED, "true")),
+                            millis(JpaConst.PROP_JFR_THRESHOLD_DISPATCH, 20),
+                            millis(JpaConst.PROP_JFR_THRESHOLD_SERVICE, 10),
+                            millis(JpaConst.PROP_JFR_THRESHOLD_TRANSACTION, 0));
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static long millis(String name, long defaultValue) {
+        return Math.max(0, DBUtil.getLongProperty(name, defaultValue)) * 1_000_000L;
+    }
+
+    /**
+     * Actionのメソッドの実行を開始する(finish()で記録する)
+     * @param route 経路(例:"Report.show")
+     * @return イベント
+     */
+    public static Dispatch dispatch(String route) {
+        Dispatch event = new Dispatch();
+        event.route = route;
+        FlightEvents config = getInstance();
+        event.start(config.enabled, config.dispatchThreshold);
+        return event;
+    }
+
+    /**
+     * Serviceのメソッドの呼び出しを開始する(finish()で記録する)
+     * @param method メソッド(例:"ReportService.findOne")
+     * @return イベント
+     */
+    public static ServiceCall serviceCall(String method) {
+        ServiceCall event = new ServiceCall();
+        event.method = method;
+        FlightEvents config = getInstance();
+        event.start(config.enabled, config.serviceThreshold);
+        return event;
+    }
+
+    /**
+     * トランザクションを開始する(コミットの直前にcommitting()、コミット後にfinish(行数)を呼び出す)
+     * @param method メソッド(例:"ReportService.createInternal")
+     * @return イベント
+     */
+    public static Transaction transaction(String method) {
+        Transaction event = new Transaction();
+        event.method = method;
+        FlightEvents config = getInstance();
+        event.start(config.enabled, config.transactionThreshold);
+        return event;
+    }
+
+    /**
+     * リクエストの処理中に発生するイベントの共通項目
+     * 経路・従業員のid・行数・SQLの件数は、実行中のスレッドに紐づけられたRequestMetricsから取得する
+     * (行数・SQLの件数は開始から終了までの差分で、並行して実行した処理の分を含む場合がある)
+     */
+    @Category({ "Daily Report System" })
+    @StackTrace(false)
+    public abstract static class RequestEvent extends Event {
+        @Label("Route")
+        String route;
+
+        @Label("Employee Id")
+        int employeeId;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Statements")
+        long statements;
+
+        //以下はイベントの項目ではない(transient)
+        private transient boolean active;
+        private transient long threshold;
+        private transient long startNanos;
+        private transient RequestMetrics metrics;
+        private transient long startRows;
+        private transient long startStatements;
+
+        void start(boolean enabled, long threshold) {
+            if (!enabled || !isEnabled()) {
+                return;
+            }
+            active = true;
+            this.threshold = threshold;
+            metrics = RequestMetrics.current();
+            if (metrics != null) {
+                startRows = metrics.getQueries().getRows();
+                startStatements = metrics.getQueries().getStatements();
+            }
+            startNanos = System.nanoTime();
+            begin();
+        }
+
+        /**
+         * 終了し、処理時間がしきい値以上であれば記録する
+         */
+        public void finish() {
+            if (!active) {
+                return;
+            }
+            active = false;
+            end();
+            if (System.nanoTime() - startNanos < threshold || !shouldCommit()) {
+                return;
+            }
+            if (metrics != null) {
+                if (route == null) {
+                    route = metrics.getRoute();
+                }
+                employeeId = metrics.getEmployeeId();
+                rows = metrics.getQueries().getRows() - startRows;
+                statements = metrics.getQueries().getStatements() - startStatements;
+            }
+            fill();
+            commit();
+        }
+
+        /**
+         * 記録する直前に、イベントごとの項目を設定する
+         */
+        void fill() {
+        }
+    }
+
+    /**
+     * Actionのメソッドの実行
+     */
+    @Name("daily_report_system.Dispatch")
+    @Label("Action Dispatch")
+    @Description("Actionのメソッドの実行(ActionBase.invoke)")
+    public static class Dispatch extends RequestEvent {
+    }
+
+    /**
+     * Serviceのメソッドの呼び出し(他のメソッドから呼び出された分は含まない)
+     */
+    @Name("daily_report_system.ServiceCall")
+    @Label("Service Call")
+    @Description("Serviceのpublicメソッドの呼び出し")
+    public static class ServiceCall extends RequestEvent {
+        @Label("Method")
+        String method;
+    }
+
+    /**
+     * トランザクション(開始からコミットまで)
+     */
+    @Name("daily_report_system.Transaction")
+    @Label("Transaction")
+    @Description("Serviceのトランザクションの開始からコミットまで")
+    public static class Transaction extends RequestEvent {
+        @Label("Method")
+        String method;
+
+        @Label("Commit Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long commitTime;
+
+        private transient long committingNanos;
+        private transient long written;
+
+        /**
+         * コミットを開始することを記録する(ここからfinish()までをコミットの処理時間とする)
+         */
+        public void committing() {
+            committingNanos = System.nanoTime();
+        }
+
+        /**
+         * 終了し、処理時間がしきい値以上であれば記録する
+         * @param written 登録・更新した行数
+         */
+        public void finish(long written) {
+            this.written = written;
+            finish();
+        }
+
+        @Override
+        void fill() {
+            rows = written;
+            if (committingNanos != 0) {
+                commitTime = System.nanoTime() - committingNanos;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+/**
+ * 取得した行数を、現在のスレッドで処理しているリクエストの集計(RequestMetrics)に加算するEntityManager
+ * DBUtil.createEntityManager()が返却するEntityManagerをラップする。
+ * 作成したQuery(TypedQueryを含む)もラップし、getResultList()等で取得した件数と、find()で取得したエンティティを数える。
+ * SQLの件数とJDBCの処理時間はSqlRecorderが集計する。
+ */
+public class InstrumentedEntityManager {
+
+    private InstrumentedEntityManager() {
+    }
+
+    /**
+     * EntityManagerをラップする
+     * @param em EntityManager
+     * @return ラップしたEntityManager
+     */
+    public static EntityManager wrap(EntityManager em) {
+        return (EntityManager) Proxy.newProxyInstance(
+                InstrumentedEntityManager.class.getClassLoader(),
+                new Class<?>[] { EntityManager.class },
+                new Handler(em));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void addRows(long count) {
+        RequestMetrics metrics = RequestMetrics.current();
+        if (metrics != null) {
+            metrics.getQueries().addRows(count);
+        }
+    }
+
+    /**
+     * EntityManagerの呼び出しを委譲し、Queryを返却するメソッドはラップしたQueryを返却する
+     */
+    private static class Handler implements InvocationHandler {
+        private final EntityManager target;
+
+        private Handler(EntityManager target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Instrumented " + target;
+            default:
+                break;
+            }
+
+            Object result = InstrumentedEntityManager.invoke(target, method, args);
+            if (method.getName().equals("find") && result != null) {
+                addRows(1);
+            } else if (result instanceof Query && method.getReturnType().isInterface()
+                    && Query.class.isAssignableFrom(method.getReturnType())) {
+                return Proxy.newProxyInstance(
+                        InstrumentedEntityManager.class.getClassLoader(),
+                        new Class<?>[] { method.getReturnType() },
+                        new QueryHandler((Query) result));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Queryの呼び出しを委譲し、結果の件数を数える
+     * 自身を返却するメソッド(setParameter()等)はラップしたQueryを返却し、メソッドチェーンでもラップが外れないようにする
+     */
+    private static class QueryHandler implements InvocationHandler {
+        private final Query target;
+
+        private QueryHandler(Query target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Instrumented " + target;
+            default:
+                break;
+            }
+
+            Object result = InstrumentedEntityManager.invoke(target, method, args);
+            if (result == target) {
+                return proxy;
+            }
+            switch (method.getName()) {
+            case "getResultList":
+                addRows(((List<?>) result).size());
+                break;
+            case "getSingleResult":
+                addRows(1);
+                break;
+            case "getResultStream":
+                RequestMetrics metrics = RequestMetrics.current();
+                if (metrics != null) {
+                    return ((Stream<?>) result).peek(row -> metrics.getQueries().addRows(1));
+                }
+                break;
+            default:
+                break;
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 処理時間の分布を記録するヒストグラム
+ * 値(ナノ秒)を2の累乗ごとの区間をさらに4分割したバケットに振り分けて数える。
+ * 各バケットはLongAdderで保持するため、記録時にロックを取らない。
+ */
+public class LatencyHistogram {
+
+    /**
+     * 2の累乗の区間を何分割するか(2のSUB_BUCKET_BITS乗)
+     */
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * バケット数(longの全範囲を表現できる数)
+     */
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 処理時間を1件記録する
+     * @param nanos 処理時間(ナノ秒)
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[indexOf(nanos)].increment();
+        count.increment();
+        sum.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    /**
+     * 記録件数を返却する
+     * @return 記録件数
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * 記録した処理時間の合計を返却する
+     * @return 合計(ナノ秒)
+     */
+    public long getSumNanos() {
+        return sum.sum();
+    }
+
+    /**
+     * 記録した処理時間の最大値を返却する
+     * @return 最大値(ナノ秒)
+     */
+    public long getMaxNanos() {
+        return max.get();
+    }
+
+    /**
+     * 記録した処理時間の平均値を返却する
+     * @return 平均値(ナノ秒) 記録がない場合は0
+     */
+    public double getMeanNanos() {
+        long c = getCount();
+        return c == 0 ? 0 : (double) getSumNanos() / c;
+    }
+
+    /**
+     * 指定したパーセンタイルの処理時間を返却する
+     * 該当するバケットの上限値を返すため、誤差は最大で25%程度となる
+     * @param percentile パーセンタイル(0～100)
+     * @return 処理時間(ナノ秒) 記録がない場合は0
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] snapshot = snapshot();
+        long total = 0;
+        for (long c : snapshot) {
+            total += c;
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * 指定したパーセンタイルの処理時間をミリ秒で返却する
+     * @param percentile パーセンタイル(0～100)
+     * @return 処理時間(ミリ秒)
+     */
+    public double getPercentileMillis(double percentile) {
+        return getPercentileNanos(percentile) / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * 各バケットの件数を配列で返却する
+     * @return バケットごとの件数
+     */
+    public long[] snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * バケットに含まれる値の上限(この値以下)を返却する
+     * @param index バケットの番号
+     * @return 上限値(ナノ秒)
+     */
+    public static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int sub = index % SUB_BUCKETS;
+        if (exponent >= Long.SIZE - 1) {
+            return Long.MAX_VALUE;
+        }
+        long base = 1L << exponent;
+        long step = base >> SUB_BUCKET_BITS;
+        return base + step * (sub + 1) - 1;
+    }
+
+    /**
+     * バケット数を返却する
+     * @return バケット数
+     */
+    public static int bucketCount() {
+        return BUCKET_COUNT;
+    }
+
+    /**
+     * 値が属するバケットの番号を返却する
+     * @param value 値(0以上)
+     * @return バケットの番号
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+}
@@ -0,0 +1,102 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * キーセット方式のページングで使用するカーソル
+ * 「基準となるidより古い(次ページ)」または「新しい(前ページ)」方向と基準のidを保持し、
+ * URLに載せる際は中身を意識させない文字列(トークン)に変換する。
+ */
+public class PageCursor {
+
+    /**
+     * ページを送る方向
+     */
+    public enum Direction {
+        OLDER("o"), //基準のidより古いデータ(次のページ)
+        NEWER("n"); //基準のidより新しいデータ(前のページ)
+
+        private final String code;
+
+        private Direction(String code) {
+            this.code = code;
+        }
+    }
+
+    private final Direction direction;
+    private final int id;
+
+    private PageCursor(Direction direction, int id) {
+        this.direction = direction;
+        this.id = id;
+    }
+
+    /**
+     * 指定したidより古いデータを指すカーソルを作成する
+     * @param id 基準のid
+     * @return カーソル
+     */
+    public static PageCursor olderThan(int id) {
+        return new PageCursor(Direction.OLDER, id);
+    }
+
+    /**
+     * 指定したidより新しいデータを指すカーソルを作成する
+     * @param id 基準のid
+     * @return カーソル
+     */
+    public static PageCursor newerThan(int id) {
+        return new PageCursor(Direction.NEWER, id);
+    }
+
+    /**
+     * トークンからカーソルを復元する
+     * @param token トークン
+     * @return カーソル トークンが未指定または不正な場合はnull
+     */
+    public static PageCursor parse(String token) {
+        if (token == null || token.equals("")) {
+            return null;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII);
+            int sep = raw.indexOf(':');
+            if (sep < 0) {
+                return null;
+            }
+            String code = raw.substring(0, sep);
+            int id = Integer.parseInt(raw.substring(sep + 1));
+            for (Direction d : Direction.values()) {
+                if (d.code.equals(code)) {
+                    return new PageCursor(d, id);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            //不正なトークンは未指定として扱う
+        }
+        return null;
+    }
+
+    /**
+     * URLに設定するトークンに変換する
+     * @return トークン
+     */
+    public String toToken() {
+        String raw = direction.code + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return toToken();
+    }
+}
@@ -0,0 +1,166 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+/**
+ * 接続プールの統計情報を集計するクラス
+ * 接続数はHikariCPのプールから、接続取得の待ち時間は自前のヒストグラムから取得する
+ */
+public class PoolStatistics implements PoolStatisticsMXBean, MetricsTrackerFactory {
+
+    private static final Logger LOGGER = Logger.getLogger(PoolStatistics.class.getName());
+
+    /**
+     * JMXに登録する際のMBean名
+     */
+    public static final String MBEAN_NAME = "daily_report_system:type=PoolStatistics";
+
+    private final HikariPoolMXBean pool;
+    private final EntityManagerLeakDetector leakDetector;
+    private final LatencyHistogram acquireHistogram = new LatencyHistogram();
+    private final LongAdder acquireTimeouts = new LongAdder();
+
+    /**
+     * コンストラクタ
+     * @param pool HikariCPのプール
+     * @param leakDetector EntityManagerのクローズ漏れ検出
+     */
+    public PoolStatistics(HikariPoolMXBean pool, EntityManagerLeakDetector leakDetector) {
+        this.pool = pool;
+        this.leakDetector = leakDetector;
+    }
+
+    /**
+     * JMXにMBeanとして登録する
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "プール統計のMBean登録に失敗しました", e);
+        }
+    }
+
+    /**
+     * JMXからMBeanの登録を解除する
+     */
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "プール統計のMBean登録解除に失敗しました", e);
+        }
+    }
+
+    /**
+     * 接続取得にかかった時間のヒストグラムを返却する
+     * @return ヒストグラム
+     */
+    public LatencyHistogram getAcquireHistogram() {
+        return acquireHistogram;
+    }
+
+    /**
+     * HikariCPから呼び出され、接続取得の計測を行うトラッカーを返却する
+     */
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireHistogram.record(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                acquireTimeouts.increment();
+            }
+        };
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return pool.getActiveConnections();
+    }
+
+    @Override
+    public int getIdleConnections() {
+        return pool.getIdleConnections();
+    }
+
+    @Override
+    public int getTotalConnections() {
+        return pool.getTotalConnections();
+    }
+
+    @Override
+    public int getThreadsAwaitingConnection() {
+        return pool.getThreadsAwaitingConnection();
+    }
+
+    @Override
+    public long getAcquireCount() {
+        return acquireHistogram.getCount();
+    }
+
+    @Override
+    public long getAcquireTimeoutCount() {
+        return acquireTimeouts.sum();
+    }
+
+    @Override
+    public double getAcquireMeanMillis() {
+        return acquireHistogram.getMeanNanos() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public double getAcquireP50Millis() {
+        return acquireHistogram.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getAcquireP99Millis() {
+        return acquireHistogram.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getAcquireP999Millis() {
+        return acquireHistogram.getPercentileMillis(99.9);
+    }
+
+    @Override
+    public double getAcquireMaxMillis() {
+        return acquireHistogram.getMaxNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public int getOpenEntityManagers() {
+        return leakDetector.getOpenCount();
+    }
+
+    @Override
+    public long getLeakedEntityManagers() {
+        return leakDetector.getLeakedCount();
+    }
+}
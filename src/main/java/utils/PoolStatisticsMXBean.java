@@ -0,0 +1,73 @@
+package utils;
+
+/**
+ * 接続プールの統計情報をJMXで公開するためのインターフェース
+ * (MBean名: daily_report_system:type=PoolStatistics)
+ */
+public interface PoolStatisticsMXBean {
+
+    /**
+     * 使用中の接続数
+     */
+    int getActiveConnections();
+
+    /**
+     * 待機中(未使用)の接続数
+     */
+    int getIdleConnections();
+
+    /**
+     * プール内の接続数の合計
+     */
+    int getTotalConnections();
+
+    /**
+     * 接続の取得を待っているスレッド数
+     */
+    int getThreadsAwaitingConnection();
+
+    /**
+     * 接続の取得件数
+     */
+    long getAcquireCount();
+
+    /**
+     * 接続の取得がタイムアウトした件数
+     */
+    long getAcquireTimeoutCount();
+
+    /**
+     * 接続取得にかかった時間の平均値(ミリ秒)
+     */
+    double getAcquireMeanMillis();
+
+    /**
+     * 接続取得にかかった時間の50パーセンタイル値(ミリ秒)
+     */
+    double getAcquireP50Millis();
+
+    /**
+     * 接続取得にかかった時間の99パーセンタイル値(ミリ秒)
+     */
+    double getAcquireP99Millis();
+
+    /**
+     * 接続取得にかかった時間の99.9パーセンタイル値(ミリ秒)
+     */
+    double getAcquireP999Millis();
+
+    /**
+     * 接続取得にかかった時間の最大値(ミリ秒)
+     */
+    double getAcquireMaxMillis();
+
+    /**
+     * クローズされていないEntityManagerの数
+     */
+    int getOpenEntityManagers();
+
+    /**
+     * クローズ漏れとして検出したEntityManagerの累計数
+     */
+    long getLeakedEntityManagers();
+}
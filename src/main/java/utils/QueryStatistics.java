@@ -0,0 +1,143 @@
+package utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * 1リクエストで実行したSQLの件数・取得した行数・JDBCの処理時間を集計するクラス
+ * SQLは形(リテラル・IN句の要素数・空白の違いを除いたもの)ごとにも数え、同じ形のSQLの繰り返し(N+1)を検出する。
+ * 並行して実行した処理(FanOut)からも加算するため、値はLongAdderで保持する。
+ */
+public class QueryStatistics {
+
+    /**
+     * 形ごとに数えるSQLの種類の上限(超えた分は合計にだけ加える)
+     */
+    private static final int MAX_SHAPES = 200;
+
+    private static final Pattern COMMENT = Pattern.compile("/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern IN_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+    private static final Pattern NUMBER = Pattern.compile("\\b\\d+\\b");
+    private static final Pattern STRING = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern SPACES = Pattern.compile("\\s+");
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder jdbcNanos = new LongAdder();
+    //SQLの形 → 実行回数
+    private final Map<String, LongAdder> shapes = new ConcurrentHashMap<>();
+    private volatile boolean budgetExceeded;
+
+    /**
+     * 実行するSQLを1件記録する
+     * @param sql SQL
+     * @return 記録後のSQLの件数
+     */
+    public long statement(String sql) {
+        statements.increment();
+        String shape = shapeOf(sql);
+        LongAdder count = shapes.get(shape);
+        if (count == null && shapes.size() < MAX_SHAPES) {
+            count = shapes.computeIfAbsent(shape, k -> new LongAdder());
+        }
+        if (count != null) {
+            count.increment();
+        }
+        return statements.sum();
+    }
+
+    /**
+     * 取得した行数を加算する
+     * @param count 行数
+     */
+    public void addRows(long count) {
+        rows.add(count);
+    }
+
+    /**
+     * JDBCの処理時間を加算する
+     * @param nanos 処理時間(ナノ秒)
+     */
+    public void addJdbcNanos(long nanos) {
+        jdbcNanos.add(nanos);
+    }
+
+    /**
+     * @return SQLの件数
+     */
+    public long getStatements() {
+        return statements.sum();
+    }
+
+    /**
+     * @return 取得した行数(Queryの結果とfind()で取得したエンティティの数)
+     */
+    public long getRows() {
+        return rows.sum();
+    }
+
+    /**
+     * @return JDBCの処理時間の合計(ナノ秒)
+     */
+    public long getJdbcNanos() {
+        return jdbcNanos.sum();
+    }
+
+    /**
+     * 指定した回数以上実行した形のSQLを返却する
+     * @param threshold 回数
+     * @return SQLの形 → 実行回数
+     */
+    public Map<String, Long> getRepeated(int threshold) {
+        Map<String, Long> repeated = new TreeMap<>();
+        shapes.forEach((shape, count) -> {
+            long c = count.sum();
+            if (c >= threshold) {
+                repeated.put(shape, c);
+            }
+        });
+        return repeated;
+    }
+
+    /**
+     * 件数の上限を超えたことを記録する
+     * @return 初めて超えた場合はtrue
+     */
+    boolean markBudgetExceeded() {
+        if (budgetExceeded) {
+            return false;
+        }
+        budgetExceeded = true;
+        return true;
+    }
+
+    /**
+     * @return 件数の上限を超えていればtrue
+     */
+    public boolean isBudgetExceeded() {
+        return budgetExceeded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SQL %d件 行 %d JDBC %.1fms", getStatements(), getRows(),
+                getJdbcNanos() / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    /**
+     * SQLの形を返却する(コメント・リテラル・IN句の要素数・空白の違いを除く)
+     * @param sql SQL
+     * @return SQLの形
+     */
+    static String shapeOf(String sql) {
+        String s = COMMENT.matcher(sql).replaceAll("");
+        s = STRING.matcher(s).replaceAll("?");
+        s = NUMBER.matcher(s).replaceAll("?");
+        s = IN_LIST.matcher(s).replaceAll("?");
+        return SPACES.matcher(s).replaceAll(" ").trim();
+    }
+}
@@ -0,0 +1,319 @@
+package utils;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.ServletRequest;
+
+/**
+ * 1リクエストの処理時間の内訳(DBの処理時間・画面の描画時間)と、実行したSQLを集計するクラス
+ * MetricsFilterがリクエスト属性に設定し、Actionを実行するスレッド(FrontController、FanOutの別スレッド)に紐づけて使用する。
+ * 複数のスレッドから加算するため、値はLongAdderで保持する。
+ * フィルタ・Serviceのメソッドごとの処理時間も記録し、Server-Timingヘッダーの形式で返却する。
+ */
+public class RequestMetrics {
+
+    /**
+     * リクエスト属性の名前
+     */
+    public static final String ATTRIBUTE = RequestMetrics.class.getName();
+
+    /**
+     * 現在のスレッドで処理しているリクエスト
+     */
+    private static final ThreadLocal<RequestMetrics> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 現在のスレッドで計測中の区間(入れ子になった区間は計測しない)
+     */
+    private static final ThreadLocal<Span> ACTIVE_SPAN = new ThreadLocal<>();
+
+    //Server-Timingに出力する区間の数の上限(ヘッダーが大きくなりすぎないようにする)
+    private static final int MAX_TIMINGS = 30;
+
+    private final long startNanos = System.nanoTime();
+    private final QueryStatistics queries = new QueryStatistics();
+    private final LongAdder renderNanos = new LongAdder();
+    private volatile String route;
+    private volatile int employeeId;
+    private volatile boolean error;
+    //FrontControllerが処理を開始した時刻(開始前は0)
+    private volatile long dispatchedAt;
+    //画面の描画を開始した時刻(開始前は0)
+    private volatile long renderingAt;
+    //区間の名前 → 処理時間の合計(ナノ秒)と回数 (記録した順)
+    private final Map<String, long[]> timings = new LinkedHashMap<>();
+
+    private RequestMetrics() {
+    }
+
+    /**
+     * リクエストの集計を開始する
+     * @param request リクエスト
+     * @return 集計
+     */
+    public static RequestMetrics start(ServletRequest request) {
+        RequestMetrics metrics = new RequestMetrics();
+        request.setAttribute(ATTRIBUTE, metrics);
+        return metrics;
+    }
+
+    /**
+     * リクエストの集計を返却する
+     * @param request リクエスト
+     * @return 集計 集計していない場合はnull
+     */
+    public static RequestMetrics of(ServletRequest request) {
+        return (RequestMetrics) request.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * 現在のスレッドに紐づけられた集計を返却する
+     * @return 集計 紐づけられていない場合はnull
+     */
+    public static RequestMetrics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 集計を現在のスレッドに紐づける(close()で元に戻す)
+     * @param metrics 集計(nullの場合は何もしない)
+     * @return 紐づけ
+     */
+    public static Binding bind(RequestMetrics metrics) {
+        RequestMetrics previous = CURRENT.get();
+        if (metrics != null) {
+            CURRENT.set(metrics);
+        }
+        return new Binding(previous, metrics != null);
+    }
+
+    /**
+     * 区間を計測する(close()で処理時間を記録する)
+     * 現在のスレッドに集計が紐づけられていない場合と、別の区間を計測中の場合は何もしない
+     * @param name 区間の名前(例:"ReportService.findOne")
+     * @return 区間
+     */
+    public static Span span(String name) {
+        RequestMetrics metrics = CURRENT.get();
+        if (metrics == null || ACTIVE_SPAN.get() != null) {
+            return Span.NONE;
+        }
+        Span span = new Span(metrics, name);
+        ACTIVE_SPAN.set(span);
+        return span;
+    }
+
+    /**
+     * @param route 実行したActionのメソッド(例:"Report.show")
+     */
+    public void setRoute(String route) {
+        this.route = route;
+    }
+
+    /**
+     * @return 実行したActionのメソッド 実行していない場合はnull
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * @param employeeId ログインしている従業員のid
+     */
+    public void setEmployeeId(int employeeId) {
+        this.employeeId = employeeId;
+    }
+
+    /**
+     * @return ログインしている従業員のid ログインしていない場合は0
+     */
+    public int getEmployeeId() {
+        return employeeId;
+    }
+
+    /**
+     * 処理中に例外が発生したことを記録する(エラー画面を表示した場合も含む)
+     */
+    public void markError() {
+        error = true;
+    }
+
+    /**
+     * @return 処理中に例外が発生していればtrue
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * FrontControllerが処理を開始したことを記録する(ここまでがフィルタの処理時間)
+     */
+    public void markDispatched() {
+        if (dispatchedAt == 0) {
+            dispatchedAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * 画面の描画を開始したことを記録する(ここまでがActionの処理時間)
+     */
+    public void markRendering() {
+        if (renderingAt == 0) {
+            renderingAt = System.nanoTime();
+        }
+    }
+
+    /**
+     * 区間の処理時間を加算する
+     * @param name 区間の名前
+     * @param nanos 処理時間(ナノ秒)
+     */
+    public void addTiming(String name, long nanos) {
+        synchronized (timings) {
+            long[] timing = timings.get(name);
+            if (timing == null) {
+                if (timings.size() >= MAX_TIMINGS) {
+                    return;
+                }
+                timing = new long[2];
+                timings.put(name, timing);
+            }
+            timing[0] += nanos;
+            timing[1]++;
+        }
+    }
+
+    /**
+     * 画面の描画時間を加算する
+     * @param nanos 描画時間(ナノ秒)
+     */
+    public void addRenderNanos(long nanos) {
+        renderNanos.add(nanos);
+    }
+
+    /**
+     * @return 実行したSQLの集計
+     */
+    public QueryStatistics getQueries() {
+        return queries;
+    }
+
+    /**
+     * @return DBの処理時間(JDBCの処理時間)の合計(ナノ秒、並行して実行した処理の分も含む)
+     */
+    public long getDbNanos() {
+        return queries.getJdbcNanos();
+    }
+
+    /**
+     * @return 画面の描画時間の合計(ナノ秒)
+     */
+    public long getRenderNanos() {
+        return renderNanos.sum();
+    }
+
+    /**
+     * @return 集計を開始してからの経過時間(ナノ秒)
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * ここまでの処理時間の内訳をServer-Timingヘッダーの値で返却する
+     * (例: filter;dur=1.2;desc="filters", ReportService.findOne;dur=3.4, db;dur=2.5;desc="3 queries", ...)
+     * 描画中に呼び出した場合の描画時間は、描画を開始してから呼び出すまでの時間とする
+     * @return Server-Timingヘッダーの値
+     */
+    public String toServerTiming() {
+        long now = System.nanoTime();
+        StringBuilder sb = new StringBuilder();
+        long dispatched = dispatchedAt;
+        long rendering = renderingAt;
+        if (dispatched != 0) {
+            timing(sb, "filter", dispatched - startNanos, "filters");
+        }
+        synchronized (timings) {
+            for (Map.Entry<String, long[]> e : timings.entrySet()) {
+                long[] timing = e.getValue();
+                timing(sb, e.getKey(), timing[0], timing[1] > 1 ? timing[1] + " calls" : null);
+            }
+        }
+        if (dispatched != 0) {
+            timing(sb, "dispatch", (rendering != 0 ? rendering : now) - dispatched, "action");
+        }
+        timing(sb, "db", getDbNanos(), queries.getStatements() + " queries");
+        if (rendering != 0) {
+            long render = getRenderNanos();
+            timing(sb, "render", render > 0 ? render : now - rendering, "jsp");
+        }
+        timing(sb, "total", now - startNanos, null);
+        return sb.toString();
+    }
+
+    private static void timing(StringBuilder sb, String name, long nanos, String desc) {
+        if (sb.length() > 0) {
+            sb.append(", ");
+        }
+        sb.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0));
+        if (desc != null) {
+            sb.append(";desc=\"").append(desc).append('"');
+        }
+    }
+
+    /**
+     * 計測中の区間(close()で処理時間を記録し、JFRのイベントを記録する)
+     */
+    public static class Span implements AutoCloseable {
+        private static final Span NONE = new Span(null, null);
+
+        private final RequestMetrics metrics;
+        private final String name;
+        private final FlightEvents.ServiceCall event;
+        private final long startNanos = System.nanoTime();
+
+        private Span(RequestMetrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+            this.event = metrics == null ? null : FlightEvents.serviceCall(name);
+        }
+
+        @Override
+        public void close() {
+            if (metrics == null) {
+                return;
+            }
+            ACTIVE_SPAN.remove();
+            metrics.addTiming(name, System.nanoTime() - startNanos);
+            event.finish();
+        }
+    }
+
+    /**
+     * スレッドへの紐づけ(close()で紐づける前の状態に戻す)
+     */
+    public static class Binding implements AutoCloseable {
+        private final RequestMetrics previous;
+        private final boolean bound;
+
+        private Binding(RequestMetrics previous, boolean bound) {
+            this.previous = previous;
+            this.bound = bound;
+        }
+
+        @Override
+        public void close() {
+            if (!bound) {
+                return;
+            }
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package utils;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * リクエストの件数・エラー件数・処理時間の分布を経路(Actionのメソッド)ごとに集計するクラス
+ * 処理時間は全体・DBの処理時間・画面の描画時間に分けてLatencyHistogramに記録する。
+ * 件数とヒストグラムはLongAdderで保持するため、記録時にロックを取らない。
+ * 集計した値はJMXと、Prometheusのテキスト形式(writePrometheus)で公開する。
+ */
+public class RouteStatistics implements RouteStatisticsMXBean {
+
+    private static final Logger LOGGER = Logger.getLogger(RouteStatistics.class.getName());
+
+    /**
+     * JMXに登録する際のMBean名
+     */
+    public static final String MBEAN_NAME = "daily_report_system:type=RouteStatistics";
+
+    /**
+     * 集計する経路の数の上限(超えた経路は OTHER_ROUTE にまとめる)
+     */
+    private static final int MAX_ROUTES = 500;
+    private static final String OTHER_ROUTE = "(other)";
+
+    //Prometheusに出力するパーセンタイル
+    private static final double[] QUANTILES = { 0.5, 0.99, 0.999 };
+    private static final String PREFIX = "daily_report_system_";
+
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+
+    /**
+     * リクエスト1件分を記録する
+     * @param route 経路
+     * @param totalNanos 処理時間(ナノ秒)
+     * @param dbNanos うちDBの処理時間(ナノ秒)
+     * @param renderNanos うち画面の描画時間(ナノ秒)
+     * @param error エラーになった場合はtrue
+     */
+    public void record(String route, long totalNanos, long dbNanos, long renderNanos, boolean error) {
+        Route r = routes.get(route);
+        if (r == null) {
+            r = routes.size() < MAX_ROUTES
+                    ? routes.computeIfAbsent(route, k -> new Route())
+                    : routes.computeIfAbsent(OTHER_ROUTE, k -> new Route());
+        }
+        r.requests.increment();
+        if (error) {
+            r.errors.increment();
+        }
+        r.total.record(totalNanos);
+        r.db.record(dbNanos);
+        r.render.record(renderNanos);
+    }
+
+    @Override
+    public long getRequests() {
+        return routes.values().stream().mapToLong(r -> r.requests.sum()).sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return routes.values().stream().mapToLong(r -> r.errors.sum()).sum();
+    }
+
+    @Override
+    public Map<String, Long> getRequestsByRoute() {
+        return byRoute(r -> r.requests.sum());
+    }
+
+    @Override
+    public Map<String, Long> getErrorsByRoute() {
+        return byRoute(r -> r.errors.sum());
+    }
+
+    @Override
+    public Map<String, Double> getP50MillisByRoute() {
+        return byRoute(r -> r.total.getPercentileMillis(50));
+    }
+
+    @Override
+    public Map<String, Double> getP99MillisByRoute() {
+        return byRoute(r -> r.total.getPercentileMillis(99));
+    }
+
+    @Override
+    public Map<String, Double> getP999MillisByRoute() {
+        return byRoute(r -> r.total.getPercentileMillis(99.9));
+    }
+
+    private <T> Map<String, T> byRoute(Function<Route, T> value) {
+        Map<String, T> values = new TreeMap<>();
+        routes.forEach((name, r) -> values.put(name, value.apply(r)));
+        return values;
+    }
+
+    /**
+     * 集計した値をPrometheusのテキスト形式で出力する
+     * 件数はcounter、処理時間はsummary(秒、パーセンタイルは0.5・0.99・0.999)として出力する
+     * @param out 出力先
+     */
+    public void writePrometheus(PrintWriter out) {
+        Map<String, Route> sorted = new TreeMap<>(routes);
+
+        header(out, "requests_total", "counter", "リクエスト数");
+        sorted.forEach((name, r) -> out.println(PREFIX + "requests_total{route=\"" + escape(name) + "\"} " + r.requests.sum()));
+
+        header(out, "request_errors_total", "counter", "エラーになったリクエスト数");
+        sorted.forEach((name, r) -> out.println(PREFIX + "request_errors_total{route=\"" + escape(name) + "\"} " + r.errors.sum()));
+
+        summary(out, sorted, "request_duration_seconds", "リクエストの処理時間", r -> r.total);
+        summary(out, sorted, "request_db_seconds", "リクエストのうちDBの処理時間", r -> r.db);
+        summary(out, sorted, "request_render_seconds", "リクエストのうち画面の描画時間", r -> r.render);
+    }
+
+    private static void summary(PrintWriter out, Map<String, Route> routes, String metric, String help,
+            Function<Route, LatencyHistogram> histogram) {
+        header(out, metric, "summary", help);
+        routes.forEach((name, r) -> {
+            LatencyHistogram h = histogram.apply(r);
+            String route = "route=\"" + escape(name) + "\"";
+            for (double q : QUANTILES) {
+                out.println(PREFIX + metric + "{" + route + ",quantile=\"" + q + "\"} "
+                        + seconds(h.getPercentileNanos(q * 100)));
+            }
+            out.println(PREFIX + metric + "_sum{" + route + "} " + seconds(h.getSumNanos()));
+            out.println(PREFIX + metric + "_count{" + route + "} " + h.getCount());
+        });
+    }
+
+    /**
+     * HELP行とTYPE行を出力する
+     * @param out 出力先
+     * @param metric メトリクス名(接頭辞を除く)
+     * @param type 種類(counter、gauge、summary)
+     * @param help 説明
+     */
+    public static void header(PrintWriter out, String metric, String type, String help) {
+        out.println("# HELP " + PREFIX + metric + " " + help);
+        out.println("# TYPE " + PREFIX + metric + " " + type);
+    }
+
+    /**
+     * 値が1つのメトリクス(gauge等)を出力する
+     * @param out 出力先
+     * @param metric メトリクス名(接頭辞を除く)
+     * @param type 種類
+     * @param help 説明
+     * @param value 値
+     */
+    public static void single(PrintWriter out, String metric, String type, String help, Number value) {
+        header(out, metric, type, help);
+        out.println(PREFIX + metric + " " + value);
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * JMXにMBeanとして登録する
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "経路統計のMBean登録に失敗しました", e);
+        }
+    }
+
+    /**
+     * JMXからMBeanの登録を解除する
+     */
+    public void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "経路統計のMBean登録解除に失敗しました", e);
+        }
+    }
+
+    /**
+     * 1つの経路の集計値
+     */
+    private static class Route {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram total = new LatencyHistogram();
+        private final LatencyHistogram db = new LatencyHistogram();
+        private final LatencyHistogram render = new LatencyHistogram();
+    }
+}
@@ -0,0 +1,45 @@
+package utils;
+
+import java.util.Map;
+
+/**
+ * 経路ごとのリクエストの統計情報をJMXで公開するためのインターフェース
+ * (MBean名: daily_report_system:type=RouteStatistics)
+ */
+public interface RouteStatisticsMXBean {
+
+    /**
+     * リクエスト数の合計
+     */
+    long getRequests();
+
+    /**
+     * エラーになったリクエスト数の合計
+     */
+    long getErrors();
+
+    /**
+     * 経路(例:"Report.index")ごとのリクエスト数
+     */
+    Map<String, Long> getRequestsByRoute();
+
+    /**
+     * 経路ごとのエラーになったリクエスト数
+     */
+    Map<String, Long> getErrorsByRoute();
+
+    /**
+     * 経路ごとの処理時間の50パーセンタイル(ミリ秒)
+     */
+    Map<String, Double> getP50MillisByRoute();
+
+    /**
+     * 経路ごとの処理時間の99パーセンタイル(ミリ秒)
+     */
+    Map<String, Double> getP99MillisByRoute();
+
+    /**
+     * 経路ごとの処理時間の99.9パーセンタイル(ミリ秒)
+     */
+    Map<String, Double> getP999MillisByRoute();
+}
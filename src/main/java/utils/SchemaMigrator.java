@@ -0,0 +1,251 @@
+package utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * 起動時にデータベースのスキーマを最新の状態に更新するクラス
+ * クラスパス上の db/migration/V{バージョン}__{説明}.sql をバージョン順に実行し、
+ * 適用済みのバージョンとファイルのチェックサムを schema_migrations テーブルに記録する。
+ * 適用済みのバージョンは実行せず、適用後にファイルが変更されている場合は起動を中止する。
+ */
+public class SchemaMigrator {
+
+    private static final Logger LOGGER = Logger.getLogger(SchemaMigrator.class.getName());
+
+    /**
+     * 適用するマイグレーションファイル(バージョン順)
+     * 新しいファイルを追加した場合はここにも追加する
+     */
+    private static final String[] MIGRATIONS = {
+            "V1__create_tables.sql",
+            "V2__add_report_preview.sql",
+            "V3__add_query_indexes.sql",
+            "V4__add_unique_likes_and_follows.sql",
+            "V5__add_updated_at_indexes.sql",
+            "V6__recompute_report_preview.sql",
+    };
+
+    private static final String LOCATION = "db/migration/";
+    private static final String HISTORY_TABLE = "schema_migrations";
+
+    //複数のサーバーが同時に起動した場合に、1台ずつマイグレーションを行うためのロック
+    private static final String LOCK_NAME = "daily_report_system.schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private final DataSource dataSource;
+
+    public SchemaMigrator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * 未適用のマイグレーションを全て適用する
+     * @return 今回適用したマイグレーションの件数
+     */
+    public int migrate() {
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(true);
+            lock(con);
+            try {
+                createHistoryTable(con);
+                Map<Integer, String> applied = loadApplied(con);
+
+                int count = 0;
+                for (String file : MIGRATIONS) {
+                    Migration m = Migration.load(file);
+                    String checksum = applied.get(m.version);
+
+                    if (checksum == null) {
+                        apply(con, m);
+                        count++;
+                    } else if (!checksum.equals(m.checksum)) {
+                        throw new IllegalStateException("適用済みのマイグレーションが変更されています: " + file
+                                + " (記録: " + checksum + ", ファイル: " + m.checksum + ")");
+                    }
+                }
+
+                LOGGER.info("スキーマは最新です(適用済み: " + (applied.size() + count) + "件、今回適用: " + count + "件)");
+                return count;
+            } finally {
+                unlock(con);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("スキーマの更新に失敗しました", e);
+        }
+    }
+
+    /**
+     * マイグレーションを1件適用し、履歴に記録する
+     * MySQLのDDLは暗黙的にコミットされるため、途中で失敗した場合は記録せずに起動を中止する
+     */
+    private void apply(Connection con, Migration m) throws SQLException {
+        LOGGER.info("マイグレーションを適用します: " + m.file);
+        long start = System.nanoTime();
+
+        try (Statement st = con.createStatement()) {
+            for (String sql : m.statements) {
+                st.execute(sql);
+            }
+        } catch (SQLException e) {
+            LOGGER.log(Level.SEVERE, "マイグレーションの適用に失敗しました: " + m.file, e);
+            throw e;
+        }
+
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        try (PreparedStatement ps = con.prepareStatement("INSERT INTO " + HISTORY_TABLE
+                + " (version, description, checksum, applied_at, execution_ms) VALUES (?, ?, ?, ?, ?)")) {
+            ps.setInt(1, m.version);
+            ps.setString(2, m.description);
+            ps.setString(3, m.checksum);
+            ps.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            ps.setLong(5, elapsedMillis);
+            ps.executeUpdate();
+        }
+        LOGGER.info("マイグレーションを適用しました: " + m.file + " (" + elapsedMillis + "ms)");
+    }
+
+    private void createHistoryTable(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS " + HISTORY_TABLE + " ("
+                    + "version INT NOT NULL, "
+                    + "description VARCHAR(255) NOT NULL, "
+                    + "checksum CHAR(64) NOT NULL, "
+                    + "applied_at DATETIME(6) NOT NULL, "
+                    + "execution_ms BIGINT NOT NULL, "
+                    + "PRIMARY KEY (version)"
+                    + ") ENGINE = InnoDB");
+        }
+    }
+
+    private Map<Integer, String> loadApplied(Connection con) throws SQLException {
+        Map<Integer, String> applied = new HashMap<>();
+        try (Statement st = con.createStatement();
+                ResultSet rs = st.executeQuery("SELECT version, checksum FROM " + HISTORY_TABLE)) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+        return applied;
+    }
+
+    private void lock(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = ps.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new IllegalStateException("マイグレーションのロックを取得できませんでした");
+                }
+            }
+        }
+    }
+
+    private void unlock(Connection con) {
+        try (PreparedStatement ps = con.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            ps.setString(1, LOCK_NAME);
+            ps.executeQuery().close();
+        } catch (SQLException e) {
+            LOGGER.log(Level.WARNING, "マイグレーションのロックを解放できませんでした", e);
+        }
+    }
+
+    /**
+     * マイグレーションファイル1件分の内容
+     */
+    private static class Migration {
+        private final String file;
+        private final int version;
+        private final String description;
+        private final String checksum;
+        private final List<String> statements;
+
+        private Migration(String file, int version, String description, String checksum, List<String> statements) {
+            this.file = file;
+            this.version = version;
+            this.description = description;
+            this.checksum = checksum;
+            this.statements = statements;
+        }
+
+        /**
+         * クラスパスからファイルを読み込む
+         * チェックサムは改行コードの違いで変わらないよう、LFに揃えてから計算する
+         */
+        private static Migration load(String file) {
+            int sep = file.indexOf("__");
+            int version = Integer.parseInt(file.substring(1, sep));
+            String description = file.substring(sep + 2, file.length() - ".sql".length()).replace('_', ' ');
+
+            String sql;
+            try (InputStream is = SchemaMigrator.class.getClassLoader().getResourceAsStream(LOCATION + file)) {
+                if (is == null) {
+                    throw new IllegalStateException("マイグレーションファイルが見つかりません: " + LOCATION + file);
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                is.transferTo(out);
+                sql = new String(out.toByteArray(), StandardCharsets.UTF_8).replace("\r\n", "\n");
+            } catch (IOException e) {
+                throw new IllegalStateException("マイグレーションファイルを読み込めません: " + file, e);
+            }
+
+            return new Migration(file, version, description, sha256(sql), split(sql));
+        }
+
+        /**
+         * 行末の ; で区切ってSQL文に分割する(-- で始まる行はコメントとして除く)
+         */
+        private static List<String> split(String sql) {
+            List<String> statements = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            for (String line : sql.split("\n")) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                current.append(line).append('\n');
+                if (trimmed.endsWith(";")) {
+                    String statement = current.toString().trim();
+                    statements.add(statement.substring(0, statement.length() - 1));
+                    current.setLength(0);
+                }
+            }
+            if (current.toString().trim().length() > 0) {
+                statements.add(current.toString().trim());
+            }
+            return statements;
+        }
+
+        private static String sha256(String s) {
+            try {
+                byte[] digest = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+                StringBuilder hex = new StringBuilder();
+                for (byte b : digest) {
+                    hex.append(String.format("%02x", b));
+                }
+                return hex.toString();
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
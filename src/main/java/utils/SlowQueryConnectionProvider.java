@@ -0,0 +1,87 @@
+package utils;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+
+import org.hibernate.HibernateException;
+import org.hibernate.hikaricp.internal.HikariCPConnectionProvider;
+
+import constants.JpaConst;
+
+/**
+ * HikariCPの接続プールから取得した接続を、SQLのログ(SlowQueryLog)を出力する接続でラップするConnectionProvider
+ * hibernate.show_sql の代わりに使用し、時間がかかったSQLと抽出したSQLだけを非同期でファイルに出力する。
+ * persistence.xmlの hibernate.connection.provider_class に設定する。
+ */
+public class SlowQueryConnectionProvider extends HikariCPConnectionProvider {
+    private static final long serialVersionUID = 1L;
+
+    //出力しない設定の場合はnull
+    private transient SlowQueryLog log;
+
+    /**
+     * 接続プールを作成し、SQLのログの出力を開始する
+     * (EntityManagerFactoryの作成中に呼び出されるため、設定はDBUtilを使わずに引数から取得する)
+     */
+    @SuppressWarnings("rawtypes")
+    @Override
+    public void configure(Map props) throws HibernateException {
+        super.configure(props);
+
+        long threshold = longValue(props, JpaConst.PROP_SQL_SLOW_THRESHOLD, 200);
+        double sampleRate = doubleValue(props, JpaConst.PROP_SQL_SAMPLE_RATE, 0);
+        if (!SlowQueryLog.isEnabled(threshold, sampleRate)) {
+            return;
+        }
+        try {
+            log = new SlowQueryLog(threshold, sampleRate,
+                    Boolean.parseBoolean(value(props, JpaConst.PROP_SQL_LOG_PARAMS, "false")),
+                    value(props, JpaConst.PROP_SQL_LOG_FILE, "%t/daily_report_system-sql.%g.log"),
+                    (int) longValue(props, JpaConst.PROP_SQL_LOG_LIMIT, 10 * 1024 * 1024),
+                    (int) longValue(props, JpaConst.PROP_SQL_LOG_COUNT, 5),
+                    (int) longValue(props, JpaConst.PROP_SQL_LOG_QUEUE_SIZE, 10000));
+        } catch (IOException e) {
+            throw new HibernateException("SQLのログのファイルを開けません", e);
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        return log == null ? connection : log.wrap(connection);
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (log != null) {
+            log.close();
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static String value(Map props, String name, String defaultValue) {
+        Object value = props.get(name);
+        return value == null || value.toString().trim().isEmpty() ? defaultValue : value.toString().trim();
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static long longValue(Map props, String name, long defaultValue) {
+        try {
+            return Long.parseLong(value(props, name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static double doubleValue(Map props, String name, double defaultValue) {
+        try {
+            return Double.parseDouble(value(props, name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+}
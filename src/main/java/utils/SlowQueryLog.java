@@ -0,0 +1,453 @@
+package utils;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import constants.JpaConst;
+
+/**
+ * 実行に時間がかかったSQLと、それ以外から抽出したSQLをファイルに出力するクラス
+ * 接続(Connection)をラップして、SQLごとに設定したパラメータ・実行と読み込みの時間・行数を記録し、
+ * 時間がしきい値以上の場合(SLOW)と、設定した割合で抽出した場合(SAMPLE)だけ出力する。
+ * 出力はAsyncLogHandlerで別スレッドから行い、ファイルは一定のサイズで切り替える(FileHandler)。
+ * パラメータは設定した場合だけ出力し、パスワードの列を含むSQLでは数値以外のパラメータを伏せる。
+ * unwrap()はラップしていない接続・Statement・ResultSetを返却し、それを使って実行したSQLは記録しない。
+ * <pre>
+ * 2026-10-18 12:34:56.789 SLOW 312.4ms rows=20 route=Report.index sql=select ... params=[3, 'abc']
+ * </pre>
+ */
+public class SlowQueryLog implements AutoCloseable {
+
+    private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+
+    /**
+     * 出力に使用するロガーの名前(コンソール等の親のハンドラには出力しない)
+     */
+    public static final String LOGGER_NAME = "daily_report_system.sql";
+
+    //出力するSQL・パラメータの文字数の上限
+    private static final int MAX_SQL_LENGTH = 4000;
+    private static final int MAX_PARAM_LENGTH = 100;
+    //パラメータを伏せる場合に出力する文字列
+    private static final String MASK = "'***'";
+
+    private final long thresholdNanos;
+    private final double sampleRate;
+    private final boolean logParams;
+    private final Logger logger;
+    private final AsyncLogHandler handler;
+
+    /**
+     * コンストラクタ
+     * @param thresholdMillis 出力する実行時間のしきい値(ミリ秒 負の場合は時間では出力しない)
+     * @param sampleRate しきい値未満のSQLを出力する割合(0.0〜1.0)
+     * @param logParams パラメータを出力するかどうか
+     * @param pattern 出力先のファイル名のパターン(FileHandlerの形式 例:"%t/daily_report_system-sql.%g.log")
+     * @param limit 1ファイルのサイズの上限(バイト)
+     * @param count 保持するファイルの数
+     * @param queueSize 書き込み待ちのログの件数の上限
+     * @throws IOException ファイルを開けない場合
+     */
+    public SlowQueryLog(long thresholdMillis, double sampleRate, boolean logParams,
+            String pattern, int limit, int count, int queueSize) throws IOException {
+        this.thresholdNanos = thresholdMillis < 0 ? Long.MAX_VALUE : thresholdMillis * 1_000_000L;
+        this.sampleRate = Math.max(0, Math.min(1, sampleRate));
+        this.logParams = logParams;
+
+        FileHandler file = new FileHandler(pattern, limit, Math.max(1, count), true);
+        file.setEncoding("UTF-8");
+        file.setFormatter(new LineFormatter());
+        handler = new AsyncLogHandler(file, queueSize, "slow-query-log");
+
+        logger = Logger.getLogger(LOGGER_NAME);
+        logger.setUseParentHandlers(false);
+        logger.setLevel(Level.INFO);
+        logger.addHandler(handler);
+        LOGGER.info("SQLのログを出力します: threshold=" + thresholdMillis + "ms sampleRate=" + this.sampleRate
+                + " file=" + pattern);
+    }
+
+    /**
+     * 出力するSQLがあるかどうか(しきい値・割合のどちらも設定されていない場合はfalse)
+     * @param thresholdMillis 出力する実行時間のしきい値(ミリ秒)
+     * @param sampleRate しきい値未満のSQLを出力する割合
+     * @return 出力するSQLがある場合はtrue
+     */
+    public static boolean isEnabled(long thresholdMillis, double sampleRate) {
+        return thresholdMillis >= 0 || sampleRate > 0;
+    }
+
+    /**
+     * 接続をラップし、この接続で実行したSQLを記録する
+     * @param connection 接続
+     * @return ラップした接続
+     */
+    public Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, new ConnectionHandler(connection));
+    }
+
+    /**
+     * 書き込み待ちのログを出力してから終了する
+     */
+    @Override
+    public void close() {
+        logger.removeHandler(handler);
+        handler.close();
+    }
+
+    /**
+     * 1回の実行を終えたSQLを、しきい値以上または抽出した場合に出力する
+     */
+    private void record(Execution execution) {
+        long nanos = execution.execNanos + execution.fetchNanos;
+        String kind;
+        if (nanos >= thresholdNanos) {
+            kind = "SLOW";
+        } else if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            kind = "SAMPLE";
+        } else {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(kind)
+                .append(' ').append(String.format(Locale.ROOT, "%.1fms", nanos / 1_000_000.0))
+                .append(" rows=").append(execution.rows);
+        if (execution.batch > 0) {
+            sb.append(" batch=").append(execution.batch);
+        }
+        sb.append(" route=").append(execution.route == null ? "-" : execution.route)
+                .append(" sql=").append(truncate(execution.sql, MAX_SQL_LENGTH));
+        if (logParams && !execution.params.isEmpty()) {
+            sb.append(" params=[");
+            boolean first = true;
+            for (Object param : execution.params.values()) {
+                if (!first) {
+                    sb.append(", ");
+                }
+                first = false;
+                sb.append(execution.masked && !(param instanceof Number) ? MASK : format(param));
+            }
+            sb.append(']');
+        }
+        logger.log(kind.equals("SLOW") ? Level.WARNING : Level.INFO, sb.toString());
+    }
+
+    /**
+     * パラメータを出力用の文字列にする(文字列・日時は''で囲み、長いものは切り詰める)
+     */
+    private static String format(Object param) {
+        if (param == null) {
+            return "NULL";
+        }
+        if (param instanceof Number || param instanceof Boolean) {
+            return param.toString();
+        }
+        if (param instanceof byte[]) {
+            return "<" + ((byte[]) param).length + " bytes>";
+        }
+        return "'" + truncate(param.toString(), MAX_PARAM_LENGTH).replace("'", "''") + "'";
+    }
+
+    private static String truncate(String s, int max) {
+        return s.length() <= max ? s : s.substring(0, max) + "...";
+    }
+
+    /**
+     * 1回の実行(実行時に設定されていたパラメータと、実行・読み込みの時間、行数)
+     */
+    private static class Execution {
+        private final String sql;
+        private final Map<Integer, Object> params;
+        private final int batch;
+        private final String route;
+        //パスワードの列を含むSQL(数値以外のパラメータを出力しない)
+        private final boolean masked;
+        private long execNanos;
+        private long fetchNanos;
+        private long rows;
+
+        private Execution(String sql, Map<Integer, Object> params, int batch) {
+            this.sql = sql;
+            this.params = params;
+            this.batch = batch;
+            RequestMetrics metrics = RequestMetrics.current();
+            this.route = metrics == null ? null : metrics.getRoute();
+            this.masked = sql != null && sql.toLowerCase(Locale.ROOT).contains(JpaConst.EMP_COL_PASS);
+        }
+    }
+
+    /**
+     * unwrap()・isWrapperFor()を処理する
+     * ラッパー自身が実装しているインタフェースはラッパーを返却し、それ以外はラップしていないオブジェクトに委譲する
+     * (委譲した場合に返却されるオブジェクトで実行したSQLは記録しない)
+     * @return unwrap()・isWrapperFor()以外の場合はnull
+     */
+    private static Object unwrap(Object proxy, Object target, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+        case "unwrap":
+            return ((Class<?>) args[0]).isInstance(proxy) ? proxy : invoke(target, method, args);
+        case "isWrapperFor":
+            return ((Class<?>) args[0]).isInstance(proxy) || (Boolean) invoke(target, method, args);
+        default:
+            return null;
+        }
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 接続のラッパー(作成したStatementをラップする)
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+
+        private ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Logged " + connection;
+            case "unwrap":
+            case "isWrapperFor":
+                return unwrap(proxy, connection, method, args);
+            default:
+                break;
+            }
+
+            Object result = SlowQueryLog.invoke(connection, method, args);
+            switch (method.getName()) {
+            case "prepareStatement":
+            case "prepareCall":
+            case "createStatement":
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                        new Class<?>[] { method.getReturnType() },
+                        new StatementHandler((Statement) result, sql, (Connection) proxy));
+            default:
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Statementのラッパー
+     * 設定したパラメータを保持し、実行時間と行数(更新した行数、または読み込んだ行数)を記録する。
+     * 結果を読み込むSQLは、ResultSetまたはStatementを閉じた時点(次の実行の前)に出力する。
+     */
+    private class StatementHandler implements InvocationHandler {
+        private final Statement statement;
+        private final String sql;
+        //getConnection()で返却する接続(ラップした接続)
+        private final Connection connectionProxy;
+        private final Map<Integer, Object> params = new TreeMap<>();
+        private int batch;
+        //結果を読み込み中の実行
+        private Execution reading;
+
+        private StatementHandler(Statement statement, String sql, Connection connectionProxy) {
+            this.statement = statement;
+            this.sql = sql;
+            this.connectionProxy = connectionProxy;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Logged " + statement;
+            case "getConnection":
+                return connectionProxy;
+            case "unwrap":
+            case "isWrapperFor":
+                return unwrap(proxy, statement, method, args);
+            default:
+                break;
+            }
+
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                //パラメータの設定(setNullの場合は値をnullとする)
+                if (logParams) {
+                    params.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                }
+                return SlowQueryLog.invoke(statement, method, args);
+            }
+            switch (name) {
+            case "clearParameters":
+                params.clear();
+                break;
+            case "addBatch":
+                batch++;
+                break;
+            case "clearBatch":
+                batch = 0;
+                break;
+            case "executeQuery":
+            case "execute":
+            case "executeUpdate":
+            case "executeLargeUpdate":
+            case "executeBatch":
+            case "executeLargeBatch":
+                return execute(proxy, method, args);
+            case "getResultSet":
+                Object rs = SlowQueryLog.invoke(statement, method, args);
+                return rs == null || reading == null ? rs : wrap(proxy, (ResultSet) rs);
+            case "close":
+                finishReading();
+                break;
+            default:
+                break;
+            }
+            return SlowQueryLog.invoke(statement, method, args);
+        }
+
+        private Object execute(Object proxy, Method method, Object[] args) throws Throwable {
+            finishReading();
+            String executed = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            Execution execution = new Execution(executed, new TreeMap<>(params), batch);
+            batch = 0;
+
+            long start = System.nanoTime();
+            Object result = SlowQueryLog.invoke(statement, method, args);
+            execution.execNanos = System.nanoTime() - start;
+
+            if (result instanceof ResultSet) {
+                reading = execution;
+                return wrap(proxy, (ResultSet) result);
+            }
+            if (result instanceof Boolean) {
+                if ((Boolean) result) {
+                    //結果はgetResultSet()で読み込む
+                    reading = execution;
+                    return result;
+                }
+                execution.rows = Math.max(0, statement.getUpdateCount());
+            } else if (result instanceof Number) {
+                execution.rows = ((Number) result).longValue();
+            } else if (result instanceof int[]) {
+                for (int count : (int[]) result) {
+                    execution.rows += Math.max(0, count);
+                }
+            } else if (result instanceof long[]) {
+                for (long count : (long[]) result) {
+                    execution.rows += Math.max(0, count);
+                }
+            }
+            record(execution);
+            return result;
+        }
+
+        private ResultSet wrap(Object statementProxy, ResultSet rs) {
+            return (ResultSet) Proxy.newProxyInstance(SlowQueryLog.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class }, new ResultSetHandler(this, statementProxy, rs, reading));
+        }
+
+        private void finishReading() {
+            if (reading != null) {
+                Execution execution = reading;
+                reading = null;
+                record(execution);
+            }
+        }
+    }
+
+    /**
+     * ResultSetのラッパー(読み込んだ行数と読み込みの時間を記録する)
+     */
+    private static class ResultSetHandler implements InvocationHandler {
+        private final StatementHandler owner;
+        private final Object statementProxy;
+        private final ResultSet rs;
+        private final Execution execution;
+
+        private ResultSetHandler(StatementHandler owner, Object statementProxy, ResultSet rs, Execution execution) {
+            this.owner = owner;
+            this.statementProxy = statementProxy;
+            this.rs = rs;
+            this.execution = execution;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Logged " + rs;
+            case "next":
+                long start = System.nanoTime();
+                Object hasNext = SlowQueryLog.invoke(rs, method, args);
+                execution.fetchNanos += System.nanoTime() - start;
+                if ((Boolean) hasNext) {
+                    execution.rows++;
+                }
+                return hasNext;
+            case "getStatement":
+                return statementProxy;
+            case "unwrap":
+            case "isWrapperFor":
+                return unwrap(proxy, rs, method, args);
+            case "close":
+                if (owner.reading == execution) {
+                    owner.finishReading();
+                }
+                return SlowQueryLog.invoke(rs, method, args);
+            default:
+                return SlowQueryLog.invoke(rs, method, args);
+            }
+        }
+    }
+
+    /**
+     * 1行に「日時 内容」を出力するフォーマッタ
+     */
+    private static class LineFormatter extends Formatter {
+        private static final DateTimeFormatter TIMESTAMP =
+                DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+        @Override
+        public String format(LogRecord record) {
+            return TIMESTAMP.format(Instant.ofEpochMilli(record.getMillis())) + " " + formatMessage(record)
+                    + System.lineSeparator();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import constants.JpaConst;
+
+/**
+ * 経路(Actionのメソッド)ごとのSQLの件数の上限と、同じ形のSQLの繰り返し(N+1)を判定するクラス
+ * 上限は daily_report_system.sql.budget に「経路=件数」をカンマ区切りで設定する(例:Report.index=4,Report.show=6)。
+ * 通常は上限を超えても警告をログに出力するだけだが、strictモードでは上限を超えたSQLを実行せずに例外をスローする
+ * (エラー画面になるため、結合テストで件数の増加を検出できる)。
+ */
+public class SqlBudget {
+
+    private static final Logger LOGGER = Logger.getLogger(SqlBudget.class.getName());
+
+    private static volatile SqlBudget instance;
+
+    //経路 → SQLの件数の上限
+    private final Map<String, Integer> budgets;
+    private final boolean strict;
+    private final int repeatThreshold;
+
+    private SqlBudget(Map<String, Integer> budgets, boolean strict, int repeatThreshold) {
+        this.budgets = budgets;
+        this.strict = strict;
+        this.repeatThreshold = repeatThreshold;
+    }
+
+    /**
+     * 設定からインスタンスを作成して返却する
+     * @return インスタンス
+     */
+    public static SqlBudget getInstance() {
+        if (instance == null) {
+            synchronized (SqlBudget.class) {
+                if (instance == null) {
+                    instance = create();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private static SqlBudget create() {
+        Map<String, Integer> budgets = new HashMap<>();
+        for (String entry : DBUtil.getProperty(JpaConst.PROP_SQL_BUDGET, "").split(",")) {
+            int eq = entry.indexOf('=');
+            if (eq < 0) {
+                continue;
+            }
+            try {
+                budgets.put(entry.substring(0, eq).trim(), Integer.parseInt(entry.substring(eq + 1).trim()));
+            } catch (NumberFormatException e) {
+                LOGGER.warning("SQLの件数の上限を読み込めません: " + entry);
+            }
+        }
+        return new SqlBudget(Collections.unmodifiableMap(budgets),
+                Boolean.parseBoolean(DBUtil.getProperty(JpaConst.PROP_SQL_BUDGET_STRICT, "false")),
+                (int) Math.max(2, DBUtil.getLongProperty(JpaConst.PROP_SQL_REPEAT_THRESHOLD, 5)));
+    }
+
+    /**
+     * SQLを実行する前に件数の上限を確認する
+     * @param route 経路
+     * @param queries リクエストの集計(このSQLを記録した後のもの)
+     * @throws IllegalStateException strictモードで上限を超えた場合
+     */
+    public void check(String route, QueryStatistics queries) {
+        Integer budget = budgets.get(route);
+        if (budget == null || queries.getStatements() <= budget) {
+            return;
+        }
+        if (queries.markBudgetExceeded() && strict) {
+            throw new IllegalStateException(route + "のSQLの件数が上限(" + budget + "件)を超えました");
+        }
+    }
+
+    /**
+     * 同じ形のSQLを繰り返し実行した(N+1の可能性がある)ものを返却する
+     * @param queries リクエストの集計
+     * @return SQLの形 → 実行回数(daily_report_system.sql.repeatThreshold 回以上のもの)
+     */
+    public Map<String, Long> getRepeated(QueryStatistics queries) {
+        return queries.getRepeated(repeatThreshold);
+    }
+
+    /**
+     * リクエストで実行したSQLの集計をログに出力する
+     * 上限を超えた場合と、同じ形のSQLを繰り返し実行した場合は警告する
+     * @param route 経路
+     * @param queries リクエストの集計
+     */
+    public void report(String route, QueryStatistics queries) {
+        Map<String, Long> repeated = getRepeated(queries);
+        boolean warn = queries.isBudgetExceeded() || !repeated.isEmpty();
+        Level level = warn ? Level.WARNING : Level.FINE;
+        if (!LOGGER.isLoggable(level)) {
+            return;
+        }
+
+        StringBuilder message = new StringBuilder(route).append(": ").append(queries);
+        if (queries.isBudgetExceeded()) {
+            message.append(" (上限 ").append(budgets.get(route)).append("件を超えています)");
+        }
+        repeated.forEach((shape, count) -> message.append(System.lineSeparator())
+                .append("  同じ形のSQLを").append(count).append("回実行しています(N+1の可能性): ").append(shape));
+        LOGGER.log(level, message.toString());
+    }
+}
@@ -0,0 +1,57 @@
+package utils;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * 実行したSQLとJDBCの処理時間を、現在のスレッドで処理しているリクエストの集計(RequestMetrics)に加算するクラス
+ * DBUtil.createEntityManager()がEntityManagerごとに生成し、SQLの準備(inspect)と実行の開始・終了の通知を受け取る。
+ * リクエスト以外のスレッド(書き込みの遅延処理等)で実行したSQLは集計しない。
+ */
+public class SqlRecorder extends BaseSessionEventListener implements StatementInspector {
+    private static final long serialVersionUID = 1L;
+
+    private long startNanos;
+
+    /**
+     * SQLを記録し、経路ごとの件数の上限を確認する(SQLは変更せずに返却する)
+     */
+    @Override
+    public String inspect(String sql) {
+        RequestMetrics metrics = RequestMetrics.current();
+        if (metrics != null) {
+            metrics.getQueries().statement(sql);
+            if (metrics.getRoute() != null) {
+                SqlBudget.getInstance().check(metrics.getRoute(), metrics.getQueries());
+            }
+        }
+        return sql;
+    }
+
+    @Override
+    public void jdbcExecuteStatementStart() {
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        record();
+    }
+
+    @Override
+    public void jdbcExecuteBatchStart() {
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        record();
+    }
+
+    private void record() {
+        RequestMetrics metrics = RequestMetrics.current();
+        if (metrics != null) {
+            metrics.getQueries().addJdbcNanos(System.nanoTime() - startNanos);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.ServletContext;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * 静的ファイル(CSS等)の一覧
+ * 起動時に1度だけ対象のディレクトリを走査し、ファイルごとに内容のハッシュを含むURL(例:/assets/css/style.1a2b3c4d5e6f.css)と、
+ * gzipで圧縮したファイルを作成する。内容が変わればURLも変わるため、ハッシュを含むURLはブラウザに無期限にキャッシュさせることができる。
+ */
+public class StaticAssets {
+
+    private static final Logger LOGGER = Logger.getLogger(StaticAssets.class.getName());
+
+    /**
+     * ハッシュを含むURLの接頭辞
+     */
+    public static final String URL_PREFIX = "/assets";
+
+    //URLに含めるハッシュの桁数
+    private static final int HASH_LENGTH = 12;
+
+    //元のパス(例:"/css/style.css") → ファイル
+    private final Map<String, Asset> byPath = new HashMap<>();
+    //ハッシュを含むURL(例:"/assets/css/style.1a2b3c4d5e6f.css") → ファイル
+    private final Map<String, Asset> byUrl = new HashMap<>();
+
+    private StaticAssets() {
+    }
+
+    /**
+     * 対象のディレクトリのファイルを登録する
+     * @param context サーブレットコンテキスト
+     * @param dirs 対象のディレクトリ(例:"/css/")
+     * @param workDir 圧縮したファイル等を保存する作業ディレクトリ
+     * @return 静的ファイルの一覧
+     */
+    public static StaticAssets build(ServletContext context, List<String> dirs, Path workDir) {
+        StaticAssets assets = new StaticAssets();
+        try {
+            Files.createDirectories(workDir);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "静的ファイルの作業ディレクトリを作成できません: " + workDir, e);
+            return assets;
+        }
+
+        Deque<String> pending = new ArrayDeque<>(dirs);
+        while (!pending.isEmpty()) {
+            Set<String> paths = context.getResourcePaths(pending.pop());
+            if (paths == null) {
+                continue;
+            }
+            for (String path : paths) {
+                if (path.endsWith("/")) {
+                    pending.push(path);
+                    continue;
+                }
+                try {
+                    Asset asset = assets.register(context, path, workDir);
+                    assets.byPath.put(asset.path, asset);
+                    assets.byUrl.put(asset.url, asset);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "静的ファイルを登録できません: " + path, e);
+                }
+            }
+        }
+        LOGGER.info("静的ファイルを登録しました: " + assets.byUrl.keySet());
+        return assets;
+    }
+
+    /**
+     * 1つのファイルのハッシュを計算し、gzipで圧縮したファイルを作成する
+     */
+    private Asset register(ServletContext context, String path, Path workDir) throws IOException {
+        //warを展開せずに実行している場合は、作業ディレクトリに書き出したファイルを使用する
+        String realPath = context.getRealPath(path);
+        Path file;
+        if (realPath != null && Files.isRegularFile(Paths.get(realPath))) {
+            file = Paths.get(realPath);
+        } else {
+            file = workDir.resolve(path.substring(1));
+            Files.createDirectories(file.getParent());
+            try (InputStream in = context.getResourceAsStream(path)) {
+                if (in == null) {
+                    throw new IOException("リソースが見つかりません");
+                }
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        file = file.toRealPath();
+
+        byte[] content = Files.readAllBytes(file);
+        String hash = hash(content);
+
+        int slash = path.lastIndexOf('/');
+        int dot = path.lastIndexOf('.');
+        String url = dot > slash
+                ? URL_PREFIX + path.substring(0, dot) + "." + hash + path.substring(dot)
+                : URL_PREFIX + path + "." + hash;
+
+        //圧縮して小さくなる場合だけ、圧縮したファイルを使用する
+        Path gzipFile = workDir.resolve(url.substring(1) + ".gz");
+        Files.createDirectories(gzipFile.getParent());
+        if (!Files.isRegularFile(gzipFile)) {
+            Path tmp = Files.createTempFile(gzipFile.getParent(), "asset", ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp)) {
+                {
+                    def.setLevel(Deflater.BEST_COMPRESSION);
+                }
+            }) {
+                out.write(content);
+            }
+            Files.move(tmp, gzipFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        long gzipLength = Files.size(gzipFile);
+        if (gzipLength >= content.length) {
+            gzipFile = null;
+            gzipLength = -1;
+        } else {
+            gzipFile = gzipFile.toRealPath();
+        }
+
+        String contentType = context.getMimeType(path);
+        return new Asset(path, url, hash, contentType == null ? "application/octet-stream" : contentType,
+                file, content.length, gzipFile, gzipLength);
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.substring(0, HASH_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 元のパスに対応するハッシュを含むURLを返却する(JSPから呼び出す)
+     * @param path 元のパス(例:"/css/style.css")
+     * @return ハッシュを含むURL 登録されていない場合は元のパス
+     */
+    public String url(String path) {
+        Asset asset = byPath.get(path);
+        return asset == null ? path : asset.url;
+    }
+
+    /**
+     * ハッシュを含むURLに該当するファイルを返却する
+     * @param url ハッシュを含むURL
+     * @return ファイル 該当しない場合はnull
+     */
+    public Asset findByUrl(String url) {
+        return byUrl.get(url);
+    }
+
+    /**
+     * 元のパスに該当するファイルを返却する
+     * @param path 元のパス
+     * @return ファイル 該当しない場合はnull
+     */
+    public Asset findByPath(String path) {
+        return byPath.get(path);
+    }
+
+    /**
+     * 1つの静的ファイル
+     */
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Asset {
+        private final String path; //元のパス
+        private final String url; //ハッシュを含むURL
+        private final String hash; //内容のハッシュ(ETagに使用する)
+        private final String contentType;
+        private final Path file;
+        private final long length;
+        private final Path gzipFile; //gzipで圧縮したファイル(圧縮しても小さくならない場合はnull)
+        private final long gzipLength;
+    }
+}
@@ -0,0 +1,165 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.persistence.EntityManager;
+
+/**
+ * 1リクエストの間、全てのServiceで1つのEntityManagerを共有するための作業単位
+ * EntityManagerは最初にDBへアクセスした時点で生成し、close()でちょうど1回だけクローズする。
+ * 作業単位はスレッドに紐づけて管理する。
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    /**
+     * 現在のスレッドで有効な作業単位
+     */
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 作業単位を参照するServiceに渡すEntityManager(呼び出しのたびに現在の作業単位へ委譲する)
+     */
+    private static final EntityManager SHARED = (EntityManager) Proxy.newProxyInstance(
+            UnitOfWork.class.getClassLoader(),
+            new Class<?>[] { EntityManager.class },
+            new SharedEntityManagerHandler());
+
+    //問い合わせのタイムアウトを指定するEntityManagerのプロパティ
+    private static final String QUERY_TIMEOUT = "javax.persistence.query.timeout";
+
+    private EntityManager em;
+    private int depth = 1;
+    //EntityManagerの問い合わせに設定するタイムアウト(ミリ秒、0の場合は設定しない)
+    private long queryTimeoutMillis;
+
+    private UnitOfWork() {
+    }
+
+    /**
+     * 現在のスレッドで作業単位を開始する
+     * 既に開始されている場合はそれに参加し、最も外側のclose()でEntityManagerをクローズする
+     * @return 作業単位
+     */
+    public static UnitOfWork begin() {
+        return begin(0);
+    }
+
+    /**
+     * 現在のスレッドで、問い合わせのタイムアウトを指定して作業単位を開始する
+     * 既に開始されている場合はそれに参加する(タイムアウトは変更しない)
+     * @param queryTimeoutMillis 作業単位のEntityManagerで実行する問い合わせのタイムアウト(ミリ秒、0の場合は設定しない)
+     * @return 作業単位
+     */
+    public static UnitOfWork begin(long queryTimeoutMillis) {
+        UnitOfWork current = CURRENT.get();
+        if (current != null) {
+            current.depth++;
+            return current;
+        }
+
+        UnitOfWork unit = new UnitOfWork();
+        unit.queryTimeoutMillis = queryTimeoutMillis;
+        CURRENT.set(unit);
+        return unit;
+    }
+
+    /**
+     * 現在のスレッドで作業単位が開始されているかどうかを返却する
+     * @return 開始されている:true 開始されていない:false
+     */
+    public static boolean isActive() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * 現在の作業単位のEntityManagerへ処理を委譲するEntityManagerを返却する
+     * 返却したEntityManagerのclose()は何もしない(作業単位の終了時にクローズされる)
+     * @return 共有EntityManager
+     */
+    public static EntityManager sharedEntityManager() {
+        return SHARED;
+    }
+
+    /**
+     * 作業単位のEntityManagerを返却する(未生成の場合はここで生成する)
+     * @return EntityManager
+     */
+    public EntityManager getEntityManager() {
+        if (em == null) {
+            em = DBUtil.createEntityManager();
+            if (queryTimeoutMillis > 0) {
+                //Hibernateはint(ミリ秒)の値だけを受け付ける
+                em.setProperty(QUERY_TIMEOUT, (int) Math.min(Integer.MAX_VALUE, queryTimeoutMillis));
+            }
+        }
+        return em;
+    }
+
+    /**
+     * 作業単位を終了する
+     * 完了していないトランザクションはロールバックし、EntityManagerをクローズする
+     */
+    @Override
+    public void close() {
+        if (--depth > 0) {
+            return;
+        }
+
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+
+        if (em != null) {
+            try {
+                if (em.isOpen() && em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+            } finally {
+                if (em.isOpen()) {
+                    em.close();
+                }
+                em = null;
+            }
+        }
+    }
+
+    /**
+     * 共有EntityManagerの呼び出しを現在の作業単位のEntityManagerへ委譲するハンドラ
+     */
+    private static class SharedEntityManagerHandler implements InvocationHandler {
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "Shared EntityManager proxy";
+            case "close":
+                //作業単位の終了時にクローズするため、ここでは何もしない
+                return null;
+            case "isOpen":
+                UnitOfWork active = CURRENT.get();
+                return active != null && (active.em == null || active.em.isOpen());
+            default:
+                break;
+            }
+
+            UnitOfWork unit = CURRENT.get();
+            if (unit == null) {
+                throw new IllegalStateException("UnitOfWorkが開始されていないスレッドから共有EntityManagerが呼び出されました");
+            }
+
+            try {
+                return method.invoke(unit.getEntityManager(), args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
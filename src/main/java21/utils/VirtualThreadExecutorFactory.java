@@ -0,0 +1,23 @@
+package utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 仮想スレッドで処理を実行するExecutorServiceを作成するクラス
+ * JDK 21以降でビルドした場合だけコンパイルされ、AsyncExecutorsから呼び出される
+ */
+public final class VirtualThreadExecutorFactory {
+
+    private VirtualThreadExecutorFactory() {
+    }
+
+    /**
+     * 処理ごとに名前付きの仮想スレッドを作成するExecutorServiceを作成する
+     * @param name スレッド名の接頭辞
+     * @return ExecutorService
+     */
+    public static ExecutorService newExecutor(String name) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+}
@@ -0,0 +1,52 @@
+-- 初期スキーマ
+-- これまでschema-generation(create)で作成していたテーブルと同じ定義
+-- 既存のデータベースでは何もしない
+CREATE TABLE IF NOT EXISTS employees (
+    id INT NOT NULL AUTO_INCREMENT,
+    admin_flag INT NOT NULL,
+    boss_flag INT NOT NULL,
+    code VARCHAR(255) NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    delete_flag INT NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    password VARCHAR(64) NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_employees_code UNIQUE (code)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS reports (
+    id INT NOT NULL AUTO_INCREMENT,
+    content LONGTEXT NOT NULL,
+    created_at DATETIME(6) NOT NULL,
+    report_aprv INT NOT NULL,
+    reports_good INT NOT NULL,
+    report_date DATE NOT NULL,
+    title VARCHAR(255) NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    employee_id INT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_reports_employee FOREIGN KEY (employee_id) REFERENCES employees (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS goodemployees (
+    id INT NOT NULL AUTO_INCREMENT,
+    created_at DATETIME(6) NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    good_emp_id INT NOT NULL,
+    good_rep_id INT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_goodemployees_employee FOREIGN KEY (good_emp_id) REFERENCES employees (id),
+    CONSTRAINT fk_goodemployees_report FOREIGN KEY (good_rep_id) REFERENCES reports (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS followemployees (
+    id INT NOT NULL AUTO_INCREMENT,
+    created_at DATETIME(6) NOT NULL,
+    updated_at DATETIME(6) NOT NULL,
+    flw_emp_id INT NOT NULL,
+    flwed_emp_id INT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_followemployees_follower FOREIGN KEY (flw_emp_id) REFERENCES employees (id),
+    CONSTRAINT fk_followemployees_followed FOREIGN KEY (flwed_emp_id) REFERENCES employees (id)
+) ENGINE = InnoDB;
@@ -0,0 +1,10 @@
+-- 一覧表示用に日報の内容の冒頭部分を保持する列を追加し、既存の日報に設定する
+-- (ReportConverter.toPreview と同じく空白をまとめ、100文字を超える場合は切り詰める)
+ALTER TABLE reports ADD COLUMN preview VARCHAR(255) NULL;
+
+UPDATE reports
+   SET preview = CASE
+       WHEN CHAR_LENGTH(TRIM(REGEXP_REPLACE(content, '[[:space:]]+', ' '))) <= 100
+           THEN TRIM(REGEXP_REPLACE(content, '[[:space:]]+', ' '))
+       ELSE CONCAT(LEFT(TRIM(REGEXP_REPLACE(content, '[[:space:]]+', ' ')), 100), '…')
+   END;
@@ -0,0 +1,12 @@
+-- JpaConstの名前付きクエリの絞り込み条件と並び順に合わせた索引
+-- 従業員が作成した日報の一覧(employee_id = ? ORDER BY id DESC)、タイムライン(employee_id IN (...) ORDER BY id DESC)
+CREATE INDEX idx_reports_employee_id ON reports (employee_id, id);
+
+-- 日報にいいねした従業員の一覧(good_rep_id = ? ORDER BY id DESC)
+CREATE INDEX idx_goodemployees_report_id ON goodemployees (good_rep_id, id);
+
+-- いいねした従業員からの参照(外部キー)
+CREATE INDEX idx_goodemployees_employee ON goodemployees (good_emp_id);
+
+-- フォローされた従業員からの参照(外部キー)
+CREATE INDEX idx_followemployees_followed ON followemployees (flwed_emp_id);
@@ -0,0 +1,25 @@
+-- 同じ従業員による同じ日報へのいいね、同じ従業員の組み合わせのフォローを1件に制限する
+-- 制約の追加前に重複しているデータは最も古い1件を残して削除する
+DELETE g1 FROM goodemployees g1
+  JOIN goodemployees g2
+    ON g1.good_rep_id = g2.good_rep_id
+   AND g1.good_emp_id = g2.good_emp_id
+   AND g1.id > g2.id;
+
+DELETE f1 FROM followemployees f1
+  JOIN followemployees f2
+    ON f1.flw_emp_id = f2.flw_emp_id
+   AND f1.flwed_emp_id = f2.flwed_emp_id
+   AND f1.id > f2.id;
+
+-- 重複して加算されていたいいね数を、いいねした従業員の件数に合わせる
+UPDATE reports r
+   SET r.reports_good = (SELECT COUNT(*) FROM goodemployees g WHERE g.good_rep_id = r.id);
+
+-- いいねの重複防止 日報ごとのいいね件数、ログイン中の従業員がいいね済みかどうかの確認(good_rep_id = ? [AND good_emp_id = ?])にも使用する
+ALTER TABLE goodemployees
+  ADD CONSTRAINT uk_goodemployees_report_employee UNIQUE (good_rep_id, good_emp_id);
+
+-- フォローの重複防止 タイムラインのフォロー先の取得、フォロー済みかどうかの確認(flw_emp_id = ? [AND flwed_emp_id = ?])にも使用する
+ALTER TABLE followemployees
+  ADD CONSTRAINT uk_followemployees_follower_followed UNIQUE (flw_emp_id, flwed_emp_id);
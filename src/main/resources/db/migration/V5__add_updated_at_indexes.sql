@@ -0,0 +1,9 @@
+-- 条件付きGET(ETag・Last-Modified)の判定に使う最終更新日時の取得用の索引
+-- 全日報の一覧(MAX(updated_at))
+CREATE INDEX idx_reports_updated_at ON reports (updated_at);
+
+-- タイムライン(employee_id IN (...) の MAX(updated_at))
+CREATE INDEX idx_reports_employee_updated_at ON reports (employee_id, updated_at);
+
+-- 一覧に表示する氏名の変更(MAX(updated_at))
+CREATE INDEX idx_employees_updated_at ON employees (updated_at);
@@ -0,0 +1,8 @@
+-- 日報の内容の冒頭部分を、V2と同じ規則(Unicodeの空白をまとめ、100文字を超える場合は切り詰める)で作り直す
+-- アプリケーション(ReportConverter.toPreview)が全角空白等をまとめていなかった間に登録・更新された日報を揃える
+UPDATE reports
+   SET preview = CASE
+       WHEN CHAR_LENGTH(TRIM(REGEXP_REPLACE(content, '[[:space:]]+', ' '))) <= 100
+           THEN TRIM(REGEXP_REPLACE(content, '[[:space:]]+', ' '))
+       ELSE CONCAT(LEFT(TRIM(REGEXP_REPLACE(content, '[[:space:]]+', ' ')), 100), '…')
+   END;
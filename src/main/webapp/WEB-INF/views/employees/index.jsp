@@ -1,4 +1,4 @@
-<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" session="false"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
 <%@ page import="constants.AttributeConst" %>
 <%@ page import="constants.ForwardConst" %>
@@ -44,7 +44,8 @@
 
         <div id="pagination">
             （全 ${employees_count} 件）<br />
-            <c:forEach var="i" begin="1" end="${((employees_count - 1) / maxRow) + 1}" step="1">
+            <c:set var="lastPage" value="${((employees_count - 1) / maxRow) + 1}" />
+            <c:forEach var="i" begin="1" end="${lastPage > maxPage ? maxPage : lastPage}" step="1">
                 <c:choose>
                     <c:when test="${i == page}">
                         <c:out value="${i}" />&nbsp;
@@ -54,6 +55,13 @@
                     </c:otherwise>
                 </c:choose>
             </c:forEach>
+            <br />
+            <c:if test="${prevCursor != null}">
+                <a href="<c:url value='?action=${actEmp}&command=${commIdx}&cursor=${prevCursor}' />">&lt;&nbsp;前へ</a>&nbsp;
+            </c:if>
+            <c:if test="${nextCursor != null}">
+                <a href="<c:url value='?action=${actEmp}&command=${commIdx}&cursor=${nextCursor}' />">次へ&nbsp;&gt;</a>
+            </c:if>
         </div>
         <p><a href="<c:url value='?action=${actEmp}&command=${commNew}' />">新規従業員の登録</a></p>
 
@@ -1,4 +1,4 @@
-<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" session="false"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core"%>
 <%@ page import="constants.ForwardConst" %>
 <%@ page import="constants.AttributeConst" %>
@@ -17,25 +17,25 @@
 <head>
 <meta charset="UTF-8">
     <title><c:out value="日報管理システム" /></title>
-    <link rel="stylesheet" href="<c:url value='/css/reset.css' />">
-    <link rel="stylesheet" href="<c:url value='/css/style.css' />">
+    <link rel="stylesheet" href="<c:url value='${applicationScope.assets.url("/css/reset.css")}' />">
+    <link rel="stylesheet" href="<c:url value='${applicationScope.assets.url("/css/style.css")}' />">
 </head>
 <body>
     <div id="wrapper">
         <div id="header">
             <div id="header_menu">
                 <h1><a href="<c:url value='/?action=${actTop}&command=${commIdx}' />">日報管理システム</a></h1>&nbsp;&nbsp;&nbsp;
-                <c:if test="${sessionScope.login_employee != null}">
-                    <c:if test="${sessionScope.login_employee.adminFlag == AttributeConst.ROLE_ADMIN.getIntegerValue()}">
+                <c:if test="${requestScope.login_employee != null}">
+                    <c:if test="${requestScope.login_employee.adminFlag == AttributeConst.ROLE_ADMIN.getIntegerValue()}">
                         <a href="<c:url value='?action=${actEmp}&command=${commIdx}' />">従業員管理</a>&nbsp;
                     </c:if>
                     <a href="<c:url value='?action=${actRep}&command=${commIdx}' />">日報管理</a>&nbsp;
                     <a href="<c:url value='?action=${actRep}&command=${commTmln}' />">タイムライン</a>&nbsp;
                 </c:if>
             </div>
-            <c:if test="${sessionScope.login_employee != null}">
+            <c:if test="${requestScope.login_employee != null}">
                 <div id="employee_name">
-                    <c:out value="${sessionScope.login_employee.name}" />
+                    <c:out value="${requestScope.login_employee.name}" />
                     &nbsp;さん&nbsp;&nbsp;&nbsp;
                     <a href="<c:url value='?action=${actAuth}&command=${commOut}' />">ログアウト</a>
                 </div>
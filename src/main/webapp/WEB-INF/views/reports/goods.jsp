@@ -1,4 +1,4 @@
-<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" session="false"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
 <%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
 <%@ page import="constants.ForwardConst" %>
@@ -29,7 +29,8 @@
 
         <div id="pagination">
             （全 ${goods_count} 件）<br />
-            <c:forEach var="i" begin="1" end="${((goods_count - 1) / maxRow) + 1}" step="1">
+            <c:set var="lastPage" value="${((goods_count - 1) / maxRow) + 1}" />
+            <c:forEach var="i" begin="1" end="${lastPage > maxPage ? maxPage : lastPage}" step="1">
                 <c:choose>
                     <c:when test="${i == page}">
                         <c:out value="${i}" />&nbsp;
@@ -39,6 +40,13 @@
                     </c:otherwise>
                 </c:choose>
             </c:forEach>
+            <br />
+            <c:if test="${prevCursor != null}">
+                <a href="<c:url value='?action=${actRep}&command=${commGodIdx}&id=${report.id}&cursor=${prevCursor}' />">&lt;&nbsp;前へ</a>&nbsp;
+            </c:if>
+            <c:if test="${nextCursor != null}">
+                <a href="<c:url value='?action=${actRep}&command=${commGodIdx}&id=${report.id}&cursor=${nextCursor}' />">次へ&nbsp;&gt;</a>
+            </c:if>
         </div>
 
         <p>
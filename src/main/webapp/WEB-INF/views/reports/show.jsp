@@ -1,4 +1,4 @@
-<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" session="false"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core"%>
 <%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
 <%@ page import="constants.ForwardConst" %>
@@ -49,20 +49,20 @@
         </table>
 
         <c:choose>
-            <c:when test="${sessionScope.login_employee.id == report.employee.id}">
+            <c:when test="${requestScope.login_employee.id == report.employee.id}">
                 <a href="<c:url value='?action=${actRep}&command=${commEdt}&id=${report.id}' />">この日報を編集する</a>
             </c:when>
             <c:otherwise>
-                <c:if test="${goods_rep_emp_count == 0}">
+                <c:if test="${!liked}">
                     <a href="<c:url value='?action=${actRep}&command=${commGod}&id=${report.id}' />">この日報にいいねする</a>
                 </c:if>
                 <p>
-                <c:if test="${follow_followed_count == 0}">
+                <c:if test="${!following}">
                     <a href="<c:url value='?action=${actRep}&command=${commFlw}&id=${report.id}' />">この日報の作成者をフォローする</a>
                 </c:if>
                 </p>
                 <p>
-                <c:if test="${report.reportAprv == 0 && sessionScope.login_employee.bossFlag == AttributeConst.BOSS_SECTION.getIntegerValue()}">
+                <c:if test="${report.reportAprv == 0 && requestScope.login_employee.bossFlag == AttributeConst.BOSS_SECTION.getIntegerValue()}">
                     <a href="<c:url value='?action=${actRep}&command=${commAprv}&id=${report.id}' />">この日報を承認する</a>
                 </c:if>
                 </p>
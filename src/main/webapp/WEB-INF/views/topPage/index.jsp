@@ -1,4 +1,4 @@
-<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8"%>
+<%@ page language="java" contentType="text/html; charset=UTF-8" pageEncoding="UTF-8" session="false"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core" %>
 <%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt" %>
 <%@ page import="constants.ForwardConst" %>
@@ -33,9 +33,9 @@
                 <c:forEach var="report" items="${reports}" varStatus="status">
                     <fmt:parseDate value="${report.reportDate}" pattern="yyyy-MM-dd" var="reportDay" type="date" />
                     <tr class="row${status.count % 2}">
-                        <td class="report_name"><c:out value="${report.employee.name}" /></td>
+                        <td class="report_name"><c:out value="${report.employeeName}" /></td>
                         <td class="report_date"><fmt:formatDate value='${reportDay}' pattern='yyyy-MM-dd' /></td>
-                        <td class="report_title">${report.title}</td>
+                        <td class="report_title" title="<c:out value='${report.preview}' />">${report.title}</td>
                         <td class="report_good">${report.reportGood}</td>
                         <c:choose>
                             <c:when test="${report.reportAprv == 0}">
@@ -53,7 +53,8 @@
 
         <div id="pagination">
             （全 ${reports_count} 件）<br />
-            <c:forEach var="i" begin="1" end="${((reports_count - 1) / maxRow) + 1}" step="1">
+            <c:set var="lastPage" value="${((reports_count - 1) / maxRow) + 1}" />
+            <c:forEach var="i" begin="1" end="${lastPage > maxPage ? maxPage : lastPage}" step="1">
                 <c:choose>
                     <c:when test="${i == page}">
                         <c:out value="${i}" />&nbsp;
@@ -63,6 +64,13 @@
                     </c:otherwise>
                 </c:choose>
             </c:forEach>
+            <br />
+            <c:if test="${prevCursor != null}">
+                <a href="<c:url value='?action=${actTop}&command=${commIdx}&cursor=${prevCursor}' />">&lt;&nbsp;前へ</a>&nbsp;
+            </c:if>
+            <c:if test="${nextCursor != null}">
+                <a href="<c:url value='?action=${actTop}&command=${commIdx}&cursor=${nextCursor}' />">次へ&nbsp;&gt;</a>
+            </c:if>
         </div>
         <p><a href="<c:url value='?action=${actRep}&command=${commNew}' />">新規日報の登録</a></p>
     </c:param>
@@ -0,0 +1,91 @@
+package actions;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * リクエストのaction・commandからActionのインスタンスとメソッドを決定する処理のベンチマーク
+ * 起動時に作成する対応表(ActionRegistry)と、以前のリクエストごとのリフレクション
+ * (Class.forName → newInstance → getDeclaredMethod)を比較する。
+ * Actionのメソッド自体はDBを使用するため呼び出さず、決定までの処理時間を計測する。
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ActionDispatchBenchmark {
+
+    //存在するaction・command
+    private String action = "Report";
+    private String command = "show";
+    //存在しないaction(不正なリクエスト)
+    private String unknownAction = "xxxxx";
+
+    private ActionRegistry registry;
+
+    @Setup
+    public void setUp() {
+        registry = ActionRegistry.getInstance();
+    }
+
+    @Benchmark
+    public void knownRouteByRegistry(Blackhole bh) {
+        ActionBase instance = registry.newAction(action);
+        bh.consume(instance);
+        bh.consume(registry.route(instance.getClass(), command));
+    }
+
+    @Benchmark
+    public void knownRouteByReflection(Blackhole bh) throws ReflectiveOperationException {
+        Class<?> type = Class.forName(String.format("actions.%sAction", action));
+        Object instance = type.getDeclaredConstructor().newInstance();
+        Method method = type.getDeclaredMethod(command);
+        bh.consume(instance);
+        bh.consume(method);
+    }
+
+    @Benchmark
+    public void unknownActionByRegistry(Blackhole bh) {
+        bh.consume(registry.newAction(unknownAction));
+    }
+
+    @Benchmark
+    public void unknownActionByReflection(Blackhole bh) {
+        try {
+            bh.consume(Class.forName(String.format("actions.%sAction", unknownAction)));
+        } catch (ClassNotFoundException e) {
+            bh.consume(e);
+        }
+    }
+
+    /**
+     * ベンチマークを実行する
+     * @param args 使用しない
+     * @throws RunnerException
+     */
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ActionDispatchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,195 @@
+package actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import actions.views.EmployeeConverter;
+import constants.AttributeConst;
+import constants.ForwardConst;
+import constants.JpaConst;
+import models.Employee;
+import models.Follow;
+import models.Good;
+import models.Report;
+import services.PrincipalRegistry;
+import utils.DBUtil;
+import utils.QueryStatistics;
+import utils.RequestMetrics;
+import utils.SqlBudget;
+import utils.UnitOfWork;
+
+/**
+ * 主な画面を表示するActionを実行し、SQLの件数が経路ごとの上限(daily_report_system.sql.budget)以内で、
+ * 同じ形のSQLを繰り返し実行していない(N+1になっていない)ことを確認するテスト
+ * 上限はstrictモードで設定するため、上限を超えたSQLは実行されずにActionがエラーになる。
+ * 一覧は1ページ(JpaConst.ROW_PER_PAGE件)を超えるデータで確認する。
+ */
+public class ActionSqlBudgetTest {
+
+    //経路 → SQLの件数の上限
+    //(件数のキャッシュがない最初のリクエストの件数 件数を増やす変更をした場合は、理由を確認してから上限を変更する)
+    private static final String BUDGETS = "Top.index=2,Report.index=4,Report.show=4,Report.goodindex=3,"
+            + "Report.timeline=4,Employee.index=2,Employee.show=1";
+    //同じ形のSQLを何回実行したらN+1とみなすか
+    private static final int REPEAT_THRESHOLD = 3;
+
+    private static final int EMPLOYEES = 6;
+    private static final int REPORTS_PER_EMPLOYEE = 8;
+
+    private static Employee admin;
+    private static Employee followed;
+    private static Report likedReport;
+
+    @BeforeClass
+    public static void setUp() {
+        //DBUtilがEntityManagerFactoryを作成する前に、persistence.xmlの設定をシステムプロパティで上書きする
+        System.setProperty(JpaConst.PROP_SQL_BUDGET, BUDGETS);
+        System.setProperty(JpaConst.PROP_SQL_BUDGET_STRICT, "true");
+        System.setProperty(JpaConst.PROP_SQL_REPEAT_THRESHOLD, String.valueOf(REPEAT_THRESHOLD));
+
+        EntityManager em = DBUtil.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            LocalDateTime now = LocalDateTime.now();
+
+            List<Employee> employees = new ArrayList<>();
+            for (int i = 0; i < EMPLOYEES; i++) {
+                Employee e = new Employee(null, "code" + i, "従業員" + i, "password",
+                        i == 0 ? JpaConst.ROLE_ADMIN : JpaConst.ROLE_GENERAL,
+                        now, now, JpaConst.EMP_DEL_FALSE, JpaConst.BOSS_GENERAL);
+                em.persist(e);
+                employees.add(e);
+            }
+
+            List<Report> reports = new ArrayList<>();
+            for (int i = 0; i < EMPLOYEES * REPORTS_PER_EMPLOYEE; i++) {
+                Employee owner = employees.get(i % EMPLOYEES);
+                LocalDateTime createdAt = now.minusMinutes(i);
+                Report r = new Report(null, owner, LocalDate.now(), "日報" + i, "内容" + i,
+                        createdAt, createdAt, 0, 0, "内容" + i);
+                em.persist(r);
+                reports.add(r);
+            }
+
+            //1件目の日報に全員がいいねし、管理者は自分以外の全員をフォローする
+            Report liked = reports.get(0);
+            for (Employee e : employees) {
+                em.persist(new Good(null, e, liked, now, now));
+            }
+            liked.setReportGood(employees.size());
+            for (Employee e : employees.subList(1, employees.size())) {
+                em.persist(new Follow(null, employees.get(0), e, now, now));
+            }
+
+            em.getTransaction().commit();
+
+            admin = employees.get(0);
+            followed = employees.get(1);
+            likedReport = liked;
+        } finally {
+            em.close();
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        DBUtil.close();
+    }
+
+    @Test
+    public void topIndex() throws Exception {
+        assertWithinBudget("Top.index", ForwardConst.FW_TOP_INDEX, new TopAction(),
+                login(ForwardConst.ACT_TOP, ForwardConst.CMD_INDEX));
+    }
+
+    @Test
+    public void reportIndex() throws Exception {
+        assertWithinBudget("Report.index", ForwardConst.FW_REP_INDEX, new ReportAction(),
+                login(ForwardConst.ACT_REP, ForwardConst.CMD_INDEX));
+    }
+
+    @Test
+    public void reportIndexByPage() throws Exception {
+        ServletStub stub = login(ForwardConst.ACT_REP, ForwardConst.CMD_INDEX).param(AttributeConst.PAGE.getValue(), 2);
+        assertWithinBudget("Report.index", ForwardConst.FW_REP_INDEX, new ReportAction(), stub);
+    }
+
+    @Test
+    public void reportShow() throws Exception {
+        ServletStub stub = login(ForwardConst.ACT_REP, ForwardConst.CMD_SHOW)
+                .param(AttributeConst.REP_ID.getValue(), likedReport.getId());
+        assertWithinBudget("Report.show", ForwardConst.FW_REP_SHOW, new ReportAction(), stub);
+    }
+
+    @Test
+    public void reportGoodIndex() throws Exception {
+        ServletStub stub = login(ForwardConst.ACT_REP, ForwardConst.CMD_GOOD_INDEX)
+                .param(AttributeConst.REP_ID.getValue(), likedReport.getId());
+        assertWithinBudget("Report.goodindex", ForwardConst.FW_REP_GOODS, new ReportAction(), stub);
+    }
+
+    @Test
+    public void reportTimeline() throws Exception {
+        assertWithinBudget("Report.timeline", ForwardConst.FW_REP_TIMELINE, new ReportAction(),
+                login(ForwardConst.ACT_REP, ForwardConst.CMD_TIMELINE));
+    }
+
+    @Test
+    public void employeeIndex() throws Exception {
+        assertWithinBudget("Employee.index", ForwardConst.FW_EMP_INDEX, new EmployeeAction(),
+                login(ForwardConst.ACT_EMP, ForwardConst.CMD_INDEX));
+    }
+
+    @Test
+    public void employeeShow() throws Exception {
+        ServletStub stub = login(ForwardConst.ACT_EMP, ForwardConst.CMD_SHOW)
+                .param(AttributeConst.EMP_ID.getValue(), followed.getId());
+        assertWithinBudget("Employee.show", ForwardConst.FW_EMP_SHOW, new EmployeeAction(), stub);
+    }
+
+    /**
+     * 管理者でログインしているリクエストを作成する
+     */
+    private static ServletStub login(ForwardConst action, ForwardConst command) {
+        return new ServletStub(action.getValue(), command.getValue())
+                .sessionAttribute(AttributeConst.LOGIN_EMP.getValue(),
+                        PrincipalRegistry.login(EmployeeConverter.toView(admin)));
+    }
+
+    /**
+     * FrontControllerと同じ手順でActionを実行し、SQLの件数が上限以内でN+1になっていないことを確認する
+     * @param route 経路
+     * @param view 表示されるはずの画面
+     * @param action 実行するAction
+     * @param stub リクエスト
+     */
+    private static void assertWithinBudget(String route, ForwardConst view, ActionBase action, ServletStub stub)
+            throws Exception {
+        RequestMetrics metrics = RequestMetrics.start(stub.request);
+        action.init(stub.context, stub.request, stub.response);
+        try (RequestMetrics.Binding binding = RequestMetrics.bind(metrics);
+                UnitOfWork unitOfWork = UnitOfWork.begin()) {
+            action.process();
+        }
+
+        QueryStatistics queries = metrics.getQueries();
+        assertEquals(route, metrics.getRoute());
+        assertFalse(route + "のSQLの件数が上限を超えました: " + queries, queries.isBudgetExceeded());
+        assertEquals(route + "で同じ形のSQLを繰り返し実行しています(N+1の可能性)",
+                Collections.emptyMap(), SqlBudget.getInstance().getRepeated(queries));
+        assertFalse(route + "の実行中に例外が発生しました", metrics.isError());
+        assertEquals(String.format("/WEB-INF/views/%s.jsp", view.getValue()), stub.getForwardedTo());
+    }
+}
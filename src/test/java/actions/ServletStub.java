@@ -0,0 +1,187 @@
+package actions;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+import constants.ForwardConst;
+
+/**
+ * テストでActionを実行するための1リクエスト分のリクエスト・レスポンス・セッション・サーブレットコンテキスト
+ * Actionが使用するメソッドだけを実装し、それ以外のメソッドが呼び出された場合はUnsupportedOperationExceptionをスローする。
+ * 画面(jsp)は描画せず、フォワード先とリダイレクト先を記録する。
+ */
+class ServletStub {
+
+    private final Map<String, String> parameters = new HashMap<>();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private final Map<String, Object> sessionAttributes = new HashMap<>();
+    private boolean sessionCreated;
+    private int status = HttpServletResponse.SC_OK;
+    //フォワード先のjsp、リダイレクト先のURL(行っていない場合はnull)
+    private String forwardedTo;
+    private String redirectedTo;
+
+    final HttpServletRequest request = proxy(HttpServletRequest.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+        case "getParameter":
+            return parameters.get(args[0]);
+        case "getAttribute":
+            return attributes.get(args[0]);
+        case "setAttribute":
+            if (args[1] == null) {
+                attributes.remove(args[0]);
+            } else {
+                attributes.put((String) args[0], args[1]);
+            }
+            return null;
+        case "removeAttribute":
+            attributes.remove(args[0]);
+            return null;
+        case "getSession":
+            if (args == null || (Boolean) args[0]) {
+                sessionCreated = true;
+            }
+            return sessionCreated ? this.session : null;
+        case "changeSessionId":
+            return "changed";
+        case "getRequestDispatcher":
+            String path = (String) args[0];
+            return proxy(RequestDispatcher.class, (p, m, a) -> {
+                if (!m.getName().equals("forward")) {
+                    throw new UnsupportedOperationException(m.getName());
+                }
+                forwardedTo = path;
+                return null;
+            });
+        case "getMethod":
+            return "GET";
+        case "getContextPath":
+            return "";
+        case "getHeader":
+        case "getCookies":
+            return null;
+        case "isSecure":
+            return false;
+        default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+    });
+
+    final HttpServletResponse response = proxy(HttpServletResponse.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+        case "setHeader":
+        case "addHeader":
+        case "setDateHeader":
+            return null;
+        case "setStatus":
+        case "sendError":
+            status = (Integer) args[0];
+            return null;
+        case "getStatus":
+            return status;
+        case "sendRedirect":
+            redirectedTo = (String) args[0];
+            status = HttpServletResponse.SC_FOUND;
+            return null;
+        case "isCommitted":
+            return forwardedTo != null || redirectedTo != null;
+        default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+    });
+
+    final HttpSession session = proxy(HttpSession.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+        case "getAttribute":
+            return sessionAttributes.get(args[0]);
+        case "setAttribute":
+            sessionAttributes.put((String) args[0], args[1]);
+            return null;
+        case "removeAttribute":
+            sessionAttributes.remove(args[0]);
+            return null;
+        case "getId":
+            return "session";
+        case "invalidate":
+            sessionAttributes.clear();
+            sessionCreated = false;
+            return null;
+        default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+    });
+
+    final ServletContext context = proxy(ServletContext.class, (proxy, method, args) -> {
+        switch (method.getName()) {
+        case "getAttribute":
+        case "getResourcePaths":
+        case "getResourceAsStream":
+            return null;
+        default:
+            throw new UnsupportedOperationException(method.getName());
+        }
+    });
+
+    /**
+     * @param action パラメータのaction
+     * @param command パラメータのcommand
+     */
+    ServletStub(String action, String command) {
+        parameters.put(ForwardConst.ACT.getValue(), action);
+        parameters.put(ForwardConst.CMD.getValue(), command);
+    }
+
+    /**
+     * パラメータを設定する
+     * @param name パラメータ名
+     * @param value パラメータの値
+     * @return このインスタンス
+     */
+    ServletStub param(String name, Object value) {
+        parameters.put(name, String.valueOf(value));
+        return this;
+    }
+
+    /**
+     * セッションに値を設定する(セッションがなければ作成する)
+     * @param name 属性名
+     * @param value 属性の値
+     * @return このインスタンス
+     */
+    ServletStub sessionAttribute(String name, Object value) {
+        sessionCreated = true;
+        sessionAttributes.put(name, value);
+        return this;
+    }
+
+    /**
+     * @return フォワード先のjsp フォワードしていない場合はnull
+     */
+    String getForwardedTo() {
+        return forwardedTo;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(ServletStub.class.getClassLoader(), new Class<?>[] { type },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return type.getSimpleName() + " stub";
+                    default:
+                        return handler.invoke(proxy, method, args);
+                    }
+                }));
+    }
+}